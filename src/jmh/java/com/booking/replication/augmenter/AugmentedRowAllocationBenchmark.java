@@ -0,0 +1,100 @@
+package com.booking.replication.augmenter;
+
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.TableSchemaVersion;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building one augmented row.
+ *
+ * <p>Meant to be run with the GC profiler, gc.alloc.rate.norm is the number of
+ * bytes allocated per row:</p>
+ *
+ * <p>mvn -Pjmh test-compile exec:exec -Djmh.args="AugmentedRowAllocationBenchmark -prof gc"</p>
+ *
+ * <p>The eventColumns benchmark builds the compatibility map view on top of the
+ * row, which is roughly what every row used to cost.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AugmentedRowAllocationBenchmark {
+
+    @Param({"10", "60"})
+    public int columnCount;
+
+    private TableSchemaVersion      tableSchemaVersion;
+    private BinlogEventV4HeaderImpl header;
+    private String[]                values;
+
+    private long rowOrdinal = 0;
+
+    @Setup
+    public void setUp() {
+        tableSchemaVersion = new TableSchemaVersion();
+        values = new String[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            ColumnSchema columnSchema = new ColumnSchema();
+            columnSchema.setColumnName("column_" + i);
+            columnSchema.setOrdinalPosition(i);
+            columnSchema.setDataType("int");
+            columnSchema.setColumnType("int(11)");
+            if (i == 1) {
+                columnSchema.setColumnKey("PRI");
+            }
+            tableSchemaVersion.addColumn(columnSchema);
+            values[i - 1] = Integer.toString(i * 1000);
+        }
+
+        header = new BinlogEventV4HeaderImpl();
+        header.setEventLength(100);
+        header.setNextPosition(1100);
+        header.setTimestamp(System.currentTimeMillis());
+    }
+
+    private AugmentedRow newRow(String eventType) throws TableMapException {
+        return new AugmentedRow("mysql-bin.000001", ++rowOrdinal, "wide_table", tableSchemaVersion, eventType, header);
+    }
+
+    @Benchmark
+    public AugmentedRow insertRow() throws TableMapException {
+        AugmentedRow row = newRow("INSERT");
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            row.setColumnValue(columnIndex, values[columnIndex]);
+        }
+        return row;
+    }
+
+    @Benchmark
+    public AugmentedRow updateRow() throws TableMapException {
+        AugmentedRow row = newRow("UPDATE");
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            row.setColumnValues(columnIndex, values[columnIndex], values[columnIndex]);
+        }
+        return row;
+    }
+
+    @Benchmark
+    public Object insertRowEventColumns() throws TableMapException {
+        return insertRow().getEventColumns();
+    }
+}
@@ -0,0 +1,143 @@
+package com.booking.replication.augmenter;
+
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.ColumnConverter;
+import com.booking.replication.schema.column.types.Converter;
+import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.TableSchemaVersion;
+
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.column.DoubleColumn;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.LongLongColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.glossary.column.TinyColumn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting one row of a wide table to strings.
+ *
+ * <p>Compares the per-value lookups the augmenter used to do (index to name
+ * map, name to schema map, Converter.orTypeToString) with the per-ordinal
+ * column converters compiled by TableSchemaVersion. The table cycles through
+ * signed and unsigned integers, doubles and utf8/latin1 varchars.</p>
+ *
+ * <p>typedValues only extracts the values into a row image, which is all the
+ * augmenter does now; renderedValues also renders every value to a string the
+ * way the Kafka applier does.</p>
+ *
+ * <p>Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="WideTableConversionBenchmark"</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WideTableConversionBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int columnCount;
+
+    private TableSchemaVersion tableSchemaVersion;
+    private List<Column>       row;
+    private RowImage           rowImage;
+
+    @Setup
+    public void setUp() {
+        tableSchemaVersion = new TableSchemaVersion();
+        row = new ArrayList<>(columnCount);
+
+        for (int i = 1; i <= columnCount; i++) {
+            ColumnSchema columnSchema = new ColumnSchema();
+            columnSchema.setColumnName("column_" + i);
+            columnSchema.setOrdinalPosition(i);
+
+            switch (i % 6) {
+                case 0:
+                    setType(columnSchema, "int", "int(11)", null);
+                    row.add(LongColumn.valueOf(-i * 1000));
+                    break;
+                case 1:
+                    setType(columnSchema, "int", "int(10) unsigned", null);
+                    row.add(LongColumn.valueOf(-i));
+                    break;
+                case 2:
+                    setType(columnSchema, "bigint", "bigint(20) unsigned", null);
+                    row.add(LongLongColumn.valueOf(-i * 1000000L));
+                    break;
+                case 3:
+                    setType(columnSchema, "tinyint", "tinyint(3) unsigned", null);
+                    row.add(TinyColumn.valueOf(-i % 128));
+                    break;
+                case 4:
+                    setType(columnSchema, "double", "double", null);
+                    row.add(DoubleColumn.valueOf(i * 0.25));
+                    break;
+                default:
+                    setType(columnSchema, "varchar", "varchar(255)", i % 2 == 0 ? "utf8mb4" : "latin1");
+                    row.add(StringColumn.valueOf(("value of column " + i).getBytes(StandardCharsets.UTF_8)));
+                    break;
+            }
+            tableSchemaVersion.addColumn(columnSchema);
+        }
+
+        tableSchemaVersion.getColumnConverters();
+        rowImage = new RowImage(columnCount);
+    }
+
+    private static void setType(ColumnSchema columnSchema, String dataType, String columnType, String charset) {
+        columnSchema.setDataType(dataType);
+        columnSchema.setColumnType(columnType);
+        columnSchema.setCharacterSetName(charset);
+    }
+
+    @Benchmark
+    public void lookupPerValue(Blackhole blackhole) throws TableMapException {
+        for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
+            String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
+            ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
+            blackhole.consume(columnName);
+            blackhole.consume(Converter.orTypeToString(row.get(columnIndex - 1), columnSchema));
+            blackhole.consume(columnSchema.getColumnType());
+        }
+    }
+
+    @Benchmark
+    public RowImage typedValues() throws TableMapException {
+        ColumnConverter[] columnConverters = tableSchemaVersion.getColumnConverters();
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            columnConverters[columnIndex].extract(row.get(columnIndex), rowImage, columnIndex);
+        }
+        return rowImage;
+    }
+
+    @Benchmark
+    public void renderedValues(Blackhole blackhole) throws TableMapException {
+        ColumnConverter[] columnConverters = tableSchemaVersion.getColumnConverters();
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            ColumnConverter columnConverter = columnConverters[columnIndex];
+            columnConverter.extract(row.get(columnIndex), rowImage, columnIndex);
+            blackhole.consume(columnConverter.getColumnName());
+            blackhole.consume(columnConverter.render(rowImage, columnIndex));
+            blackhole.consume(columnConverter.getColumnType());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.booking.replication.binlog;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.ColumnConverter;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.binlog.impl.parser.AbstractBinlogEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.impl.XInputStreamImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a WRITE_ROWS_EVENT_V2 of a wide table into row images.
+ *
+ * <p>openReplicator parses the event with the Open Replicator parser, which
+ * makes a column object per cell, and extracts the columns into row images
+ * the way the augmenter does. rowsEventReader parses it into a
+ * {@link RawRowsEvent} and decodes the rows with a {@link RowsEventReader}.
+ * The table cycles through ints, bigints, doubles and utf8 varchars.</p>
+ *
+ * <p>Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="RowsEventDecoderBenchmark -prof gc"</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RowsEventDecoderBenchmark {
+
+    private static final long TABLE_ID = 77;
+
+    @Param({"10", "100", "500"})
+    public int columnCount;
+
+    @Param({"1", "50"})
+    public int rowCount;
+
+    private byte[]              payload;
+    private TableMapEvent       tableMapEvent;
+    private ColumnConverter[]   columnConverters;
+    private RowImage            rowImage;
+    private BinlogParserContext context;
+
+    private final BinlogEventV4[] parsedEvent = new BinlogEventV4[1];
+
+    private final AbstractBinlogEventParser openReplicatorParser = new WriteRowsEventV2Parser();
+    private final AbstractBinlogEventParser rawRowsParser = new RawRowsEventParser(MySQLConstants.WRITE_ROWS_EVENT_V2);
+
+    @Setup
+    public void setUp() {
+        byte[] columnTypes = new byte[columnCount];
+        int[] metadata = new int[columnCount];
+        columnConverters = new ColumnConverter[columnCount];
+
+        for (int column = 0; column < columnCount; column++) {
+            ColumnSchema columnSchema = new ColumnSchema();
+            columnSchema.setColumnName("column_" + column);
+            columnSchema.setOrdinalPosition(column + 1);
+
+            switch (column % 4) {
+                case 0:
+                    columnTypes[column] = MySQLConstants.TYPE_LONG;
+                    setType(columnSchema, "int", "int(11)", null);
+                    break;
+                case 1:
+                    columnTypes[column] = MySQLConstants.TYPE_LONGLONG;
+                    setType(columnSchema, "bigint", "bigint(20) unsigned", null);
+                    break;
+                case 2:
+                    columnTypes[column] = MySQLConstants.TYPE_DOUBLE;
+                    metadata[column] = 8;
+                    setType(columnSchema, "double", "double", null);
+                    break;
+                default:
+                    columnTypes[column] = MySQLConstants.TYPE_VARCHAR;
+                    metadata[column] = 1020;
+                    setType(columnSchema, "varchar", "varchar(255)", "utf8mb4");
+                    break;
+            }
+            columnConverters[column] = ColumnConverter.forColumn(columnSchema);
+        }
+
+        tableMapEvent = new TableMapEvent(new BinlogEventV4HeaderImpl());
+        tableMapEvent.setTableId(TABLE_ID);
+        tableMapEvent.setDatabaseName(StringColumn.valueOf("test".getBytes()));
+        tableMapEvent.setTableName(StringColumn.valueOf("t".getBytes()));
+        tableMapEvent.setColumnCount(UnsignedLong.valueOf(columnCount));
+        tableMapEvent.setColumnTypes(columnTypes);
+        tableMapEvent.setColumnMetadata(new Metadata(columnTypes, metadata));
+
+        payload = payload(columnTypes);
+        rowImage = new RowImage(columnCount);
+
+        final BinlogEventListener listener = event -> parsedEvent[0] = event;
+        context = new BinlogParserContext() {
+            @Override
+            public boolean getChecksumEnabled() {
+                return false;
+            }
+
+            @Override
+            public void setChecksumEnabled(boolean checksumEnabled) {
+            }
+
+            @Override
+            public String getBinlogFileName() {
+                return "mysql-bin.000001";
+            }
+
+            @Override
+            public BinlogEventListener getEventListener() {
+                return listener;
+            }
+
+            @Override
+            public TableMapEvent getTableMapEvent(long tableId) {
+                return tableMapEvent;
+            }
+        };
+    }
+
+    private static void setType(ColumnSchema columnSchema, String dataType, String columnType, String charset) {
+        columnSchema.setDataType(dataType);
+        columnSchema.setColumnType(columnType);
+        columnSchema.setCharacterSetName(charset);
+    }
+
+    private byte[] payload(byte[] columnTypes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeLittleEndian(out, TABLE_ID, 6);
+        writeLittleEndian(out, 1, 2);
+        writeLittleEndian(out, 2, 2);
+        if (columnCount < 251) {
+            writeLittleEndian(out, columnCount, 1);
+        } else {
+            out.write(252);
+            writeLittleEndian(out, columnCount, 2);
+        }
+
+        int bitmapLength = (columnCount + 7) >> 3;
+        for (int i = 0; i < bitmapLength; i++) {
+            out.write(0xff);
+        }
+
+        for (int row = 0; row < rowCount; row++) {
+            // no NULLs
+            for (int i = 0; i < bitmapLength; i++) {
+                out.write(0);
+            }
+            for (int column = 0; column < columnCount; column++) {
+                switch (columnTypes[column]) {
+                    case MySQLConstants.TYPE_LONG:
+                        writeLittleEndian(out, -column * 1000, 4);
+                        break;
+                    case MySQLConstants.TYPE_LONGLONG:
+                        writeLittleEndian(out, -column * 1000000L, 8);
+                        break;
+                    case MySQLConstants.TYPE_DOUBLE:
+                        writeLittleEndian(out, Double.doubleToLongBits(column * 0.25), 8);
+                        break;
+                    default:
+                        byte[] value = ("value of column " + column).getBytes(StandardCharsets.UTF_8);
+                        writeLittleEndian(out, value.length, 2);
+                        out.write(value, 0, value.length);
+                        break;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            out.write((int) (value >> (i << 3)));
+        }
+    }
+
+    private BinlogEventV4 parse(AbstractBinlogEventParser parser) throws IOException {
+        XInputStreamImpl is = new XInputStreamImpl(new ByteArrayInputStream(payload), payload.length);
+        is.setReadLimit(payload.length);
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(MySQLConstants.WRITE_ROWS_EVENT_V2);
+        parser.parse(is, header, context);
+        return parsedEvent[0];
+    }
+
+    @Benchmark
+    public RowImage openReplicator() throws IOException, TableMapException {
+        WriteRowsEventV2 event = (WriteRowsEventV2) parse(openReplicatorParser);
+        for (Row row : event.getRows()) {
+            List<Column> columns = row.getColumns();
+            for (int column = 0; column < columnCount; column++) {
+                columnConverters[column].extract(columns.get(column), rowImage, column);
+            }
+        }
+        return rowImage;
+    }
+
+    @Benchmark
+    public RowImage rowsEventReader() throws IOException, TableMapException {
+        RawRowsEvent event = (RawRowsEvent) parse(rawRowsParser);
+        RowsEventReader reader = new RowsEventReader(event);
+        while (reader.hasNext()) {
+            reader.readImage(event.getUsedColumns(), columnConverters, rowImage);
+        }
+        return rowImage;
+    }
+}
@@ -0,0 +1,112 @@
+package com.booking.replication.net;
+
+import com.google.code.or.io.impl.SocketFactoryImpl;
+import com.google.code.or.net.impl.AuthenticatorImpl;
+import com.google.code.or.net.impl.TransportImpl;
+import com.google.code.or.net.impl.packet.RawPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to stream a binlog dump of ~70MB from a {@link FakeReplicationServer}.
+ *
+ * <p>openReplicator reads it with the default Open Replicator transport, nio
+ * with a {@link NioTransport} and nioCompressed with a {@link NioTransport}
+ * that asks for the compressed protocol. With no bandwidth limit loopback is
+ * faster than zlib and compression only costs CPU, the server's deflate
+ * included; at 100Mbit/s, a link between data centers, the stream is bound by
+ * the bytes on the wire and compression pays off.</p>
+ *
+ * <p>Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="NioTransportBenchmark"</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NioTransportBenchmark {
+
+    private static final byte[] COMMAND = {0x12, 4, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0};
+
+    private static final List<byte[]> EVENTS = FakeReplicationServer.eventPackets(100000);
+
+    @Param({"openReplicator", "nio", "nioCompressed"})
+    public String transport;
+
+    @Param({"0", "100"})
+    public int bandwidthMbit;
+
+    private FakeReplicationServer server;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        server = new FakeReplicationServer(EVENTS, true, bandwidthMbit * 1000000L / 8);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private TransportImpl transport() {
+        AuthenticatorImpl authenticator = new AuthenticatorImpl();
+        authenticator.setUser("replicator");
+        authenticator.setPassword("secret");
+        authenticator.setEncoding("utf-8");
+
+        TransportImpl transport;
+        if (this.transport.equals("openReplicator")) {
+            SocketFactoryImpl socketFactory = new SocketFactoryImpl();
+            socketFactory.setKeepAlive(true);
+            transport = new TransportImpl();
+            transport.setSocketFactory(socketFactory);
+        } else {
+            NioTransport nioTransport = new NioTransport();
+            nioTransport.setCompression(this.transport.equals("nioCompressed"));
+            transport = nioTransport;
+        }
+        transport.setLevel1BufferSize(1024 * 1024);
+        transport.setAuthenticator(authenticator);
+        return transport;
+    }
+
+    @Benchmark
+    public long dump() throws Exception {
+        TransportImpl transport = transport();
+        transport.connect("127.0.0.1", server.getPort());
+        try {
+            RawPacket command = new RawPacket();
+            command.setPacketBody(COMMAND);
+            transport.getOutputStream().writePacket(command);
+            transport.getOutputStream().flush();
+
+            long bytes = 0;
+            while (true) {
+                byte[] body = transport.getInputStream().readPacket().getPacketBody();
+                if (body[0] == (byte) 0xfe && body.length < 9) {
+                    return bytes;
+                }
+                bytes += body.length;
+            }
+        } finally {
+            transport.disconnect();
+        }
+    }
+}
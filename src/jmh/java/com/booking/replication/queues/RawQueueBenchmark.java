@@ -0,0 +1,99 @@
+package com.booking.replication.queues;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer to consumer hand-off throughput of the raw event queue.
+ *
+ * <p>Compares the ring buffer (with each wait strategy, single poll and batched
+ * drain) against the LinkedBlockingQueue it replaced. Both sides use the same
+ * timed offer/poll calls as BinlogEventProducer and PipelineOrchestrator.</p>
+ *
+ * <p>Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="RawQueueBenchmark"</p>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RawQueueBenchmark {
+
+    private static final int    CAPACITY    = 10000;
+    private static final int    BATCH_SIZE  = 256;
+    private static final Object EVENT       = new Object();
+
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    public String waitStrategy;
+
+    private RingBuffer<Object>          ringBuffer;
+    private LinkedBlockingQueue<Object> linkedBlockingQueue;
+
+    private final List<Object> batch = new ArrayList<>(BATCH_SIZE);
+
+    @Setup
+    public void setUp() {
+        ringBuffer          = new RingBuffer<>(CAPACITY, WaitStrategy.fromName(waitStrategy));
+        linkedBlockingQueue = new LinkedBlockingQueue<>(CAPACITY);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public boolean ringBufferOffer() throws InterruptedException {
+        return ringBuffer.offer(EVENT, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public Object ringBufferPoll() throws InterruptedException {
+        return ringBuffer.poll(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("ringBufferBatched")
+    @GroupThreads(1)
+    public boolean ringBufferBatchedOffer() throws InterruptedException {
+        return ringBuffer.offer(EVENT, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("ringBufferBatched")
+    @GroupThreads(1)
+    public int ringBufferBatchedDrain() {
+        batch.clear();
+        return ringBuffer.drainTo(batch, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    @GroupThreads(1)
+    public boolean linkedBlockingQueueOffer() throws InterruptedException {
+        return linkedBlockingQueue.offer(EVENT, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    @GroupThreads(1)
+    public Object linkedBlockingQueuePoll() throws InterruptedException {
+        return linkedBlockingQueue.poll(10, TimeUnit.MILLISECONDS);
+    }
+}
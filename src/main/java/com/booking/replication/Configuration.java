@@ -1,5 +1,6 @@
 package com.booking.replication;
 
+import com.booking.replication.schema.column.types.BlobEncoding;
 import com.booking.replication.util.Duration;
 import com.booking.replication.util.StartupParameters;
 import com.google.common.base.Joiner;
@@ -15,6 +16,7 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,6 +36,8 @@ public class Configuration {
     private long    startingBinlogPosition;
     private String  startingBinlogFileName;
     private String  endingBinlogFileName;
+    private String  binlogDirectory;
+    private int     parallelReplayLanes;
     private String  applierType;
 
     @JsonDeserialize
@@ -45,6 +49,8 @@ public class Configuration {
         public String       password;
         public List<String> host_pool;
         public int          port        = 3306;
+        public List<String> include_tables;
+        public List<String> exclude_tables;
     }
 
 
@@ -85,6 +91,18 @@ public class Configuration {
         @JsonDeserialize
         public HiveImports     hive_imports = new HiveImports();
 
+        public String              blob_encoding       = "hex";
+        public Map<String, String> table_blob_encoding = Collections.emptyMap();
+
+        public String              write_mode          = "put";
+        public long                write_buffer_mb     = 2;
+
+        public boolean             region_server_batching     = false;
+        public int                 region_server_max_in_flight = 4;
+
+        public boolean             adaptive_tasks      = false;
+        public long                latency_target_ms   = 10000;
+
         private static class HiveImports {
             public List<String> tables = Collections.emptyList();
         }
@@ -143,6 +161,32 @@ public class Configuration {
         public String topic;
     }
 
+    @JsonDeserialize
+    private PipelineConfiguration pipeline = new PipelineConfiguration();
+
+    private static class PipelineConfiguration {
+        public String  raw_queue_wait_strategy  = "park";
+        public boolean staged                   = false;
+        public int     stage_queue_size         = 1024;
+        public int     augmenter_threads        = 1;
+        public long    memory_budget_mb         = 1024;
+        public long    overflow_mb              = 256;
+        public int     net_write_timeout        = 0;
+        public String  overflow                 = "memory";
+        public String  spill_directory          = "spill";
+        public int     spill_segment_mb         = 64;
+        public long    spill_max_mb             = 10240;
+        public int     spill_high_water_mark    = 5000;
+        public String  relay_log_directory      = null;
+        public int     relay_log_retained_files = 4;
+        public String  rows_decoder             = "open_replicator";
+        public String  transport                = "open_replicator";
+        public boolean compression              = false;
+        public int     read_timeout             = 120;
+        public int     socket_receive_buffer_kb = 512;
+        public int     socket_send_buffer_kb    = 0;
+    }
+
     public static class ValidationConfiguration {
         private String broker;
         private String topic;
@@ -242,6 +286,26 @@ public class Configuration {
         startingBinlogPosition = startupParameters.getBinlogPosition();
         endingBinlogFileName   = startupParameters.getLastBinlogFileName();
 
+        // offline mode
+        binlogDirectory = startupParameters.getBinlogDirectory();
+        if (binlogDirectory != null && startingBinlogFileName == null) {
+            throw new RuntimeException("binlog-filename is required when reading from a binlog-directory");
+        }
+
+        // parallel replay of a bounded range
+        parallelReplayLanes = startupParameters.getParallelReplayLanes();
+        if (parallelReplayLanes < 0) {
+            throw new RuntimeException("parallel-replay must be a number of lanes");
+        }
+        if (parallelReplayLanes > 0) {
+            if (binlogDirectory == null || endingBinlogFileName == null) {
+                throw new RuntimeException("parallel-replay requires binlog-directory and last-binlog-filename");
+            }
+            if (applierType.toLowerCase().equals("kafka")) {
+                throw new RuntimeException("parallel-replay does not keep the binlog order the kafka applier needs");
+            }
+        }
+
         // hbase specific parameters
         if (applierType.equals("hbase") && hbaseConfiguration != null) {
             // delta tables
@@ -287,6 +351,65 @@ public class Configuration {
             if (hbaseConfiguration.namespace == null) {
                 throw new RuntimeException("HBase namespace cannot be null.");
             }
+            BlobEncoding.fromName(hbaseConfiguration.blob_encoding);
+            for (String blobEncoding : hbaseConfiguration.table_blob_encoding.values()) {
+                BlobEncoding.fromName(blobEncoding);
+            }
+            if (!hbaseConfiguration.write_mode.equals("put") && !hbaseConfiguration.write_mode.equals("buffered_mutator")) {
+                throw new RuntimeException("Unknown HBase write mode: "
+                        + hbaseConfiguration.write_mode
+                        + ", expected put or buffered_mutator.");
+            }
+            if (hbaseConfiguration.write_buffer_mb < 1) {
+                throw new RuntimeException("HBase write buffer must be at least 1 MB.");
+            }
+            if (hbaseConfiguration.region_server_batching && isHbaseBufferedMutatorMode()) {
+                throw new RuntimeException("HBase region server batching only applies to the put write mode, "
+                        + "buffered mutators group their mutations by region server already.");
+            }
+            if (hbaseConfiguration.region_server_max_in_flight < 1) {
+                throw new RuntimeException("HBase region server max in flight must be positive.");
+            }
+            if (hbaseConfiguration.latency_target_ms < 1) {
+                throw new RuntimeException("HBase latency target must be positive.");
+            }
+        }
+
+        if (pipeline.memory_budget_mb < 0) {
+            throw new RuntimeException("Pipeline memory budget cannot be negative.");
+        }
+        if (pipeline.overflow_mb < 0) {
+            throw new RuntimeException("Pipeline overflow size cannot be negative.");
+        }
+        if (!pipeline.overflow.equals("memory") && !pipeline.overflow.equals("disk")) {
+            throw new RuntimeException("Unknown pipeline overflow: " + pipeline.overflow + ", expected memory or disk.");
+        }
+        if (isPipelineSpillEnabled()) {
+            if (pipeline.spill_segment_mb < 1 || pipeline.spill_segment_mb > 1024) {
+                throw new RuntimeException("Pipeline spill segment size must be between 1 and 1024 MB.");
+            }
+            if (pipeline.spill_max_mb < pipeline.spill_segment_mb) {
+                throw new RuntimeException("Pipeline spill size cannot be smaller than a spill segment.");
+            }
+            if (pipeline.spill_high_water_mark < 1) {
+                throw new RuntimeException("Pipeline spill high water mark must be positive.");
+            }
+        }
+        if (isRelayLogEnabled() && pipeline.relay_log_retained_files < 1) {
+            throw new RuntimeException("Pipeline relay log must retain at least one file.");
+        }
+        if (!pipeline.rows_decoder.equals("open_replicator") && !pipeline.rows_decoder.equals("replicator")) {
+            throw new RuntimeException("Unknown pipeline rows decoder: "
+                    + pipeline.rows_decoder
+                    + ", expected open_replicator or replicator.");
+        }
+        if (!pipeline.transport.equals("open_replicator") && !pipeline.transport.equals("nio")) {
+            throw new RuntimeException("Unknown pipeline transport: "
+                    + pipeline.transport
+                    + ", expected open_replicator or nio.");
+        }
+        if (pipeline.read_timeout < 0) {
+            throw new RuntimeException("Pipeline read timeout cannot be negative.");
         }
     }
 
@@ -318,6 +441,28 @@ public class Configuration {
         return replication_schema.name;
     }
 
+    /**
+     * Patterns of the tables to replicate. Falls back to the kafka table list
+     * for the kafka applier.
+     */
+    public List<String> getIncludeTables() {
+        if (replication_schema.include_tables == null && "kafka".equals(applierType)) {
+            return kafka.tables;
+        }
+        return replication_schema.include_tables;
+    }
+
+    /**
+     * Patterns of the tables not to replicate. Falls back to the kafka exclude
+     * list for the kafka applier.
+     */
+    public List<String> getExcludeTables() {
+        if (replication_schema.exclude_tables == null && "kafka".equals(applierType)) {
+            return kafka.excludetables;
+        }
+        return replication_schema.exclude_tables;
+    }
+
     public String getReplicantDBUserName() {
         return replication_schema.username;
     }
@@ -360,6 +505,28 @@ public class Configuration {
         return startingBinlogPosition;
     }
 
+    /**
+     * Directory to read binlog files from, instead of streaming them from the replicant.
+     */
+    public String getBinlogDirectory() {
+        return binlogDirectory;
+    }
+
+    public boolean isOfflineMode() {
+        return binlogDirectory != null;
+    }
+
+    /**
+     * Number of lanes of the parallel replay, 0 when the serial pipeline runs.
+     */
+    public int getParallelReplayLanes() {
+        return parallelReplayLanes;
+    }
+
+    public boolean isParallelReplay() {
+        return parallelReplayLanes > 0;
+    }
+
     // =========================================================================
     // Applier type
     public String getApplierType() {
@@ -462,6 +629,60 @@ public class Configuration {
         }
     }
 
+    public String getHbaseBlobEncoding() {
+        if (hbaseConfiguration != null) {
+            return hbaseConfiguration.blob_encoding;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Per table overrides of the HBase blob encoding.
+     */
+    public Map<String, String> getHbaseTableBlobEncodings() {
+        if (hbaseConfiguration != null) {
+            return hbaseConfiguration.table_blob_encoding;
+        } else {
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Whether rows are written through long-lived buffered mutators, flushed
+     * at checkpoints, instead of one synchronous put per table and task.
+     */
+    public boolean isHbaseBufferedMutatorMode() {
+        return hbaseConfiguration != null && hbaseConfiguration.write_mode.equals("buffered_mutator");
+    }
+
+    public long getHbaseWriteBufferBytes() {
+        return hbaseConfiguration.write_buffer_mb * 1024 * 1024;
+    }
+
+    /**
+     * Whether the puts of a table are sent in one batch per region server.
+     */
+    public boolean isHbaseRegionServerBatching() {
+        return hbaseConfiguration != null && hbaseConfiguration.region_server_batching;
+    }
+
+    public int getHbaseRegionServerMaxInFlight() {
+        return hbaseConfiguration.region_server_max_in_flight;
+    }
+
+    /**
+     * Whether task size, tasks in flight and flush age follow the observed
+     * task latency and failures instead of staying fixed.
+     */
+    public boolean isHbaseAdaptiveTasks() {
+        return hbaseConfiguration != null && hbaseConfiguration.adaptive_tasks;
+    }
+
+    public long getHbaseLatencyTargetMs() {
+        return hbaseConfiguration == null ? 0 : hbaseConfiguration.latency_target_ms;
+    }
+
     public String getHBaseQuorum() {
         if (hbaseConfiguration != null) {
             return Joiner.on(",").join(hbaseConfiguration.zookeeper_quorum);
@@ -493,5 +714,100 @@ public class Configuration {
         return dryRunMode;
     }
 
+    /**
+     * Pipeline configuration getters.
+     */
+    public String getRawQueueWaitStrategy() {
+        return pipeline.raw_queue_wait_strategy;
+    }
+
+    public boolean isPipelineStaged() {
+        return pipeline.staged;
+    }
+
+    public int getPipelineStageQueueSize() {
+        return pipeline.stage_queue_size;
+    }
+
+    public int getPipelineAugmenterThreads() {
+        return pipeline.augmenter_threads;
+    }
+
+    public long getPipelineMemoryBudgetBytes() {
+        return pipeline.memory_budget_mb * 1024 * 1024;
+    }
+
+    public long getPipelineOverflowBytes() {
+        return pipeline.overflow_mb * 1024 * 1024;
+    }
+
+    public int getPipelineNetWriteTimeout() {
+        return pipeline.net_write_timeout;
+    }
+
+    public boolean isPipelineSpillEnabled() {
+        return pipeline.overflow.equals("disk");
+    }
+
+    public String getPipelineSpillDirectory() {
+        return pipeline.spill_directory;
+    }
+
+    public int getPipelineSpillSegmentBytes() {
+        return pipeline.spill_segment_mb * 1024 * 1024;
+    }
+
+    public long getPipelineSpillMaxBytes() {
+        return pipeline.spill_max_mb * 1024 * 1024;
+    }
+
+    public int getPipelineSpillHighWaterMark() {
+        return pipeline.spill_high_water_mark;
+    }
+
+    /**
+     * Whether V2 rows events are decoded by the replicator (straight into row
+     * images, when they are augmented) instead of by Open Replicator.
+     */
+    public boolean isReplicatorRowsDecoder() {
+        return pipeline.rows_decoder.equals("replicator");
+    }
+
+    /**
+     * Whether the replication connection goes through the NIO transport
+     * instead of the Open Replicator one.
+     */
+    public boolean isPipelineNioTransport() {
+        return pipeline.transport.equals("nio");
+    }
+
+    public boolean isPipelineCompression() {
+        return pipeline.compression;
+    }
+
+    public int getPipelineReadTimeout() {
+        return pipeline.read_timeout;
+    }
+
+    public int getPipelineSocketReceiveBufferBytes() {
+        return pipeline.socket_receive_buffer_kb * 1024;
+    }
+
+    public int getPipelineSocketSendBufferBytes() {
+        return pipeline.socket_send_buffer_kb * 1024;
+    }
+
+    public boolean isRelayLogEnabled() {
+        return pipeline.relay_log_directory != null;
+    }
+
+    public String getRelayLogDirectory() {
+        return pipeline.relay_log_directory;
+    }
+
+    public int getRelayLogRetainedFiles() {
+        return pipeline.relay_log_retained_files;
+    }
+
 
 }
@@ -5,9 +5,12 @@ import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
 import com.booking.replication.monitor.*;
 import com.booking.replication.pipeline.BinlogEventProducer;
 import com.booking.replication.pipeline.BinlogPositionInfo;
+import com.booking.replication.pipeline.ParallelReplay;
 import com.booking.replication.pipeline.PipelineOrchestrator;
 import com.booking.replication.pipeline.PipelinePosition;
+import com.booking.replication.queues.MemoryBudget;
 import com.booking.replication.queues.ReplicatorQueues;
+import com.booking.replication.queues.WaitStrategy;
 import com.booking.replication.replicant.ReplicantPool;
 
 import com.booking.replication.sql.QueryInspector;
@@ -23,6 +26,7 @@ import spark.Spark;
 import static com.codahale.metrics.MetricRegistry.name;
 import static spark.Spark.get;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,6 +45,7 @@ public class Replicator {
     private final ReplicantPool        replicantPool;
     private final PipelinePosition     pipelinePosition;
     private final ReplicatorHealthTrackerProxy healthTracker;
+    private final ParallelReplay       parallelReplay;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Replicator.class);
 
@@ -56,7 +61,12 @@ public class Replicator {
         }
 
         // Replicant Pool
-        replicantPool = new ReplicantPool(configuration.getReplicantDBHostPool(), configuration);
+        if (configuration.isOfflineMode()) {
+            LOGGER.info("Reading binlog files from " + configuration.getBinlogDirectory() + " instead of the replicant");
+            replicantPool = ReplicantPool.offline(configuration.getReplicantDBHostPool(), configuration);
+        } else {
+            replicantPool = new ReplicantPool(configuration.getReplicantDBHostPool(), configuration);
+        }
 
         // 1. init pipelinePosition -> move to separate method
         if (mysqlFailoverActive) {
@@ -228,37 +238,52 @@ public class Replicator {
                 pipelinePosition.getStartPosition().getBinlogFilename(),
                 pipelinePosition.getStartPosition().getBinlogPosition()));
 
+        // Validation service
+        ValidationService validationService = ValidationService.getInstance(configuration);
+
+        // Parallel replay: the replay lanes have their own orchestrators and appliers
+        if (configuration.isParallelReplay()) {
+            MemoryBudget memoryBudget = new MemoryBudget(configuration.getPipelineMemoryBudgetBytes());
+            parallelReplay = new ParallelReplay(
+                    configuration,
+                    pipelinePosition,
+                    replicantPool,
+                    fakeMicrosecondCounter,
+                    () -> createApplier(configuration, validationService, memoryBudget, interestingEventsObservedCounter));
+            this.healthTracker.setTrackerImplementation(new ReplicatorHealthTrackerDummy());
+            binlogEventProducer = null;
+            pipelineOrchestrator = null;
+            overseer = null;
+            return;
+        }
+        parallelReplay = null;
+
         // Queues
-        ReplicatorQueues replicatorQueues = new ReplicatorQueues();
+        ReplicatorQueues replicatorQueues = new ReplicatorQueues(
+                WaitStrategy.fromName(configuration.getRawQueueWaitStrategy()),
+                configuration.getPipelineMemoryBudgetBytes());
 
         // Producer
         binlogEventProducer = new BinlogEventProducer(
             replicatorQueues.rawQueue,
+            replicatorQueues.rawQueueMemory,
             pipelinePosition,
             configuration,
             replicantPool
         );
 
-        // Validation service
-        ValidationService validationService = ValidationService.getInstance(configuration);
-
         // Applier
-        Applier applier;
+        Applier applier = createApplier(
+                configuration, validationService, replicatorQueues.memoryBudget, interestingEventsObservedCounter);
         Counting mainProgressCounter = null;
         String mainProgressCounterDescription = null;
 
-        if (configuration.getApplierType().equals("STDOUT")) {
-            applier = new EventCountingApplier(new StdoutJsonApplier(configuration), interestingEventsObservedCounter);
-        } else if (configuration.getApplierType().toLowerCase().equals("hbase")) {
+        if (configuration.getApplierType().toLowerCase().equals("hbase")) {
             mainProgressCounter = Metrics.registry.counter(name("HBase", "applierTasksSucceededCounter"));
             mainProgressCounterDescription = "# of HBase tasks that have succeeded";
-            applier = new EventCountingApplier(new HBaseApplier(configuration, (Counter)mainProgressCounter, validationService), interestingEventsObservedCounter);
         } else if (configuration.getApplierType().toLowerCase().equals("kafka")) {
             mainProgressCounter = Metrics.registry.meter(name("Kafka", "producerToBroker"));
             mainProgressCounterDescription = "# of messages pushed to the Kafka broker";
-            applier = new EventCountingApplier(new KafkaApplier(configuration, (Meter)mainProgressCounter), interestingEventsObservedCounter);
-        } else {
-            throw new RuntimeException(String.format("Unknown applier: %s", configuration.getApplierType()));
         }
 
         if (mainProgressCounter != null)
@@ -291,9 +316,38 @@ public class Replicator {
         );
     }
 
+    private static Applier createApplier(
+            Configuration configuration,
+            ValidationService validationService,
+            MemoryBudget memoryBudget,
+            Counter interestingEventsObservedCounter) throws IOException {
+
+        if (configuration.getApplierType().equals("STDOUT")) {
+            return new EventCountingApplier(new StdoutJsonApplier(configuration), interestingEventsObservedCounter);
+        } else if (configuration.getApplierType().toLowerCase().equals("hbase")) {
+            Counter tasksSucceededCounter = Metrics.registry.counter(name("HBase", "applierTasksSucceededCounter"));
+            return new EventCountingApplier(
+                    new HBaseApplier(configuration, tasksSucceededCounter, validationService, memoryBudget),
+                    interestingEventsObservedCounter);
+        } else if (configuration.getApplierType().toLowerCase().equals("kafka")) {
+            Meter producerToBroker = Metrics.registry.meter(name("Kafka", "producerToBroker"));
+            return new EventCountingApplier(
+                    new KafkaApplier(configuration, producerToBroker, memoryBudget),
+                    interestingEventsObservedCounter);
+        } else {
+            throw new RuntimeException(String.format("Unknown applier: %s", configuration.getApplierType()));
+        }
+    }
+
     // start()
     public void start() throws Exception {
 
+        // Parallel replay runs on its own and exits when done
+        if (parallelReplay != null) {
+            boolean replayed = parallelReplay.run();
+            System.exit(replayed ? 0 : 1);
+        }
+
         // Shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
@@ -314,10 +368,10 @@ public class Replicator {
                 // Producer
                 try {
                     // let open replicator stop its own threads
-                    if (binlogEventProducer.getOpenReplicator().isRunning()) {
+                    if (binlogEventProducer.isRunning()) {
                         LOGGER.info("Stopping Producer...");
                         binlogEventProducer.stop(10000, TimeUnit.MILLISECONDS);
-                        if (!binlogEventProducer.getOpenReplicator().isRunning()) {
+                        if (!binlogEventProducer.isRunning()) {
                             LOGGER.info("Successfully stopped Producer thread");
                         } else {
                             throw new Exception("Failed to stop Producer thread");
@@ -2,6 +2,7 @@ package com.booking.replication.applier;
 
 import com.booking.replication.augmenter.AugmentedRowsEvent;
 import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
 import com.booking.replication.pipeline.PipelineOrchestrator;
 import com.google.code.or.binlog.BinlogEventV4;
 import com.google.code.or.binlog.impl.event.FormatDescriptionEvent;
@@ -22,6 +23,30 @@ public interface Applier {
 
     void applyCommitQueryEvent(QueryEvent event);
 
+    /**
+     * Apply the rows of a transaction and commit it if the transaction ends
+     * there, see {@link AugmentedTransaction#isCommitted()}.
+     *
+     * <p>The orchestrator hands transactions over as a whole through this
+     * method. The default passes the rows events and the commit event on one
+     * at a time, appliers that can write a transaction at once override it.</p>
+     *
+     * @param transaction   Rows of the transaction, grouped by table
+     * @param caller        Pipeline instance
+     */
+    default void applyTransaction(AugmentedTransaction transaction, PipelineOrchestrator caller)
+            throws ApplierException, IOException {
+        for (AugmentedRowsEvent augmentedRowsEvent : transaction.getRowsEvents()) {
+            applyAugmentedRowsEvent(augmentedRowsEvent, caller);
+        }
+        BinlogEventV4 commitEvent = transaction.getCommitEvent();
+        if (commitEvent instanceof XidEvent) {
+            applyXidEvent((XidEvent) commitEvent);
+        } else if (commitEvent instanceof QueryEvent) {
+            applyCommitQueryEvent((QueryEvent) commitEvent);
+        }
+    }
+
     void applyXidEvent(XidEvent event);
 
     void applyRotateEvent(RotateEvent event) throws ApplierException, IOException;
@@ -38,4 +63,10 @@ public interface Applier {
 
     void waitUntilAllRowsAreCommitted(BinlogEventV4 event) throws IOException, ApplierException;
 
+    /**
+     * Stop the threads of the applier, once it is done applying events.
+     */
+    default void close() {
+    }
+
 }
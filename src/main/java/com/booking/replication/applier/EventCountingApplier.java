@@ -2,6 +2,7 @@ package com.booking.replication.applier;
 
 import com.booking.replication.augmenter.AugmentedRowsEvent;
 import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
 import com.booking.replication.pipeline.PipelineOrchestrator;
 import com.codahale.metrics.Counter;
 import com.google.code.or.binlog.BinlogEventV4;
@@ -45,6 +46,16 @@ public class EventCountingApplier implements Applier {
         counter.inc();
     }
 
+    /**
+     * Counts the rows events and the commit event of the transaction, as if
+     * they had been applied one at a time.
+     */
+    @Override
+    public void applyTransaction(AugmentedTransaction transaction, PipelineOrchestrator caller) throws ApplierException, IOException {
+        wrapped.applyTransaction(transaction, caller);
+        counter.inc(transaction.getRowsEvents().size() + (transaction.isCommitted() ? 1 : 0));
+    }
+
     @Override
     public void applyXidEvent(XidEvent event) {
         wrapped.applyXidEvent(event);
@@ -83,4 +94,9 @@ public class EventCountingApplier implements Applier {
     public void waitUntilAllRowsAreCommitted(BinlogEventV4 event) throws IOException, ApplierException {
         wrapped.waitUntilAllRowsAreCommitted(event);
     }
+
+    @Override
+    public void close() {
+        wrapped.close();
+    }
 }
@@ -3,11 +3,14 @@ package com.booking.replication.applier;
 import com.booking.replication.Constants;
 
 import com.booking.replication.applier.hbase.HBaseApplierWriter;
+import com.booking.replication.applier.hbase.HBaseTaskController;
 import com.booking.replication.applier.hbase.TaskBufferInconsistencyException;
 import com.booking.replication.augmenter.AugmentedRowsEvent;
 import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
 import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
 import com.booking.replication.pipeline.PipelineOrchestrator;
+import com.booking.replication.queues.MemoryBudget;
 import com.booking.replication.schema.HBaseSchemaManager;
 
 import com.booking.replication.schema.TableNameMapper;
@@ -25,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class abstracts the HBase store.
@@ -42,6 +46,7 @@ public class HBaseApplier implements Applier {
     // TODO: move configuration vars to Configuration
     private static final int POOL_SIZE = 30;
 
+    // initial limits of the task controller, fixed unless the tasks are adaptive
     private static final int UUID_BUFFER_SIZE = 1000; // <- max number of rows in one uuid buffer
 
     private static final int BUFFER_FLUSH_INTERVAL = 60000; // <- force buffer flush every 60 sec
@@ -54,26 +59,42 @@ public class HBaseApplier implements Applier {
 
     private final HBaseApplierWriter hbaseApplierWriter;
 
+    private final HBaseTaskController taskController;
+
     private long timeOfLastFlush = 0;
 
     private final com.booking.replication.Configuration configuration;
 
+    private final MemoryBudget memoryBudget;
+
     /**
      * HBaseApplier constructor.
      */
     public HBaseApplier(
         com.booking.replication.Configuration config,
         Counter mainProgressIndicator,
-        ValidationService validationService
+        ValidationService validationService,
+        MemoryBudget memoryBudget
     ) {
         configuration = config;
+        this.memoryBudget = memoryBudget;
+
+        taskController = new HBaseTaskController(
+                configuration.isHbaseAdaptiveTasks(),
+                configuration.getHbaseLatencyTargetMs(),
+                UUID_BUFFER_SIZE,
+                POOL_SIZE,
+                BUFFER_FLUSH_INTERVAL
+        );
 
         hbaseApplierWriter =
             new HBaseApplierWriter(
                     POOL_SIZE,
                     configuration,
                     mainProgressIndicator,
-                    validationService
+                    validationService,
+                    memoryBudget.account("hbaseTaskBuffer"),
+                    taskController
             );
 
         hbaseSchemaManager = new HBaseSchemaManager(
@@ -130,7 +151,7 @@ public class HBaseApplier implements Applier {
             final AugmentedRowsEvent augmentedRowsEvent,
             final PipelineOrchestrator pipeline) throws ApplierException, IOException {
 
-        String hbaseNamespace = getHBaseNamespace(pipeline);
+        String hbaseNamespace = getHBaseNamespace(augmentedRowsEvent);
         if (hbaseNamespace == null) {
             return;
         }
@@ -142,24 +163,64 @@ public class HBaseApplier implements Applier {
             throw new ApplierException(e);
         }
 
-        // flush on buffer size or time limit
+        flushIfNeeded();
+    }
+
+    /**
+     * Buffers the rows of the whole transaction at once, table by table, and
+     * marks it for commit if it ends there.
+     *
+     * @param transaction Rows of the transaction
+     * @param pipeline Pipeline instance
+     */
+    @Override
+    public void applyTransaction(
+            final AugmentedTransaction transaction,
+            final PipelineOrchestrator pipeline) throws ApplierException, IOException {
+
+        // rows of other databases are skipped, the commit is not
+        if (!transaction.isEmpty() && getHBaseNamespace(transaction.getTransactionDatabaseName()) != null) {
+            try {
+                hbaseApplierWriter.pushToCurrentTaskBuffer(transaction);
+            } catch (TaskBufferInconsistencyException e) {
+                throw new ApplierException(e);
+            }
+        }
+
+        if (transaction.isCommitted()) {
+            markCurrentTransactionForCommit();
+        }
+
+        flushIfNeeded();
+    }
+
+    private void flushIfNeeded() throws ApplierException, IOException {
+        // flush on buffer size, time limit or when the buffers hold the whole memory budget
         long currentTime = System.currentTimeMillis();
         long tdiff = currentTime - timeOfLastFlush;
 
-        boolean forceFlush = (tdiff > BUFFER_FLUSH_INTERVAL);
-        if ((hbaseApplierWriter.rowsBufferedInCurrentTask.get() >= UUID_BUFFER_SIZE) || forceFlush) {
+        boolean forceFlush = (tdiff > taskController.getFlushAgeMs()) || isMemoryBudgetExhaustedByCurrentTask();
+        if ((hbaseApplierWriter.rowsBufferedInCurrentTask.get() >= taskController.getTaskRows()) || forceFlush) {
             markAndSubmit();
         }
     }
 
-    private String getHBaseNamespace(PipelineOrchestrator pipeline) {
+    // The current task holds a fair share of an exhausted budget: submit it now, so
+    // that its memory is released once written. Smaller tasks are left to fill up,
+    // flushing them would not free much.
+    private boolean isMemoryBudgetExhaustedByCurrentTask() {
+        return memoryBudget.isExhausted()
+                && hbaseApplierWriter.getCurrentTaskBufferedBytes() >= memoryBudget.getBudgetBytes() / POOL_SIZE;
+    }
 
+    private String getHBaseNamespace(AugmentedRowsEvent augmentedRowsEvent) {
         // get database name from event
+        return getHBaseNamespace(augmentedRowsEvent.getTransactionDatabaseName());
+    }
+
+    private String getHBaseNamespace(String currentTransactionDB) {
+
         String mySqlDbName = configuration.getReplicantSchemaName();
-        String currentTransactionDB = pipeline.currentTransactionMetadata
-                .getFirstMapEventInTransaction()
-                .getDatabaseName()
-                .toString();
 
         String hbaseNamespace = null;
 
@@ -191,10 +252,10 @@ public class HBaseApplier implements Applier {
         timeOfLastFlush = System.currentTimeMillis();
     }
 
-    // mark current uuid buffer as READY_FOR_PICK_UP and create new uuid buffer
+    // mark current task buffer as READY_FOR_PICK_UP and create new task buffer
     private void markCurrentTaskAsReadyToGo() throws ApplierException {
         try {
-            hbaseApplierWriter.markCurrentTaskAsReadyAndCreateNewUuidBuffer();
+            hbaseApplierWriter.markCurrentTaskAsReadyAndCreateNewTaskBuffer();
         } catch (TaskBufferInconsistencyException te) {
             throw new ApplierException(te);
         }
@@ -262,13 +323,17 @@ public class HBaseApplier implements Applier {
                 wait = false;
             } else {
                 resubmitIfThereAreFailedTasks();
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                if (!hbaseApplierWriter.areAllTasksDone()) {
+                    hbaseApplierWriter.awaitTaskCompletion(1000, TimeUnit.MILLISECONDS);
                 }
             }
         }
+        hbaseApplierWriter.flushMutators();
+    }
+
+    @Override
+    public void close() {
+        hbaseApplierWriter.close();
     }
 
     private void markCurrentTransactionForCommit() {
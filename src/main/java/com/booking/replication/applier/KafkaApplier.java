@@ -9,7 +9,9 @@ import com.booking.replication.applier.kafka.RowListMessage;
 import com.booking.replication.augmenter.AugmentedRow;
 import com.booking.replication.augmenter.AugmentedRowsEvent;
 import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.RowPosition;
 import com.booking.replication.pipeline.PipelineOrchestrator;
+import com.booking.replication.queues.MemoryBudget;
 
 import com.google.code.or.binlog.BinlogEventV4;
 import com.google.code.or.binlog.impl.event.FormatDescriptionEvent;
@@ -38,8 +40,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -54,36 +54,34 @@ public class KafkaApplier implements Applier {
     private static boolean DRY_RUN;
 
     private static long totalRowsCounter = 0;
-    private static long totalOutliersCounter = 0;
 
     private KafkaProducer<String, String> producer;
     private KafkaConsumer<String, String> consumer;
 
-    private static List<String> fixedListOfIncludedTables;
-    private static List<String> excludeTablePatterns;
-
-    private static final HashMap<String,Boolean> wantedTables = new HashMap<String,Boolean>();
-
     // We need to make sure that all rows from one table end up on the same
     // partition. That is why we have a separate buffer for each partition, so
     // during buffering the right buffer is chosen.
     private HashMap<Integer,RowListMessage> partitionCurrentMessageBuffer = new HashMap<>();
 
+    // Estimated size of the rows in each partition buffer, charged to messageBufferMemory
+    // and released when the message is sent.
+    private HashMap<Integer, Long> partitionBufferedBytes = new HashMap<>();
+    private final MemoryBudget.Account messageBufferMemory;
+
     private String topicName;
     private AtomicBoolean exceptionFlag = new AtomicBoolean(false);
 
     private final Meter meterForMessagesPushedToKafka;
     private static final Counter exception_counter = Metrics.registry.counter(name("Kafka", "exceptionCounter"));
-    private static final Counter outlier_counter = Metrics.registry.counter(name("Kafka", "outliersCounter"));
     private static final Timer closingTimer = Metrics.registry.timer(name("Kafka", "producerCloseTimer"));
 
-    private static final HashMap<Integer, String> partitionLastBufferedRow = new HashMap<>();
+    private static final HashMap<Integer, RowPosition> partitionLastBufferedRow = new HashMap<>();
     private static final HashMap<Integer, String> partitionLastCommittedMessage = new HashMap<>();
 
     private int numberOfPartition;
     private String brokerAddress;
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaApplier.class);
-    private String rowLastPositionID = "";
+    private RowPosition rowLastPosition = null;
     private String messageLastPositionID = "";
 
     private static Properties getProducerProperties(String broker) {
@@ -116,11 +114,12 @@ public class KafkaApplier implements Applier {
         return prop;
     }
 
-    public KafkaApplier(Configuration configuration, Meter meterForMessagesPushedToKafka) throws IOException {
+    public KafkaApplier(Configuration configuration, Meter meterForMessagesPushedToKafka, MemoryBudget memoryBudget)
+            throws IOException {
         DRY_RUN = configuration.isDryRunMode();
 
-        fixedListOfIncludedTables = configuration.getKafkaTableList();
-        excludeTablePatterns = configuration.getKafkaExcludeTableList();
+        messageBufferMemory = memoryBudget.account("kafkaMessageBuffers");
+
         topicName = configuration.getKafkaTopicName();
         brokerAddress = configuration.getKafkaBrokerAddress();
         this.meterForMessagesPushedToKafka = meterForMessagesPushedToKafka;
@@ -192,10 +191,10 @@ public class KafkaApplier implements Applier {
                         // in order to avoid duplicate rows being pushed to kafka
                         String lastMessageJSON = lastMessage.value();
                         RowListMessage lastMessageDecoded = RowListMessage.fromJSON(lastMessageJSON);
-                        String lastRowBinlogPositionID = lastMessageDecoded.getLastRowBinlogPositionID();
+                        RowPosition lastRowPosition = RowPosition.fromString(lastMessageDecoded.getLastRowBinlogPositionID());
                         if (!partitionLastBufferedRow.containsKey(pi.partition())
-                                || partitionLastBufferedRow.get(pi.partition()).compareTo(lastRowBinlogPositionID) < 0) {
-                            partitionLastBufferedRow.put(pi.partition(), lastRowBinlogPositionID);
+                                || partitionLastBufferedRow.get(pi.partition()).compareTo(lastRowPosition) < 0) {
+                            partitionLastBufferedRow.put(pi.partition(), lastRowPosition);
                         }
                     }
                     retries++;
@@ -208,50 +207,11 @@ public class KafkaApplier implements Applier {
         }
     }
 
-    private boolean tableIsWanted(String tableName) {
-
-        if (wantedTables.containsKey(tableName)) {
-            return wantedTables.get(tableName);
-        } else {
-            // First check if the exclude pattern is specified. If
-            // there is no exclude pattern, then check for the fixed
-            // list of tables. If the exclude pattern is present it
-            // overrides the fixed list of tables.
-            if (excludeTablePatterns != null) {
-                for (String excludePattern : excludeTablePatterns) {
-                    Pattern compiledExcludePattern = Pattern.compile(excludePattern, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = compiledExcludePattern.matcher(tableName);
-                    if (matcher.find()) {
-                        wantedTables.put(tableName,false);
-                        return false;
-                    }
-                }
-                // still here, meaning table should not be excluded
-                wantedTables.put(tableName,true);
-                return true;
-            } else {
-                // using fixed list of tables since the exclude pattern is
-                // not specified
-                for (String includedTable : fixedListOfIncludedTables) {
-                    Pattern compiledIncludePattern = Pattern.compile(includedTable, Pattern.CASE_INSENSITIVE);
-                    Matcher matcher = compiledIncludePattern.matcher(tableName);
-                    if (matcher.find()) {
-                        wantedTables.put(tableName,true);
-                        return true;
-                    }
-                }
-                // table is not in the included list, so should not be replicated
-                wantedTables.put(tableName,false);
-                return false;
-            }
-        }
-    }
-
     @Override
     public void applyAugmentedRowsEvent(AugmentedRowsEvent augmentedRowsEvent, PipelineOrchestrator caller) {
 
         int partitionNum;
-        String rowBinlogPositionID;
+        RowPosition rowPosition;
 
         for (AugmentedRow row : augmentedRowsEvent.getSingleRowEvents()) {
 
@@ -263,80 +223,101 @@ public class KafkaApplier implements Applier {
                 throw new RuntimeException("tableName does not exist");
             }
 
-            String table = row.getTableName();
+            // rows of tables that are not replicated never get here, see TableFilter
+            totalRowsCounter++;
 
-            if (tableIsWanted(table)) {
+            // Row binlog position
+            rowPosition = row.getRowPosition();
+            if (rowLastPosition != null && rowPosition.compareTo(rowLastPosition) <= 0) {
+                throw new RuntimeException(
+                        String.format("Something wrong with the row position. This should never happen. Current position: %s. Previous: %s", rowPosition, rowLastPosition));
+            }
+            rowLastPosition = rowPosition;
 
-                totalRowsCounter++;
+            if (!DRY_RUN) {
+                partitionNum = (row.getTableName().hashCode() % numberOfPartition + numberOfPartition) % numberOfPartition;
+            } else {
+                partitionNum = 0;
+            }
+            // Push to Kafka broker one of the following is true:
+            //     1. there are no rows on current partition
+            //     2. If current message unique ID is greater than the last committed message unique ID
+            // TODO: move to isAfterLastRow() method
+            if (!partitionLastBufferedRow.containsKey(partitionNum)
+                    || rowPosition.compareTo(partitionLastBufferedRow.get(partitionNum)) > 0) {
+
+                // if buffer is not initialized for partition, do init
+                if (partitionCurrentMessageBuffer.get(partitionNum) == null) {
+                    List<AugmentedRow> rowsBucket = new ArrayList();
+                    rowsBucket.add(row);
+                    partitionCurrentMessageBuffer.put(partitionNum, new RowListMessage(MESSAGE_BATCH_SIZE, rowsBucket));
+                } else {
+                    // if buffer is full do:
+                    //      (close) -> (send message) -> (create new buffer - sets current row as the first in the buffer)
+                    // else:
+                    //      (add current row to the buffer)
+                    if (partitionCurrentMessageBuffer.get(partitionNum).isFull()) {
 
-                // Row binlog position id
-                rowBinlogPositionID = row.getRowBinlogPositionID();
-                if (rowBinlogPositionID.compareTo(rowLastPositionID) <= 0) {
-                    throw new RuntimeException(
-                            String.format("Something wrong with the row position. This should never happen. Current position: %s. Previous: %s", rowBinlogPositionID, rowLastPositionID));
-                }
-                rowLastPositionID = rowBinlogPositionID;
+                        // 1. close buffer
+                        partitionCurrentMessageBuffer.get(partitionNum).closeMessageBuffer();
 
-                if (!DRY_RUN) {
-                    partitionNum = (row.getTableName().hashCode() % numberOfPartition + numberOfPartition) % numberOfPartition;
-                } else {
-                    partitionNum = 0;
-                }
-                // Push to Kafka broker one of the following is true:
-                //     1. there are no rows on current partition
-                //     2. If current message unique ID is greater than the last committed message unique ID
-                // TODO: move to isAfterLastRow() method
-                if (!partitionLastBufferedRow.containsKey(partitionNum)
-                        || rowBinlogPositionID.compareTo(partitionLastBufferedRow.get(partitionNum)) > 0) {
-
-                    // if buffer is not initialized for partition, do init
-                    if (partitionCurrentMessageBuffer.get(partitionNum) == null) {
+                        // 2. send message
+                        sendMessage(partitionNum);
+
+                        // 3. open new buffer with current row as buffer-start-row
                         List<AugmentedRow> rowsBucket = new ArrayList();
                         rowsBucket.add(row);
                         partitionCurrentMessageBuffer.put(partitionNum, new RowListMessage(MESSAGE_BATCH_SIZE, rowsBucket));
+
                     } else {
-                        // if buffer is full do:
-                        //      (close) -> (send message) -> (create new buffer - sets current row as the first in the buffer)
-                        // else:
-                        //      (add current row to the buffer)
-                        if (partitionCurrentMessageBuffer.get(partitionNum).isFull()) {
-
-                            // 1. close buffer
-                            partitionCurrentMessageBuffer.get(partitionNum).closeMessageBuffer();
-
-                            // 2. send message
-                            sendMessage(partitionNum);
-
-                            // 3. open new buffer with current row as buffer-start-row
-                            List<AugmentedRow> rowsBucket = new ArrayList();
-                            rowsBucket.add(row);
-                            partitionCurrentMessageBuffer.put(partitionNum, new RowListMessage(MESSAGE_BATCH_SIZE, rowsBucket));
-
-                        } else {
-                            // buffer row to current buffer
-                            try {
-                                partitionCurrentMessageBuffer.get(partitionNum).addRowToMessage(row);
-                            } catch (KafkaMessageBufferException ke) {
-                                LOGGER.error("Trying to write to a closed buffer. This should never happen. Exiting...");
-                                System.exit(-1);
-                            }
+                        // buffer row to current buffer
+                        try {
+                            partitionCurrentMessageBuffer.get(partitionNum).addRowToMessage(row);
+                        } catch (KafkaMessageBufferException ke) {
+                            LOGGER.error("Trying to write to a closed buffer. This should never happen. Exiting...");
+                            System.exit(-1);
                         }
                     }
-                    meterForMessagesPushedToKafka.mark();
                 }
-            } else {
-                totalOutliersCounter ++;
-                outlier_counter.inc();
+
+                long rowSize = row.estimateSize();
+                messageBufferMemory.charge(rowSize);
+                Long bufferedBytes = partitionBufferedBytes.get(partitionNum);
+                bufferedBytes = bufferedBytes == null ? rowSize : bufferedBytes + rowSize;
+                partitionBufferedBytes.put(partitionNum, bufferedBytes);
+
+                // when the memory budget is used up, send what we have instead of waiting
+                // for the message to fill up
+                if (isMemoryBudgetExhaustedByPartition(bufferedBytes)) {
+                    partitionCurrentMessageBuffer.get(partitionNum).closeMessageBuffer();
+                    sendMessage(partitionNum);
+                    partitionCurrentMessageBuffer.remove(partitionNum);
+                }
+                meterForMessagesPushedToKafka.mark();
             }
         } // next row
     }
 
+    // The partition buffer holds a fair share of an exhausted budget: send it now, so
+    // that its memory is released. Smaller buffers are left to fill up, sending
+    // them would not free much and would cut every message down to one row.
+    private boolean isMemoryBudgetExhaustedByPartition(long bufferedBytes) {
+        MemoryBudget memoryBudget = messageBufferMemory.getBudget();
+        return memoryBudget.isExhausted()
+                && bufferedBytes >= memoryBudget.getBudgetBytes() / Math.max(1, numberOfPartition);
+    }
+
     private void sendMessage(int partitionNum) {
 
         RowListMessage rowListMessage = partitionCurrentMessageBuffer.get(partitionNum);
 
         String jsonMessage = rowListMessage.toJSON();
 
+        Long bufferedBytes = partitionBufferedBytes.remove(partitionNum);
+        if (bufferedBytes != null) {
+            messageBufferMemory.release(bufferedBytes);
+        }
+
         if (!DRY_RUN) {
             ProducerRecord<String, String> message;
 
@@ -7,10 +7,16 @@ import com.booking.replication.checkpoints.SafeCheckPoint;
 import java.util.HashMap;
 import java.util.concurrent.Future;
 
-class ApplierTask extends HashMap<String, TransactionProxy> {
+class ApplierTask extends HashMap<Long, TransactionProxy> {
     private Future<HBaseTaskResult> taskFuture;
     private TaskStatus taskStatus;
 
+    // estimated size of the buffered rows, charged to the task buffer memory account
+    private long bufferedBytes = 0;
+
+    // when the task was last submitted
+    private long submitTime = 0;
+
     // TODO: rename LastCommittedPositionCheckpoint since its no longer just
     //       for committed positions
     private LastCommittedPositionCheckpoint pseudoGTIDCheckPoint; // <- latest one withing the task event range
@@ -41,6 +47,22 @@ class ApplierTask extends HashMap<String, TransactionProxy> {
         this.taskFuture = taskFuture;
     }
 
+    long getSubmitTime() {
+        return submitTime;
+    }
+
+    void setSubmitTime(long submitTime) {
+        this.submitTime = submitTime;
+    }
+
+    long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    void addBufferedBytes(long bytes) {
+        bufferedBytes += bytes;
+    }
+
     public LastCommittedPositionCheckpoint getPseudoGTIDCheckPoint() {
         return pseudoGTIDCheckPoint;
     }
@@ -0,0 +1,117 @@
+package com.booking.replication.applier.hbase;
+
+/**
+ * Tasks of an applier writer by sequence number.
+ *
+ * <p>Tasks get increasing sequence numbers in the order they are opened, which
+ * is the binlog order, and are removed from the head in the same order once
+ * they and all tasks before them have been committed. A task is looked up by
+ * its sequence number directly in a fixed array, so there are no keys to
+ * create or hash and nothing to scan.</p>
+ *
+ * <p>Not thread safe: tasks are added, removed and looked up by the thread that
+ * applies the events. The size can be read from any thread.</p>
+ */
+class ApplierTaskRing {
+
+    private final ApplierTask[] slots;
+    private final int           mask;
+    private final int           capacity;
+
+    // sequence number of the oldest task in the ring
+    private volatile long head = 0L;
+
+    // sequence number of the next task
+    private volatile long tail = 0L;
+
+    /**
+     * Ring holding at most capacity tasks.
+     *
+     * <p>The backing array is rounded up to the next power of two.</p>
+     *
+     * @param capacity Maximum number of tasks
+     */
+    ApplierTaskRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Task ring capacity must be positive, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots    = new ApplierTask[size];
+        this.mask     = size - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a task after the newest one.
+     *
+     * @param task  Task to add
+     * @return      Sequence number of the task
+     * @throws IllegalStateException if the ring is full
+     */
+    long add(ApplierTask task) {
+        long sequence = tail;
+        if (sequence - head >= capacity) {
+            throw new IllegalStateException("Task ring is full with "
+                    + capacity
+                    + " tasks, can't add task "
+                    + sequence);
+        }
+        slots[(int) sequence & mask] = task;
+        tail = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * Task with the given sequence number, null if it has been removed or
+     * does not exist yet.
+     */
+    ApplierTask get(long sequence) {
+        if (sequence < head || sequence >= tail) {
+            return null;
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Remove the oldest task.
+     *
+     * @return The removed task, null if the ring is empty
+     */
+    ApplierTask removeHead() {
+        long sequence = head;
+        if (sequence == tail) {
+            return null;
+        }
+        int slot = (int) sequence & mask;
+        ApplierTask task = slots[slot];
+        slots[slot] = null;
+        head = sequence + 1;
+        return task;
+    }
+
+    /**
+     * Sequence number of the oldest task, equal to {@link #getTail()} if
+     * the ring is empty.
+     */
+    long getHead() {
+        return head;
+    }
+
+    /**
+     * Sequence number the next task will get.
+     */
+    long getTail() {
+        return tail;
+    }
+
+    int size() {
+        return (int) (tail - head);
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+}
@@ -2,6 +2,7 @@ package com.booking.replication.applier.hbase;
 
 import com.booking.replication.augmenter.AugmentedRow;
 import com.booking.replication.schema.TableNameMapper;
+import com.booking.replication.schema.column.types.BlobEncoding;
 
 import com.google.common.base.Joiner;
 
@@ -84,15 +85,28 @@ public class HBaseApplierMutationGenerator {
     }
 
     private static final byte[] CF                           = Bytes.toBytes("d");
+    private static final byte[] NULL_VALUE                   = Bytes.toBytes("NULL");
     private static final String DIGEST_ALGORITHM             = "MD5";
 
     private final com.booking.replication.Configuration configuration;
 
+    // how binary column values are written, by table
+    private final BlobEncoding              defaultBlobEncoding;
+    private final Map<String, BlobEncoding> tableBlobEncodings = new HashMap<>();
+
     private static final Logger LOGGER = LoggerFactory.getLogger(HBaseApplierMutationGenerator.class);
 
     // Constructor
     public HBaseApplierMutationGenerator(com.booking.replication.Configuration configuration) {
         this.configuration = configuration;
+        this.defaultBlobEncoding = BlobEncoding.fromName(configuration.getHbaseBlobEncoding());
+        for (Map.Entry<String, String> table : configuration.getHbaseTableBlobEncodings().entrySet()) {
+            tableBlobEncodings.put(table.getKey(), BlobEncoding.fromName(table.getValue()));
+        }
+    }
+
+    private BlobEncoding getBlobEncoding(String tableName) {
+        return tableBlobEncodings.getOrDefault(tableName, defaultBlobEncoding);
     }
 
     /**
@@ -126,6 +140,8 @@ public class HBaseApplierMutationGenerator {
 
         Put put = new Put(Bytes.toBytes(hbaseRowID));
 
+        BlobEncoding blobEncoding = getBlobEncoding(row.getTableName());
+
         switch (row.getEventType()) {
             case "DELETE": {
 
@@ -147,32 +163,20 @@ public class HBaseApplierMutationGenerator {
                 // Only write values that have changed
 
                 Long columnTimestamp = row.getEventV4Header().getTimestamp();
-                String columnValue;
-
-                for (String columnName : row.getEventColumns().keySet()) {
-
-                    String valueBefore = row.getEventColumns().get(columnName).get("value_before");
-                    String valueAfter = row.getEventColumns().get(columnName).get("value_after");
-
-                    if ((valueAfter == null) && (valueBefore == null)) {
-                        // no change, skip;
-                    } else if (
-                            ((valueBefore == null) && (valueAfter != null))
-                                    ||
-                                    ((valueBefore != null) && (valueAfter == null))
-                                    ||
-                                    (!valueAfter.equals(valueBefore))) {
-
-                        columnValue = valueAfter;
-                        put.addColumn(
-                                CF,
-                                Bytes.toBytes(columnName),
-                                columnTimestamp,
-                                Bytes.toBytes(columnValue)
-                        );
-                    } else {
-                        // no change, skip
+
+                for (int columnIndex = 0; columnIndex < row.getColumnCount(); columnIndex++) {
+
+                    String columnName = row.getColumnName(columnIndex);
+                    if (columnName == null || !row.isColumnChanged(columnIndex)) {
+                        continue;
                     }
+
+                    put.addColumn(
+                            CF,
+                            Bytes.toBytes(columnName),
+                            columnTimestamp,
+                            row.getValueBytes(columnIndex, blobEncoding)
+                    );
                 }
 
                 put.addColumn(
@@ -186,20 +190,24 @@ public class HBaseApplierMutationGenerator {
             case "INSERT": {
 
                 Long columnTimestamp = row.getEventV4Header().getTimestamp();
-                String columnValue;
 
-                for (String columnName : row.getEventColumns().keySet()) {
+                for (int columnIndex = 0; columnIndex < row.getColumnCount(); columnIndex++) {
+
+                    String columnName = row.getColumnName(columnIndex);
+                    if (columnName == null || !row.isColumnPresent(columnIndex)) {
+                        continue;
+                    }
 
-                    columnValue = row.getEventColumns().get(columnName).get("value");
+                    byte[] columnValue = row.getValueBytes(columnIndex, blobEncoding);
                     if (columnValue == null) {
-                        columnValue = "NULL";
+                        columnValue = NULL_VALUE;
                     }
 
                     put.addColumn(
                             CF,
                             Bytes.toBytes(columnName),
                             columnTimestamp,
-                            Bytes.toBytes(columnValue)
+                            columnValue
                     );
                 }
 
@@ -239,6 +247,8 @@ public class HBaseApplierMutationGenerator {
 
         Put put = new Put(Bytes.toBytes(hbaseRowID));
 
+        BlobEncoding blobEncoding = getBlobEncoding(row.getTableName());
+
         switch (row.getEventType()) {
             case "DELETE": {
 
@@ -257,16 +267,23 @@ public class HBaseApplierMutationGenerator {
             }
             case "UPDATE": {
 
-                // for delta tables write the latest version of the entire row
+                // for delta tables write the latest version of the entire row,
+                // as much of it as the row image has
 
                 Long columnTimestamp = row.getEventV4Header().getTimestamp();
 
-                for (String columnName : row.getEventColumns().keySet()) {
+                for (int columnIndex = 0; columnIndex < row.getColumnCount(); columnIndex++) {
+
+                    String columnName = row.getColumnName(columnIndex);
+                    if (columnName == null || !row.isColumnPresent(columnIndex)) {
+                        continue;
+                    }
+
                     put.addColumn(
                             CF,
                             Bytes.toBytes(columnName),
                             columnTimestamp,
-                            Bytes.toBytes(row.getEventColumns().get(columnName).get("value_after"))
+                            row.getValueBytes(columnIndex, blobEncoding)
                     );
                 }
 
@@ -281,20 +298,24 @@ public class HBaseApplierMutationGenerator {
             case "INSERT": {
 
                 Long columnTimestamp = row.getEventV4Header().getTimestamp();
-                String columnValue;
 
-                for (String columnName : row.getEventColumns().keySet()) {
+                for (int columnIndex = 0; columnIndex < row.getColumnCount(); columnIndex++) {
+
+                    String columnName = row.getColumnName(columnIndex);
+                    if (columnName == null || !row.isColumnPresent(columnIndex)) {
+                        continue;
+                    }
 
-                    columnValue = row.getEventColumns().get(columnName).get("value");
+                    byte[] columnValue = row.getValueBytes(columnIndex, blobEncoding);
                     if (columnValue == null) {
-                        columnValue = "NULL";
+                        columnValue = NULL_VALUE;
                     }
 
                     put.addColumn(
                             CF,
                             Bytes.toBytes(columnName),
                             columnTimestamp,
-                            Bytes.toBytes(columnValue)
+                            columnValue
                     );
                 }
 
@@ -321,15 +342,13 @@ public class HBaseApplierMutationGenerator {
 
         // TODO: generate URI in a better way
 
-        String eventType = row.getEventType();
-
         String table = row.getTableName();
 
         String keys  = row.getPrimaryKeyColumns().stream()
                 .map( column -> {
                     try {
 
-                        String value = row.getEventColumns().get(column).get( "UPDATE".equals(eventType) ? "value_after" : "value" );
+                        String value = row.getKeyValue(column);
 
                         return URLEncoder.encode(column,"UTF-8") + "=" + URLEncoder.encode(value,"UTF-8");
 
@@ -354,15 +373,12 @@ public class HBaseApplierMutationGenerator {
 
         for (String pkColumnName : pkColumnNames) {
 
-            Map<String, String> pkCell = row.getEventColumns().get(pkColumnName);
-
             switch (row.getEventType()) {
                 case "INSERT":
                 case "DELETE":
-                    pkColumnValues.add(pkCell.get("value"));
-                    break;
                 case "UPDATE":
-                    pkColumnValues.add(pkCell.get("value_after"));
+                    // value after the update for UPDATE, before if the update didn't set it
+                    pkColumnValues.add(row.getKeyValue(pkColumnName));
                     break;
                 default:
                     LOGGER.error("Wrong event type. Expected RowType event.");
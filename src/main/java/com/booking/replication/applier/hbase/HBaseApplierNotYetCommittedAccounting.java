@@ -2,14 +2,11 @@ package com.booking.replication.applier.hbase;
 
 import com.booking.replication.applier.TaskStatus;
 import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+import com.booking.replication.queues.MemoryBudget;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * Created by bosko on 9/15/16.
  */
@@ -17,170 +14,64 @@ public class HBaseApplierNotYetCommittedAccounting {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HBaseApplierNotYetCommittedAccounting.class);
 
-    /**
-     * Non-Committed task UUIDs in the order as they are received from the binlog.
-     * Since tasks run in parallel, and the binlog is ordered structure, we have
-     * a problem of knowing when a specific position in the binlog has been succesfully
-     * committed into hbase since we need to know that all tasks that correspond to
-     * earlier positions have also been committed. If that is true, than we can mark
-     * a safe checkpoint.
-     */
-    private List<String> notYetCommittedTaskUUIDs = new ArrayList<>();
-
-    public synchronized void addTaskUUID(String submittedTaskUUID) {
-        notYetCommittedTaskUUIDs.add(submittedTaskUUID);
-    }
+    // rows of removed tasks are no longer held, their memory is released here
+    private final MemoryBudget.Account taskBufferMemory;
 
-    public synchronized boolean containsTaskUUID(String taskUUID) {
-        for (String notYetCommittedTaskUUID : notYetCommittedTaskUUIDs) {
-            if (notYetCommittedTaskUUID.equals(taskUUID)) {
-                return true;
-            }
-        }
-        return false;
+    public HBaseApplierNotYetCommittedAccounting(MemoryBudget.Account taskBufferMemory) {
+        this.taskBufferMemory = taskBufferMemory;
     }
 
+    /**
+     * Account for a task that has been committed to HBase.
+     *
+     * <p>Since tasks run in parallel, and the binlog is ordered structure, a
+     * position in the binlog has been successfully committed into HBase only
+     * when all tasks that correspond to earlier positions have also been
+     * committed. The tasks are in the ring in binlog order, so the committed
+     * tasks at its head are removed and the latest pseudo GTID checkpoint
+     * among them is the new safe checkpoint. Each task is removed once, so
+     * the accounting is O(1) per task.</p>
+     *
+     * @param taskTransactionBuffer Tasks of the writer
+     * @param committedTaskSequence Sequence number of the committed task
+     * @return                      The new safe checkpoint, null if there is none
+     */
     public synchronized LastCommittedPositionCheckpoint doAccountingOnTaskSuccess(
-            ConcurrentHashMap<String, ApplierTask> taskTransactionBuffer,
-            String committedTaskID) throws Exception {
+            ApplierTaskRing taskTransactionBuffer,
+            long committedTaskSequence) throws TaskAccountingException {
 
-        LOGGER.debug("Accounting on success of " + committedTaskID);
+        LOGGER.debug("Accounting on success of " + committedTaskSequence);
+
+        ApplierTask committedTask = taskTransactionBuffer.get(committedTaskSequence);
+        if (committedTask == null) {
+            throw new TaskAccountingException("Task "
+                    + committedTaskSequence
+                    + " missing from taskTransactionBuffer, but it has been committed.");
+        }
 
         // update status in the taskTransactionBuffer
-        taskTransactionBuffer.get(committedTaskID).setTaskStatus(TaskStatus.WRITE_SUCCEEDED);
+        committedTask.setTaskStatus(TaskStatus.WRITE_SUCCEEDED);
 
         LastCommittedPositionCheckpoint committedHeadPseudoGTIDCheckPoint = null;
 
-        if (allLowerPositionTasksHaveBeenCommitted(taskTransactionBuffer, committedTaskID)) {
-
-            int taskIndex = findTaskIndexInNotYetCommittedList(taskTransactionBuffer, committedTaskID);
-
-            List<String> committedHead = taskHead(taskIndex);
-
-            committedHeadPseudoGTIDCheckPoint =
-                    scanCommittedTasksForPseudoGTIDCheckpoint(taskTransactionBuffer, committedHead);
-
-            // remove committed tasks from main buffer taskTransactionBuffer
-            //   note: the buffer is structured by task-transaction, so
-            //         if there is an open transaction UUID in this task, it has
-            //         already been copied to the new/next task
-            for (String taskToBeRemovedUUID : committedHead) {
-                LOGGER.debug("Removing committedHead from taskTransactionBuffer");
-                taskTransactionBuffer.remove(taskToBeRemovedUUID);
-                LOGGER.debug("Removed task " + taskToBeRemovedUUID + " from taskTransactionBuffer.");
-            }
-
-            // remove taskHead
-            List<String> committedTail = taskTail(taskIndex);
-            notYetCommittedTaskUUIDs = committedTail;
-
-            if (committedHeadPseudoGTIDCheckPoint != null) {
-                LOGGER.debug("New check point found in committed tasks" + committedHeadPseudoGTIDCheckPoint.toJson());
+        // remove committed head from the buffer
+        //   note: the buffer is structured by task-transaction, so
+        //         if there is an open transaction in this task, it has
+        //         already been copied to the new/next task
+        while (!taskTransactionBuffer.isEmpty()
+                && taskTransactionBuffer.get(taskTransactionBuffer.getHead()).getTaskStatus() == TaskStatus.WRITE_SUCCEEDED) {
+            long removedTaskSequence = taskTransactionBuffer.getHead();
+            ApplierTask removedTask = taskTransactionBuffer.removeHead();
+            if (removedTask.getPseudoGTIDCheckPoint() != null) {
+                committedHeadPseudoGTIDCheckPoint = removedTask.getPseudoGTIDCheckPoint();
             }
+            taskBufferMemory.release(removedTask.getBufferedBytes());
+            LOGGER.debug("Removed task " + removedTaskSequence + " from taskTransactionBuffer.");
         }
-        return committedHeadPseudoGTIDCheckPoint;
-    }
 
-    private boolean allLowerPositionTasksHaveBeenCommitted(
-            ConcurrentHashMap<String, ApplierTask> taskTransactionBuffer,
-            String committedTaskUUID) {
-        boolean result = false;
-        LOGGER.debug("Checking taskHead. Total items in notYetCommittedTaskUUIDs " + notYetCommittedTaskUUIDs.size());
-        for (String taskUUID : notYetCommittedTaskUUIDs) {
-            LOGGER.debug(committedTaskUUID + " [is before or equal] " + taskUUID);
-            if (taskUUID.equals(committedTaskUUID)) {
-                if (taskTransactionBuffer.get(taskUUID).getTaskStatus() != TaskStatus.WRITE_SUCCEEDED) {
-                    LOGGER.error("Unexpected task status for task " + taskUUID);
-                    break;
-                } else {
-                    result = true;
-                    break;
-                }
-            } else {
-                if (taskTransactionBuffer.get(taskUUID).getTaskStatus() != TaskStatus.WRITE_SUCCEEDED) {
-                    break;
-                }
-            }
+        if (committedHeadPseudoGTIDCheckPoint != null) {
+            LOGGER.debug("New check point found in committed tasks" + committedHeadPseudoGTIDCheckPoint.toJson());
         }
-        return result;
-    }
-
-    private int findTaskIndexInNotYetCommittedList(
-            ConcurrentHashMap<String, ApplierTask> taskTransactionBuffer,
-            String committedTaskUUID) {
-        int taskIndexInNotYetCommittedList = 0;
-        for (String taskUUID : notYetCommittedTaskUUIDs) {
-            if (taskUUID.equals(committedTaskUUID)) {
-                LOGGER.debug("Committed task "
-                        + taskUUID
-                        + "with index "
-                        + taskIndexInNotYetCommittedList
-                        + " will be removed from the notYetCommittedTaskUUIDs list");
-                break;
-            } else {
-                taskIndexInNotYetCommittedList++;
-                LOGGER.debug("Committed task "
-                        + taskUUID
-                        + "with index "
-                        + taskIndexInNotYetCommittedList
-                        + " will be removed from the notYetCommittedTaskUUIDs list");
-            }
-        }
-        LOGGER.debug("taskIndex in notCommittedList: { " +  committedTaskUUID + " => " + taskIndexInNotYetCommittedList);
-        return taskIndexInNotYetCommittedList;
-    }
-
-
-    private List<String> taskHead(int taskIndex) {
-        return new ArrayList<>(notYetCommittedTaskUUIDs.subList(0, taskIndex + 1));
-    }
-
-    private List taskTail(int taskIndex) {
-        return new ArrayList<>(notYetCommittedTaskUUIDs.subList(taskIndex + 1, notYetCommittedTaskUUIDs.size()));
-    }
-
-    private LastCommittedPositionCheckpoint scanCommittedTasksForPseudoGTIDCheckpoint(
-            ConcurrentHashMap<String, ApplierTask> taskTransactionBuffer,
-            List<String> committedHead) throws Exception {
-
-        LastCommittedPositionCheckpoint latestApplierCommittedPseudoGTIDCheckPoint = null;
-
-        for (String taskUUID : committedHead) {
-
-            if (taskUUID.equals(committedHead.get(committedHead.size() - 1))) {
-
-                // reached the end
-                if (taskTransactionBuffer.get(taskUUID).getPseudoGTIDCheckPoint() != null) {
-
-                    latestApplierCommittedPseudoGTIDCheckPoint = taskTransactionBuffer.get(taskUUID).getPseudoGTIDCheckPoint();
-
-                    break;
-
-                } else {
-
-                    // no pGTID in this task
-
-                }
-            } else {
-                if (taskTransactionBuffer.get(taskUUID) != null) {
-                    if (taskTransactionBuffer.get(taskUUID).getTaskStatus() != TaskStatus.WRITE_SUCCEEDED) {
-
-                        // the reason for throwing exception here is that this method should be called only if
-                        // all previous tasks have been confirmed as committed
-                        throw new TaskAccountingException("committedHead contains a task which is not WRITE_SUCCEEDED:"
-                                + taskUUID);
-                    } else {
-                        if (taskTransactionBuffer.get(taskUUID).getPseudoGTIDCheckPoint() != null) {
-                            latestApplierCommittedPseudoGTIDCheckPoint = taskTransactionBuffer.get(taskUUID).getPseudoGTIDCheckPoint();
-                        }
-                    }
-                } else {
-                    throw new TaskAccountingException("Task "
-                        + taskUUID
-                        + " missing from taskTransactionBuffer, but it exists in notYetCommittedTaskUUIDs.");
-                }
-            }
-        }
-        return latestApplierCommittedPseudoGTIDCheckPoint;
+        return committedHeadPseudoGTIDCheckPoint;
     }
 }
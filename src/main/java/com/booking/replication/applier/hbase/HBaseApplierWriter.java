@@ -7,7 +7,9 @@ import com.booking.replication.applier.ApplierException;
 import com.booking.replication.applier.TaskStatus;
 import com.booking.replication.augmenter.AugmentedRow;
 import com.booking.replication.augmenter.AugmentedRowsEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
 import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+import com.booking.replication.queues.MemoryBudget;
 
 import com.booking.replication.validation.ValidationService;
 import com.codahale.metrics.Counter;
@@ -30,22 +32,21 @@ public class HBaseApplierWriter {
      * Batch Transaction buffer.
      *
      * <p>Buffer is structured by tasks. Each task can have multiple transactions, each transaction can have multiple
-     * tables and each table can have multiple mutations. Each task is identified by task UUID. Each transaction is
-     * identified with transaction UUID. Task sub-buffers are picked up by flusher threads and on success there
-     * identified with transaction UUID. Task sub-buffers are picked up by flusher threads and on success there
-     * are two options:
+     * tables and each table can have multiple mutations. Each task is identified by its sequence number, tasks are
+     * numbered in binlog order. Each transaction is identified with transaction sequence number. Task sub-buffers
+     * are picked up by flusher threads and on success there are two options:
      *
-     *      1. the task UUID key is deleted from the the buffer if all transactions are marked for commit.
+     *      1. the task is removed from the the buffer once it and all tasks before it have been committed.
      *
      *      2. If there is a transactions not marked for commit (large transactions, so buffer is full before
-     *         end of transaction is reached), the new task UUID is created and the transaction UUID of the
+     *         end of transaction is reached), the new task is created and the transaction sequence number of the
      *         unfinished transaction is reserved in the new task-sub-buffer.</p>
      *
      * <p>On task failure, task status is updated to 'WRITE_FAILED' and that task will be retried. The hash structure
      * of single task sub-buffer looks like this:
      *
      *  {
-     *      "874c3466-3bf0-422f-a3e3-148289226b6c" => { // <- transaction UUID
+     *      17 => { // <- transaction sequence number
      *
      *        table_1 => [@table_1_augmented_row_changes]
      *        ,...,
@@ -53,7 +54,7 @@ public class HBaseApplierWriter {
      *
      *      },
      *
-     *      "187433e5-7b05-47ff-a3bd-633897cd2b4f" => {
+     *      18 => {
      *
      *        table_1 => [@table_1_augmented_row_changes]
      *        ,...,
@@ -64,7 +65,7 @@ public class HBaseApplierWriter {
      *
      * <p>Or in short, Perl-like syntax:
      *
-     *  $taskBuffer = { $taskUUID => { $transactionUUID => { $tableName => [@AugmentedRows] }}}
+     *  $taskBuffer = { $taskSequence => { $transactionSequence => { $tableName => [@AugmentedRows] }}}
      *
      * This works asynchronously for maximum performance. Since transactions are timestamped and they are from RBR
      * we can buffer them in any order. In HBase all of them will be present with corresponding timestamp. And RBR
@@ -72,17 +73,20 @@ public class HBaseApplierWriter {
      * to value * x, which would break the idempotent feature of operations). Simply put, the order of applying of
      * different transactions does not influence the end result since data will be timestamped with timestamps
      * from the binlog and if there are multiple operations on the same row all versions are kept in HBase.</p>
+     *
+     * <p>Tasks are held in a ring of poolSize + 1 slots: the submitted tasks and the one being buffered.</p>
      */
-    private final
-        ConcurrentHashMap<String, ApplierTask>
-        taskTransactionBuffer = new ConcurrentHashMap<>();
+    private final ApplierTaskRing taskTransactionBuffer;
 
     private final
         HBaseApplierNotYetCommittedAccounting
-        notYetCommittedTasksAccountant = new HBaseApplierNotYetCommittedAccounting();
+        notYetCommittedTasksAccountant;
 
-    private static final
-        ConcurrentHashMap<String, String> taskUUIDToPseudoGTID = new ConcurrentHashMap<>();
+    /**
+     * Memory held by the buffered rows. Rows are charged when buffered and
+     * released when their task is removed from the buffer.
+     */
+    private final MemoryBudget.Account taskBufferMemory;
 
     private static LastCommittedPositionCheckpoint latestCommittedPseudoGTIDCheckPoint;
     /**
@@ -95,23 +99,57 @@ public class HBaseApplierWriter {
      */
     private final HBaseApplierMutationGenerator mutationGenerator;
 
+    /**
+     * Buffered mutators the tasks write through, null when tasks put their rows synchronously.
+     */
+    private HBaseMutatorCache mutatorCache;
+
+    private final boolean bufferedMutatorMode;
+    private final long    writeBufferBytes;
+
+    /**
+     * Batcher the tasks put their rows through by region server, null when tasks put them by table.
+     */
+    private RegionServerBatcher regionServerBatcher;
+
+    private final boolean regionServerBatching;
+    private final int     regionServerMaxInFlight;
+
     /**
      * Task thread pool.
      */
     private static ExecutorService taskPool;
 
+    /**
+     * Completion queue of the tasks submitted to the pool. Futures are queued
+     * as their tasks finish, so waits for a slot or for the last commit wake
+     * up when a task completes instead of polling every future.
+     */
+    private final CompletionService<HBaseTaskResult> taskCompletionService;
+
+    /**
+     * Task sequence numbers of the futures submitted and not handled yet.
+     */
+    private final ConcurrentHashMap<Future<HBaseTaskResult>, Long> submittedTasks = new ConcurrentHashMap<>();
+
     // TODO: add to startup options
     private final int poolSize;
 
+    /**
+     * Sets the tasks that may be in flight from the latency and failures of the tasks.
+     */
+    private final HBaseTaskController taskController;
+
     private static boolean DRY_RUN;
 
     private static final long MAX_BLOCKING_TIME = 60000; // 1 min
 
-    private static volatile String currentTaskUuid = UUID.randomUUID().toString();
-    private static volatile String currentTransactionUUID = UUID.randomUUID().toString();
+    private long currentTaskSequence;
+    private long currentTransactionSequence = 0L;
+    private long nextTransactionSequence = 1L;
 
-    // rowsBufferedInCurrentTask is the size of currentTaskUuid buffer. Once this buffer
-    // is full, it is submitted and new one is opened with new taskUUID
+    // rowsBufferedInCurrentTask is the size of currentTaskSequence buffer. Once this buffer
+    // is full, it is submitted and new one is opened with new task sequence number
     public AtomicInteger rowsBufferedInCurrentTask = new AtomicInteger(0);
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HBaseApplierWriter.class);
@@ -138,8 +176,10 @@ public class HBaseApplierWriter {
      */
     public boolean areAllTasksDone() {
         int notFinished = 0;
-        for (ApplierTask v: taskTransactionBuffer.values()) {
-            if (v.getTaskStatus() != TaskStatus.READY_FOR_BUFFERING
+        for (long taskSequence = taskTransactionBuffer.getHead(); taskSequence < taskTransactionBuffer.getTail(); taskSequence++) {
+            ApplierTask v = taskTransactionBuffer.get(taskSequence);
+            if (v != null
+                && v.getTaskStatus() != TaskStatus.READY_FOR_BUFFERING
                 && v.getTaskStatus() != TaskStatus.WRITE_SUCCEEDED) {
                 notFinished++;
             }
@@ -156,22 +196,37 @@ public class HBaseApplierWriter {
      *
      * @param poolSize Size of the worker pool
      * @param configuration Replication configuration object
+     * @param taskBufferMemory Memory account of the task buffer
+     * @param taskController Controller of the tasks in flight
      */
     public HBaseApplierWriter(
             int poolSize,
             com.booking.replication.Configuration configuration,
             Counter tasksSucceededCounter,
-            ValidationService validationService
+            ValidationService validationService,
+            MemoryBudget.Account taskBufferMemory,
+            HBaseTaskController taskController
     ) {
         DRY_RUN = configuration.isDryRunMode();
 
+        this.taskBufferMemory = taskBufferMemory;
+        notYetCommittedTasksAccountant = new HBaseApplierNotYetCommittedAccounting(taskBufferMemory);
+
         this.validationService = validationService;
 
         this.poolSize = poolSize;
+        this.taskController = taskController;
         taskPool          = Executors.newFixedThreadPool(this.poolSize);
+        taskCompletionService = new ExecutorCompletionService<>(taskPool);
 
         mutationGenerator = new HBaseApplierMutationGenerator(configuration);
 
+        bufferedMutatorMode = configuration.isHbaseBufferedMutatorMode();
+        writeBufferBytes    = bufferedMutatorMode ? configuration.getHbaseWriteBufferBytes() : 0;
+
+        regionServerBatching    = configuration.isHbaseRegionServerBatching();
+        regionServerMaxInFlight = regionServerBatching ? configuration.getHbaseRegionServerMaxInFlight() : 0;
+
         hbaseConf.set("hbase.zookeeper.quorum", configuration.getHBaseQuorum());
         hbaseConf.set("hbase.client.keyvalue.maxsize", "0");
 
@@ -185,11 +240,13 @@ public class HBaseApplierWriter {
 
         applierTasksSucceededCounter = tasksSucceededCounter;
 
-        taskTransactionBuffer
-                .put(currentTaskUuid, new ApplierTask(TaskStatus.READY_FOR_BUFFERING));
-        taskTransactionBuffer.get(currentTaskUuid)
-                .put(currentTransactionUUID, new TransactionProxy());
+        taskTransactionBuffer = new ApplierTaskRing(poolSize + 1);
+        currentTaskSequence = taskTransactionBuffer.add(new ApplierTask(TaskStatus.READY_FOR_BUFFERING));
+        taskTransactionBuffer.get(currentTaskSequence)
+                .put(currentTransactionSequence, new TransactionProxy());
 
+        // parallel replay lanes each have a writer, the gauges show the latest one
+        Metrics.registry.remove(name("HBase", "hbaseWriterTaskQueueSize"));
         Metrics.registry.register(name("HBase", "hbaseWriterTaskQueueSize"),
                 new Gauge<Long>() {
                     @Override
@@ -198,6 +255,7 @@ public class HBaseApplierWriter {
                     }
                 });
 
+        Metrics.registry.remove(name("HBase", "hbaseWriterSlotWaitTime"));
         Metrics.registry.register(name("HBase", "hbaseWriterSlotWaitTime"),
                 new Gauge<Long>() {
                     @Override
@@ -209,6 +267,7 @@ public class HBaseApplierWriter {
                     }
                 });
 
+        Metrics.registry.remove(name("HBase", "transactionBufferSize"));
         Metrics.registry.register(name("HBase", "transactionBufferSize"),
                 new Gauge<Integer>() {
                     @Override
@@ -220,13 +279,13 @@ public class HBaseApplierWriter {
 
     public synchronized void markCurrentTaskWithPseudoGTID(LastCommittedPositionCheckpoint pseudoGTIDCheckPoint)
         throws TaskBufferInconsistencyException {
-        // Verify that task uuid exists
-        if (taskTransactionBuffer.get(currentTaskUuid) == null) {
-            throw new TaskBufferInconsistencyException("ERROR: Missing task UUID ("
-                    + currentTaskUuid
-                    + ") from taskTransactionBuffer keySet should not happen. ");
+        // Verify that task exists
+        if (taskTransactionBuffer.get(currentTaskSequence) == null) {
+            throw new TaskBufferInconsistencyException("ERROR: Missing task ("
+                    + currentTaskSequence
+                    + ") from taskTransactionBuffer should not happen. ");
         }
-        taskTransactionBuffer.get(currentTaskUuid).setPseudoGTIDCheckPoint(pseudoGTIDCheckPoint);
+        taskTransactionBuffer.get(currentTaskSequence).setPseudoGTIDCheckPoint(pseudoGTIDCheckPoint);
     }
 
     /**
@@ -236,16 +295,16 @@ public class HBaseApplierWriter {
      */
     public synchronized void pushToCurrentTaskBuffer(AugmentedRowsEvent augmentedRowsEvent)
         throws TaskBufferInconsistencyException {
-        // Verify that task uuid exists
-        if (taskTransactionBuffer.get(currentTaskUuid) == null) {
-            throw new TaskBufferInconsistencyException("ERROR: Missing task UUID ("
-                    + currentTaskUuid
-                    + ") from taskTransactionBuffer keySet should not happen. ");
+        // Verify that task exists
+        if (taskTransactionBuffer.get(currentTaskSequence) == null) {
+            throw new TaskBufferInconsistencyException("ERROR: Missing task ("
+                    + currentTaskSequence
+                    + ") from taskTransactionBuffer should not happen. ");
         }
-        // Verify that transaction_uuid exists
-        if (taskTransactionBuffer.get(currentTaskUuid).get(currentTransactionUUID) == null) {
+        // Verify that transaction exists
+        if (taskTransactionBuffer.get(currentTaskSequence).get(currentTransactionSequence) == null) {
 
-            throw  new TaskBufferInconsistencyException("ERROR: Missing transaction UUID from taskTransactionBuffer keySet!");
+            throw  new TaskBufferInconsistencyException("ERROR: Missing transaction from taskTransactionBuffer!");
         }
 
         String mySQLTableName = augmentedRowsEvent.getMysqlTableName();
@@ -253,24 +312,68 @@ public class HBaseApplierWriter {
         // Verify that table exists. If not, add to transaction. In case of delta
         // tables, delta table key will belong to the same task and transaction
         // as corresponding mirrored table
-        if (taskTransactionBuffer.get(currentTaskUuid).get(currentTransactionUUID).get(mySQLTableName) == null) {
+        if (taskTransactionBuffer.get(currentTaskSequence).get(currentTransactionSequence).get(mySQLTableName) == null) {
             taskTransactionBuffer
-                    .get(currentTaskUuid)
-                    .get(currentTransactionUUID)
+                    .get(currentTaskSequence)
+                    .get(currentTransactionSequence)
                     .put(mySQLTableName, new ArrayList<AugmentedRow>());
         }
 
         List<AugmentedRow> augmentedRows  = augmentedRowsEvent.getSingleRowEvents();
 
         // Add to buffer
+        long bufferedBytes = 0;
         for (AugmentedRow augmentedRow : augmentedRows) {
             taskTransactionBuffer
-                    .get(currentTaskUuid)
-                    .get(currentTransactionUUID)
+                    .get(currentTaskSequence)
+                    .get(currentTransactionSequence)
                     .get(mySQLTableName)
                     .add(augmentedRow);
             rowsBufferedInCurrentTask.incrementAndGet();
+            bufferedBytes += augmentedRow.estimateSize();
         }
+        taskTransactionBuffer.get(currentTaskSequence).addBufferedBytes(bufferedBytes);
+        taskBufferMemory.charge(bufferedBytes);
+    }
+
+    /**
+     * Buffer the rows of a transaction, or of a part of one, in the current
+     * transaction of the current task.
+     *
+     * @param transaction Rows of the transaction, grouped by table
+     */
+    public synchronized void pushToCurrentTaskBuffer(AugmentedTransaction transaction)
+        throws TaskBufferInconsistencyException {
+        ApplierTask currentTask = taskTransactionBuffer.get(currentTaskSequence);
+        if (currentTask == null) {
+            throw new TaskBufferInconsistencyException("ERROR: Missing task ("
+                    + currentTaskSequence
+                    + ") from taskTransactionBuffer should not happen. ");
+        }
+        TransactionProxy currentTransaction = currentTask.get(currentTransactionSequence);
+        if (currentTransaction == null) {
+            throw  new TaskBufferInconsistencyException("ERROR: Missing transaction from taskTransactionBuffer!");
+        }
+
+        long bufferedBytes = 0;
+        for (Map.Entry<String, List<AugmentedRow>> table : transaction.getRowsByTable().entrySet()) {
+            List<AugmentedRow> rows = table.getValue();
+            currentTransaction.computeIfAbsent(table.getKey(), tableName -> new ArrayList<>(rows.size())).addAll(rows);
+            for (AugmentedRow augmentedRow : rows) {
+                bufferedBytes += augmentedRow.estimateSize();
+            }
+        }
+        rowsBufferedInCurrentTask.addAndGet(transaction.getRowCount());
+        currentTask.addBufferedBytes(bufferedBytes);
+        taskBufferMemory.charge(bufferedBytes);
+    }
+
+    /**
+     * Estimated size of the rows buffered in the current task.
+     */
+    public long getCurrentTaskBufferedBytes() {
+        ApplierTask currentTask = taskTransactionBuffer.get(currentTaskSequence);
+        return currentTask == null ? 0 : currentTask.getBufferedBytes();
     }
 
     /**
@@ -278,61 +381,61 @@ public class HBaseApplierWriter {
      */
     public void markCurrentTransactionForCommit() {
         // mark
-        taskTransactionBuffer.get(currentTaskUuid).get(currentTransactionUUID).setReadyForCommit();
+        taskTransactionBuffer.get(currentTaskSequence).get(currentTransactionSequence).setReadyForCommit();
 
         // open a new transaction slot and set it as the current transaction
-        currentTransactionUUID = UUID.randomUUID().toString();
-        taskTransactionBuffer.get(currentTaskUuid).put(currentTransactionUUID, new TransactionProxy());
+        currentTransactionSequence = nextTransactionSequence++;
+        taskTransactionBuffer.get(currentTaskSequence).put(currentTransactionSequence, new TransactionProxy());
     }
 
     /**
      * Rotate tasks, mark current task as ready to be submitted and initialize new task buffer.
      */
-    public void markCurrentTaskAsReadyAndCreateNewUuidBuffer()
+    public void markCurrentTaskAsReadyAndCreateNewTaskBuffer()
             throws TaskBufferInconsistencyException, ApplierException {
         // don't create new buffers if no slots available
         blockIfNoSlotsAvailableForBuffering();
 
-        // mark current uuid buffer as READY_FOR_PICK_UP unless there are no
+        // mark current task buffer as READY_FOR_PICK_UP unless there are no
         // rows buffered (then just keep the buffer ready for next binlog file)
         if (rowsBufferedInCurrentTask.get() > 0) {
-            taskTransactionBuffer.get(currentTaskUuid).setTaskStatus(TaskStatus.READY_FOR_PICK_UP);
+            taskTransactionBuffer.get(currentTaskSequence).setTaskStatus(TaskStatus.READY_FOR_PICK_UP);
         } else {
             return;
         }
 
-        // create new uuid buffer
-        String newTaskUuid = UUID.randomUUID().toString();
+        // create new task buffer
+        ApplierTask currentTask = taskTransactionBuffer.get(currentTaskSequence);
+        long newTaskSequence = taskTransactionBuffer.add(new ApplierTask(TaskStatus.READY_FOR_BUFFERING));
 
-        taskTransactionBuffer.put(newTaskUuid, new ApplierTask(TaskStatus.READY_FOR_BUFFERING));
-
-        // Check if there is an open/unfinished transaction in current UUID task buffer and
-        // if so, create/reserve the corresponding transaction UUID in the new UUID task buffer
-        // so that the transaction rows that are on the way can be buffered under the same UUID.
+        // Check if there is an open/unfinished transaction in current task buffer and
+        // if so, create/reserve the corresponding transaction sequence number in the new task buffer
+        // so that the transaction rows that are on the way can be buffered under the same number.
         // This is a foundation for the TODO: when XID event is received and the end of transaction tie
-        // the transaction id from XID with the transaction UUID used for buffering. The goal is
+        // the transaction id from XID with the transaction sequence number used for buffering. The goal is
         // to be able to identify mutations in HBase which were part of the same transaction.
         int openTransactions = 0;
-        for (String transactionUuid : taskTransactionBuffer.get(currentTaskUuid).keySet()) {
-            if (!taskTransactionBuffer.get(currentTaskUuid).get(transactionUuid).isReadyForCommit()) {
+        for (Long transactionSequence : currentTask.keySet()) {
+            if (!currentTask.get(transactionSequence).isReadyForCommit()) {
                 openTransactions++;
                 if (openTransactions > 1) {
                     throw new TaskBufferInconsistencyException("More than one partial transaction in the buffer. Should never happen!");
                 }
-                taskTransactionBuffer.get(newTaskUuid).put(transactionUuid, new TransactionProxy() );
-                currentTransactionUUID = transactionUuid; // <- important
+                taskTransactionBuffer.get(newTaskSequence).put(transactionSequence, new TransactionProxy() );
+                currentTransactionSequence = transactionSequence; // <- important
             }
         }
 
-        currentTaskUuid = newTaskUuid;
-        LOGGER.debug("Set new currentTaskUuid to: " + currentTaskUuid);
+        currentTaskSequence = newTaskSequence;
+        LOGGER.debug("Set new currentTaskSequence to: " + currentTaskSequence);
 
         rowsBufferedInCurrentTask.set(0);
 
         // update task queue size
         long queueSize = 0;
-        for (ApplierTask v : taskTransactionBuffer.values()) {
-            if (v.getTaskStatus() == TaskStatus.READY_FOR_PICK_UP) {
+        for (long taskSequence = taskTransactionBuffer.getHead(); taskSequence < taskTransactionBuffer.getTail(); taskSequence++) {
+            ApplierTask v = taskTransactionBuffer.get(taskSequence);
+            if (v != null && v.getTaskStatus() == TaskStatus.READY_FOR_PICK_UP) {
                 queueSize++;
             }
         }
@@ -345,175 +448,240 @@ public class HBaseApplierWriter {
 
     private void blockIfNoSlotsAvailableForBuffering() throws ApplierException {
 
-        boolean block = true;
-        int blockingTime = 0;
+        long waitStart = System.currentTimeMillis();
+        long nextWarning = waitStart + MAX_BLOCKING_TIME;
 
-        slotWaitTime = System.currentTimeMillis();
-        while (block) {
+        slotWaitTime = waitStart;
 
-            updateTaskStatuses();
+        updateTaskStatuses();
 
-            int currentNumberOfTasks = taskTransactionBuffer.keySet().size();
+        while (taskTransactionBuffer.size() > taskController.getTasksInFlight()) {
 
-            if (currentNumberOfTasks > poolSize) {
+            if (submittedTasks.isEmpty()) {
+                // failed tasks are requeued, nothing frees a slot until they run again
                 try {
-                    Thread.sleep(5);
-                    blockingTime += 5;
-                } catch (InterruptedException e) {
-                    LOGGER.error("Cant sleep.", e);
+                    submitTasksThatAreReadyForPickUp();
+                } catch (IOException | TaskBufferInconsistencyException e) {
+                    throw new ApplierException("Failed to resubmit tasks while waiting for an applier slot", e);
                 }
-
-                if (blockingTime >= MAX_BLOCKING_TIME) {
-                    LOGGER.warn("Waiting for an applier slot more than 60s...");
-                    for (String tr: taskTransactionBuffer.keySet()) {
-                        LOGGER.warn(String.format("Task %s, rows: %s, status: %s, future: %s",
-                                 tr,
-                                 taskRowsBuffered(tr),
-                                 taskTransactionBuffer.get(tr).getTaskStatus(),
-                                 taskTransactionBuffer.get(tr).getTaskFuture()
-                             )
-                         );
-                         if (taskTransactionBuffer.get(tr).getTaskFuture() != null) {
-                             taskTransactionBuffer.get(tr).getTaskFuture().cancel(true);
-                         } 
-                    }
+                if (submittedTasks.isEmpty()) {
+                    slotWaitTime = 0;
+                    throw new ApplierException("Waiting for an applier slot with no task running, "
+                            + taskTransactionBuffer.size() + " tasks in the buffer");
                 }
-            } else {
-                if (blockingTime > 10000) {
-                    LOGGER.info("Wait is over with " + currentNumberOfTasks + " current tasks, blocking time was " + blockingTime + "ms");
+            }
+
+            if (!awaitTaskCompletion(nextWarning - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                    && System.currentTimeMillis() >= nextWarning) {
+                LOGGER.warn("Waiting for an applier slot more than 60s...");
+                for (long tr = taskTransactionBuffer.getHead(); tr < taskTransactionBuffer.getTail(); tr++) {
+                    LOGGER.warn(String.format("Task %s, rows: %s, status: %s, future: %s",
+                             tr,
+                             taskRowsBuffered(tr),
+                             taskTransactionBuffer.get(tr).getTaskStatus(),
+                             taskTransactionBuffer.get(tr).getTaskFuture()
+                         )
+                     );
+                     // cancelled futures come back through the completion queue and are requeued
+                     if (taskTransactionBuffer.get(tr).getTaskFuture() != null) {
+                         taskTransactionBuffer.get(tr).getTaskFuture().cancel(true);
+                     }
                 }
-                slotWaitTime = 0;
-                block = false;
+                nextWarning = System.currentTimeMillis() + MAX_BLOCKING_TIME;
             }
         }
+
+        long blockingTime = System.currentTimeMillis() - waitStart;
+        if (blockingTime > 10000) {
+            LOGGER.info("Wait is over with " + taskTransactionBuffer.size() + " current tasks, blocking time was " + blockingTime + "ms");
+        }
+        slotWaitTime = 0;
+    }
+
+    /**
+     * Wait until a submitted task completes, and clean up the statuses of the
+     * tasks that completed.
+     *
+     * <p>Returns as soon as a task completes, successful or not, so the caller
+     * can go on the moment a slot frees up or the last task commits.</p>
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if a task completed, false if the wait timed out
+     */
+    public boolean awaitTaskCompletion(long timeout, TimeUnit unit) throws ApplierException {
+        Future<HBaseTaskResult> taskFuture;
+        try {
+            taskFuture = taskCompletionService.poll(Math.max(timeout, 0), unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplierException("Interrupted while waiting for an applier task", e);
+        }
+        if (taskFuture == null) {
+            return false;
+        }
+        synchronized (this) {
+            handleCompletedTask(taskFuture);
+            updateTaskStatuses();
+        }
+        return true;
     }
 
     /**
      * Clean up task statuses, requeue tasks where necessary.
+     *
+     * <p>Only the tasks that completed since the last call are looked at, as
+     * they come out of the completion queue.</p>
      */
     public synchronized void updateTaskStatuses() throws ApplierException {
-        // Loop submitted tasks
-
-        for (String submittedTaskUuid : taskTransactionBuffer.keySet()) {
-
-            if (taskTransactionBuffer.get(submittedTaskUuid) == null) {
-                // TODO: this is ugly, find a better way to solve this problem
-                // skip non-existing key: after accounting for WRITE_SUCCEEDED, there
-                // is a chance that some tasks (basically previous tasks in the binlog
-                // order that have (all) also been committed) have been removed from
-                // taskTransactionBuffer.
-                // Since the binlog order is not the same as the order of this loop and
-                // since the loop loads the keys once at the beginning, there is a chance
-                // to hit a key(s) that has been removed and get a NPE. So, after accounting
-                // some keys in the loop may be missing so we need to check for them and skip
-                // the loop block for each of them.
-                LOGGER.debug("Key " + submittedTaskUuid + " is gone from the map. Skipping the key.");
-                continue;
-            }
+        Future<HBaseTaskResult> taskFuture;
+        while ((taskFuture = taskCompletionService.poll()) != null) {
+            handleCompletedTask(taskFuture);
+        }
+    }
 
-            try {
-                Future<HBaseTaskResult>  taskFuture = taskTransactionBuffer.get(submittedTaskUuid).getTaskFuture();
-                if (taskFuture == null) {
-                    continue;
-                }
+    private void handleCompletedTask(Future<HBaseTaskResult> taskFuture) throws ApplierException {
 
-                // Process done tasks
-                if (taskFuture.isDone()) {
-                    LOGGER.info("Task " + submittedTaskUuid + " is done");
+        Long submittedTaskSequence = submittedTasks.remove(taskFuture);
+        ApplierTask submittedTask = submittedTaskSequence == null ? null : taskTransactionBuffer.get(submittedTaskSequence);
 
-                    HBaseTaskResult taskResult = taskFuture.get(); // raise exceptions if any
-                    boolean taskSucceeded = taskResult.isTaskSucceeded();
+        if (submittedTask == null || submittedTask.getTaskFuture() != taskFuture) {
+            // a future of a task that has been accounted for or requeued since
+            LOGGER.debug("Future of task " + submittedTaskSequence + " is stale. Skipping it.");
+            return;
+        }
 
-                    TaskStatus statusOfDoneTask = taskResult.getTaskStatus();
+        LastCommittedPositionCheckpoint newCheckPoint = null;
+        boolean taskWritten = false;
 
-                    if (statusOfDoneTask == TaskStatus.WRITE_SUCCEEDED) {
-                        if (!taskSucceeded) {
-                            throw new Exception("Inconsistent success reports for task " + submittedTaskUuid);
-                        }
+        try {
+            LOGGER.info("Task " + submittedTaskSequence + " is done");
 
-                        // Do the accounting needed when task is successfully committed
-                        LastCommittedPositionCheckpoint newCheckPoint =
-                            notYetCommittedTasksAccountant.doAccountingOnTaskSuccess(
-                                taskTransactionBuffer,
-                                submittedTaskUuid
-                            );
-
-                        if (newCheckPoint != null) {
-                            latestCommittedPseudoGTIDCheckPoint = newCheckPoint;
-                        } else {
-                            LOGGER.debug("No new checkpoint found.");
-                        }
+            HBaseTaskResult taskResult = taskFuture.get(); // raise exceptions if any
+            boolean taskSucceeded = taskResult.isTaskSucceeded();
 
-                        // metrics
-                        applierTasksSucceededCounter.inc();
+            TaskStatus statusOfDoneTask = taskResult.getTaskStatus();
 
-                    } else if (statusOfDoneTask == TaskStatus.WRITE_FAILED) {
-                        if (taskSucceeded) {
-                            throw new Exception("Inconsistent failure reports for task " + submittedTaskUuid);
-                        }
-                        LOGGER.warn("Task " + submittedTaskUuid + " failed. Task will be retried.");
-                        requeueTask(submittedTaskUuid);
-                        applierTasksFailedCounter.inc();
-                    } else {
-                        LOGGER.error("Illegal task status ["
-                                + statusOfDoneTask
-                                + "]. Probably a silent death of a thread. "
-                                + "Will consider the task as failed and re-queue.");
-                        requeueTask(submittedTaskUuid);
-                        applierTasksFailedCounter.inc();
-                    }
+            if (statusOfDoneTask == TaskStatus.WRITE_SUCCEEDED) {
+                if (!taskSucceeded) {
+                    throw new Exception("Inconsistent success reports for task " + submittedTaskSequence);
                 }
-            } catch (ExecutionException ex) {
-                LOGGER.error(String.format("Future failed for task %s, with exception: %s",
-                        submittedTaskUuid,
-                        ex.getCause().toString()));
-                requeueTask(submittedTaskUuid);
-                applierTasksFailedCounter.inc();
-            } catch (NullPointerException e) {
-                LOGGER.error("Null pointer", e);
-            } catch (InterruptedException ei) {
-                LOGGER.info(String.format("Task %s was canceled by interrupt. "
-                        + "The task that has been canceled "
-                        + "will be retired later by another future.", submittedTaskUuid), ei);
-                requeueTask(submittedTaskUuid);
-                applierTasksFailedCounter.inc();
-            } catch (CancellationException ce) {
-                LOGGER.error(String.format("Future failed for task %s, with exception: %s",
-                        submittedTaskUuid ,
-                        ce.getCause().toString()));
-                requeueTask(submittedTaskUuid);
+
+                // Do the accounting needed when task is successfully committed
+                newCheckPoint =
+                    notYetCommittedTasksAccountant.doAccountingOnTaskSuccess(
+                        taskTransactionBuffer,
+                        submittedTaskSequence
+                    );
+
+                if (newCheckPoint == null) {
+                    LOGGER.debug("No new checkpoint found.");
+                }
+                taskWritten = true;
+
+                // metrics
+                applierTasksSucceededCounter.inc();
+
+            } else if (statusOfDoneTask == TaskStatus.WRITE_FAILED) {
+                if (taskSucceeded) {
+                    throw new Exception("Inconsistent failure reports for task " + submittedTaskSequence);
+                }
+                LOGGER.warn("Task " + submittedTaskSequence + " failed. Task will be retried.");
+                requeueTask(submittedTaskSequence);
                 applierTasksFailedCounter.inc();
-            } catch (TaskAccountingException e) {
-                LOGGER.error("FATAL: Task accounting exception", e);
-                throw new ApplierException("Task accounting exception.");
-            } catch (Exception e) {
-                LOGGER.error(String.format("Exception for task %s. Will retry the task.", submittedTaskUuid),e);
-                requeueTask(submittedTaskUuid);
+            } else {
+                LOGGER.error("Illegal task status ["
+                        + statusOfDoneTask
+                        + "]. Probably a silent death of a thread. "
+                        + "Will consider the task as failed and re-queue.");
+                requeueTask(submittedTaskSequence);
                 applierTasksFailedCounter.inc();
             }
+        } catch (ExecutionException ex) {
+            LOGGER.error(String.format("Future failed for task %s, with exception: %s",
+                    submittedTaskSequence,
+                    ex.getCause().toString()));
+            requeueTask(submittedTaskSequence);
+            applierTasksFailedCounter.inc();
+        } catch (NullPointerException e) {
+            LOGGER.error("Null pointer", e);
+        } catch (InterruptedException ei) {
+            LOGGER.info(String.format("Task %s was canceled by interrupt. "
+                    + "The task that has been canceled "
+                    + "will be retired later by another future.", submittedTaskSequence), ei);
+            requeueTask(submittedTaskSequence);
+            applierTasksFailedCounter.inc();
+        } catch (CancellationException ce) {
+            LOGGER.error(String.format("Future was cancelled for task %s. Task will be retried.",
+                    submittedTaskSequence));
+            requeueTask(submittedTaskSequence);
+            applierTasksFailedCounter.inc();
+        } catch (TaskAccountingException e) {
+            LOGGER.error("FATAL: Task accounting exception", e);
+            throw new ApplierException("Task accounting exception.");
+        } catch (Exception e) {
+            LOGGER.error(String.format("Exception for task %s. Will retry the task.", submittedTaskSequence),e);
+            requeueTask(submittedTaskSequence);
+            applierTasksFailedCounter.inc();
+        }
+
+        taskController.onTaskDone(System.currentTimeMillis() - submittedTask.getSubmitTime(), taskWritten);
+
+        if (newCheckPoint != null) {
+            // rows of the committed tasks may still be buffered in the mutators
+            flushMutators();
+            latestCommittedPseudoGTIDCheckPoint = newCheckPoint;
+        }
+    }
+
+    /**
+     * Flush the buffered mutators, so that the rows of all tasks that have
+     * succeeded are in HBase. Nothing to do when tasks put their rows
+     * synchronously.
+     */
+    public void flushMutators() throws ApplierException {
+        if (mutatorCache == null) {
+            return;
+        }
+        try {
+            mutatorCache.flush();
+        } catch (IOException e) {
+            LOGGER.error("FATAL: Failed to flush HBase mutators", e);
+            throw new ApplierException("Failed to flush HBase mutators, rows after the last checkpoint may be missing.", e);
+        }
+    }
+
+    /**
+     * Stop the threads that send the region server batches, once the writer
+     * is done.
+     */
+    public void close() {
+        if (regionServerBatcher != null) {
+            regionServerBatcher.close();
+            regionServerBatcher = null;
         }
     }
 
     /**
      * Requeue task.
      *
-     * @param failedTaskUuid UUID
+     * @param failedTaskSequence Task sequence number
      */
-    private void requeueTask(String failedTaskUuid) {
+    private void requeueTask(long failedTaskSequence) {
         // keep the mutation buffer, just change the status so this task is picked up again
-        taskTransactionBuffer.get(failedTaskUuid).setTaskFuture(null);
-        taskTransactionBuffer.get(failedTaskUuid).setTaskStatus(TaskStatus.READY_FOR_PICK_UP);
+        taskTransactionBuffer.get(failedTaskSequence).setTaskFuture(null);
+        taskTransactionBuffer.get(failedTaskSequence).setTaskStatus(TaskStatus.READY_FOR_PICK_UP);
     }
 
-    private Integer taskRowsBuffered(String taskUuid) {
+    private Integer taskRowsBuffered(long taskSequence) {
 
         int taskHasRows = 0;
 
-        Map<String, TransactionProxy> task = taskTransactionBuffer.get(taskUuid);
+        Map<Long, TransactionProxy> task = taskTransactionBuffer.get(taskSequence);
 
-        for (String transactionUuid : task.keySet()) {
-            for (String tableName : task.get(transactionUuid).keySet()) {
-                List<AugmentedRow> bufferedOPS = task.get(transactionUuid).get(tableName);
+        for (Long transactionSequence : task.keySet()) {
+            for (String tableName : task.get(transactionSequence).keySet()) {
+                List<AugmentedRow> bufferedOPS = task.get(transactionSequence).get(tableName);
                 if (bufferedOPS != null) {
                     taskHasRows += bufferedOPS.size();
                 }
@@ -552,20 +720,27 @@ public class HBaseApplierWriter {
             throw new IOException("Could not create HBase connection, all retry attempts failed.");
         }
 
-        // one future per task
-        for (final String taskUuid : taskTransactionBuffer.keySet()) {
+        if (bufferedMutatorMode && !DRY_RUN && mutatorCache == null) {
+            mutatorCache = new HBaseMutatorCache(hbaseConnection, writeBufferBytes);
+        }
+        if (regionServerBatching && !DRY_RUN && regionServerBatcher == null) {
+            regionServerBatcher = new RegionServerBatcher(hbaseConnection, regionServerMaxInFlight);
+        }
+
+        // one future per task, in binlog order
+        for (long taskSequence = taskTransactionBuffer.getHead(); taskSequence < taskTransactionBuffer.getTail(); taskSequence++) {
 
             boolean taskHasRows = false;
 
-            Map<String, TransactionProxy> task = taskTransactionBuffer.get(taskUuid);
+            ApplierTask task = taskTransactionBuffer.get(taskSequence);
             if (task == null) {
-                throw new RuntimeException(String.format("Task %s is null", taskUuid));
+                throw new RuntimeException(String.format("Task %s is null", taskSequence));
             }
 
-            for (String transactionUuid : task.keySet()) {
-                Set<String> transactionTables = task.get(transactionUuid).keySet();
+            for (Long transactionSequence : task.keySet()) {
+                Set<String> transactionTables = task.get(transactionSequence).keySet();
                 for (String tableName : transactionTables) {
-                    List<AugmentedRow> bufferedOPS = task.get(transactionUuid).get(tableName);
+                    List<AugmentedRow> bufferedOPS = task.get(transactionSequence).get(tableName);
                     if (bufferedOPS != null && bufferedOPS.size() > 0) {
                         taskHasRows = true;
                     } else {
@@ -575,32 +750,29 @@ public class HBaseApplierWriter {
             }
 
             // submit task
-            if ((taskTransactionBuffer.get(taskUuid).getTaskStatus() == TaskStatus.READY_FOR_PICK_UP)) {
+            if ((task.getTaskStatus() == TaskStatus.READY_FOR_PICK_UP)) {
                 if (taskHasRows) {
-                    LOGGER.info("Submitting task " + taskUuid);
-
-                    taskTransactionBuffer.get(taskUuid).setTaskStatus(TaskStatus.TASK_SUBMITTED);
+                    LOGGER.info("Submitting task " + taskSequence);
 
-                    // add to notYetCommittedList, unless its already there (hapens when failed task
-                    // is requeued since task UUID is not changes on requeue - that way we know the
-                    // order of tasks that corresponds to the binlog irregardless of possible task
-                    // requeuing)
-                    if (!notYetCommittedTasksAccountant.containsTaskUUID(taskUuid)) {
-                        notYetCommittedTasksAccountant.addTaskUUID(taskUuid);
-                    }
+                    // the task keeps its sequence number on requeue, so the order of tasks
+                    // corresponds to the binlog irregardless of possible task requeuing
+                    task.setTaskStatus(TaskStatus.TASK_SUBMITTED);
+                    task.setSubmitTime(System.currentTimeMillis());
 
                     applierTasksSubmittedCounter.inc();
 
-                    taskTransactionBuffer.get(taskUuid).setTaskFuture(
-                        taskPool.submit(new HBaseWriterTask(
-                                hbaseConnection,
-                                mutationGenerator,
-                                taskUuid,
-                                taskTransactionBuffer.get(taskUuid),
-                                validationService,
-                                DRY_RUN
-                        )
+                    Future<HBaseTaskResult> taskFuture = taskCompletionService.submit(new HBaseWriterTask(
+                            hbaseConnection,
+                            mutationGenerator,
+                            mutatorCache,
+                            regionServerBatcher,
+                            taskSequence,
+                            task,
+                            validationService,
+                            DRY_RUN
                     ));
+                    submittedTasks.put(taskFuture, taskSequence);
+                    task.setTaskFuture(taskFuture);
                 } else {
                     LOGGER.error("Task is marked as READY_FOR_PICK_UP, but has no rows");
                     throw new TaskBufferInconsistencyException("Task is marked as READY_FOR_PICK_UP, but has no rows.");
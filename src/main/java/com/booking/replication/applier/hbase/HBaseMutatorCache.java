@@ -0,0 +1,123 @@
+package com.booking.replication.applier.hbase;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived buffered mutators of the HBase tables, shared by the writer tasks.
+ *
+ * <p>Tasks hand their puts to the mutator of the table and return, the mutator
+ * sends them in the background whenever its write buffer fills up. Rows are
+ * only known to be in HBase after a flush, so the writer flushes the mutators
+ * before it marks a checkpoint as safe and when it waits for all rows to be
+ * committed.</p>
+ *
+ * <p>Mutations that still fail after the HBase client retries are reported per
+ * row to the exception listener. Their tasks are gone by then, so they can't be
+ * retried from here: the next flush fails instead, the checkpoint stays where it
+ * was and replication resumes from it.</p>
+ */
+class HBaseMutatorCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HBaseMutatorCache.class);
+
+    private static final Counter failedMutationsCounter = Metrics.registry.counter(name("HBase", "mutatorFailedMutationsCounter"));
+    private static final Timer flushLatencyTimer = Metrics.registry.timer(name("HBase", "mutatorFlushLatency"));
+
+    private final Connection hbaseConnection;
+    private final long       writeBufferBytes;
+
+    private final ConcurrentHashMap<String, BufferedMutator> mutators = new ConcurrentHashMap<>();
+
+    // mutations reported to the exception listener since the last flush
+    private final AtomicLong failedMutations = new AtomicLong();
+
+    /**
+     * Mutator cache of a connection.
+     *
+     * @param conn              Connection to HBase cluster
+     * @param writeBufferBytes  Write buffer of each mutator
+     */
+    HBaseMutatorCache(Connection conn, long writeBufferBytes) {
+        this.hbaseConnection  = conn;
+        this.writeBufferBytes = writeBufferBytes;
+    }
+
+    /**
+     * Buffer mutations of a table. They are sent when the write buffer of the
+     * table's mutator is full or on the next flush.
+     */
+    void mutate(String tableName, List<? extends Mutation> mutations) throws IOException {
+        getMutator(tableName).mutate(mutations);
+    }
+
+    /**
+     * Send the buffered mutations of all tables and wait for them.
+     *
+     * @throws IOException if a mutation failed since the last flush
+     */
+    void flush() throws IOException {
+        final Timer.Context flushTimer = flushLatencyTimer.time();
+        try {
+            for (BufferedMutator mutator : mutators.values()) {
+                mutator.flush();
+            }
+        } finally {
+            flushTimer.stop();
+        }
+
+        long failed = failedMutations.getAndSet(0);
+        if (failed > 0) {
+            throw new IOException(failed + " mutations failed since the last flush");
+        }
+    }
+
+    private BufferedMutator getMutator(String tableName) throws IOException {
+        BufferedMutator mutator = mutators.get(tableName);
+        if (mutator == null) {
+            synchronized (mutators) {
+                mutator = mutators.get(tableName);
+                if (mutator == null) {
+                    mutator = hbaseConnection.getBufferedMutator(
+                            new BufferedMutatorParams(TableName.valueOf(tableName))
+                                    .writeBufferSize(writeBufferBytes)
+                                    .listener(this::onException)
+                    );
+                    mutators.put(tableName, mutator);
+                }
+            }
+        }
+        return mutator;
+    }
+
+    private void onException(RetriesExhaustedWithDetailsException exception, BufferedMutator mutator) {
+        int failed = exception.getNumExceptions();
+        for (int i = 0; i < failed; i++) {
+            LOGGER.error(String.format("Failed to write row %s of table %s on %s",
+                    Bytes.toStringBinary(exception.getRow(i).getRow()),
+                    mutator.getName(),
+                    exception.getHostnamePort(i)),
+                    exception.getCause(i));
+        }
+        failedMutations.addAndGet(failed);
+        failedMutationsCounter.inc(failed);
+    }
+}
@@ -0,0 +1,173 @@
+package com.booking.replication.applier.hbase;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes the HBase writer tasks from the latency and failures of the tasks
+ * that are done, with additive increase and multiplicative decrease (AIMD).
+ *
+ * <p>It sets three limits: the rows in a task, the tasks in flight and the
+ * age at which the buffered rows are flushed even if the task isn't full.
+ * Decisions are made once per window, a window being as many done tasks as
+ * there are tasks in flight:</p>
+ *
+ * <ul>
+ *     <li>more than 5% of the tasks failed: the region servers are overloaded,
+ *         halve the tasks in flight;</li>
+ *     <li>the tasks took longer than half the latency target on average: halve
+ *         the rows in a task, smaller tasks are written faster;</li>
+ *     <li>otherwise: add 100 rows to a task and one task in flight.</li>
+ * </ul>
+ *
+ * <p>The flush age gets what is left of the latency target once the tasks
+ * are written, so that rows reach HBase within the target when the binlog
+ * is quiet too.</p>
+ *
+ * <p>The limits, the inputs and the count of each decision are in the
+ * HBase.taskController metrics. When not adaptive, the limits stay at their
+ * initial values.</p>
+ */
+public class HBaseTaskController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HBaseTaskController.class);
+
+    static final int    MIN_TASK_ROWS     = 100;
+    static final int    MAX_TASK_ROWS     = 10000;
+    static final int    TASK_ROWS_STEP    = 100;
+    static final long   MIN_FLUSH_AGE     = 1000;
+    static final double MAX_FAILURE_RATE  = 0.05;
+
+    // weight of the latest task in the smoothed task latency
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private static final Counter increaseCounter =
+            Metrics.registry.counter(name("HBase", "taskController", "increase"));
+    private static final Counter decreaseOnLatencyCounter =
+            Metrics.registry.counter(name("HBase", "taskController", "decreaseOnLatency"));
+    private static final Counter decreaseOnFailuresCounter =
+            Metrics.registry.counter(name("HBase", "taskController", "decreaseOnFailures"));
+
+    private final boolean adaptive;
+    private final long    latencyTargetMs;
+    private final int     maxTasksInFlight;
+    private final long    maxFlushAgeMs;
+
+    private volatile int    taskRows;
+    private volatile int    tasksInFlight;
+    private volatile long   flushAgeMs;
+    private volatile double taskLatencyMs = 0;
+    private volatile double failureRate   = 0;
+
+    // tasks done in the current window
+    private int  windowTasks     = 0;
+    private int  windowFailures  = 0;
+    private long windowLatencyMs = 0;
+
+    /**
+     * Task controller.
+     *
+     * @param adaptive          Whether to adjust the limits, or keep the initial ones
+     * @param latencyTargetMs   Target time from buffering rows to having them in HBase
+     * @param taskRows          Initial rows in a task
+     * @param tasksInFlight     Initial tasks in flight, also the maximum
+     * @param flushAgeMs        Initial flush age, also the maximum
+     */
+    public HBaseTaskController(boolean adaptive, long latencyTargetMs, int taskRows, int tasksInFlight, long flushAgeMs) {
+        this.adaptive         = adaptive;
+        this.latencyTargetMs  = latencyTargetMs;
+        this.maxTasksInFlight = tasksInFlight;
+        this.maxFlushAgeMs    = flushAgeMs;
+        this.taskRows         = taskRows;
+        this.tasksInFlight    = tasksInFlight;
+        this.flushAgeMs       = flushAgeMs;
+
+        // parallel replay lanes each have a controller, the gauges show the latest one
+        registerGauge("taskRows", () -> this.taskRows);
+        registerGauge("tasksInFlight", () -> this.tasksInFlight);
+        registerGauge("flushAgeMs", () -> this.flushAgeMs);
+        registerGauge("taskLatencyMs", () -> (long) this.taskLatencyMs);
+        registerGauge("failureRate", () -> this.failureRate);
+    }
+
+    private static void registerGauge(String metric, Gauge<?> gauge) {
+        Metrics.registry.remove(name("HBase", "taskController", metric));
+        Metrics.registry.register(name("HBase", "taskController", metric), gauge);
+    }
+
+    /**
+     * Account for a task that is done.
+     *
+     * @param latencyMs Time from submitting the task to its result
+     * @param succeeded Whether the task has written its rows
+     */
+    public void onTaskDone(long latencyMs, boolean succeeded) {
+        if (!adaptive) {
+            return;
+        }
+
+        taskLatencyMs = taskLatencyMs == 0
+                ? latencyMs
+                : LATENCY_SMOOTHING * latencyMs + (1 - LATENCY_SMOOTHING) * taskLatencyMs;
+
+        windowTasks++;
+        windowLatencyMs += latencyMs;
+        if (!succeeded) {
+            windowFailures++;
+        }
+        if (windowTasks < tasksInFlight) {
+            return;
+        }
+
+        failureRate = (double) windowFailures / windowTasks;
+        long meanLatencyMs = windowLatencyMs / windowTasks;
+
+        if (failureRate > MAX_FAILURE_RATE) {
+            tasksInFlight = Math.max(1, tasksInFlight / 2);
+            decreaseOnFailuresCounter.inc();
+        } else if (meanLatencyMs > latencyTargetMs / 2) {
+            taskRows = Math.max(MIN_TASK_ROWS, taskRows / 2);
+            decreaseOnLatencyCounter.inc();
+        } else {
+            taskRows = Math.min(MAX_TASK_ROWS, taskRows + TASK_ROWS_STEP);
+            tasksInFlight = Math.min(maxTasksInFlight, tasksInFlight + 1);
+            increaseCounter.inc();
+        }
+        flushAgeMs = Math.max(MIN_FLUSH_AGE, Math.min(maxFlushAgeMs, latencyTargetMs - (long) taskLatencyMs));
+
+        LOGGER.debug(String.format("Task window of %d tasks, mean latency %dms, failure rate %.2f: "
+                        + "task rows %d, tasks in flight %d, flush age %dms",
+                windowTasks, meanLatencyMs, failureRate, taskRows, tasksInFlight, flushAgeMs));
+
+        windowTasks     = 0;
+        windowFailures  = 0;
+        windowLatencyMs = 0;
+    }
+
+    /**
+     * Rows after which the current task is submitted.
+     */
+    public int getTaskRows() {
+        return taskRows;
+    }
+
+    /**
+     * Tasks that may be submitted and not yet committed.
+     */
+    public int getTasksInFlight() {
+        return tasksInFlight;
+    }
+
+    /**
+     * Time after which the current task is submitted even if it isn't full.
+     */
+    public long getFlushAgeMs() {
+        return flushAgeMs;
+    }
+}
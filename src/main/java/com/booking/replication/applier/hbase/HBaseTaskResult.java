@@ -7,28 +7,28 @@ import com.booking.replication.applier.TaskStatus;
  */
 public class HBaseTaskResult {
 
-    private final String taskUuid;
+    private final long taskSequence;
     private final TaskStatus taskStatus;
     private final boolean taskSucceeded;
 
     /**
      * Result after running HBase task.
-     * @param uuid      Task UUID
+     * @param sequence  Task sequence number
      * @param status    Task Status
      * @param success   Task success
      */
     public HBaseTaskResult(
-            String uuid,
+            long sequence,
             TaskStatus status,
             boolean success
     ) {
         taskSucceeded = success;
-        taskUuid = uuid;
+        taskSequence = sequence;
         taskStatus = status;
     }
 
-    public String getTaskUuid() {
-        return taskUuid;
+    public long getTaskSequence() {
+        return taskSequence;
     }
 
     public boolean isTaskSucceeded() {
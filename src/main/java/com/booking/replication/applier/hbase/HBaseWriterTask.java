@@ -38,22 +38,28 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
 
     private final Connection hbaseConnection;
     private final HBaseApplierMutationGenerator mutationGenerator;
-    private final String taskUuid;
-    private final Map<String, TransactionProxy> taskTransactionBuffer;
+    private final HBaseMutatorCache mutatorCache;
+    private final RegionServerBatcher regionServerBatcher;
+    private final long taskSequence;
+    private final Map<Long, TransactionProxy> taskTransactionBuffer;
 
     /**
      * Parallelised worker that generates and applies HBase mutations.
      *
      * @param conn          Connection to HBase cluster
      * @param generator     HBase Mutation Generator
-     * @param id            Our task id
+     * @param mutators      Buffered mutators to write through, null to put the rows synchronously
+     * @param batcher       Region server batcher to put the rows through, null to put them by table
+     * @param id            Our task sequence number
      * @param taskBuffer    Our task buffer
      */
     public HBaseWriterTask(
             Connection conn,
             HBaseApplierMutationGenerator generator,
-            String id,
-            Map<String, TransactionProxy> taskBuffer,
+            HBaseMutatorCache mutators,
+            RegionServerBatcher batcher,
+            long id,
+            Map<Long, TransactionProxy> taskBuffer,
             ValidationService validationService,
             boolean dryRun
     ) {
@@ -62,8 +68,10 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
         DRY_RUN = dryRun;
 
         hbaseConnection = conn;
-        taskUuid = id;
+        taskSequence = id;
         mutationGenerator = generator;
+        mutatorCache = mutators;
+        regionServerBatcher = batcher;
         taskTransactionBuffer = taskBuffer;
         this.validationService = validationService;
     }
@@ -80,7 +88,7 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
         }
 
         if (chaosMonkey.feelsLikeFailingSubmitedTaskWithoutException()) {
-            return new HBaseTaskResult(taskUuid, TaskStatus.WRITE_FAILED, false);
+            return new HBaseTaskResult(taskSequence, TaskStatus.WRITE_FAILED, false);
         }
 
         applierTasksInProgressCounter.inc();
@@ -89,24 +97,24 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
             throw new Exception("Chaos monkey exception for task in progress!");
         }
         if (chaosMonkey.feelsLikeFailingTaskInProgessWithoutException()) {
-            return new HBaseTaskResult(taskUuid, TaskStatus.WRITE_FAILED, false);
+            return new HBaseTaskResult(taskSequence, TaskStatus.WRITE_FAILED, false);
         }
 
-        for (final String transactionUuid : taskTransactionBuffer.keySet()) {
+        for (final Long transactionSequence : taskTransactionBuffer.keySet()) {
 
-            int numberOfTablesInCurrentTransaction = taskTransactionBuffer.get(transactionUuid).keySet().size();
+            int numberOfTablesInCurrentTransaction = taskTransactionBuffer.get(transactionSequence).keySet().size();
 
             int numberOfFlushedTablesInCurrentTransaction = 0;
 
             final Timer.Context timerContext = putLatencyTimer.time();
-            for (final String bufferedMySQLTableName : taskTransactionBuffer.get(transactionUuid).keySet()) {
+            for (final String bufferedMySQLTableName : taskTransactionBuffer.get(transactionSequence).keySet()) {
 
                 if (chaosMonkey.feelsLikeThrowingExceptionBeforeFlushingData()) {
                     throw new Exception("Chaos monkey is here to prevent call to flush!!!");
                 } else if (chaosMonkey.feelsLikeFailingDataFlushWithoutException()) {
-                    return new HBaseTaskResult(taskUuid, TaskStatus.WRITE_FAILED, false);
+                    return new HBaseTaskResult(taskSequence, TaskStatus.WRITE_FAILED, false);
                 } else {
-                    List<AugmentedRow> rowOps = taskTransactionBuffer.get(transactionUuid).get(bufferedMySQLTableName);
+                    List<AugmentedRow> rowOps = taskTransactionBuffer.get(transactionSequence).get(bufferedMySQLTableName);
 
                     Map<String, List<HBaseApplierMutationGenerator.PutMutation>> mutationsByTable = mutationGenerator.generateMutations(rowOps).stream()
                             .collect(
@@ -120,12 +128,23 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
                         List<HBaseApplierMutationGenerator.PutMutation> mutations = entry.getValue();
 
                         if (!DRY_RUN) {
-                            Table table = hbaseConnection.getTable(TableName.valueOf(tableName));
-                            table.put( mutations.stream().map( mutation -> mutation.getPut() ).collect(Collectors.toList()) );
-                            table.close();
+                            List<Put> puts = mutations.stream().map( mutation -> mutation.getPut() ).collect(Collectors.toList());
+                            if (mutatorCache != null) {
+                                // flushed by the writer before the next checkpoint
+                                mutatorCache.mutate(tableName, puts);
+                            } else if (regionServerBatcher != null) {
+                                regionServerBatcher.put(tableName, puts);
+                            } else {
+                                Table table = hbaseConnection.getTable(TableName.valueOf(tableName));
+                                table.put(puts);
+                                table.close();
+                            }
 
                             for (HBaseApplierMutationGenerator.PutMutation mutation : mutations){
-                                if (validationService != null) validationService.registerValidationTask(transactionUuid, mutation.getSourceRowUri(), mutation.getTargetRowUri());
+                                if (validationService != null) {
+                                    validationService.registerValidationTask(
+                                            transactionSequence.toString(), mutation.getSourceRowUri(), mutation.getTargetRowUri());
+                                }
                             }
 
                         } else {
@@ -152,7 +171,7 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
                 LOGGER.error(String.format("Failed integrity check number of tables: %s != %s",
                         numberOfTablesInCurrentTransaction,
                         numberOfFlushedTablesInCurrentTransaction));
-                return new HBaseTaskResult(taskUuid, TaskStatus.WRITE_FAILED, false);
+                return new HBaseTaskResult(taskSequence, TaskStatus.WRITE_FAILED, false);
             }
         } // next transaction
 
@@ -161,7 +180,7 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
         if (DRY_RUN) {
             Thread.sleep(100);
             return new HBaseTaskResult(
-                    taskUuid,
+                    taskSequence,
                     TaskStatus.WRITE_SUCCEEDED,
                     true
             );
@@ -169,7 +188,7 @@ public class HBaseWriterTask implements Callable<HBaseTaskResult> {
 
         // task result
         return new HBaseTaskResult(
-                taskUuid,
+                taskSequence,
                 TaskStatus.WRITE_SUCCEEDED,
                 true
         );
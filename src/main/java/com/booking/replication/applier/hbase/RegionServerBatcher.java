@@ -0,0 +1,166 @@
+package com.booking.replication.applier.hbase;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+
+import com.codahale.metrics.Timer;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the puts of a table in one batch per region server.
+ *
+ * <p>Row keys are salted, so the puts of a task land on every region. Sent as
+ * one batch they all wait for the slowest region server. Grouped by the region
+ * server that hosts their rows, as found by the region locator, the batches
+ * are sent concurrently.</p>
+ *
+ * <p>Each region server has its own sender threads, as many as the batches it
+ * may have in flight. Batches beyond that queue up for their server only, and
+ * no thread is held waiting for a slow server that the batches of the other
+ * servers could use: a slow server throttles its own share of the rows.</p>
+ *
+ * <p>A put still waits for all of its batches, since a task is only committed
+ * once all of its rows are in HBase: a task with rows on a slow server takes
+ * as long as that server.</p>
+ *
+ * <p>The latency of the batches of each server is in the timer
+ * HBase.regionServer.{host_port}.putLatency.</p>
+ */
+class RegionServerBatcher {
+
+    // idle sender threads of a server are stopped after this long
+    private static final long SENDER_KEEP_ALIVE_SECONDS = 60;
+
+    private final Connection hbaseConnection;
+    private final int        maxInFlightPerServer;
+
+    private final ConcurrentHashMap<String, ThreadPoolExecutor> sendersByServer = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Batcher of a connection.
+     *
+     * @param conn                  Connection to HBase cluster
+     * @param maxInFlightPerServer  Maximum number of batches in flight to one region server
+     */
+    RegionServerBatcher(Connection conn, int maxInFlightPerServer) {
+        this.hbaseConnection      = conn;
+        this.maxInFlightPerServer = maxInFlightPerServer;
+    }
+
+    /**
+     * Put rows of a table and wait until all region servers have them.
+     *
+     * @throws IOException if a batch failed, after all batches are done
+     */
+    void put(String tableName, List<Put> puts) throws IOException {
+        if (puts.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("Region server batcher is closed");
+        }
+
+        TableName table = TableName.valueOf(tableName);
+
+        List<Future<?>> sentBatches = new ArrayList<>();
+        for (Map.Entry<String, List<Put>> batch : groupByServer(table, puts).entrySet()) {
+            sentBatches.add(senders(batch.getKey()).submit(() -> {
+                send(table, batch.getKey(), batch.getValue());
+                return null;
+            }));
+        }
+
+        IOException failure = null;
+        for (Future<?> sentBatch : sentBatches) {
+            try {
+                sentBatch.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                for (Future<?> batch : sentBatches) {
+                    batch.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while putting rows of " + tableName);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Puts by the host and port of the region server of their row.
+     */
+    Map<String, List<Put>> groupByServer(TableName table, List<Put> puts) throws IOException {
+        Map<String, List<Put>> putsByServer = new LinkedHashMap<>();
+        try (RegionLocator regionLocator = hbaseConnection.getRegionLocator(table)) {
+            for (Put put : puts) {
+                String server = regionLocator.getRegionLocation(put.getRow()).getHostnamePort();
+                putsByServer.computeIfAbsent(server, key -> new ArrayList<>()).add(put);
+            }
+        }
+        return putsByServer;
+    }
+
+    /**
+     * Stop the sender threads. Batches already queued are still sent.
+     */
+    void close() {
+        closed = true;
+        for (ThreadPoolExecutor senders : sendersByServer.values()) {
+            senders.shutdown();
+        }
+    }
+
+    private ThreadPoolExecutor senders(String server) {
+        return sendersByServer.computeIfAbsent(server, key -> {
+            AtomicInteger senderCount = new AtomicInteger();
+            ThreadPoolExecutor senders = new ThreadPoolExecutor(
+                    maxInFlightPerServer, maxInFlightPerServer,
+                    SENDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "hbase-sender-" + server + "-" + senderCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            senders.allowCoreThreadTimeOut(true);
+            return senders;
+        });
+    }
+
+    private void send(TableName tableName, String server, List<Put> puts) throws IOException {
+        final Timer.Context putTimer = Metrics.registry.timer(
+                name("HBase", "regionServer", server.replaceAll("[.:]", "_"), "putLatency")).time();
+        try (Table table = hbaseConnection.getTable(tableName)) {
+            table.put(puts);
+        } finally {
+            putTimer.stop();
+        }
+    }
+}
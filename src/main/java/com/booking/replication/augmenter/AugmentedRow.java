@@ -1,15 +1,18 @@
 package com.booking.replication.augmenter;
 
-import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.BlobEncoding;
 import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.ColumnLayout;
 import com.booking.replication.schema.table.TableSchemaVersion;
 import com.booking.replication.util.JsonBuilder;
 
 import com.google.code.or.binlog.BinlogEventV4Header;
 import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.security.InvalidParameterException;
@@ -29,6 +32,9 @@ import java.util.*;
 @JsonIgnoreProperties({"tableSchemaVersion"})
 public class AugmentedRow {
 
+    // the row object, its position and the strings shared with other rows of the event
+    private static final long ROW_OVERHEAD = 160;
+
     @JsonDeserialize(as = BinlogEventV4HeaderImpl.class)
     @JsonIgnoreProperties({"headerLength", "position"})
     private BinlogEventV4Header eventV4Header;
@@ -39,24 +45,30 @@ public class AugmentedRow {
     private String       binlogFileName;
     private long         rowBinlogEventOrdinal;
     private String       tableName;
-    private List<String> primaryKeyColumns = new ArrayList<>();
+    private List<String> primaryKeyColumns;
 
+    // row identity comes from the binlog coordinates, the strings are only
+    // built when asked for (or read from JSON)
+    private RowPosition  rowPosition;
     private String       rowUUID;
     private String       rowBinlogPositionID;
 
-    // eventColumns: {
-    //          column_name  => $name,
-    //          value_before => $v1,
-    //          value_after  => $v2,
-    //          type         => $type
-    //      }
-    // }
-    private HashMap<String,Map<String,String>> eventColumns = new HashMap<>();
+    // Typed column values by index (ordinal position - 1). Names, types and
+    // converters come from the column layout, which is shared by all rows of
+    // the table schema version.
+    //  - INSERT/DELETE: values holds the row, valuesBefore is null
+    //  - UPDATE:        valuesBefore holds the row before, values the row after
+    private ColumnLayout columnLayout;
+    private RowImage     values;
+    private RowImage     valuesBefore;
+
+    // getEventColumns() view, built on demand
+    private HashMap<String,Map<String,String>> eventColumns;
 
     private String eventType;
 
     public AugmentedRow() {
-
+        primaryKeyColumns = new ArrayList<>();
     }
 
     /**
@@ -88,10 +100,34 @@ public class AugmentedRow {
 
         initTableSchema(tableSchemaVersion);
 
-        Long eventPosition = eventV4Header.getPosition();
+        rowPosition = new RowPosition(binlogFileName, eventV4Header.getPosition(), rowOrdinal);
+    }
 
-        rowBinlogPositionID = String.format("%s:%020d:%020d", this.binlogFileName, eventPosition, this.rowBinlogEventOrdinal);
-        rowUUID = UUID.randomUUID().toString();;
+    /**
+     * Set the values of a column of an UPDATE row.
+     *
+     * @param columnIndex   Ordinal position of the column - 1
+     * @param valueBefore   Value before the update
+     * @param valueAfter    Value after the update
+     */
+    public void setColumnValues(int columnIndex, String valueBefore, String valueAfter) {
+        if (valuesBefore == null) {
+            valuesBefore = new RowImage(values.size());
+        }
+        valuesBefore.setObject(columnIndex, valueBefore);
+        values.setObject(columnIndex, valueAfter);
+        eventColumns = null;
+    }
+
+    /**
+     * Set the value of a column of an INSERT or DELETE row.
+     *
+     * @param columnIndex   Ordinal position of the column - 1
+     * @param value         Column value
+     */
+    public void setColumnValue(int columnIndex, String value) {
+        values.setObject(columnIndex, value);
+        eventColumns = null;
     }
 
     /**
@@ -100,7 +136,7 @@ public class AugmentedRow {
      * @param columnName    Name of the column to update
      * @param valueBefore   Value before the update
      * @param valueAfter    Value after the update
-     * @param columnType    Column type
+     * @param columnType    Column type, ignored: the type comes from the table schema
      * @throws InvalidParameterException    Invalid parameter
      * @throws TableMapException            Invalid table
      */
@@ -113,117 +149,316 @@ public class AugmentedRow {
 
         if (columnName == null) {
             throw new InvalidParameterException("columnName can not be null");
-        } else if (eventColumns.get(columnName) == null) {
-            String errorMessage = "Missing data slot for { table => " + this.getTableName() + ", columnName => " + columnName;
-            errorMessage += "\n Known columns for table " + this.getTableName() + " are:";
-            for (String c : eventColumns.keySet()) {
-                errorMessage += "\n\t" + c;
-            }
-            throw new TableMapException(errorMessage);
-        } else {
-            eventColumns.get(columnName).put("value_before", valueBefore);
-            eventColumns.get(columnName).put("value_after", valueAfter);
-            eventColumns.get(columnName).put("type", columnType);
         }
+        setColumnValues(getColumnIndex(columnName), valueBefore, valueAfter);
     }
 
     /**
      * Add column data.
      * @param columnName Name of the column to insert
      * @param value       Value to insert
-     * @param columnType  Column type
+     * @param columnType  Column type, ignored: the type comes from the table schema
      */
     public void addColumnDataForInsert(
             String columnName,
             String value,
-            String columnType) {
-        eventColumns.get(columnName).put("value", value);
-        eventColumns.get(columnName).put("type", columnType);
+            String columnType) throws TableMapException {
+        setColumnValue(getColumnIndex(columnName), value);
+    }
+
+    private int getColumnIndex(String columnName) throws TableMapException {
+        int columnIndex = columnLayout.indexOf(columnName);
+        if (columnIndex < 0) {
+            String errorMessage = "Missing data slot for { table => " + this.getTableName() + ", columnName => " + columnName;
+            errorMessage += "\n Known columns for table " + this.getTableName() + " are:";
+            for (int i = 0; i < columnLayout.size(); i++) {
+                if (columnLayout.getColumnName(i) != null) {
+                    errorMessage += "\n\t" + columnLayout.getColumnName(i);
+                }
+            }
+            throw new TableMapException(errorMessage);
+        }
+        return columnIndex;
     }
 
     /**
      * Set table schema.
      *
+     * <p>Rows don't copy anything from the schema, they share its column layout
+     * and only allocate their row images.</p>
+     *
      * @param tableSchemaVersion           Schema of the table
      * @throws TableMapException    Invalid table
      */
     private void initTableSchema(TableSchemaVersion tableSchemaVersion) throws TableMapException {
+        if (tableSchemaVersion == null) {
+            throw new TableMapException("Need table schem in order to generate PK list.");
+        }
         this.tableSchemaVersion = tableSchemaVersion;
-        initPKList();
-        initColumnDataSlots();
+        this.columnLayout       = tableSchemaVersion.getColumnLayout();
+        this.primaryKeyColumns  = columnLayout.getPrimaryKeyColumns();
+        this.values             = new RowImage(columnLayout.size());
+        if ("UPDATE".equals(eventType)) {
+            this.valuesBefore = new RowImage(columnLayout.size());
+        }
+    }
+
+    public String toJson() {
+        return JsonBuilder.augmentedRowToJson(this);
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public BinlogEventV4Header getEventV4Header() {
+        return eventV4Header;
     }
 
     /**
-     * Initialize column data slots.
-     *
-     * <p>Pre-create objects for speed (this improves overall runtime speed ~10%)</p>
+     * Binlog coordinates of the row. Rows read back from JSON get them from
+     * their row binlog position id.
      */
-    public void initColumnDataSlots() {
-        for (String columnName: tableSchemaVersion.getColumnIndexToNameMap().values()) {
-            eventColumns.put(columnName, new HashMap<String, String>());
+    @JsonIgnore
+    public RowPosition getRowPosition() {
+        if (rowPosition == null && rowBinlogPositionID != null) {
+            rowPosition = RowPosition.fromString(rowBinlogPositionID);
         }
+        return rowPosition;
     }
 
-    public String toJson() {
-        return JsonBuilder.augmentedRowToJson(this);
+    public String getRowBinlogPositionID() {
+        if (rowBinlogPositionID == null && rowPosition != null) {
+            rowBinlogPositionID = rowPosition.toString();
+        }
+        return rowBinlogPositionID;
     }
 
     /**
-     * Initialize primary key columns.
-     *
-     * @throws TableMapException    Invalid table.
+     * Row UUID, derived from the binlog coordinates of the row.
      */
-    public void initPKList() throws TableMapException {
-        if (tableSchemaVersion == null) {
-            throw new TableMapException("Need table schem in order to generate PK list.");
-        } else {
-            Map<Integer, String> pkColumns = new HashMap<>();
+    public String getRowUUID() {
+        if (rowUUID == null && rowPosition != null) {
+            rowUUID = rowPosition.toUUID().toString();
+        }
+        return rowUUID;
+    }
 
-            Set<String> columnNames = tableSchemaVersion.getColumnsSchema().keySet();
-            for (String columnName: columnNames) {
+    public String getTableName() {
+        return tableName;
+    }
 
-                ColumnSchema cs = tableSchemaVersion.getColumnsSchema().get(columnName);
+    /**
+     * Number of column slots of the row, same as the size of the column layout.
+     */
+    @JsonIgnore
+    public int getColumnCount() {
+        return values.size();
+    }
 
-                String  ck = cs.getColumnKey();
-                Integer op = cs.getOrdinalPosition();
-                String  cn = cs.getColumnName();
+    /**
+     * Name of the column at the given index, null for an ordinal position the schema doesn't know.
+     */
+    public String getColumnName(int columnIndex) {
+        return columnLayout.getColumnName(columnIndex);
+    }
 
-                if ((ck != null) && (ck.equals("PRI"))) {
-                    pkColumns.put(op, cn);
-                }
-            }
+    public String getColumnType(int columnIndex) {
+        return columnLayout.getColumnType(columnIndex);
+    }
 
-            TreeMap<Integer,String> pkColumnSortedByOP = new TreeMap<>();
-            pkColumnSortedByOP.putAll(pkColumns);
+    /**
+     * Value of an INSERT or DELETE row, or the value after an UPDATE.
+     */
+    public String getValue(int columnIndex) {
+        return columnLayout.render(values, columnIndex);
+    }
 
-            primaryKeyColumns.addAll(pkColumnSortedByOP.values());
+    /**
+     * Value before an UPDATE, null for other rows.
+     */
+    public String getValueBefore(int columnIndex) {
+        return valuesBefore == null ? null : columnLayout.render(valuesBefore, columnIndex);
+    }
+
+    /**
+     * UTF-8 bytes of {@link #getValue(int)}, without going through a String
+     * where the column converter doesn't need one.
+     */
+    public byte[] getValueBytes(int columnIndex) {
+        return getValueBytes(columnIndex, BlobEncoding.HEX);
+    }
+
+    /**
+     * Bytes of {@link #getValue(int)}, with binary values in the given blob
+     * encoding. UTF-8 character data is passed through as it came from the
+     * binlog.
+     */
+    public byte[] getValueBytes(int columnIndex, BlobEncoding blobEncoding) {
+        return columnLayout.toBytes(values, columnIndex, blobEncoding);
+    }
+
+    /**
+     * Whether the row has a value for the column: the row of an INSERT or
+     * DELETE, the row after an UPDATE.
+     *
+     * <p>With binlog_row_image FULL every column is there. With MINIMAL the
+     * row of a DELETE and the row before an UPDATE only have the primary key,
+     * the row after an UPDATE only the columns the UPDATE set. NOBLOB leaves
+     * out the blob and text columns that are not needed.</p>
+     */
+    public boolean isColumnPresent(int columnIndex) {
+        return values.isSet(columnIndex);
+    }
+
+    /**
+     * Whether an UPDATE changed the value of a column, as far as the string
+     * values are concerned. Typed values are compared first, so columns that
+     * stay the same are never rendered. A column the row after the update
+     * doesn't have did not change, one only the row after has did.
+     */
+    public boolean isColumnChanged(int columnIndex) {
+        if (valuesBefore == null || !values.isSet(columnIndex)) {
+            return false;
+        }
+        if (!valuesBefore.isSet(columnIndex)) {
+            return true;
+        }
+        if (RowImage.sameValue(valuesBefore, values, columnIndex)) {
+            return false;
         }
+        return !Objects.equals(getValueBefore(columnIndex), getValue(columnIndex));
     }
 
-    public String getEventType() {
-        return eventType;
+    /**
+     * Value of the named column, see {@link #getValue(int)}.
+     *
+     * @return  The value, or null if there is no such column
+     */
+    public String getValue(String columnName) {
+        int columnIndex = columnLayout.indexOf(columnName);
+        return columnIndex < 0 ? null : getValue(columnIndex);
     }
 
-    public BinlogEventV4Header getEventV4Header() {
-        return eventV4Header;
+    /**
+     * Value of the named column for identifying the row, like a primary key
+     * column: the value after an UPDATE if the row after has the column, the
+     * value before otherwise. Minimal row images of an UPDATE only have the
+     * primary key before the update.
+     *
+     * @return  The value, or null if there is no such column
+     */
+    public String getKeyValue(String columnName) {
+        int columnIndex = columnLayout.indexOf(columnName);
+        if (columnIndex < 0) {
+            return null;
+        }
+        if (valuesBefore != null && !values.isSet(columnIndex)) {
+            return getValueBefore(columnIndex);
+        }
+        return getValue(columnIndex);
     }
 
-    public String getRowBinlogPositionID() {
-        return this.rowBinlogPositionID;
+    @JsonIgnore
+    public ColumnLayout getColumnLayout() {
+        return columnLayout;
     }
 
-    public String getRowUUID() {
-        return rowUUID;
+    /**
+     * Typed values of an INSERT or DELETE row, or the values after an UPDATE.
+     */
+    @JsonIgnore
+    public RowImage getRowImage() {
+        return values;
     }
 
-    public String getTableName() {
-        return tableName;
+    /**
+     * Typed values before an UPDATE, null for other rows.
+     */
+    @JsonIgnore
+    public RowImage getRowImageBefore() {
+        return valuesBefore;
     }
 
+    /**
+     * Estimated heap size of the row in bytes, for memory accounting.
+     */
+    public long estimateSize() {
+        long size = ROW_OVERHEAD;
+        if (values != null) {
+            size += values.estimateSize();
+        }
+        if (valuesBefore != null) {
+            size += valuesBefore.estimateSize();
+        }
+        return size;
+    }
+
+    /**
+     * Column values in the original map form:
+     *
+     * <pre>
+     * column_name => { value => $v, type => $type }                            (INSERT/DELETE)
+     * column_name => { value_before => $v1, value_after => $v2, type => $type } (UPDATE)
+     * </pre>
+     *
+     * <p>Built from the arrays on first use, which is a lot more expensive than
+     * the indexed accessors. This is also the JSON form of the row.</p>
+     */
     public HashMap<String, Map<String, String>> getEventColumns() {
+        if (eventColumns == null) {
+            HashMap<String, Map<String, String>> columns = new HashMap<>();
+            for (int columnIndex = 0; columnIndex < values.size(); columnIndex++) {
+                String columnName = columnLayout.getColumnName(columnIndex);
+                if (columnName == null) {
+                    continue;
+                }
+                Map<String, String> cell = new HashMap<>();
+                if (valuesBefore != null) {
+                    if (valuesBefore.isSet(columnIndex) || values.isSet(columnIndex)) {
+                        cell.put("value_before", getValueBefore(columnIndex));
+                        cell.put("value_after", getValue(columnIndex));
+                        cell.put("type", columnLayout.getColumnType(columnIndex));
+                    }
+                } else if (values.isSet(columnIndex)) {
+                    cell.put("value", getValue(columnIndex));
+                    cell.put("type", columnLayout.getColumnType(columnIndex));
+                }
+                columns.put(columnName, cell);
+            }
+            eventColumns = columns;
+        }
         return eventColumns;
     }
 
+    @JsonProperty("eventColumns")
+    private void setEventColumns(Map<String, Map<String, String>> eventColumns) {
+        int size = eventColumns.size();
+        String[] columnNames = new String[size];
+        String[] columnTypes = new String[size];
+        values = new RowImage(size);
+
+        int columnIndex = 0;
+        for (Map.Entry<String, Map<String, String>> column : eventColumns.entrySet()) {
+            Map<String, String> cell = column.getValue();
+            columnNames[columnIndex] = column.getKey();
+            columnTypes[columnIndex] = cell.get("type");
+            if (cell.containsKey("value_before") || cell.containsKey("value_after")) {
+                if (valuesBefore == null) {
+                    valuesBefore = new RowImage(size);
+                }
+                valuesBefore.setObject(columnIndex, cell.get("value_before"));
+                values.setObject(columnIndex, cell.get("value_after"));
+            } else {
+                values.setObject(columnIndex, cell.get("value"));
+            }
+            columnIndex++;
+        }
+
+        columnLayout = new ColumnLayout(columnNames, columnTypes, new ArrayList<String>());
+        this.eventColumns = null;
+    }
+
     public TableSchemaVersion getTableSchemaVersion() {
         return tableSchemaVersion;
     }
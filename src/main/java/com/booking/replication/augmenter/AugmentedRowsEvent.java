@@ -21,6 +21,8 @@ public class AugmentedRowsEvent {
 
     private String binlogFileName;
 
+    private String transactionDatabaseName;
+
     public void addSingleRowEvent(AugmentedRow au) {
         singleRowEvents.add(au);
     }
@@ -44,4 +46,12 @@ public class AugmentedRowsEvent {
     public void setBinlogFileName(String binlogFileName) {
         this.binlogFileName = binlogFileName;
     }
+
+    public String getTransactionDatabaseName() {
+        return transactionDatabaseName;
+    }
+
+    public void setTransactionDatabaseName(String transactionDatabaseName) {
+        this.transactionDatabaseName = transactionDatabaseName;
+    }
 }
@@ -0,0 +1,91 @@
+package com.booking.replication.augmenter;
+
+import com.google.code.or.binlog.BinlogEventV4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Augmented rows of a transaction, from BEGIN to the XID or COMMIT that ends
+ * it, as assembled by a {@link TransactionAssembler}.
+ *
+ * <p>The rows are kept both as the rows events they came in and grouped by
+ * table, tables in the order of their first rows and rows in binlog order.
+ * Nothing changes once the transaction is assembled.</p>
+ *
+ * <p>A transaction with more rows than the assembler holds is handed over in
+ * parts. Only the last part has the commit event.</p>
+ */
+public final class AugmentedTransaction {
+
+    private final List<AugmentedRowsEvent>        rowsEvents;
+    private final Map<String, List<AugmentedRow>> rowsByTable;
+    private final int                             rowCount;
+    private final BinlogEventV4                   commitEvent;
+
+    // takes over the list of rows events
+    AugmentedTransaction(List<AugmentedRowsEvent> rowsEvents, BinlogEventV4 commitEvent) {
+        Map<String, List<AugmentedRow>> rowsByTable = new LinkedHashMap<>();
+        int rowCount = 0;
+        for (AugmentedRowsEvent rowsEvent : rowsEvents) {
+            List<AugmentedRow> rows = rowsEvent.getSingleRowEvents();
+            rowsByTable.computeIfAbsent(rowsEvent.getMysqlTableName(), table -> new ArrayList<>()).addAll(rows);
+            rowCount += rows.size();
+        }
+        for (Map.Entry<String, List<AugmentedRow>> table : rowsByTable.entrySet()) {
+            table.setValue(Collections.unmodifiableList(table.getValue()));
+        }
+
+        this.rowsEvents  = Collections.unmodifiableList(rowsEvents);
+        this.rowsByTable = Collections.unmodifiableMap(rowsByTable);
+        this.rowCount    = rowCount;
+        this.commitEvent = commitEvent;
+    }
+
+    /**
+     * Rows events of the transaction, in binlog order.
+     */
+    public List<AugmentedRowsEvent> getRowsEvents() {
+        return rowsEvents;
+    }
+
+    /**
+     * Rows of the transaction by MySQL table name.
+     */
+    public Map<String, List<AugmentedRow>> getRowsByTable() {
+        return rowsByTable;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * The XID event or COMMIT query that ends the transaction, null for a part
+     * of a transaction that isn't the last one.
+     */
+    public BinlogEventV4 getCommitEvent() {
+        return commitEvent;
+    }
+
+    /**
+     * Whether the transaction ends here, see {@link #getCommitEvent()}.
+     */
+    public boolean isCommitted() {
+        return commitEvent != null;
+    }
+
+    /**
+     * Database of the transaction, null if it has no rows.
+     */
+    public String getTransactionDatabaseName() {
+        return rowsEvents.isEmpty() ? null : rowsEvents.get(0).getTransactionDatabaseName();
+    }
+}
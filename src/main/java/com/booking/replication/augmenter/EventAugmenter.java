@@ -3,10 +3,11 @@ package com.booking.replication.augmenter;
 import static com.codahale.metrics.MetricRegistry.name;
 
 import com.booking.replication.Metrics;
-import com.booking.replication.pipeline.PipelineOrchestrator;
+import com.booking.replication.binlog.RawRowsEvent;
+import com.booking.replication.binlog.RowsEventReader;
+import com.booking.replication.pipeline.CurrentTransactionMetadata;
 import com.booking.replication.schema.ActiveSchemaVersion;
-import com.booking.replication.schema.column.ColumnSchema;
-import com.booking.replication.schema.column.types.Converter;
+import com.booking.replication.schema.column.types.ColumnConverter;
 import com.booking.replication.schema.exception.SchemaTransitionException;
 import com.booking.replication.schema.exception.TableMapException;
 import com.booking.replication.schema.table.TableSchemaVersion;
@@ -18,6 +19,7 @@ import com.google.code.or.binlog.impl.variable.status.QTimeZoneCode;
 import com.google.code.or.common.glossary.Column;
 import com.google.code.or.common.glossary.Pair;
 import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.column.BitColumn;
 import com.google.code.or.common.util.MySQLConstants;
 
 import com.codahale.metrics.Counter;
@@ -27,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * EventAugmenter
@@ -121,53 +125,66 @@ public class EventAugmenter {
      * <p>Maps raw binlog event to column names and types</p>
      *
      * @param  event               AbstractRowEvent
+     * @param  transactionMetadata Table map cache of the transaction the event belongs to
      * @return augmentedDataEvent  AugmentedRow
      */
-    public AugmentedRowsEvent mapDataEventToSchema(AbstractRowEvent event, PipelineOrchestrator caller) throws TableMapException {
+    public AugmentedRowsEvent mapDataEventToSchema(AbstractRowEvent event, CurrentTransactionMetadata transactionMetadata)
+            throws TableMapException {
 
         AugmentedRowsEvent au;
 
-        switch (event.getHeader().getEventType()) {
-
-            case MySQLConstants.UPDATE_ROWS_EVENT:
-                UpdateRowsEvent updateRowsEvent = ((UpdateRowsEvent) event);
-                au = augmentUpdateRowsEvent(updateRowsEvent, caller);
-                break;
-            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
-                UpdateRowsEventV2 updateRowsEventV2 = ((UpdateRowsEventV2) event);
-                au = augmentUpdateRowsEventV2(updateRowsEventV2, caller);
-                break;
-            case MySQLConstants.WRITE_ROWS_EVENT:
-                WriteRowsEvent writeRowsEvent = ((WriteRowsEvent) event);
-                au = augmentWriteRowsEvent(writeRowsEvent, caller);
-                break;
-            case MySQLConstants.WRITE_ROWS_EVENT_V2:
-                WriteRowsEventV2 writeRowsEventV2 = ((WriteRowsEventV2) event);
-                au = augmentWriteRowsEventV2(writeRowsEventV2, caller);
-                break;
-            case MySQLConstants.DELETE_ROWS_EVENT:
-                DeleteRowsEvent deleteRowsEvent = ((DeleteRowsEvent) event);
-                au = augmentDeleteRowsEvent(deleteRowsEvent, caller);
-                break;
-            case MySQLConstants.DELETE_ROWS_EVENT_V2:
-                DeleteRowsEventV2 deleteRowsEventV2 = ((DeleteRowsEventV2) event);
-                au = augmentDeleteRowsEventV2(deleteRowsEventV2, caller);
-                break;
-            default:
-                throw new TableMapException("RBR event type expected! Received type: " + event.getHeader().getEventType(), event);
+        if (event instanceof RawRowsEvent) {
+            au = augmentRawRowsEvent((RawRowsEvent) event, transactionMetadata);
+        } else {
+            switch (event.getHeader().getEventType()) {
+
+                case MySQLConstants.UPDATE_ROWS_EVENT:
+                    UpdateRowsEvent updateRowsEvent = ((UpdateRowsEvent) event);
+                    au = augmentUpdateRowsEvent(updateRowsEvent, transactionMetadata);
+                    break;
+                case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+                    UpdateRowsEventV2 updateRowsEventV2 = ((UpdateRowsEventV2) event);
+                    au = augmentUpdateRowsEventV2(updateRowsEventV2, transactionMetadata);
+                    break;
+                case MySQLConstants.WRITE_ROWS_EVENT:
+                    WriteRowsEvent writeRowsEvent = ((WriteRowsEvent) event);
+                    au = augmentWriteRowsEvent(writeRowsEvent, transactionMetadata);
+                    break;
+                case MySQLConstants.WRITE_ROWS_EVENT_V2:
+                    WriteRowsEventV2 writeRowsEventV2 = ((WriteRowsEventV2) event);
+                    au = augmentWriteRowsEventV2(writeRowsEventV2, transactionMetadata);
+                    break;
+                case MySQLConstants.DELETE_ROWS_EVENT:
+                    DeleteRowsEvent deleteRowsEvent = ((DeleteRowsEvent) event);
+                    au = augmentDeleteRowsEvent(deleteRowsEvent, transactionMetadata);
+                    break;
+                case MySQLConstants.DELETE_ROWS_EVENT_V2:
+                    DeleteRowsEventV2 deleteRowsEventV2 = ((DeleteRowsEventV2) event);
+                    au = augmentDeleteRowsEventV2(deleteRowsEventV2, transactionMetadata);
+                    break;
+                default:
+                    throw new TableMapException("RBR event type expected! Received type: " + event.getHeader().getEventType(), event);
+            }
         }
 
         if (au == null) {
             throw  new TableMapException("Augmented event ended up as null - something went wrong!", event);
         }
 
+        // Cross database transactions are not supported, so the database of the first
+        // table map event in the transaction is the database of the whole transaction.
+        au.setTransactionDatabaseName(
+                transactionMetadata.getFirstMapEventInTransaction().getDatabaseName().toString());
+
         return au;
     }
 
-    private AugmentedRowsEvent augmentWriteRowsEvent(WriteRowsEvent writeRowsEvent, PipelineOrchestrator caller) throws TableMapException {
+    private AugmentedRowsEvent augmentWriteRowsEvent(
+            WriteRowsEvent writeRowsEvent,
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
 
         // table name
-        String tableName =  caller.currentTransactionMetadata.getTableNameFromID(writeRowsEvent.getTableId());
+        String tableName =  transactionMetadata.getTableNameFromID(writeRowsEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -183,6 +200,9 @@ public class EventAugmenter {
 
         int numberOfColumns = writeRowsEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, writeRowsEvent);
+        checkUsedColumns(writeRowsEvent.getUsedColumns(), numberOfColumns, tableName, writeRowsEvent);
+
         // In write event there is only a List<Row> from getRows. No before after naturally.
 
         long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
@@ -203,21 +223,7 @@ public class EventAugmenter {
             tableMetrics.inserted.inc();
             tableMetrics.processed.inc();
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
-
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
-
-                // but here index goes from 0..
-                Column columnValue = row.getColumns().get(columnIndex - 1);
-
-                // We need schema for proper type casting
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
-
-                String value = Converter.orTypeToString(columnValue, columnSchema);
-
-                augEvent.addColumnDataForInsert(columnName, value, columnSchema.getColumnType());
-            }
+            extractRow(row, writeRowsEvent.getUsedColumns(), numberOfColumns, columnConverters, augEvent.getRowImage());
             augEventGroup.addSingleRowEvent(augEvent);
         }
 
@@ -228,10 +234,10 @@ public class EventAugmenter {
     // Same as for V1 write event. There is some extra data in V2, but not sure if we can use it.
     private AugmentedRowsEvent augmentWriteRowsEventV2(
             WriteRowsEventV2 writeRowsEvent,
-            PipelineOrchestrator caller) throws TableMapException {
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
 
         // table name
-        String tableName = caller.currentTransactionMetadata.getTableNameFromID(writeRowsEvent.getTableId());
+        String tableName = transactionMetadata.getTableNameFromID(writeRowsEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -245,6 +251,9 @@ public class EventAugmenter {
 
         int numberOfColumns = writeRowsEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, writeRowsEvent);
+        checkUsedColumns(writeRowsEvent.getUsedColumns(), numberOfColumns, tableName, writeRowsEvent);
+
         AugmentedRowsEvent augEventGroup = new AugmentedRowsEvent(writeRowsEvent);
         augEventGroup.setMysqlTableName(tableName);
 
@@ -263,23 +272,7 @@ public class EventAugmenter {
                 writeRowsEvent.getHeader()
             );
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
-
-                // getValue column name from indexToNameMap
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
-
-                // but here index goes from 0..
-                Column columnValue = row.getColumns().get(columnIndex - 1);
-
-                // We need schema for proper type casting
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
-
-                // type cast
-                String value = Converter.orTypeToString(columnValue, columnSchema);
-
-                augEvent.addColumnDataForInsert(columnName, value, columnSchema.getColumnType());
-            }
+            extractRow(row, writeRowsEvent.getUsedColumns(), numberOfColumns, columnConverters, augEvent.getRowImage());
             augEventGroup.addSingleRowEvent(augEvent);
 
             tableMetrics.inserted.inc();
@@ -289,11 +282,11 @@ public class EventAugmenter {
         return augEventGroup;
     }
 
-    private AugmentedRowsEvent augmentDeleteRowsEvent(DeleteRowsEvent deleteRowsEvent, PipelineOrchestrator pipeline)
+    private AugmentedRowsEvent augmentDeleteRowsEvent(DeleteRowsEvent deleteRowsEvent, CurrentTransactionMetadata transactionMetadata)
             throws TableMapException {
 
         // table name
-        String tableName = pipeline.currentTransactionMetadata.getTableNameFromID(deleteRowsEvent.getTableId());
+        String tableName = transactionMetadata.getTableNameFromID(deleteRowsEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -309,6 +302,9 @@ public class EventAugmenter {
 
         int numberOfColumns = deleteRowsEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, deleteRowsEvent);
+        checkUsedColumns(deleteRowsEvent.getUsedColumns(), numberOfColumns, tableName, deleteRowsEvent);
+
         long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
         for (Row row : deleteRowsEvent.getRows()) {
 
@@ -323,21 +319,7 @@ public class EventAugmenter {
                     deleteRowsEvent.getHeader()
             );
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
-
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
-
-                // but here index goes from 0..
-                Column columnValue = row.getColumns().get(columnIndex - 1);
-
-                // We need schema for proper type casting
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
-
-                String value = Converter.orTypeToString(columnValue, columnSchema);
-
-                augEvent.addColumnDataForInsert(columnName, value, columnSchema.getColumnType());
-            }
+            extractRow(row, deleteRowsEvent.getUsedColumns(), numberOfColumns, columnConverters, augEvent.getRowImage());
             augEventGroup.addSingleRowEvent(augEvent);
 
             tableMetrics.processed.inc();
@@ -350,9 +332,9 @@ public class EventAugmenter {
     // For now this is the same as for V1 event.
     private AugmentedRowsEvent augmentDeleteRowsEventV2(
             DeleteRowsEventV2 deleteRowsEvent,
-            PipelineOrchestrator caller) throws TableMapException {
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
         // table name
-        String tableName = caller.currentTransactionMetadata.getTableNameFromID(deleteRowsEvent.getTableId());
+        String tableName = transactionMetadata.getTableNameFromID(deleteRowsEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -369,6 +351,9 @@ public class EventAugmenter {
 
         int numberOfColumns = deleteRowsEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, deleteRowsEvent);
+        checkUsedColumns(deleteRowsEvent.getUsedColumns(), numberOfColumns, tableName, deleteRowsEvent);
+
         long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
         for (Row row : deleteRowsEvent.getRows()) {
 
@@ -384,22 +369,7 @@ public class EventAugmenter {
                     deleteRowsEvent.getHeader()
             );
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
-
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
-
-                // but here index goes from 0..
-                Column columnValue = row.getColumns().get(columnIndex - 1);
-
-                // We need schema for proper type casting
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
-
-                String value = Converter.orTypeToString(columnValue, columnSchema);
-
-                // TODO: delete has same content as insert, but add a differently named method for clarity
-                augEvent.addColumnDataForInsert(columnName, value, columnSchema.getColumnType());
-            }
+            extractRow(row, deleteRowsEvent.getUsedColumns(), numberOfColumns, columnConverters, augEvent.getRowImage());
             augEventGroup.addSingleRowEvent(augEvent);
 
             tableMetrics.deleted.inc();
@@ -409,10 +379,12 @@ public class EventAugmenter {
         return augEventGroup;
     }
 
-    private AugmentedRowsEvent augmentUpdateRowsEvent(UpdateRowsEvent upEvent, PipelineOrchestrator caller) throws TableMapException {
+    private AugmentedRowsEvent augmentUpdateRowsEvent(
+            UpdateRowsEvent upEvent,
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
 
         // table name
-        String tableName = caller.currentTransactionMetadata.getTableNameFromID(upEvent.getTableId());
+        String tableName = transactionMetadata.getTableNameFromID(upEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -429,6 +401,10 @@ public class EventAugmenter {
 
         int numberOfColumns = upEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, upEvent);
+        checkUsedColumns(upEvent.getUsedColumnsBefore(), numberOfColumns, tableName, upEvent);
+        checkUsedColumns(upEvent.getUsedColumnsAfter(), numberOfColumns, tableName, upEvent);
+
         long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
 
         // rowPair is pair <rowBeforeChange, rowAfterChange>
@@ -446,26 +422,11 @@ public class EventAugmenter {
                 upEvent.getHeader()
             );
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
-
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
-
-                // but here index goes from 0..
-                Column columnValueBefore = rowPair.getBefore().getColumns().get(columnIndex - 1);
-                Column columnValueAfter = rowPair.getAfter().getColumns().get(columnIndex - 1);
-
-                // We need schema for proper type casting; Since this is RowChange event, schema
-                // is the same for both before and after states
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
-
-                String valueBefore = Converter.orTypeToString(columnValueBefore, columnSchema);
-                String valueAfter  = Converter.orTypeToString(columnValueAfter, columnSchema);
-
-                String columnType  = columnSchema.getColumnType();
-
-                augEvent.addColumnDataForUpdate(columnName, valueBefore, valueAfter, columnType);
-            }
+            // schema is the same for both before and after states
+            extractRow(rowPair.getBefore(), upEvent.getUsedColumnsBefore(), numberOfColumns, columnConverters,
+                    augEvent.getRowImageBefore());
+            extractRow(rowPair.getAfter(), upEvent.getUsedColumnsAfter(), numberOfColumns, columnConverters,
+                    augEvent.getRowImage());
             augEventGroup.addSingleRowEvent(augEvent);
 
             tableMetrics.processed.inc();
@@ -476,10 +437,12 @@ public class EventAugmenter {
     }
 
     // For now this is the same as V1. Not sure if the extra info in V2 can be of use to us.
-    private AugmentedRowsEvent augmentUpdateRowsEventV2(UpdateRowsEventV2 upEvent, PipelineOrchestrator caller) throws TableMapException {
+    private AugmentedRowsEvent augmentUpdateRowsEventV2(
+            UpdateRowsEventV2 upEvent,
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
 
         // table name
-        String tableName = caller.currentTransactionMetadata.getTableNameFromID(upEvent.getTableId());
+        String tableName = transactionMetadata.getTableNameFromID(upEvent.getTableId());
 
         PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
@@ -496,6 +459,10 @@ public class EventAugmenter {
 
         int numberOfColumns = upEvent.getColumnCount().intValue();
 
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, upEvent);
+        checkUsedColumns(upEvent.getUsedColumnsBefore(), numberOfColumns, tableName, upEvent);
+        checkUsedColumns(upEvent.getUsedColumnsAfter(), numberOfColumns, tableName, upEvent);
+
         long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
 
         // rowPair is pair <rowBeforeChange, rowAfterChange>
@@ -513,52 +480,180 @@ public class EventAugmenter {
                 upEvent.getHeader()
             );
 
-            //column index counting starts with 1
-            for (int columnIndex = 1; columnIndex <= numberOfColumns ; columnIndex++ ) {
+            try {
+                extractRow(rowPair.getBefore(), upEvent.getUsedColumnsBefore(), numberOfColumns, columnConverters,
+                    augEvent.getRowImageBefore());
+                extractRow(rowPair.getAfter(), upEvent.getUsedColumnsAfter(), numberOfColumns, columnConverters,
+                    augEvent.getRowImage());
+            } catch (TableMapException e) {
+                TableMapException rethrow = new TableMapException(e.getMessage(), upEvent);
+                rethrow.setStackTrace(e.getStackTrace());
+                throw rethrow;
+            }
+            augEventGroup.addSingleRowEvent(augEvent);
 
-                String columnName = tableSchemaVersion.getColumnIndexToNameMap().get(columnIndex);
+            tableMetrics.processed.inc();
+            tableMetrics.updated.inc();
+        }
+        return augEventGroup;
+    }
 
-                if (columnName == null) {
-                    LOGGER.error("null columnName for { columnIndex => " + columnIndex + ", tableName => " + tableName + " }" );
-                    throw new TableMapException("columnName cant be null", upEvent);
-                }
+    /**
+     * Augment a V2 rows event the replicator parsed itself: the rows are
+     * decoded straight into the row images of the augmented rows.
+     */
+    private AugmentedRowsEvent augmentRawRowsEvent(
+            RawRowsEvent rowsEvent,
+            CurrentTransactionMetadata transactionMetadata) throws TableMapException {
 
-                // but here index goes from 0..
-                Column columnValueBefore = rowPair.getBefore().getColumns().get(columnIndex - 1);
-                Column columnValueAfter = rowPair.getAfter().getColumns().get(columnIndex - 1);
+        // table name
+        String tableName = transactionMetadata.getTableNameFromID(rowsEvent.getTableId());
 
-                // We need schema for proper type casting
-                ColumnSchema columnSchema = tableSchemaVersion.getColumnSchemaByColumnName(columnName);
+        PerTableMetrics tableMetrics = PerTableMetrics.get(tableName);
 
-                try {
-                    String valueBefore = Converter.orTypeToString(columnValueBefore, columnSchema);
-                    String valueAfter  = Converter.orTypeToString(columnValueAfter, columnSchema);
-                    String columnType  = columnSchema.getColumnType();
+        // getValue schema for that table from activeSchemaVersion
+        TableSchemaVersion tableSchemaVersion = activeSchemaVersion.getActiveSchemaTables().get(tableName);
 
-                    augEvent.addColumnDataForUpdate(columnName, valueBefore, valueAfter, columnType);
-                } catch (TableMapException e) {
-                    TableMapException rethrow = new TableMapException(e.getMessage(), upEvent);
-                    rethrow.setStackTrace(e.getStackTrace());
-                    throw rethrow;
-                }
+        if (tableSchemaVersion == null) {
+            throw new TableMapException("Table schema not initialized for table " + tableName + ". Cant proceed.", rowsEvent);
+        }
+
+        AugmentedRowsEvent augEventGroup = new AugmentedRowsEvent(rowsEvent);
+        augEventGroup.setMysqlTableName(tableName);
+
+        int numberOfColumns = rowsEvent.getColumnCount();
+
+        ColumnConverter[] columnConverters = getColumnConverters(tableSchemaVersion, numberOfColumns, tableName, rowsEvent);
+
+        String  evType;
+        Counter typeCounter;
+        switch (rowsEvent.getHeader().getEventType()) {
+            case MySQLConstants.WRITE_ROWS_EVENT_V2:
+                evType = "INSERT";
+                typeCounter = tableMetrics.inserted;
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+                evType = "UPDATE";
+                typeCounter = tableMetrics.updated;
+                break;
+            default:
+                evType = "DELETE";
+                typeCounter = tableMetrics.deleted;
+                break;
+        }
+
+        RowsEventReader rowsEventReader = new RowsEventReader(rowsEvent);
+
+        long rowBinlogEventOrdinal = 0; // order of the row in the binlog event
+        while (rowsEventReader.hasNext()) {
+
+            rowBinlogEventOrdinal++;
+
+            AugmentedRow augEvent = new AugmentedRow(
+                    augEventGroup.getBinlogFileName(),
+                    rowBinlogEventOrdinal,
+                    tableName,
+                    tableSchemaVersion,
+                    evType,
+                    rowsEvent.getHeader()
+            );
+
+            // update rows come as <rowBeforeChange, rowAfterChange>
+            if (rowsEvent.isUpdate()) {
+                rowsEventReader.readImage(rowsEvent.getUsedColumns(), columnConverters, augEvent.getRowImageBefore());
+                rowsEventReader.readImage(rowsEvent.getUsedColumnsAfter(), columnConverters, augEvent.getRowImage());
+            } else {
+                rowsEventReader.readImage(rowsEvent.getUsedColumns(), columnConverters, augEvent.getRowImage());
             }
             augEventGroup.addSingleRowEvent(augEvent);
 
+            typeCounter.inc();
             tableMetrics.processed.inc();
-            tableMetrics.updated.inc();
         }
+
         return augEventGroup;
     }
 
+    /**
+     * Extract an Open Replicator row into a row image.
+     *
+     * <p>With binlog_row_image MINIMAL or NOBLOB a row image only has some of
+     * the columns of the table, the ones set in the used columns bitmap of the
+     * event. Open Replicator leaves the others out of the row, so the columns of
+     * the row are the used columns in order. The others stay unset in the
+     * image.</p>
+     */
+    private static void extractRow(
+            Row row,
+            BitColumn usedColumns,
+            int numberOfColumns,
+            ColumnConverter[] columnConverters,
+            RowImage image) throws TableMapException {
+
+        List<Column> columns = row.getColumns();
+        int rowIndex = 0;
+        for (int columnIndex = 0; columnIndex < numberOfColumns; columnIndex++) {
+            if (usedColumns.get(columnIndex)) {
+                columnConverters[columnIndex].extract(columns.get(rowIndex++), image, columnIndex);
+            }
+        }
+    }
+
+    /**
+     * Open Replicator reads the NULL bitmap of a row with a bit per column of
+     * the table, while MySQL writes a bit per column in the image. Partial
+     * images whose NULL bitmap is shorter than that are misread, so refuse
+     * them rather than apply garbage. The replicator rows decoder reads them
+     * right.
+     */
+    private static void checkUsedColumns(
+            BitColumn usedColumns,
+            int numberOfColumns,
+            String tableName,
+            BinlogEventV4 event) throws TableMapException {
+
+        int usedCount = 0;
+        for (int columnIndex = 0; columnIndex < numberOfColumns; columnIndex++) {
+            if (usedColumns.get(columnIndex)) {
+                usedCount++;
+            }
+        }
+        if ((usedCount + 7) >> 3 != (numberOfColumns + 7) >> 3) {
+            throw new TableMapException(
+                    "Open Replicator can't read partial row images of " + tableName + ", use the replicator rows decoder",
+                    event
+            );
+        }
+    }
+
+    /**
+     * Column converters of the table, checked against the number of columns in the event.
+     */
+    private static ColumnConverter[] getColumnConverters(
+            TableSchemaVersion tableSchemaVersion,
+            int numberOfColumns,
+            String tableName,
+            BinlogEventV4 event) throws TableMapException {
+
+        ColumnConverter[] columnConverters = tableSchemaVersion.getColumnConverters();
+
+        for (int columnIndex = 0; columnIndex < numberOfColumns; columnIndex++) {
+            if (columnIndex >= columnConverters.length || columnConverters[columnIndex] == null) {
+                LOGGER.error("null columnName for { columnIndex => " + (columnIndex + 1) + ", tableName => " + tableName + " }");
+                throw new TableMapException("columnName cant be null", event);
+            }
+        }
+
+        return columnConverters;
+    }
+
     private static class PerTableMetrics {
         private static String prefix = "mysql";
-        private static HashMap<String, PerTableMetrics> tableMetricsHash = new HashMap<>();
+        // rows may be augmented by several worker threads at once
+        private static ConcurrentHashMap<String, PerTableMetrics> tableMetricsHash = new ConcurrentHashMap<>();
 
         static PerTableMetrics get(String tableName) {
-            if (! tableMetricsHash.containsKey(tableName)) {
-                tableMetricsHash.put(tableName, new PerTableMetrics(tableName));
-            }
-            return tableMetricsHash.get(tableName);
+            return tableMetricsHash.computeIfAbsent(tableName, PerTableMetrics::new);
         }
 
         final Counter inserted;
@@ -0,0 +1,115 @@
+package com.booking.replication.augmenter;
+
+import java.util.Arrays;
+
+/**
+ * Typed column values of one row image, indexed by ordinal position - 1.
+ *
+ * <p>Whole numbers, enum and set values, float and double bits and timestamps
+ * (as epoch microseconds) are kept as primitive longs. Character and binary
+ * data is kept as the raw bytes from the binlog, decimals as BigDecimal and the
+ * remaining temporal types as the Date objects the binlog parser produced.
+ * What the values mean is up to the column converter that put them there; it
+ * is also the one to render them as strings, which is only done when a sink
+ * asks for it.</p>
+ *
+ * <p>A cell is either unset (the row image doesn't have the column), SQL NULL,
+ * a long or an object.</p>
+ */
+public class RowImage {
+
+    // markers in the objects array
+    private static final Object NULL_VALUE = new Object();
+    private static final Object LONG_VALUE = new Object();
+
+    // rough heap sizes for estimateSize()
+    private static final long ARRAY_OVERHEAD  = 16;
+    private static final long REFERENCE_SIZE  = 8;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long OBJECT_SIZE     = 48;
+
+    private final long[]   longs;
+    private final Object[] objects;
+
+    public RowImage(int size) {
+        this.longs   = new long[size];
+        this.objects = new Object[size];
+    }
+
+    public int size() {
+        return objects.length;
+    }
+
+    public void setLong(int index, long value) {
+        longs[index] = value;
+        objects[index] = LONG_VALUE;
+    }
+
+    public void setObject(int index, Object value) {
+        objects[index] = value;
+    }
+
+    public void setNull(int index) {
+        objects[index] = NULL_VALUE;
+    }
+
+    public boolean isSet(int index) {
+        return objects[index] != null;
+    }
+
+    public boolean isNull(int index) {
+        return objects[index] == NULL_VALUE;
+    }
+
+    public boolean isLong(int index) {
+        return objects[index] == LONG_VALUE;
+    }
+
+    public long getLong(int index) {
+        return longs[index];
+    }
+
+    /**
+     * Object value of a cell, null if the cell is unset, NULL or a long.
+     */
+    public Object getObject(int index) {
+        Object value = objects[index];
+        return value == NULL_VALUE || value == LONG_VALUE ? null : value;
+    }
+
+    /**
+     * Estimated heap size of the image in bytes.
+     */
+    public long estimateSize() {
+        long size = ARRAY_OVERHEAD * 2 + (long) longs.length * 8 + (long) objects.length * REFERENCE_SIZE;
+        for (Object value : objects) {
+            if (value == null || value == NULL_VALUE || value == LONG_VALUE) {
+                continue;
+            }
+            if (value instanceof byte[]) {
+                size += ARRAY_OVERHEAD + ((byte[]) value).length;
+            } else if (value instanceof String) {
+                size += STRING_OVERHEAD + 2L * ((String) value).length();
+            } else {
+                size += OBJECT_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Whether a cell holds the same value in both images.
+     */
+    public static boolean sameValue(RowImage first, RowImage second, int index) {
+        Object firstValue = first.objects[index];
+        Object secondValue = second.objects[index];
+        if (firstValue == LONG_VALUE) {
+            return secondValue == LONG_VALUE && first.longs[index] == second.longs[index];
+        } else if (firstValue instanceof byte[] && secondValue instanceof byte[]) {
+            return Arrays.equals((byte[]) firstValue, (byte[]) secondValue);
+        } else if (firstValue == null) {
+            return secondValue == null;
+        }
+        return firstValue.equals(secondValue);
+    }
+}
@@ -0,0 +1,177 @@
+package com.booking.replication.augmenter;
+
+import java.util.UUID;
+
+/**
+ * Binlog coordinates of a row: binlog file, position of the rows event in the
+ * file and ordinal of the row.
+ *
+ * <p>Rows compare by the numeric index of the binlog file (mysql-bin.000042
+ * has index 42), then by position, then by ordinal, which is binlog order.
+ * The string form is the row binlog position id,
+ * {@code <binlog file name>:<position>:<ordinal>} with zero padded numbers,
+ * so that the strings sort the same way within a binlog file name prefix.
+ * It is only built when a sink asks for it.</p>
+ */
+public class RowPosition implements Comparable<RowPosition> {
+
+    private static final int NUMBER_WIDTH = 20;
+
+    private final String binlogFileName;
+    private final long   binlogFileIndex;
+    private final long   position;
+    private final long   rowOrdinal;
+
+    private String positionId;
+
+    /**
+     * Row position.
+     *
+     * @param binlogFileName    Name of the binlog file that contains the row
+     * @param position          Position of the rows event in the binlog file
+     * @param rowOrdinal        Order of the row in the binlog event that contains it
+     */
+    public RowPosition(String binlogFileName, long position, long rowOrdinal) {
+        this.binlogFileName  = binlogFileName;
+        this.binlogFileIndex = binlogFileIndex(binlogFileName);
+        this.position        = position;
+        this.rowOrdinal      = rowOrdinal;
+    }
+
+    /**
+     * Parse a row binlog position id.
+     *
+     * @param positionId    String form of a row position
+     * @return              The row position
+     */
+    public static RowPosition fromString(String positionId) {
+        int ordinalSeparator = positionId.lastIndexOf(':');
+        int positionSeparator = positionId.lastIndexOf(':', ordinalSeparator - 1);
+        if (positionSeparator < 0) {
+            throw new IllegalArgumentException("Not a row binlog position id: " + positionId);
+        }
+        RowPosition rowPosition = new RowPosition(
+                positionId.substring(0, positionSeparator),
+                Long.parseLong(positionId.substring(positionSeparator + 1, ordinalSeparator)),
+                Long.parseLong(positionId.substring(ordinalSeparator + 1))
+        );
+        rowPosition.positionId = positionId;
+        return rowPosition;
+    }
+
+    /**
+     * Numeric suffix of a binlog file name, -1 if there is none.
+     */
+    static long binlogFileIndex(String binlogFileName) {
+        if (binlogFileName == null) {
+            return -1;
+        }
+        int start = binlogFileName.lastIndexOf('.') + 1;
+        if (start == 0 || start == binlogFileName.length()) {
+            return -1;
+        }
+        long index = 0;
+        for (int i = start; i < binlogFileName.length(); i++) {
+            char digit = binlogFileName.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            index = index * 10 + (digit - '0');
+        }
+        return index;
+    }
+
+    public String getBinlogFileName() {
+        return binlogFileName;
+    }
+
+    public long getBinlogFileIndex() {
+        return binlogFileIndex;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getRowOrdinal() {
+        return rowOrdinal;
+    }
+
+    /**
+     * Row UUID derived from the coordinates: the same row always gets the same UUID.
+     */
+    public UUID toUUID() {
+        return new UUID(binlogFileIndex << 32 | (position & 0xffffffffL), rowOrdinal);
+    }
+
+    @Override
+    public int compareTo(RowPosition other) {
+        int result;
+        if (binlogFileIndex >= 0 && other.binlogFileIndex >= 0) {
+            result = Long.compare(binlogFileIndex, other.binlogFileIndex);
+        } else {
+            result = String.valueOf(binlogFileName).compareTo(String.valueOf(other.binlogFileName));
+        }
+        if (result == 0) {
+            result = Long.compare(position, other.position);
+        }
+        if (result == 0) {
+            result = Long.compare(rowOrdinal, other.rowOrdinal);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof RowPosition)) {
+            return false;
+        }
+        RowPosition that = (RowPosition) other;
+        return position == that.position
+                && rowOrdinal == that.rowOrdinal
+                && String.valueOf(binlogFileName).equals(String.valueOf(that.binlogFileName));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = binlogFileName == null ? 0 : binlogFileName.hashCode();
+        result = 31 * result + Long.hashCode(position);
+        result = 31 * result + Long.hashCode(rowOrdinal);
+        return result;
+    }
+
+    /**
+     * The row binlog position id.
+     */
+    @Override
+    public String toString() {
+        String id = positionId;
+        if (id == null) {
+            StringBuilder builder = new StringBuilder(
+                    (binlogFileName == null ? 4 : binlogFileName.length()) + 2 * NUMBER_WIDTH + 2);
+            builder.append(binlogFileName).append(':');
+            appendPadded(builder, position);
+            builder.append(':');
+            appendPadded(builder, rowOrdinal);
+            id = builder.toString();
+            positionId = id;
+        }
+        return id;
+    }
+
+    // same as %020d
+    private static void appendPadded(StringBuilder builder, long value) {
+        if (value < 0) {
+            builder.append(String.format("%020d", value));
+            return;
+        }
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < NUMBER_WIDTH; i++) {
+            builder.append('0');
+        }
+        builder.append(digits);
+    }
+}
@@ -0,0 +1,73 @@
+package com.booking.replication.augmenter;
+
+import com.google.code.or.binlog.BinlogEventV4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the augmented rows events of the open transaction until the event
+ * that commits it, and hands them over as one {@link AugmentedTransaction}.
+ *
+ * <p>Rows are held until the commit, so a transaction that grows past the
+ * row limit is handed over in parts instead: the appliers buffered big
+ * transactions across tasks before, and still do.</p>
+ *
+ * <p>Not thread safe, meant for the thread that applies the events.</p>
+ */
+public class TransactionAssembler {
+
+    public static final int DEFAULT_MAX_ROWS = 10000;
+
+    private final int maxRows;
+
+    private List<AugmentedRowsEvent> rowsEvents = new ArrayList<>();
+    private int                      rowCount   = 0;
+
+    public TransactionAssembler() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Assembler that holds at most about maxRows rows of a transaction.
+     */
+    public TransactionAssembler(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Add a rows event to the open transaction.
+     *
+     * @return  The rows of the transaction so far if they reached the row
+     *          limit, to apply now, or null
+     */
+    public AugmentedTransaction add(AugmentedRowsEvent rowsEvent) {
+        rowsEvents.add(rowsEvent);
+        rowCount += rowsEvent.getSingleRowEvents().size();
+        return rowCount >= maxRows ? take(null) : null;
+    }
+
+    /**
+     * End the open transaction.
+     *
+     * @param commitEvent   The XID event or COMMIT query that ends it
+     * @return              The rows of the transaction not handed over yet
+     */
+    public AugmentedTransaction commit(BinlogEventV4 commitEvent) {
+        return take(commitEvent);
+    }
+
+    /**
+     * Rows of the open transaction not handed over yet.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    private AugmentedTransaction take(BinlogEventV4 commitEvent) {
+        AugmentedTransaction transaction = new AugmentedTransaction(rowsEvents, commitEvent);
+        rowsEvents = new ArrayList<>();
+        rowCount   = 0;
+        return transaction;
+    }
+}
@@ -0,0 +1,162 @@
+package com.booking.replication.binlog;
+
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.column.BitColumn;
+import com.google.code.or.common.glossary.column.BlobColumn;
+import com.google.code.or.common.glossary.column.DateColumn;
+import com.google.code.or.common.glossary.column.Datetime2Column;
+import com.google.code.or.common.glossary.column.DatetimeColumn;
+import com.google.code.or.common.glossary.column.DecimalColumn;
+import com.google.code.or.common.glossary.column.DoubleColumn;
+import com.google.code.or.common.glossary.column.EnumColumn;
+import com.google.code.or.common.glossary.column.FloatColumn;
+import com.google.code.or.common.glossary.column.Int24Column;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.LongLongColumn;
+import com.google.code.or.common.glossary.column.SetColumn;
+import com.google.code.or.common.glossary.column.ShortColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.glossary.column.Time2Column;
+import com.google.code.or.common.glossary.column.TimeColumn;
+import com.google.code.or.common.glossary.column.Timestamp2Column;
+import com.google.code.or.common.glossary.column.TimestampColumn;
+import com.google.code.or.common.glossary.column.TinyColumn;
+import com.google.code.or.common.glossary.column.YearColumn;
+import com.google.code.or.common.util.CodecUtils;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.MySQLUtils;
+
+import java.util.Arrays;
+
+/**
+ * One non NULL cell of a row image, as read from the rows event by a
+ * {@link RowsEventReader}. The reader reuses the same cell for every value.
+ *
+ * <p>Numbers, enum and set indexes, dates, times and the whole seconds of
+ * timestamps are read into a long, the fractional seconds of the temporal
+ * types into {@link #getFraction()}. Character, binary, bit and decimal data
+ * is left in the event buffer, see {@link #getOffset()} and
+ * {@link #getLength()}.</p>
+ */
+public final class BinlogCell {
+
+    int    type;
+    int    metadata;
+    long   longValue;
+    int    fraction;
+    byte[] buffer;
+    int    offset;
+    int    length;
+
+    /**
+     * Binlog column type, MySQLConstants.TYPE_*. For CHAR, ENUM and SET
+     * columns this is the real type, not the TYPE_STRING of the table map.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Column metadata from the table map event.
+     */
+    public int getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Integer value: the number, the raw float or double bits, the enum or set
+     * index, the packed date, time or datetime or the seconds of a timestamp.
+     */
+    public long getLong() {
+        return longValue;
+    }
+
+    /**
+     * Fractional seconds part of a TIME2, DATETIME2 or TIMESTAMP2 value, as stored.
+     */
+    public int getFraction() {
+        return fraction;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Offset of the value in the buffer, after any length prefix.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copy of the value bytes.
+     */
+    public byte[] copyBytes() {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+
+    /**
+     * The Open Replicator column for the value, same as the one its row event
+     * parsers would have produced.
+     */
+    public Column toColumn() throws TableMapException {
+        switch (type) {
+            case MySQLConstants.TYPE_TINY:
+                return TinyColumn.valueOf((int) longValue);
+            case MySQLConstants.TYPE_SHORT:
+                return ShortColumn.valueOf((int) longValue);
+            case MySQLConstants.TYPE_INT24:
+                return Int24Column.valueOf((int) longValue);
+            case MySQLConstants.TYPE_LONG:
+                return LongColumn.valueOf((int) longValue);
+            case MySQLConstants.TYPE_LONGLONG:
+                return LongLongColumn.valueOf(longValue);
+            case MySQLConstants.TYPE_FLOAT:
+                return FloatColumn.valueOf(Float.intBitsToFloat((int) longValue));
+            case MySQLConstants.TYPE_DOUBLE:
+                return DoubleColumn.valueOf(Double.longBitsToDouble(longValue));
+            case MySQLConstants.TYPE_YEAR:
+                return YearColumn.valueOf((int) longValue);
+            case MySQLConstants.TYPE_DATE:
+                return DateColumn.valueOf(MySQLUtils.toDate((int) longValue));
+            case MySQLConstants.TYPE_TIME:
+                return TimeColumn.valueOf(MySQLUtils.toTime((int) longValue));
+            case MySQLConstants.TYPE_DATETIME:
+                return DatetimeColumn.valueOf(longValue);
+            case MySQLConstants.TYPE_TIMESTAMP:
+                return TimestampColumn.valueOf(MySQLUtils.toTimestamp(longValue));
+            case MySQLConstants.TYPE_ENUM:
+                return EnumColumn.valueOf((int) longValue);
+            case MySQLConstants.TYPE_SET:
+                return SetColumn.valueOf(longValue);
+            case MySQLConstants.TYPE_BIT:
+                int bitCount = (metadata >> 8) * 8 + (metadata & 0xff);
+                return BitColumn.valueOf(bitCount, CodecUtils.toBigEndian(copyBytes()));
+            case MySQLConstants.TYPE_BLOB:
+                return BlobColumn.valueOf(copyBytes());
+            case MySQLConstants.TYPE_NEWDECIMAL:
+                int precision = metadata & 0xff;
+                int scale = metadata >> 8;
+                return DecimalColumn.valueOf(MySQLUtils.toDecimal(precision, scale, copyBytes()), precision, scale);
+            case MySQLConstants.TYPE_STRING:
+            case MySQLConstants.TYPE_VARCHAR:
+            case MySQLConstants.TYPE_VAR_STRING:
+                return StringColumn.valueOf(copyBytes());
+            case MySQLConstants.TYPE_TIME2:
+                return Time2Column.valueOf(MySQLUtils.toTime2((int) longValue, fraction));
+            case MySQLConstants.TYPE_DATETIME2:
+                return Datetime2Column.valueOf(MySQLUtils.toDatetime2(longValue, fraction));
+            case MySQLConstants.TYPE_TIMESTAMP2:
+                return Timestamp2Column.valueOf(MySQLUtils.toTimestamp2(longValue, fraction));
+            default:
+                throw new TableMapException("Unknown column type " + type);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.booking.replication.binlog;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.impl.event.AbstractRowEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * WRITE_ROWS_EVENT_V2, UPDATE_ROWS_EVENT_V2 or DELETE_ROWS_EVENT_V2 with the
+ * rows still in binlog format.
+ *
+ * <p>The Open Replicator parsers turn every row into a list of column objects
+ * as soon as the event is read, only for the augmenter to convert them to row
+ * images and drop them. This event keeps the rows as the bytes they came in,
+ * along with the table map event they were written with, and a
+ * {@link RowsEventReader} decodes them straight into row images when the event
+ * is augmented. Events of tables that are not replicated are never decoded.</p>
+ *
+ * <p>The header keeps the binlog event type, so the pipeline handles the
+ * event like any other rows event.</p>
+ */
+public class RawRowsEvent extends AbstractRowEvent {
+
+    private int           columnCount;
+    private byte[]        usedColumns;
+    private byte[]        usedColumnsAfter;
+    private TableMapEvent tableMapEvent;
+    private byte[]        rows;
+
+    public RawRowsEvent() {
+    }
+
+    public RawRowsEvent(BinlogEventV4Header header) {
+        this.header = header;
+    }
+
+    public boolean isUpdate() {
+        return header.getEventType() == MySQLConstants.UPDATE_ROWS_EVENT_V2;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public void setColumnCount(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * Bitmap of the columns in the row images, of the before images for updates.
+     */
+    public byte[] getUsedColumns() {
+        return usedColumns;
+    }
+
+    public void setUsedColumns(byte[] usedColumns) {
+        this.usedColumns = usedColumns;
+    }
+
+    /**
+     * Bitmap of the columns in the after images of updates, null for other events.
+     */
+    public byte[] getUsedColumnsAfter() {
+        return usedColumnsAfter;
+    }
+
+    public void setUsedColumnsAfter(byte[] usedColumnsAfter) {
+        this.usedColumnsAfter = usedColumnsAfter;
+    }
+
+    /**
+     * The table map event the rows were written with.
+     */
+    public TableMapEvent getTableMapEvent() {
+        return tableMapEvent;
+    }
+
+    public void setTableMapEvent(TableMapEvent tableMapEvent) {
+        this.tableMapEvent = tableMapEvent;
+    }
+
+    /**
+     * The rows in binlog format.
+     */
+    public byte[] getRows() {
+        return rows;
+    }
+
+    public void setRows(byte[] rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append(getClass().getSimpleName())
+                .append("[header=").append(header)
+                .append(",tableId=").append(tableId)
+                .append(",columnCount=").append(columnCount)
+                .append(",rowsLength=").append(rows == null ? 0 : rows.length)
+                .append(']')
+                .toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.booking.replication.binlog;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.parser.AbstractBinlogEventParser;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.XInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Parser of the V2 rows events that yields {@link RawRowsEvent}s: it reads the
+ * event header fields and takes the rows as they are.
+ */
+public class RawRowsEventParser extends AbstractBinlogEventParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RawRowsEventParser.class);
+
+    private static final int[] ROWS_EVENT_TYPES = {
+        MySQLConstants.WRITE_ROWS_EVENT_V2,
+        MySQLConstants.UPDATE_ROWS_EVENT_V2,
+        MySQLConstants.DELETE_ROWS_EVENT_V2
+    };
+
+    public RawRowsEventParser(int eventType) {
+        super(eventType);
+    }
+
+    /**
+     * Replace the V2 rows event parsers of the parser.
+     */
+    public static void register(AbstractBinlogParser parser) {
+        for (int eventType : ROWS_EVENT_TYPES) {
+            parser.registerEventParser(new RawRowsEventParser(eventType));
+        }
+    }
+
+    @Override
+    public void parse(XInputStream is, BinlogEventV4Header header, BinlogParserContext context) throws IOException {
+        long tableId = is.readLong(6);
+
+        // skipped like the Open Replicator parsers do
+        TableMapEvent tableMapEvent = context.getTableMapEvent(tableId);
+        if (tableMapEvent == null) {
+            LOGGER.warn("failed to find TableMapEvent, header: {}", header);
+            is.skip(is.available());
+            return;
+        }
+
+        RawRowsEvent event = new RawRowsEvent(header);
+        event.setBinlogFilename(context.getBinlogFileName());
+        event.setTableId(tableId);
+        event.setReserved(is.readInt(2));
+
+        int extraInfoLength = is.readInt(2);
+        if (extraInfoLength > 2) {
+            is.skip(extraInfoLength - 2);
+        }
+
+        int columnCount = is.readUnsignedLong().intValue();
+        int bitmapLength = (columnCount + 7) >> 3;
+        event.setColumnCount(columnCount);
+        event.setUsedColumns(is.readBytes(bitmapLength));
+        if (eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2) {
+            event.setUsedColumnsAfter(is.readBytes(bitmapLength));
+        }
+        event.setTableMapEvent(tableMapEvent);
+        event.setRows(is.readBytes(is.available()));
+
+        context.getEventListener().onEvents(event);
+    }
+}
@@ -0,0 +1,245 @@
+package com.booking.replication.binlog;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.schema.column.types.ColumnConverter;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.MySQLUtils;
+
+/**
+ * Decodes the rows of a {@link RawRowsEvent} straight into row images.
+ *
+ * <p>The values are read from the event buffer into a single reused
+ * {@link BinlogCell} and handed to the column converters, so that no object
+ * is made for a cell unless the row image keeps one. Columns that are not in
+ * a row image are left unset in it.</p>
+ *
+ * <p>Reads the row images in binlog order; for updates the before image
+ * comes first.</p>
+ */
+public final class RowsEventReader {
+
+    private final RawRowsEvent event;
+    private final byte[]       rows;
+    private final int          columnCount;
+
+    // per column, with the real type and length of CHAR, ENUM and SET columns worked out
+    private final int[] types;
+    private final int[] metadata;
+    private final int[] lengths;
+
+    private final BinlogCell cell = new BinlogCell();
+
+    private int position = 0;
+
+    public RowsEventReader(RawRowsEvent event) throws TableMapException {
+        this.event       = event;
+        this.rows        = event.getRows();
+        this.columnCount = event.getColumnCount();
+
+        TableMapEvent tableMapEvent = event.getTableMapEvent();
+        byte[] columnTypes = tableMapEvent.getColumnTypes();
+        Metadata columnMetadata = tableMapEvent.getColumnMetadata();
+        if (columnTypes.length < columnCount) {
+            throw new TableMapException("Rows event has " + columnCount + " columns, its table map event "
+                    + columnTypes.length, event);
+        }
+
+        types    = new int[columnCount];
+        metadata = new int[columnCount];
+        lengths  = new int[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            int type = columnTypes[column] & 0xff;
+            int meta = columnMetadata.getMetadata(column);
+            int length = 0;
+
+            // same as the Open Replicator row parsers
+            if (type == MySQLConstants.TYPE_STRING && meta > 256) {
+                int byte0 = meta >> 8;
+                int byte1 = meta & 0xff;
+                if ((byte0 & 0x30) != 0x30) {
+                    // CHAR longer than 255 bytes, part of the length is in the type byte
+                    type = byte0 | 0x30;
+                    length = byte1 | (((byte0 & 0x30) ^ 0x30) << 4);
+                } else if (byte0 == MySQLConstants.TYPE_ENUM
+                        || byte0 == MySQLConstants.TYPE_SET
+                        || byte0 == MySQLConstants.TYPE_STRING) {
+                    type = byte0;
+                    length = byte1;
+                } else {
+                    throw new TableMapException("Unknown column type " + type, event);
+                }
+            }
+
+            types[column]    = type;
+            metadata[column] = meta;
+            lengths[column]  = length;
+        }
+    }
+
+    /**
+     * Whether there is another row image to read.
+     */
+    public boolean hasNext() {
+        return position < rows.length;
+    }
+
+    /**
+     * Read the next row image.
+     *
+     * @param usedColumns       Bitmap of the columns in the image
+     * @param columnConverters  Converters of the columns, by column index
+     * @param image             Image to store the values in
+     */
+    public void readImage(byte[] usedColumns, ColumnConverter[] columnConverters, RowImage image) throws TableMapException {
+        try {
+            int usedCount = 0;
+            for (int column = 0; column < columnCount; column++) {
+                if (isSet(usedColumns, 0, column)) {
+                    usedCount++;
+                }
+            }
+
+            // the NULL bitmap has a bit per column in the image
+            int nullBitmap = position;
+            position += (usedCount + 7) >> 3;
+
+            int usedIndex = 0;
+            for (int column = 0; column < columnCount; column++) {
+                if (!isSet(usedColumns, 0, column)) {
+                    continue;
+                }
+                if (isSet(rows, nullBitmap, usedIndex++)) {
+                    image.setNull(column);
+                    continue;
+                }
+                readCell(column);
+                columnConverters[column].extract(cell, image, column);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new TableMapException("Rows event ends in the middle of a row", event);
+        }
+    }
+
+    private static boolean isSet(byte[] bitmap, int offset, int bit) {
+        return (bitmap[offset + (bit >> 3)] & (1 << (bit & 7))) != 0;
+    }
+
+    private void readCell(int column) throws TableMapException {
+        int type = types[column];
+        int meta = metadata[column];
+
+        cell.type      = type;
+        cell.metadata  = meta;
+        cell.longValue = 0L;
+        cell.fraction  = 0;
+        cell.buffer    = rows;
+        cell.offset    = position;
+        cell.length    = 0;
+
+        switch (type) {
+            case MySQLConstants.TYPE_TINY:
+                cell.longValue = readSignedLittleEndian(1);
+                break;
+            case MySQLConstants.TYPE_SHORT:
+                cell.longValue = readSignedLittleEndian(2);
+                break;
+            case MySQLConstants.TYPE_INT24:
+                cell.longValue = readSignedLittleEndian(3);
+                break;
+            case MySQLConstants.TYPE_LONG:
+                cell.longValue = readSignedLittleEndian(4);
+                break;
+            case MySQLConstants.TYPE_LONGLONG:
+                cell.longValue = readLittleEndian(8);
+                break;
+            case MySQLConstants.TYPE_FLOAT:
+                cell.longValue = readSignedLittleEndian(4);
+                break;
+            case MySQLConstants.TYPE_DOUBLE:
+                cell.longValue = readLittleEndian(8);
+                break;
+            case MySQLConstants.TYPE_YEAR:
+                cell.longValue = MySQLUtils.toYear((int) readLittleEndian(1));
+                break;
+            case MySQLConstants.TYPE_DATE:
+            case MySQLConstants.TYPE_TIME:
+                cell.longValue = readLittleEndian(3);
+                break;
+            case MySQLConstants.TYPE_DATETIME:
+                cell.longValue = readLittleEndian(8);
+                break;
+            case MySQLConstants.TYPE_TIMESTAMP:
+                cell.longValue = readLittleEndian(4);
+                break;
+            case MySQLConstants.TYPE_ENUM:
+            case MySQLConstants.TYPE_SET:
+                cell.longValue = readLittleEndian(lengths[column]);
+                break;
+            case MySQLConstants.TYPE_BIT:
+                readBytes(((meta >> 8) * 8 + (meta & 0xff) + 7) >> 3);
+                break;
+            case MySQLConstants.TYPE_BLOB:
+                readBytes((int) readLittleEndian(meta));
+                break;
+            case MySQLConstants.TYPE_NEWDECIMAL:
+                readBytes(MySQLUtils.getDecimalBinarySize(meta & 0xff, meta >> 8));
+                break;
+            case MySQLConstants.TYPE_STRING:
+                readBytes((int) readLittleEndian(lengths[column] < 256 ? 1 : 2));
+                break;
+            case MySQLConstants.TYPE_VARCHAR:
+            case MySQLConstants.TYPE_VAR_STRING:
+                readBytes((int) readLittleEndian(meta < 256 ? 1 : 2));
+                break;
+            case MySQLConstants.TYPE_TIME2:
+                cell.longValue = readBigEndian(3);
+                cell.fraction  = (int) readBigEndian((meta + 1) / 2);
+                break;
+            case MySQLConstants.TYPE_DATETIME2:
+                cell.longValue = readBigEndian(5);
+                cell.fraction  = (int) readBigEndian((meta + 1) / 2);
+                break;
+            case MySQLConstants.TYPE_TIMESTAMP2:
+                cell.longValue = readBigEndian(4);
+                cell.fraction  = (int) readBigEndian((meta + 1) / 2);
+                break;
+            default:
+                throw new TableMapException("Unknown column type " + type, event);
+        }
+    }
+
+    private void readBytes(int length) {
+        if (length < 0 || position + length > rows.length) {
+            throw new ArrayIndexOutOfBoundsException(position + length);
+        }
+        cell.offset = position;
+        cell.length = length;
+        position += length;
+    }
+
+    private long readLittleEndian(int length) {
+        long value = 0L;
+        for (int i = 0; i < length; i++) {
+            value |= (rows[position++] & 0xffL) << (i << 3);
+        }
+        return value;
+    }
+
+    private long readSignedLittleEndian(int length) {
+        long value = readLittleEndian(length);
+        int shift = 64 - (length << 3);
+        return value << shift >> shift;
+    }
+
+    private long readBigEndian(int length) {
+        long value = 0L;
+        for (int i = 0; i < length; i++) {
+            value = value << 8 | (rows[position++] & 0xffL);
+        }
+        return value;
+    }
+}
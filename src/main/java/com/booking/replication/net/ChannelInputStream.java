@@ -0,0 +1,134 @@
+package com.booking.replication.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Input stream over a non blocking socket channel.
+ *
+ * <p>Reads from the channel into a direct buffer, so the kernel copies
+ * straight into it, and waits on a selector while nothing is available.
+ * Closing the stream wakes up a waiting reader.</p>
+ *
+ * <p>A read that gets no data for the read timeout fails with a
+ * {@link SocketTimeoutException}, so that a connection the peer is gone from
+ * without a word doesn't hold the reader forever.</p>
+ */
+class ChannelInputStream extends InputStream {
+
+    private final SocketChannel channel;
+    private final Selector      selector;
+    private final ByteBuffer    buffer;
+    private final long          readTimeoutMs;
+
+    private volatile boolean closed = false;
+
+    private long bytesRead = 0;
+
+    /**
+     * Stream over a channel.
+     *
+     * @param channel       Non blocking channel to read
+     * @param bufferSize    Size of the direct buffer
+     * @param readTimeoutMs Time without data after which a read fails, 0 to wait forever
+     */
+    ChannelInputStream(SocketChannel channel, int bufferSize, long readTimeoutMs) throws IOException {
+        this.channel       = channel;
+        this.selector      = Selector.open();
+        this.buffer        = ByteBuffer.allocateDirect(bufferSize);
+        this.readTimeoutMs = readTimeoutMs;
+        buffer.flip();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Bytes read from the channel so far.
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Wait for data unless the buffer holds some.
+     *
+     * @return  False at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        long waitStart = 0;
+        while (!buffer.hasRemaining()) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            buffer.clear();
+            int count = channel.read(buffer);
+            buffer.flip();
+            if (count < 0) {
+                return false;
+            }
+            if (count == 0) {
+                if (waitStart == 0) {
+                    waitStart = System.currentTimeMillis();
+                }
+                select(waitStart);
+            }
+            bytesRead += count;
+        }
+        return true;
+    }
+
+    private void select(long waitStart) throws IOException {
+        long timeoutMs = 0;
+        if (readTimeoutMs > 0) {
+            timeoutMs = readTimeoutMs - (System.currentTimeMillis() - waitStart);
+            if (timeoutMs <= 0) {
+                throw new SocketTimeoutException("No data from the server for " + readTimeoutMs + "ms");
+            }
+        }
+        try {
+            selector.select(timeoutMs);
+            selector.selectedKeys().clear();
+        } catch (ClosedSelectorException e) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        selector.close();
+    }
+}
@@ -0,0 +1,78 @@
+package com.booking.replication.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Output stream over a non blocking socket channel.
+ *
+ * <p>Collects the writes in a direct buffer and writes it to the channel when
+ * it is full or the stream is flushed, waiting on a selector while the socket
+ * send buffer is full.</p>
+ */
+class ChannelOutputStream extends OutputStream {
+
+    private final SocketChannel channel;
+    private final Selector      selector;
+    private final ByteBuffer    buffer;
+
+    ChannelOutputStream(SocketChannel channel, int bufferSize) throws IOException {
+        this.channel  = channel;
+        this.selector = Selector.open();
+        this.buffer   = ByteBuffer.allocateDirect(bufferSize);
+        channel.register(selector, SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            throw new ClosedChannelException();
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+    }
+}
@@ -0,0 +1,159 @@
+package com.booking.replication.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Unpacks the MySQL compressed protocol.
+ *
+ * <p>Once compression is on, the server wraps its packets in compressed
+ * packets: a 3 byte length of the compressed payload, a sequence number, a 3
+ * byte length of the uncompressed payload and the payload. The payload is
+ * zlib compressed, unless the uncompressed length is 0, in which case it was
+ * sent as it is. A compressed packet may hold any number of packets, or part
+ * of one. This stream reads the packets as they were before compression.</p>
+ *
+ * <p>Until {@link #setCompressed(boolean)} is called the bytes are passed
+ * through.</p>
+ */
+class CompressedPacketInputStream extends InputStream {
+
+    static final int HEADER_LENGTH = 7;
+
+    private final InputStream in;
+    private final Inflater    inflater = new Inflater();
+    private final byte[]      header   = new byte[HEADER_LENGTH];
+
+    private byte[] compressed   = new byte[64 * 1024];
+    private byte[] uncompressed = new byte[64 * 1024];
+    private int    position     = 0;
+    private int    limit        = 0;
+
+    private boolean compressedMode = false;
+
+    CompressedPacketInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Turn compression on, right after the server accepted the login.
+     */
+    void setCompressed(boolean compressedMode) {
+        this.compressedMode = compressedMode;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!compressedMode) {
+            return in.read();
+        }
+        if (!fill()) {
+            return -1;
+        }
+        return uncompressed[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (!compressedMode) {
+            return in.read(bytes, offset, length);
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(uncompressed, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return compressedMode ? limit - position : in.available();
+    }
+
+    /**
+     * Read the next compressed packet unless some of the last one is left.
+     *
+     * @return  False at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            header[0] = (byte) first;
+            readFully(header, 1, HEADER_LENGTH - 1);
+
+            int compressedLength   = readInt3(header, 0);
+            int uncompressedLength = readInt3(header, 4);
+
+            position = 0;
+            if (uncompressedLength == 0) {
+                // sent as it is
+                uncompressed = ensureCapacity(uncompressed, compressedLength);
+                readFully(uncompressed, 0, compressedLength);
+                limit = compressedLength;
+            } else {
+                compressed = ensureCapacity(compressed, compressedLength);
+                uncompressed = ensureCapacity(uncompressed, uncompressedLength);
+                readFully(compressed, 0, compressedLength);
+                inflate(compressedLength, uncompressedLength);
+                limit = uncompressedLength;
+            }
+        }
+        return true;
+    }
+
+    private void inflate(int compressedLength, int uncompressedLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int inflated = 0;
+            while (inflated < uncompressedLength) {
+                int count = inflater.inflate(uncompressed, inflated, uncompressedLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != uncompressedLength) {
+                throw new IOException("Compressed packet of " + uncompressedLength + " bytes inflates to " + inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed packet", e);
+        }
+    }
+
+    private void readFully(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = in.read(bytes, offset, length);
+            if (count < 0) {
+                throw new EOFException("Connection closed in the middle of a compressed packet");
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    static int readInt3(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16;
+    }
+
+    static byte[] ensureCapacity(byte[] bytes, int capacity) {
+        return bytes.length >= capacity ? bytes : new byte[Math.max(capacity, bytes.length * 2)];
+    }
+
+    // the inflater is not ended here, the reading thread may still be using it
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,116 @@
+package com.booking.replication.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Packs what is written into MySQL compressed packets, see
+ * {@link CompressedPacketInputStream}.
+ *
+ * <p>Everything written up to a flush goes out as one command, in compressed
+ * packets numbered from 0. Payloads shorter than {@link #MIN_COMPRESS_LENGTH}
+ * or that don't get any shorter are sent as they are.</p>
+ *
+ * <p>Until {@link #setCompressed(boolean)} is called the bytes are passed
+ * through.</p>
+ */
+class CompressedPacketOutputStream extends OutputStream {
+
+    // same as the MySQL client library
+    static final int MIN_COMPRESS_LENGTH = 50;
+
+    private static final int MAX_PAYLOAD_LENGTH = 0xffffff;
+
+    private final OutputStream          out;
+    private final Deflater              deflater = new Deflater();
+    private final ByteArrayOutputStream pending  = new ByteArrayOutputStream();
+    private final byte[]                header   = new byte[CompressedPacketInputStream.HEADER_LENGTH];
+
+    private byte[] compressed = new byte[1024];
+
+    private boolean compressedMode = false;
+
+    CompressedPacketOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Turn compression on, right after the server accepted the login.
+     */
+    void setCompressed(boolean compressedMode) {
+        this.compressedMode = compressedMode;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (compressedMode) {
+            pending.write(value);
+        } else {
+            out.write(value);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (compressedMode) {
+            pending.write(bytes, offset, length);
+        } else {
+            out.write(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (compressedMode && pending.size() > 0) {
+            byte[] payload = pending.toByteArray();
+            pending.reset();
+            int sequence = 0;
+            for (int offset = 0; offset < payload.length; offset += MAX_PAYLOAD_LENGTH) {
+                writePacket(payload, offset, Math.min(MAX_PAYLOAD_LENGTH, payload.length - offset), sequence++);
+            }
+        }
+        out.flush();
+    }
+
+    private void writePacket(byte[] payload, int offset, int length, int sequence) throws IOException {
+        int compressedLength = length < MIN_COMPRESS_LENGTH ? length : deflate(payload, offset, length);
+        if (compressedLength >= length) {
+            writeHeader(length, sequence, 0);
+            out.write(payload, offset, length);
+        } else {
+            writeHeader(compressedLength, sequence, length);
+            out.write(compressed, 0, compressedLength);
+        }
+    }
+
+    private int deflate(byte[] payload, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(payload, offset, length);
+        deflater.finish();
+        compressed = CompressedPacketInputStream.ensureCapacity(compressed, length);
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < length) {
+            compressedLength += deflater.deflate(compressed, compressedLength, length - compressedLength);
+        }
+        // no smaller than the payload
+        return deflater.finished() ? compressedLength : length;
+    }
+
+    private void writeHeader(int compressedLength, int sequence, int uncompressedLength) throws IOException {
+        header[0] = (byte) compressedLength;
+        header[1] = (byte) (compressedLength >> 8);
+        header[2] = (byte) (compressedLength >> 16);
+        header[3] = (byte) sequence;
+        header[4] = (byte) uncompressedLength;
+        header[5] = (byte) (uncompressedLength >> 8);
+        header[6] = (byte) (uncompressedLength >> 16);
+        out.write(header, 0, header.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
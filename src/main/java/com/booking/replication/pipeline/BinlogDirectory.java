@@ -0,0 +1,85 @@
+package com.booking.replication.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Directory of binlog files copied off a server, e.g. an archive of
+ * mysql-bin.000123, mysql-bin.000124, ...
+ */
+public class BinlogDirectory {
+
+    private final File directory;
+
+    public BinlogDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Binlog files in binlog order, from the first file up to and including
+     * the last one. Only files with the base name of the first file and a
+     * numeric extension are considered.
+     *
+     * @param firstBinlogFileName   Binlog file to start from, must exist in the directory
+     * @param lastBinlogFileName    Binlog file to stop after, or null for up to the newest file
+     */
+    public List<File> getFiles(String firstBinlogFileName, String lastBinlogFileName) throws IOException {
+        int dot = firstBinlogFileName.lastIndexOf('.');
+        if (dot < 0 || getSequenceNumber(firstBinlogFileName) < 0) {
+            throw new IOException("Not a binlog file name: " + firstBinlogFileName);
+        }
+        String baseName = firstBinlogFileName.substring(0, dot + 1);
+        long first = getSequenceNumber(firstBinlogFileName);
+        long last = lastBinlogFileName == null ? Long.MAX_VALUE : getSequenceNumber(lastBinlogFileName);
+
+        File[] candidates = directory.listFiles();
+        if (candidates == null) {
+            throw new IOException("Could not list binlog directory " + directory);
+        }
+
+        List<File> files = new ArrayList<>();
+        for (File file : candidates) {
+            String name = file.getName();
+            long sequenceNumber = getSequenceNumber(name);
+            if (file.isFile() && name.startsWith(baseName) && name.length() > baseName.length()
+                    && sequenceNumber >= first && sequenceNumber <= last) {
+                files.add(file);
+            }
+        }
+        // the sequence number may outgrow its zero padding, so don't sort by name
+        files.sort(Comparator.comparingLong(file -> getSequenceNumber(file.getName())));
+
+        if (files.isEmpty() || !files.get(0).getName().equals(firstBinlogFileName)) {
+            throw new IOException("Binlog file " + firstBinlogFileName + " not found in " + directory);
+        }
+        return files;
+    }
+
+    /**
+     * The numeric extension of a binlog file name.
+     *
+     * @return  The sequence number, or -1 if the extension is not numeric
+     */
+    static long getSequenceNumber(String binlogFileName) {
+        int dot = binlogFileName.lastIndexOf('.');
+        if (dot < 0 || dot == binlogFileName.length() - 1) {
+            return -1;
+        }
+        long sequenceNumber = 0;
+        for (int i = dot + 1; i < binlogFileName.length(); i++) {
+            char digit = binlogFileName.charAt(i);
+            if (digit < '0' || digit > '9' || sequenceNumber > Long.MAX_VALUE / 10 - 1) {
+                return -1;
+            }
+            sequenceNumber = sequenceNumber * 10 + (digit - '0');
+        }
+        return sequenceNumber;
+    }
+}
@@ -3,70 +3,122 @@ package com.booking.replication.pipeline;
 import static com.codahale.metrics.MetricRegistry.name;
 
 import com.booking.replication.Configuration;
-import com.booking.replication.Constants;
 import com.booking.replication.Metrics;
+import com.booking.replication.binlog.RawRowsEventParser;
+import com.booking.replication.queues.EventOverflow;
+import com.booking.replication.queues.MemoryBudget;
+import com.booking.replication.queues.MemoryEventOverflow;
+import com.booking.replication.queues.RingBuffer;
+import com.booking.replication.queues.spill.SpillQueue;
+import com.booking.replication.relay.RelayLog;
+import com.booking.replication.relay.RelayingOpenReplicator;
 import com.booking.replication.replicant.ReplicantPool;
 import com.google.code.or.OpenReplicator;
 import com.google.code.or.binlog.BinlogEventListener;
 import com.google.code.or.binlog.BinlogEventV4;
 
-import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Simple wrapper for Open Replicator. Writes events to blocking queue.
+ * Simple wrapper for Open Replicator. Publishes events into the raw event ring buffer.
  */
 public class BinlogEventProducer {
 
     // queue is private, but it will reference the same queue
     // as the consumer object
-    private final BlockingQueue<BinlogEventV4> queue;
+    private final RingBuffer<BinlogEventV4> queue;
+
+    // publishes into the queue, buffering events while the queue has no room
+    private final FlowControl flowControl;
 
     private final PipelinePosition pipelinePosition;
 
-    private final OpenReplicator   openReplicator;
-    private final Configuration    configuration;
-    private final ReplicantPool    replicantPool;
+    private final KeepAliveOpenReplicator openReplicator;
+    private final Configuration           configuration;
+    private final ReplicantPool           replicantPool;
+
+    // null when relaying is off
+    private final RelayLog relayLog;
+
+    // null when reading from the replicant
+    private final BinlogDirectory binlogDirectory;
+
+    // set while events come from files, the relay log or the binlog directory
+    private volatile boolean                readingFiles = false;
+    private volatile MappedBinlogFileParser fileParser;
+    private Thread                          fileReaderThread;
 
     private long opCounter = 0;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BinlogEventProducer.class);
 
     private static final Meter producedEvents = Metrics.registry.meter(name("events", "eventsProduced"));
+    private static final Meter replayedEvents = Metrics.registry.meter(name("relayLog", "eventsReplayed"));
 
     /**
      * Set up and manage the Open Replicator instance.
      *
-     * @param queue             Event queue.
+     * @param queue             Event ring buffer, this producer is its only writer.
+     * @param queueMemory       Memory account of the ring buffer
      * @param pipelinePosition  Binlog position information
      * @param configuration     Replicator configuration
      */
     public BinlogEventProducer(
-            BlockingQueue<BinlogEventV4> queue,
+            RingBuffer<BinlogEventV4> queue,
+            MemoryBudget.Account queueMemory,
             PipelinePosition pipelinePosition,
             Configuration configuration,
-            ReplicantPool replicantPool) {
+            ReplicantPool replicantPool) throws IOException {
         this.configuration = configuration;
         this.queue = queue;
         this.pipelinePosition = pipelinePosition;
         this.replicantPool = replicantPool;
 
-        openReplicator = new OpenReplicator();
-
-        Metrics.registry.register(name("events", "producerBackPressureSleep"),
-                new Gauge<Long>() {
-                    @Override
-                    public Long getValue() {
-                        return backPressureSleep;
-                    }
-                });
+        if (configuration.isOfflineMode()) {
+            binlogDirectory = new BinlogDirectory(new File(configuration.getBinlogDirectory()));
+        } else {
+            binlogDirectory = null;
+        }
 
+        if (configuration.isRelayLogEnabled() && binlogDirectory == null) {
+            relayLog = new RelayLog(
+                    new File(configuration.getRelayLogDirectory()),
+                    configuration.getRelayLogRetainedFiles());
+            openReplicator = new RelayingOpenReplicator(configuration.getPipelineNetWriteTimeout(), relayLog);
+        } else {
+            relayLog = null;
+            openReplicator = new KeepAliveOpenReplicator(configuration.getPipelineNetWriteTimeout());
+        }
+        openReplicator.setRawRowsEvents(configuration.isReplicatorRowsDecoder());
+        openReplicator.setNioTransport(configuration.isPipelineNioTransport());
+        openReplicator.setCompression(configuration.isPipelineCompression());
+        openReplicator.setReadTimeout(configuration.getPipelineReadTimeout());
+        openReplicator.setSocketReceiveBufferSize(configuration.getPipelineSocketReceiveBufferBytes());
+        openReplicator.setSocketSendBufferSize(configuration.getPipelineSocketSendBufferBytes());
+
+        EventOverflow overflow;
+        int highWaterMark;
+        if (configuration.isPipelineSpillEnabled()) {
+            overflow = new SpillQueue(
+                    new File(configuration.getPipelineSpillDirectory()),
+                    configuration.getPipelineSpillSegmentBytes(),
+                    configuration.getPipelineSpillMaxBytes());
+            highWaterMark = Math.min(configuration.getPipelineSpillHighWaterMark(), queue.capacity());
+        } else {
+            overflow = new MemoryEventOverflow(
+                    configuration.getPipelineOverflowBytes(),
+                    queueMemory.getBudget().account("overflow"));
+            highWaterMark = queue.capacity();
+        }
+        flowControl = new FlowControl(queue, queueMemory, overflow, highWaterMark);
     }
 
     /**
@@ -94,84 +146,180 @@ public class BinlogEventProducer {
         // disable lv2 buffer
         openReplicator.setLevel2BufferSize(-1);
 
-        openReplicator.setBinlogEventListener(new BinlogEventListener() {
+        final BinlogEventListener listener = new BinlogEventListener() {
 
             public void onEvents(BinlogEventV4 event) {
                 producedEvents.mark();
 
-                // This call is blocking the writes from server side. If time goes above
-                // net_write_timeout (which defaults to 60s) server will drop connection.
-                //      => Use back pressure to regulate the write rate to the queue.
+                // This call is blocking the reads from the server socket. If a read takes longer
+                // than net_write_timeout, the server drops the connection.
+                //      => Flow control only blocks once its overflow buffer is full as well.
 
                 if (isRunning()) {
-                    boolean eventQueued = false;
-                    while (!eventQueued) { // blocking block
-                        try {
-                            backPressureSleep();
-                            boolean added = queue.offer(event, 100, TimeUnit.MILLISECONDS);
-
-                            if (added) {
-                                opCounter++;
-                                eventQueued = true;
-                                if (opCounter % 100000 == 0) {
-                                    LOGGER.info("Producer reporting queue size => " + queue.size());
-                                }
-                            } else {
-                                LOGGER.error("queue.offer timed out. Will sleep for 100ms and try again");
-                                Thread.sleep(100);
-                            }
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
+                    try {
+                        flowControl.publish(event);
+                        opCounter++;
+                        if (opCounter % 100000 == 0) {
+                            LOGGER.info("Producer reporting queue size => " + queue.size()
+                                    + ", overflow bytes => " + flowControl.getOverflowBytes());
                         }
+                    } catch (InterruptedException e) {
+                        LOGGER.error("Interrupted while publishing event", e);
+                        Thread.currentThread().interrupt();
                     }
                 }
             }
-        });
-
-        LOGGER.info("starting Open Replicator from: { binlog-file => "
-                + openReplicator.getBinlogFileName()
-                + ", position => "
-                + openReplicator.getBinlogPosition()
-                + " }"
-        );
-        openReplicator.start();
-    }
-
-    private long backPressureSleep = 0;
+        };
+        openReplicator.setBinlogEventListener(listener);
+
+        flowControl.start();
+
+        if (binlogDirectory != null) {
+            final List<File> files = binlogDirectory.getFiles(
+                    openReplicator.getBinlogFileName(),
+                    configuration.getLastBinlogFileName());
+            readingFiles = true;
+            fileReaderThread = new Thread(() -> readBinlogFiles(files, listener), "binlog-file-reader");
+            fileReaderThread.start();
+            return;
+        }
 
-    private void backPressureSleep() {
-        int queueSize = queue.size();
+        if (relayLog != null) {
+            final List<RelayLog.Segment> segments = relayLog.getReplayWindow(
+                    pipelinePosition.getCurrentReplicantHostName(),
+                    openReplicator.getBinlogFileName(),
+                    openReplicator.getBinlogPosition());
+            if (!segments.isEmpty()) {
+                // counts as running from here on, so that nothing is dropped in between
+                readingFiles = true;
+                fileReaderThread = new Thread(() -> replayRelayLog(segments, listener), "relay-log-replay");
+                fileReaderThread.start();
+                return;
+            }
+        }
 
-        // For an explanation please plug "max(0, 20*(10000/(10000+1-x)-10)) x from 6000 to 10000" into WolframAlpha
-        backPressureSleep = Math.max(
-            20 * ( Constants.MAX_RAW_QUEUE_SIZE / (Constants.MAX_RAW_QUEUE_SIZE + 1 - queueSize) - 10),
-            0
-        );
+        startOpenReplicator();
+    }
 
-        // Queue size is 9243.(42 period) (where MAX_RAW_QUEUE_SIZE = 10000)
-        if (backPressureSleep < 64) {
-            return;
+    /**
+     * Replay the relay log up to its last transaction boundary, then continue
+     * from the replicant at that position.
+     */
+    private void replayRelayLog(List<RelayLog.Segment> segments, BinlogEventListener listener) {
+        try {
+            BinlogEventListener replayListener = event -> {
+                replayedEvents.mark();
+                listener.onEvents(event);
+            };
+            for (RelayLog.Segment segment : segments) {
+                LOGGER.info("Replaying relay file " + segment.getFile() + " from position "
+                        + segment.getStartPosition() + " to " + segment.getEndPosition());
+                Exception parserException = parse(new MappedBinlogFileParser(
+                        segment.getFile(), segment.getStartPosition(), segment.getEndPosition()), replayListener);
+                if (!readingFiles) {
+                    return;
+                }
+                if (parserException != null) {
+                    // the next start goes to the replicant
+                    LOGGER.error("Failed to replay relay file " + segment.getFile() + ", dropping the relay log",
+                            parserException);
+                    relayLog.clear();
+                    return;
+                }
+                openReplicator.setBinlogFileName(segment.getBinlogFileName());
+                openReplicator.setBinlogPosition(segment.getEndPosition());
+            }
+            startOpenReplicator();
+        } catch (Exception e) {
+            LOGGER.error("Failed to replay the relay log", e);
+        } finally {
+            fileParser = null;
+            readingFiles = false;
         }
+    }
 
-        // Queue size is 9953.(380952 period)
-        if (backPressureSleep > 4000) {
-            LOGGER.warn("Queue is getting big, back pressure is getting high");
+    /**
+     * Read the binlog directory, starting at the configured position. Once the
+     * files are read the producer idles, and the pipeline shuts down after the
+     * rotate event at the end of the last binlog file.
+     */
+    private void readBinlogFiles(List<File> files, BinlogEventListener listener) {
+        boolean failed = true;
+        try {
+            long startPosition = openReplicator.getBinlogPosition();
+            for (File file : files) {
+                LOGGER.info("Reading binlog file " + file + " from position " + startPosition);
+                Exception parserException = parse(new MappedBinlogFileParser(file, startPosition), listener);
+                if (!readingFiles) {
+                    return;
+                }
+                if (parserException != null) {
+                    LOGGER.error("Failed to read binlog file " + file, parserException);
+                    return;
+                }
+                startPosition = 4L;
+            }
+            LOGGER.info("Read all binlog files up to " + files.get(files.size() - 1).getName()
+                    + " from " + binlogDirectory.getDirectory());
+            failed = false;
+        } catch (Exception e) {
+            LOGGER.error("Failed to read the binlog directory", e);
+        } finally {
+            fileParser = null;
+            if (failed) {
+                readingFiles = false;
+            }
         }
+    }
 
+    /**
+     * Run the parser to the end of its file.
+     *
+     * @return  The exception the parser failed with, or null
+     */
+    private Exception parse(MappedBinlogFileParser parser, BinlogEventListener listener) throws InterruptedException {
+        if (configuration.isReplicatorRowsDecoder()) {
+            RawRowsEventParser.register(parser);
+        }
+        fileParser = parser;
         try {
-            Thread.sleep(backPressureSleep);
+            parser.parseToEnd(listener);
+            return null;
         } catch (InterruptedException e) {
-            LOGGER.error("Thread wont sleep");
-            e.printStackTrace();
+            throw e;
+        } catch (Exception e) {
+            return e;
         }
     }
 
+    private void startOpenReplicator() throws Exception {
+        LOGGER.info("starting Open Replicator from: { binlog-file => "
+                + openReplicator.getBinlogFileName()
+                + ", position => "
+                + openReplicator.getBinlogPosition()
+                + " }"
+        );
+        openReplicator.start();
+    }
+
     public void stop(long timeout, TimeUnit unit) throws Exception {
+        if (readingFiles) {
+            readingFiles = false;
+            MappedBinlogFileParser parser = fileParser;
+            if (parser != null) {
+                parser.stop(timeout, unit);
+            }
+            fileReaderThread.join(unit.toMillis(timeout));
+        }
         openReplicator.stop(timeout, unit);
+        flowControl.stop();
     }
 
+    /**
+     * Whether events are produced, from files or from the replicant.
+     */
     public boolean isRunning() {
-        return this.openReplicator.isRunning();
+        return readingFiles || this.openReplicator.isRunning();
     }
 
     public OpenReplicator getOpenReplicator() {
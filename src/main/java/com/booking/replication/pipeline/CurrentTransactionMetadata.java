@@ -1,5 +1,6 @@
 package com.booking.replication.pipeline;
 
+import com.booking.replication.schema.TableFilter;
 import com.booking.replication.schema.exception.TableMapException;
 import com.google.code.or.binlog.impl.event.TableMapEvent;
 import com.google.common.base.Joiner;
@@ -7,23 +8,43 @@ import com.google.common.base.Joiner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by bosko on 11/10/15.
  */
 public class CurrentTransactionMetadata {
 
-    private Map<Long,String> tableID2Name = new HashMap<>();
-    private Map<Long, String> tableID2DBName = new HashMap<>();
+    // Written by the classification thread while the augmentation threads read
+    // it for earlier events of the same transaction, so the maps must be concurrent.
+    private Map<Long,String> tableID2Name = new ConcurrentHashMap<>();
+    private Map<Long, String> tableID2DBName = new ConcurrentHashMap<>();
 
-    private TableMapEvent firstMapEventInTransaction = null;
+    private volatile TableMapEvent firstMapEventInTransaction = null;
 
-    private final Map<String, TableMapEvent> currentTransactionTableMapEvents = new HashMap<>();
+    private final Map<String, TableMapEvent> currentTransactionTableMapEvents = new ConcurrentHashMap<>();
+
+    // ids of the tables whose rows are not replicated
+    private final TableFilter tableFilter;
+    private final Set<Long>   filteredTableIDs = ConcurrentHashMap.newKeySet();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CurrentTransactionMetadata.class);
 
+    public CurrentTransactionMetadata() {
+        this(null);
+    }
+
+    /**
+     * Transaction metadata.
+     *
+     * @param tableFilter   Filter of the replicated tables, or null to replicate all tables
+     */
+    public CurrentTransactionMetadata(TableFilter tableFilter) {
+        this.tableFilter = tableFilter;
+    }
+
     /**
      * Update table map cache.
      */
@@ -46,6 +67,29 @@ public class CurrentTransactionMetadata {
         );
 
         currentTransactionTableMapEvents.put(tableName, event);
+
+        if (tableFilter != null && !tableFilter.isTableWanted(tableName)) {
+            filteredTableIDs.add(event.getTableId());
+        } else {
+            filteredTableIDs.remove(event.getTableId());
+        }
+    }
+
+    /**
+     * Whether the rows of a table are filtered out by the table filter.
+     */
+    public boolean isTableFiltered(long tableID) {
+        return filteredTableIDs.contains(tableID);
+    }
+
+    /**
+     * Count a dropped row event of a filtered table.
+     */
+    public void countSkippedRowsEvent(long tableID) {
+        String tableName = tableID2Name.get(tableID);
+        if (tableFilter != null && tableName != null) {
+            tableFilter.countSkippedRowsEvent(tableName);
+        }
     }
 
     /**
@@ -0,0 +1,301 @@
+package com.booking.replication.pipeline;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+import com.booking.replication.queues.EventOverflow;
+import com.booking.replication.queues.MemoryBudget;
+import com.booking.replication.queues.MemoryEventOverflow;
+import com.booking.replication.queues.RingBuffer;
+import com.google.code.or.binlog.BinlogEventV4;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Credit based flow control between the binlog reader and the raw event queue.
+ *
+ * <p>An event needs credit to be published: a free slot in the raw queue and
+ * room in the memory budget. When there is credit the event is published
+ * right away. When there isn't, the event goes to an overflow buffer and the
+ * reader carries on, so a short stall downstream doesn't stall the MySQL
+ * socket. A drainer thread moves the overflow into the queue, in binlog
+ * order, as credit comes back.</p>
+ *
+ * <p>Only when the overflow is full as well is the reader paused, until the
+ * drainer made room. The time the reader spent paused is counted in
+ * {@code events.producerPausedMillis}. The server drops a connection that
+ * hasn't been read from for net_write_timeout, see {@link KeepAliveOpenReplicator}
+ * for raising it.</p>
+ *
+ * <p>The overflow lives on the heap by default, charged to the memory budget
+ * like the queue: an event moved from the overflow to the queue takes its
+ * charge along and only needs a free slot. With a
+ * {@link com.booking.replication.queues.spill.SpillQueue} it goes to disk
+ * instead, and the queue is only filled up to a high water mark, so that a
+ * long stall downstream is taken up by the disk rather than the heap.</p>
+ *
+ * <p>The raw queue is a single producer queue: both the reader and the drainer
+ * publish under the producer lock.</p>
+ */
+public class FlowControl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlowControl.class);
+
+    // how often a waiting drainer re-checks for credit, the queue doesn't signal free slots
+    private static final long CREDIT_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long PAUSE_WARNING_MILLIS = 10000;
+
+    private final RingBuffer<BinlogEventV4> queue;
+    private final MemoryBudget.Account      queueMemory;
+    private final EventOverflow             overflow;
+    private final int                       highWaterMark;
+
+    private final ReentrantLock producerLock   = new ReentrantLock();
+    private final Condition     overflowFilled = producerLock.newCondition();
+    private final Condition     overflowDrained = producerLock.newCondition();
+
+    private volatile long overflowBytes = 0;
+    private volatile IOException overflowFailure = null;
+
+    private volatile long    pauseStartTime = 0;
+    private volatile boolean running        = false;
+
+    private Thread drainer;
+
+    private static final Counter pausedMillisCounter =
+            Metrics.registry.counter(name("events", "producerPausedMillis"));
+    private static final Counter overflowedEventsCounter =
+            Metrics.registry.counter(name("events", "producerOverflowedEvents"));
+
+    /**
+     * Flow control with an overflow on the heap.
+     *
+     * @param queue             Raw event queue
+     * @param queueMemory       Memory account of the raw event queue
+     * @param maxOverflowBytes  Estimated bytes the overflow may hold before the reader is paused
+     */
+    public FlowControl(RingBuffer<BinlogEventV4> queue, MemoryBudget.Account queueMemory, long maxOverflowBytes) {
+        this(queue, queueMemory,
+                new MemoryEventOverflow(maxOverflowBytes, queueMemory.getBudget().account("overflow")),
+                queue.capacity());
+    }
+
+    /**
+     * Flow control.
+     *
+     * @param queue             Raw event queue
+     * @param queueMemory       Memory account of the raw event queue
+     * @param overflow          Holds the events the queue has no credit for
+     * @param highWaterMark     Events the queue is filled up to before events overflow
+     */
+    public FlowControl(
+            RingBuffer<BinlogEventV4> queue,
+            MemoryBudget.Account queueMemory,
+            EventOverflow overflow,
+            int highWaterMark) {
+        this.queue         = queue;
+        this.queueMemory   = queueMemory;
+        this.overflow      = overflow;
+        this.highWaterMark = highWaterMark;
+
+        register(name("events", "producerOverflowBytes"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return overflowBytes;
+                }
+            });
+
+        register(name("events", "producerPauseTime"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    long pauseStart = pauseStartTime;
+                    if (pauseStart == 0) {
+                        return 0L;
+                    }
+                    return System.currentTimeMillis() - pauseStart;
+                }
+            });
+    }
+
+    private static void register(String metricName, Gauge<Long> gauge) {
+        Metrics.registry.remove(metricName);
+        Metrics.registry.register(metricName, gauge);
+    }
+
+    /**
+     * Start the drainer.
+     */
+    public void start() {
+        running = true;
+        drainer = new Thread(this::drainOverflow, "flow-control-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stop the drainer. Events still in the overflow are dropped, the
+     * replicator restarts from its last checkpoint anyway.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        if (drainer != null) {
+            drainer.interrupt();
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        producerLock.lock();
+        try {
+            overflow.close();
+            overflowBytes = 0;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the event overflow", e);
+        } finally {
+            producerLock.unlock();
+        }
+    }
+
+    /**
+     * Publish an event, called by the binlog reader.
+     *
+     * <p>Returns as soon as the event is either in the queue or in the
+     * overflow, and only waits if the overflow is full.</p>
+     *
+     * @throws UncheckedIOException when the overflow can't be written or read,
+     *                              which stops the binlog parser
+     */
+    public void publish(BinlogEventV4 event) throws InterruptedException {
+        long eventSize = MemoryBudget.estimateEventSize(event);
+        producerLock.lock();
+        try {
+            checkOverflow();
+
+            // keep binlog order: once events overflow, new ones queue up behind them
+            if (overflow.isEmpty() && tryPublish(event, eventSize)) {
+                return;
+            }
+
+            if (!overflow.hasRoomFor(event, eventSize)) {
+                pause(event, eventSize);
+                checkOverflow();
+            }
+
+            overflow.add(event, eventSize);
+            overflowBytes = overflow.getBytes();
+            overflowedEventsCounter.inc();
+            overflowFilled.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to add event to the overflow", e);
+        } finally {
+            producerLock.unlock();
+        }
+    }
+
+    private void checkOverflow() {
+        if (overflowFailure != null) {
+            throw new UncheckedIOException("Event overflow failed", overflowFailure);
+        }
+    }
+
+    // wait until the drainer made room, called with the producer lock held
+    private void pause(BinlogEventV4 event, long eventSize) throws InterruptedException, IOException {
+        long pauseStart = System.currentTimeMillis();
+        pauseStartTime = pauseStart;
+        boolean warned = false;
+        try {
+            while (!overflow.hasRoomFor(event, eventSize) && overflowFailure == null) {
+                overflowDrained.await(100, TimeUnit.MILLISECONDS);
+                if (!warned && System.currentTimeMillis() - pauseStart > PAUSE_WARNING_MILLIS) {
+                    LOGGER.warn("Binlog reader paused for more than " + PAUSE_WARNING_MILLIS
+                            + "ms, the replicant may drop the connection after net_write_timeout");
+                    warned = true;
+                }
+            }
+        } finally {
+            pauseStartTime = 0;
+            pausedMillisCounter.inc(System.currentTimeMillis() - pauseStart);
+        }
+    }
+
+    // called with the producer lock held
+    private boolean tryPublish(BinlogEventV4 event, long eventSize) throws InterruptedException {
+        if (queue.size() >= highWaterMark) {
+            return false;
+        }
+        if (!queueMemory.acquire(eventSize, 0, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        if (!queue.offer(event)) {
+            queueMemory.release(eventSize);
+            return false;
+        }
+        return true;
+    }
+
+    // the overflow releases its charge of the event once it is removed, called with the producer lock held
+    private boolean tryTransfer(BinlogEventV4 event, long eventSize) {
+        if (queue.size() >= highWaterMark) {
+            return false;
+        }
+        queueMemory.charge(eventSize);
+        if (!queue.offer(event)) {
+            queueMemory.release(eventSize);
+            return false;
+        }
+        return true;
+    }
+
+    private void drainOverflow() {
+        producerLock.lock();
+        try {
+            while (running) {
+                BinlogEventV4 event = overflow.peek();
+                if (event == null) {
+                    overflowFilled.await(100, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                long eventSize = MemoryBudget.estimateEventSize(event);
+                boolean published = overflow.isChargedToMemoryBudget()
+                        ? tryTransfer(event, eventSize)
+                        : tryPublish(event, eventSize);
+                if (published) {
+                    overflow.remove();
+                    overflowBytes = overflow.getBytes();
+                    overflowDrained.signal();
+                } else {
+                    // lets the reader in while we wait for credit
+                    overflowFilled.awaitNanos(CREDIT_CHECK_NANOS);
+                }
+            }
+        } catch (InterruptedException e) {
+            if (running) {
+                LOGGER.error("Flow control drainer interrupted", e);
+            }
+        } catch (IOException e) {
+            // surfaces in the reader on its next publish
+            LOGGER.error("Failed to read from the event overflow", e);
+            overflowFailure = e;
+            overflowDrained.signalAll();
+        } finally {
+            producerLock.unlock();
+        }
+    }
+
+    public long getOverflowBytes() {
+        return overflowBytes;
+    }
+
+    public boolean isPaused() {
+        return pauseStartTime != 0;
+    }
+}
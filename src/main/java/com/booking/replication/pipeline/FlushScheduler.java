@@ -0,0 +1,92 @@
+package com.booking.replication.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer that decides when the applier buffers should be flushed because the
+ * pipeline went idle.
+ *
+ * <p>The applier is not thread safe, so the scheduler never flushes by itself.
+ * It raises a flag and runs the wake up callback (which interrupts the blocking
+ * drain of the pipeline thread); the pipeline thread then calls
+ * {@link #takeFlushRequest()} and does the flush.</p>
+ */
+public class FlushScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlushScheduler.class);
+
+    private final long                      flushIntervalMillis;
+    private final Runnable                  wakeUp;
+    private final ScheduledExecutorService  timer;
+
+    private volatile long    timeOfLastEvent = System.currentTimeMillis();
+    private volatile boolean flushRequested  = false;
+
+    /**
+     * Flush scheduler.
+     *
+     * @param flushIntervalMillis   Idle time after which a flush is requested
+     * @param wakeUp                Called when a flush is requested
+     */
+    public FlushScheduler(long flushIntervalMillis, Runnable wakeUp) {
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.wakeUp = wakeUp;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flush-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        timer.schedule(this::checkIdleTime, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Called by the pipeline thread whenever it receives events.
+     */
+    public void eventsReceived() {
+        timeOfLastEvent = System.currentTimeMillis();
+    }
+
+    /**
+     * Check and clear the flush request.
+     *
+     * @return  True if the caller should flush the applier now
+     */
+    public boolean takeFlushRequest() {
+        if (flushRequested) {
+            flushRequested = false;
+            return true;
+        }
+        return false;
+    }
+
+    private void checkIdleTime() {
+        long idleTime = System.currentTimeMillis() - timeOfLastEvent;
+        long nextCheck;
+        if (idleTime >= flushIntervalMillis) {
+            LOGGER.debug("Pipeline idle for " + idleTime + "ms, requesting buffer flush");
+            flushRequested = true;
+            wakeUp.run();
+            nextCheck = flushIntervalMillis;
+        } else {
+            nextCheck = flushIntervalMillis - idleTime;
+        }
+        try {
+            timer.schedule(this::checkIdleTime, nextCheck, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Flush scheduler stopped");
+        }
+    }
+}
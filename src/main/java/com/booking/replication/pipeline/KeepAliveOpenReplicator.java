@@ -0,0 +1,132 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.binlog.RawRowsEventParser;
+import com.booking.replication.net.NioTransport;
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.binlog.impl.ReplicationBasedBinlogParser;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.impl.AuthenticatorImpl;
+import com.google.code.or.net.impl.Query;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open Replicator that raises net_write_timeout for its replication session.
+ *
+ * <p>The server drops a binlog dump connection that the client hasn't read
+ * from for net_write_timeout seconds (60 by default). When the flow control
+ * pauses the reader for longer than that, the connection is lost and has to
+ * be set up again. A longer session timeout lets the reader sit out a slow
+ * down of the sink.</p>
+ *
+ * <p>Connects through the Open Replicator transport unless told to use a
+ * {@link NioTransport}. The NIO transport drops a connection the server has
+ * sent nothing on for the read timeout, and asks the server for heartbeats at
+ * half of it, so that a quiet server isn't taken for a dead one.</p>
+ */
+public class KeepAliveOpenReplicator extends OpenReplicator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeepAliveOpenReplicator.class);
+
+    private final int netWriteTimeout;
+
+    private boolean rawRowsEvents        = false;
+    private boolean nioTransport         = false;
+    private boolean compression          = false;
+    private int     socketSendBufferSize = 0;
+    private int     readTimeout          = 0;
+
+    /**
+     * Open Replicator with a session net_write_timeout.
+     *
+     * @param netWriteTimeout   Timeout in seconds, 0 to keep the server default
+     */
+    public KeepAliveOpenReplicator(int netWriteTimeout) {
+        this.netWriteTimeout = netWriteTimeout;
+    }
+
+    /**
+     * Yield {@link com.booking.replication.binlog.RawRowsEvent}s for the V2 rows events.
+     */
+    public void setRawRowsEvents(boolean rawRowsEvents) {
+        this.rawRowsEvents = rawRowsEvents;
+    }
+
+    /**
+     * Connect through a {@link NioTransport} instead of the Open Replicator transport.
+     */
+    public void setNioTransport(boolean nioTransport) {
+        this.nioTransport = nioTransport;
+    }
+
+    /**
+     * Ask the server to compress the connection, with the NIO transport only.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Socket send buffer size in bytes, 0 to keep the OS default. With the NIO transport only.
+     */
+    public void setSocketSendBufferSize(int socketSendBufferSize) {
+        this.socketSendBufferSize = socketSendBufferSize;
+    }
+
+    /**
+     * Seconds without data from the server after which the connection is
+     * dropped, 0 to wait forever. With the NIO transport only.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    protected Transport getDefaultTransport() throws Exception {
+        if (!nioTransport) {
+            return super.getDefaultTransport();
+        }
+
+        AuthenticatorImpl authenticator = new AuthenticatorImpl();
+        authenticator.setUser(user);
+        authenticator.setPassword(password);
+        authenticator.setEncoding(encoding);
+
+        NioTransport transport = new NioTransport();
+        transport.setLevel1BufferSize(level1BufferSize);
+        transport.setAuthenticator(authenticator);
+        transport.setCompression(compression);
+        transport.setReceiveBufferSize(socketReceiveBufferSize);
+        transport.setSendBufferSize(socketSendBufferSize);
+        transport.setReadTimeout(readTimeout * 1000);
+        return transport;
+    }
+
+    @Override
+    protected ReplicationBasedBinlogParser getDefaultBinlogParser() throws Exception {
+        ReplicationBasedBinlogParser parser = super.getDefaultBinlogParser();
+        if (rawRowsEvents) {
+            RawRowsEventParser.register(parser);
+        }
+        return parser;
+    }
+
+    // runs on the replication connection right before the binlog dump is requested
+    @Override
+    protected void setupChecksumState() throws Exception {
+        super.setupChecksumState();
+        if (netWriteTimeout > 0) {
+            new Query(transport).getFirst("SET SESSION net_write_timeout = " + netWriteTimeout);
+            LOGGER.info("Set net_write_timeout of the replication session to " + netWriteTimeout + "s");
+        }
+        if (nioTransport && readTimeout > 0) {
+            // in nanoseconds, the server sends a heartbeat event when it had nothing to send for that long
+            long heartbeatPeriod = TimeUnit.SECONDS.toNanos(readTimeout) / 2;
+            new Query(transport).getFirst("SET @master_heartbeat_period = " + heartbeatPeriod);
+            LOGGER.info("Asked for heartbeats every " + readTimeout / 2.0 + "s on the replication session");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.booking.replication.pipeline;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogParser;
+import com.google.code.or.binlog.BinlogParserListener;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.FileBasedBinlogParser;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.IncidentEventParser;
+import com.google.code.or.binlog.impl.parser.IntvarEventParser;
+import com.google.code.or.binlog.impl.parser.QueryEventParser;
+import com.google.code.or.binlog.impl.parser.RandEventParser;
+import com.google.code.or.binlog.impl.parser.RotateEventParser;
+import com.google.code.or.binlog.impl.parser.StopEventParser;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.UserVarEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.common.util.CodecUtils;
+import com.google.code.or.common.util.IOUtils;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.io.impl.XInputStreamImpl;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a binlog file, read through a memory mapping, into the same events
+ * the replication connection yields.
+ */
+public class MappedBinlogFileParser extends FileBasedBinlogParser {
+
+    private final long endPosition;
+
+    /**
+     * Parser for a whole binlog file, from the start position on.
+     */
+    public MappedBinlogFileParser(File file, long startPosition) {
+        this(file, startPosition, file.length());
+    }
+
+    /**
+     * Parser for the part of a binlog file between two positions. The file name
+     * is taken as the binlog file name.
+     */
+    public MappedBinlogFileParser(File file, long startPosition, long endPosition) {
+        this.endPosition = endPosition;
+        setBinlogFilePath(file.getAbsoluteFile().getParent());
+        setBinlogFileName(file.getName());
+        setStartPosition(startPosition);
+        registerDefaultEventParsers(this);
+    }
+
+    /**
+     * Register the event parsers Open Replicator uses for the replication connection.
+     */
+    public static void registerDefaultEventParsers(AbstractBinlogParser parser) {
+        parser.registerEventParser(new StopEventParser());
+        parser.registerEventParser(new RotateEventParser());
+        parser.registerEventParser(new IntvarEventParser());
+        parser.registerEventParser(new XidEventParser());
+        parser.registerEventParser(new RandEventParser());
+        parser.registerEventParser(new QueryEventParser());
+        parser.registerEventParser(new UserVarEventParser());
+        parser.registerEventParser(new IncidentEventParser());
+        parser.registerEventParser(new TableMapEventParser());
+        parser.registerEventParser(new WriteRowsEventParser());
+        parser.registerEventParser(new UpdateRowsEventParser());
+        parser.registerEventParser(new DeleteRowsEventParser());
+        parser.registerEventParser(new WriteRowsEventV2Parser());
+        parser.registerEventParser(new UpdateRowsEventV2Parser());
+        parser.registerEventParser(new DeleteRowsEventV2Parser());
+        parser.registerEventParser(new FormatDescriptionEventParser());
+    }
+
+    // reads the mapped file up to the end position
+    @Override
+    protected XInputStream open(String path, Long position) throws Exception {
+        XInputStream is = new XInputStreamImpl(new MappedFileInputStream(new File(path), endPosition));
+        try {
+            byte[] magic = is.readBytes(MySQLConstants.BINLOG_MAGIC.length);
+            if (!CodecUtils.equals(magic, MySQLConstants.BINLOG_MAGIC)) {
+                throw new RuntimeException("invalid binlog magic, file: " + path);
+            }
+            if (position > MySQLConstants.BINLOG_MAGIC.length) {
+                is.skip(position - MySQLConstants.BINLOG_MAGIC.length);
+            }
+            return is;
+        } catch (Exception e) {
+            IOUtils.closeQuietly(is);
+            throw e;
+        }
+    }
+
+    /**
+     * Parse up to the end position, and wait until done.
+     *
+     * @throws Exception    The exception the parser failed with, e.g. from the listener
+     */
+    public void parseToEnd(BinlogEventListener listener) throws Exception {
+        final Exception[] parserException = new Exception[1];
+        setEventListener(listener);
+        addParserListener(new BinlogParserListener.Adapter() {
+            @Override
+            public void onException(BinlogParser binlogParser, Exception exception) {
+                parserException[0] = exception;
+            }
+        });
+        start();
+        while (isRunning()) {
+            awaitTermination(1, TimeUnit.SECONDS);
+        }
+        if (parserException[0] != null) {
+            throw parserException[0];
+        }
+    }
+
+    /**
+     * Wait for the parser to reach the end position, or to fail.
+     *
+     * @return  False if the parser is still running after the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread parserThread = worker;
+        if (parserThread != null) {
+            parserThread.join(unit.toMillis(timeout));
+        }
+        return !isRunning();
+    }
+}
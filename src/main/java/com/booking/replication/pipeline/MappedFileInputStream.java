@@ -0,0 +1,78 @@
+package com.booking.replication.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream over the head of a file, mapped into memory.
+ */
+class MappedFileInputStream extends InputStream {
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * Map the file.
+     *
+     * @param file      File to read
+     * @param length    Bytes to read, the file may be longer
+     */
+    MappedFileInputStream(File file, long length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            long mappedLength = Math.min(length, randomAccessFile.length());
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mappedLength);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        ensureOpen();
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(target, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        ensureOpen();
+        int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released once the buffer is collected
+        buffer = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
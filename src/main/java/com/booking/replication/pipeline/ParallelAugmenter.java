@@ -0,0 +1,183 @@
+package com.booking.replication.pipeline;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+import com.booking.replication.queues.ReorderBuffer;
+import com.booking.replication.queues.WaitStrategy;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Augments row events on a pool of worker threads.
+ *
+ * <p>The augmentation stage thread tags every event with a sequence number and
+ * hands row events to the workers; all other events need no augmentation and
+ * are completed right away. The workers finish in any order, so this thread
+ * takes the events back out of a reorder buffer in sequence order, which is
+ * binlog order, and submits them to the apply stage.</p>
+ *
+ * <p>Barrier events fence the pool: the augmentation stage thread does not
+ * dispatch anything after a DDL or rotate until it has been applied. All rows
+ * before it have been converted by then, since they are released ahead of it,
+ * and no row after it is converted against the old schema version.</p>
+ */
+public class ParallelAugmenter extends Thread {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelAugmenter.class);
+
+    private static final int POLL_TIMEOUT = 1000;
+
+    private final ExecutorService                workers;
+    private final ReorderBuffer<PipelineEvent>   reorderBuffer;
+    private final PipelineStage.Handler          augmenter;
+    private final PipelineStage                  applyStage;
+    private final PipelineOrchestrator           orchestrator;
+    private final Meter                          eventsReleased;
+
+    // next sequence to dispatch, written by the augmentation stage thread only
+    private volatile long nextSequence = 0L;
+
+    private volatile boolean running = false;
+
+    /**
+     * Parallel augmenter.
+     *
+     * @param threads       Number of worker threads
+     * @param window        Maximum number of events dispatched but not yet released
+     * @param waitStrategy  Wait strategy of the reorder buffer
+     * @param augmenter     Augments a single row event, called on the worker threads
+     * @param applyStage    Stage that receives the events in binlog order
+     * @param orchestrator  Notified when augmentation fails
+     */
+    public ParallelAugmenter(
+            int threads,
+            int window,
+            WaitStrategy waitStrategy,
+            PipelineStage.Handler augmenter,
+            PipelineStage applyStage,
+            PipelineOrchestrator orchestrator) {
+        super("pipeline-reorder");
+        this.reorderBuffer  = new ReorderBuffer<>(window, waitStrategy);
+        this.augmenter      = augmenter;
+        this.applyStage     = applyStage;
+        this.orchestrator   = orchestrator;
+        this.eventsReleased = Metrics.registry.meter(name("pipeline", "reorder", "eventsReleased"));
+
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-augment-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Metrics.registry.register(name("pipeline", "augment", "inFlight"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return nextSequence - reorderBuffer.getReleasedCount();
+                }
+            });
+    }
+
+    /**
+     * Augmentation stage handler: dispatch the event and, for barrier events,
+     * wait until it has been applied. Must only be called from the augmentation
+     * stage thread.
+     */
+    public void dispatch(PipelineEvent pipelineEvent) throws InterruptedException {
+        long sequence = nextSequence;
+        while (!reorderBuffer.awaitCapacity(sequence, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            checkRunning();
+        }
+        nextSequence = sequence + 1;
+
+        if (pipelineEvent.isRowsEvent()) {
+            workers.execute(() -> augment(sequence, pipelineEvent));
+        } else {
+            reorderBuffer.complete(sequence, pipelineEvent);
+        }
+
+        if (pipelineEvent.isBarrier()) {
+            while (!pipelineEvent.awaitBarrier(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                checkRunning();
+            }
+        }
+    }
+
+    private void checkRunning() throws InterruptedException {
+        if (!running || !applyStage.isRunning()) {
+            throw new InterruptedException("Parallel augmenter or apply stage stopped");
+        }
+    }
+
+    private void augment(long sequence, PipelineEvent pipelineEvent) {
+        try {
+            augmenter.handle(pipelineEvent);
+            reorderBuffer.complete(sequence, pipelineEvent);
+        } catch (TableMapException e) {
+            LOGGER.error("TableMapException while augmenting rows event, requesting replicator shutdown...", e);
+            failed();
+        } catch (Exception e) {
+            LOGGER.error("Exception while augmenting rows event, requesting replicator shutdown...", e);
+            failed();
+        }
+    }
+
+    private void failed() {
+        // the sequence is never completed, so nothing after it may be released
+        orchestrator.requestReplicatorShutdown();
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        super.start();
+    }
+
+    /**
+     * Stop releasing events and shut down the worker pool.
+     */
+    public void stopAugmenter() {
+        running = false;
+        workers.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                PipelineEvent pipelineEvent = reorderBuffer.take(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (pipelineEvent != null) {
+                    applyStage.submit(pipelineEvent);
+                    eventsReleased.mark();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.error("Interrupted while releasing augmented events, requesting replicator shutdown...", e);
+                orchestrator.requestReplicatorShutdown();
+                running = false;
+            }
+        }
+
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted while waiting for augmentation workers to finish", e);
+        }
+    }
+}
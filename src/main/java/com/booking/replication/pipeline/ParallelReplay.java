@@ -0,0 +1,260 @@
+package com.booking.replication.pipeline;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Configuration;
+import com.booking.replication.Coordinator;
+import com.booking.replication.Metrics;
+import com.booking.replication.applier.Applier;
+import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.EventAugmenter;
+import com.booking.replication.binlog.RawRowsEventParser;
+import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+import com.booking.replication.replicant.ReplicantPool;
+import com.booking.replication.schema.ActiveSchemaVersion;
+import com.booking.replication.schema.exception.TableMapException;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel replay of a bounded range of binlog files from the binlog directory.
+ *
+ * <p>The range is scanned first, and cut into segments at the schema changes
+ * and the file boundaries (see {@link ReplayPlanner}). The schema changes are
+ * then applied to the active schema in binlog order, keeping a frozen copy of
+ * every schema version. Finally the segments are replayed by a number of
+ * lanes, each with its own orchestrator, augmenter and applier. Lanes take the
+ * segments in binlog order, and every segment is processed with the schema
+ * version and the classification state the serial pipeline would have at its
+ * start, so the rows come out the same as from the serial pipeline, only not
+ * in binlog order across segments. That is fine for appliers that write
+ * versioned, idempotent rows, like the HBase applier.</p>
+ *
+ * <p>The checkpoint moves to the end of a segment only once all segments
+ * before it are applied as well.</p>
+ */
+public class ParallelReplay {
+
+    private final Configuration    configuration;
+    private final PipelinePosition pipelinePosition;
+    private final ReplicantPool    replicantPool;
+    private final long             fakeMicrosecondCounter;
+    private final Callable<Applier> applierFactory;
+
+    private final List<ActiveSchemaVersion>        schemaVersions = new ArrayList<>();
+    private final List<AugmentedSchemaChangeEvent> schemaChanges  = new ArrayList<>();
+
+    private List<ReplaySegment> segments;
+    private ReplayCheckpoints   checkpoints;
+
+    private final AtomicInteger nextSegment = new AtomicInteger();
+    private volatile boolean    failed      = false;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelReplay.class);
+
+    private static final Counter segmentsReplayed = Metrics.registry.counter(name("replay", "segmentsReplayed"));
+    private static final Counter segmentsCommitted = Metrics.registry.counter(name("replay", "segmentsCommitted"));
+
+    /**
+     * Replay from the start position up to the end of the last binlog file.
+     *
+     * @param pipelinePosition          Start position
+     * @param fakeMicrosecondCounter    Fake microsecond counter at the start position
+     * @param applierFactory            Creates the applier of a lane
+     */
+    public ParallelReplay(
+            Configuration configuration,
+            PipelinePosition pipelinePosition,
+            ReplicantPool replicantPool,
+            long fakeMicrosecondCounter,
+            Callable<Applier> applierFactory) {
+        this.configuration          = configuration;
+        this.pipelinePosition       = pipelinePosition;
+        this.replicantPool          = replicantPool;
+        this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+        this.applierFactory         = applierFactory;
+    }
+
+    /**
+     * Plan and run the replay, and wait until it is done.
+     *
+     * @return  True if all segments were replayed
+     */
+    public boolean run() throws Exception {
+        String startBinlogFileName = pipelinePosition.getStartPosition().getBinlogFilename();
+        long   startPosition       = pipelinePosition.getStartPosition().getBinlogPosition();
+        String lastSafeBinlogFileName = pipelinePosition.getLastSafeCheckPointPosition().getBinlogFilename();
+        long   lastSafeBinlogPosition = pipelinePosition.getLastSafeCheckPointPosition().getBinlogPosition();
+
+        // 1. plan
+        List<File> files = new BinlogDirectory(new File(configuration.getBinlogDirectory()))
+                .getFiles(startBinlogFileName, configuration.getLastBinlogFileName());
+
+        ReplayPlanner planner = new ReplayPlanner(configuration, pipelinePosition, replicantPool, fakeMicrosecondCounter);
+        segments = planner.plan(files, startPosition);
+        checkpoints = new ReplayCheckpoints(segments.size());
+
+        // 2. move the active schema through all schema changes, keeping every version
+        ActiveSchemaVersion activeSchemaVersion = new ActiveSchemaVersion(configuration);
+        EventAugmenter eventAugmenter = new EventAugmenter(activeSchemaVersion);
+
+        schemaVersions.add(activeSchemaVersion.freeze());
+        for (QueryEvent schemaChange : planner.getSchemaChanges()) {
+            schemaChanges.add(activeSchemaVersion.transitionSchemaToNextVersion(
+                    eventAugmenter.getSchemaTransitionSequence(schemaChange),
+                    schemaChange.getHeader().getTimestamp()));
+            schemaVersions.add(activeSchemaVersion.freeze());
+        }
+
+        // 3. replay the segments
+        int laneCount = Math.min(configuration.getParallelReplayLanes(), segments.size());
+        LOGGER.info("Replaying " + segments.size() + " segments in " + laneCount + " lanes");
+
+        List<Thread> lanes = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            Thread laneThread = new Thread(
+                    () -> runLane(lastSafeBinlogFileName, lastSafeBinlogPosition), "replay-lane-" + lane);
+            laneThread.start();
+            lanes.add(laneThread);
+        }
+        for (Thread lane : lanes) {
+            lane.join();
+        }
+
+        if (failed) {
+            LOGGER.error("Parallel replay failed, the checkpoint covers "
+                    + checkpoints.getCommittedSegments() + " of " + segments.size() + " segments");
+            return false;
+        }
+        LOGGER.info("Replayed all binlog files up to " + files.get(files.size() - 1).getName());
+        return true;
+    }
+
+    private void runLane(String lastSafeBinlogFileName, long lastSafeBinlogPosition) {
+        Applier applier = null;
+        try {
+            applier = applierFactory.call();
+
+            int index;
+            while (!failed && (index = nextSegment.getAndIncrement()) < segments.size()) {
+                ReplaySegment segment = segments.get(index);
+                LastCommittedPositionCheckpoint checkpoint =
+                        replaySegment(segment, applier, lastSafeBinlogFileName, lastSafeBinlogPosition);
+                segmentsReplayed.inc();
+
+                // saved under the lock, so that an older checkpoint never overwrites a newer one
+                synchronized (checkpoints) {
+                    int committedBefore = checkpoints.getCommittedSegments();
+                    LastCommittedPositionCheckpoint committed = checkpoints.segmentFinished(index, checkpoint);
+                    if (committed != null) {
+                        LOGGER.info("Save new marker: " + committed.toJson());
+                        Coordinator.saveCheckpointMarker(committed);
+                        segmentsCommitted.inc(checkpoints.getCommittedSegments() - committedBefore);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Replay lane failed, stopping the replay", e);
+            failed = true;
+        } finally {
+            if (applier != null) {
+                applier.close();
+            }
+        }
+    }
+
+    /**
+     * Replay one segment, and wait until its rows are committed.
+     *
+     * @return  Checkpoint at the end of the segment
+     */
+    private LastCommittedPositionCheckpoint replaySegment(
+            ReplaySegment segment,
+            Applier applier,
+            String lastSafeBinlogFileName,
+            long lastSafeBinlogPosition) throws Exception {
+
+        LOGGER.info("Replaying segment " + segment.getIndex() + ": " + segment);
+
+        PipelinePosition segmentPosition = new PipelinePosition(
+                segment.getPseudoGTID(),
+                segment.getPseudoGTIDFullQuery(),
+                replicantPool.getReplicantDBActiveHost(),
+                replicantPool.getReplicantDBActiveHostServerID(),
+                segment.getFile().getName(),
+                segment.getStartPosition(),
+                lastSafeBinlogFileName,
+                lastSafeBinlogPosition);
+
+        PipelineOrchestrator orchestrator = new PipelineOrchestrator(
+                segmentPosition,
+                configuration,
+                applier,
+                replicantPool,
+                new EventAugmenter(schemaVersionOf(segment, schemaVersions)),
+                schemaChangeOf(segment, schemaChanges),
+                segment.getFakeMicrosecondCounter(),
+                segment.getPreviousTimestamp());
+
+        MappedBinlogFileParser parser = new MappedBinlogFileParser(
+                segment.getFile(), segment.getStartPosition(), segment.getEndPosition());
+        if (configuration.isReplicatorRowsDecoder()) {
+            RawRowsEventParser.register(parser);
+        }
+
+        final BinlogEventV4[] lastEvent = new BinlogEventV4[1];
+        parser.parseToEnd(event -> {
+            if (failed) {
+                throw new IllegalStateException("Replay stopped");
+            }
+            try {
+                orchestrator.processEvent(event);
+            } catch (Exception | TableMapException e) {
+                throw new RuntimeException("Failed to replay event " + event, e);
+            }
+            lastEvent[0] = event;
+        });
+        if (orchestrator.isReplicatorShutdownRequested()) {
+            throw new IllegalStateException("Failed to replay segment " + segment);
+        }
+
+        applier.forceFlush();
+        if (lastEvent[0] != null) {
+            applier.waitUntilAllRowsAreCommitted(lastEvent[0]);
+        }
+
+        BinlogPositionInfo position = segmentPosition.getCurrentPosition();
+        return new LastCommittedPositionCheckpoint(
+                position.getHost(),
+                position.getServerID(),
+                position.getBinlogFilename(),
+                position.getBinlogPosition(),
+                segmentPosition.getCurrentPseudoGTID(),
+                segmentPosition.getCurrentPseudoGTIDFullQuery(),
+                orchestrator.getFakeMicrosecondCounter());
+    }
+
+    /**
+     * The frozen schema version the segment is replayed with.
+     */
+    static ActiveSchemaVersion schemaVersionOf(ReplaySegment segment, List<ActiveSchemaVersion> schemaVersions) {
+        return schemaVersions.get(segment.getSchemaVersion());
+    }
+
+    /**
+     * The schema change the segment starts with, null if it does not start with one.
+     */
+    static AugmentedSchemaChangeEvent schemaChangeOf(ReplaySegment segment, List<AugmentedSchemaChangeEvent> schemaChanges) {
+        return segment.startsWithSchemaChange() ? schemaChanges.get(segment.getSchemaVersion() - 1) : null;
+    }
+}
@@ -0,0 +1,161 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.augmenter.AugmentedRowsEvent;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.common.util.MySQLConstants;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binlog event on its way through the pipeline stages.
+ *
+ * <p>Besides the event itself it carries everything the augmentation and
+ * apply stages need from the classification stage: the table map cache of the
+ * transaction, the query classification and a snapshot of the pipeline position
+ * taken when the event was classified. The classification stage runs ahead of
+ * the other stages, so they must never read the live PipelinePosition.</p>
+ */
+public class PipelineEvent {
+
+    public enum QueryType {
+        NONE,
+        COMMIT,
+        BEGIN,
+        DDL_TABLE,
+        DDL_VIEW,
+        OTHER
+    }
+
+    private final BinlogEventV4              event;
+    private final CurrentTransactionMetadata transactionMetadata;
+
+    // position snapshot
+    private final String host;
+    private final int    serverID;
+    private final String binlogFilename;
+    private final long   binlogPosition;
+    private final String pseudoGTID;
+    private final String pseudoGTIDFullQuery;
+    private final long   fakeMicrosecondCounter;
+
+    private String    querySQL;
+    private QueryType queryType = QueryType.NONE;
+    private boolean   pseudoGTIDEvent = false;
+
+    private AugmentedRowsEvent augmentedRowsEvent;
+
+    private final CountDownLatch barrier = new CountDownLatch(1);
+
+    PipelineEvent(
+            BinlogEventV4 event,
+            CurrentTransactionMetadata transactionMetadata,
+            PipelinePosition pipelinePosition,
+            long fakeMicrosecondCounter) {
+        this.event                  = event;
+        this.transactionMetadata    = transactionMetadata;
+        this.host                   = pipelinePosition.getCurrentPosition().getHost();
+        this.serverID               = pipelinePosition.getCurrentPosition().getServerID();
+        this.binlogFilename         = pipelinePosition.getCurrentPosition().getBinlogFilename();
+        this.binlogPosition         = pipelinePosition.getCurrentPosition().getBinlogPosition();
+        this.pseudoGTID             = pipelinePosition.getCurrentPseudoGTID();
+        this.pseudoGTIDFullQuery    = pipelinePosition.getCurrentPseudoGTIDFullQuery();
+        this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+    }
+
+    public BinlogEventV4 getEvent() {
+        return event;
+    }
+
+    public int getEventType() {
+        return event.getHeader().getEventType();
+    }
+
+    public CurrentTransactionMetadata getTransactionMetadata() {
+        return transactionMetadata;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getServerID() {
+        return serverID;
+    }
+
+    public String getBinlogFilename() {
+        return binlogFilename;
+    }
+
+    public long getBinlogPosition() {
+        return binlogPosition;
+    }
+
+    public String getPseudoGTID() {
+        return pseudoGTID;
+    }
+
+    public String getPseudoGTIDFullQuery() {
+        return pseudoGTIDFullQuery;
+    }
+
+    public long getFakeMicrosecondCounter() {
+        return fakeMicrosecondCounter;
+    }
+
+    public String getQuerySQL() {
+        return querySQL;
+    }
+
+    public QueryType getQueryType() {
+        return queryType;
+    }
+
+    void setQuery(String querySQL, QueryType queryType, boolean pseudoGTIDEvent) {
+        this.querySQL        = querySQL;
+        this.queryType       = queryType;
+        this.pseudoGTIDEvent = pseudoGTIDEvent;
+    }
+
+    public boolean isPseudoGTIDEvent() {
+        return pseudoGTIDEvent;
+    }
+
+    public AugmentedRowsEvent getAugmentedRowsEvent() {
+        return augmentedRowsEvent;
+    }
+
+    void setAugmentedRowsEvent(AugmentedRowsEvent augmentedRowsEvent) {
+        this.augmentedRowsEvent = augmentedRowsEvent;
+    }
+
+    public boolean isRowsEvent() {
+        switch (getEventType()) {
+            case MySQLConstants.UPDATE_ROWS_EVENT:
+            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+            case MySQLConstants.WRITE_ROWS_EVENT:
+            case MySQLConstants.WRITE_ROWS_EVENT_V2:
+            case MySQLConstants.DELETE_ROWS_EVENT:
+            case MySQLConstants.DELETE_ROWS_EVENT_V2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Barrier events (DDL and rotate) must be completely applied before any
+     * event that follows them is augmented.
+     */
+    public boolean isBarrier() {
+        return queryType == QueryType.DDL_TABLE || getEventType() == MySQLConstants.ROTATE_EVENT;
+    }
+
+    void barrierPassed() {
+        barrier.countDown();
+    }
+
+    boolean awaitBarrier(long timeout, TimeUnit unit) throws InterruptedException {
+        return barrier.await(timeout, unit);
+    }
+}
@@ -7,15 +7,21 @@ import com.booking.replication.Constants;
 import com.booking.replication.Coordinator;
 import com.booking.replication.Metrics;
 import com.booking.replication.applier.Applier;
+import com.booking.replication.applier.ApplierException;
 import com.booking.replication.applier.HBaseApplier;
 import com.booking.replication.applier.hbase.TaskBufferInconsistencyException;
 import com.booking.replication.augmenter.AugmentedRowsEvent;
 import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
 import com.booking.replication.augmenter.EventAugmenter;
+import com.booking.replication.augmenter.TransactionAssembler;
 import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+import com.booking.replication.queues.MemoryBudget;
 import com.booking.replication.queues.ReplicatorQueues;
+import com.booking.replication.queues.WaitStrategy;
 import com.booking.replication.replicant.ReplicantPool;
 import com.booking.replication.schema.ActiveSchemaVersion;
+import com.booking.replication.schema.TableFilter;
 import com.booking.replication.schema.exception.SchemaTransitionException;
 import com.booking.replication.schema.exception.TableMapException;
 import com.booking.replication.sql.QueryInspector;
@@ -26,6 +32,7 @@ import com.google.code.or.common.util.MySQLConstants;
 import com.google.common.base.Joiner;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
@@ -34,7 +41,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 
@@ -49,6 +58,12 @@ import java.util.concurrent.TimeUnit;
  *      2  augmenting events with schema info
  *      3. sending of events to applier.
  * </p>
+ *
+ * <p>In staged mode (pipeline.staged) the three steps run on separate threads:
+ * this thread classifies events and hands them to the augmentation stage, which
+ * hands them to the apply stage. Binlog order is kept by the single threaded
+ * stages and bounded buffers between them; DDL and rotate events are barriers
+ * that the augmentation stage waits on until they are fully applied.</p>
  */
 public class PipelineOrchestrator extends Thread {
 
@@ -57,9 +72,10 @@ public class PipelineOrchestrator extends Thread {
     private final  Applier                         applier;
     private final  ReplicatorQueues                queues;
     private final  QueryInspector                  queryInspector;
-    private static EventAugmenter                  eventAugmenter;
-    private static ActiveSchemaVersion             activeSchemaVersion;
-    private static LastCommittedPositionCheckpoint lastVerifiedPseudoGTIDCheckPoint;
+    private final  TableFilter                     tableFilter;
+    private final  EventAugmenter                  eventAugmenter;
+    private final  ActiveSchemaVersion             activeSchemaVersion;
+    private        LastCommittedPositionCheckpoint lastVerifiedPseudoGTIDCheckPoint;
 
     public CurrentTransactionMetadata currentTransactionMetadata;
 
@@ -83,8 +99,28 @@ public class PipelineOrchestrator extends Thread {
     private static final Meter eventsProcessedCounter   = Metrics.registry.meter(name("events", "eventsProcessedCounter"));
     private static final Meter eventsSkippedCounter     = Metrics.registry.meter(name("events", "eventsSkippedCounter"));
 
+    private static final Meter classifiedEventsCounter  = Metrics.registry.meter(name("pipeline", "classify", "eventsProcessed"));
+
+    private static final Histogram transactionBatchRows = Metrics.registry.histogram(name("pipeline", "apply", "transactionBatchRows"));
+
     private static final int BUFFER_FLUSH_INTERVAL = 30000; // <- force buffer flush every 30 sec
 
+    private static final int EVENT_BATCH_SIZE = 256; // <- max events taken from the raw queue at once
+
+    private static final int POLL_TIMEOUT = 1000; // <- max ms to block on the raw queue before re-checking state
+
+    private final FlushScheduler flushScheduler;
+
+    // augmentation and apply stages, null when running in serial mode
+    private final PipelineStage augmentStage;
+    private final PipelineStage applyStage;
+
+    // worker pool augmenting row events in staged mode, null when augmenting inline
+    private final ParallelAugmenter parallelAugmenter;
+
+    // rows of the open transaction, owned by the thread that applies the events
+    private final TransactionAssembler transactionAssembler = new TransactionAssembler();
+
     private static final int DEFAULT_VERSIONS_FOR_MIRRORED_TABLES = 1000;
 
     private HashMap<String,Boolean> rotateEventAllreadySeenForBinlogFile = new HashMap<>();
@@ -103,8 +139,14 @@ public class PipelineOrchestrator extends Thread {
      * second. We want to know what was their order. That is the
      * main purpose of this counter.</p>
      */
-    private static long fakeMicrosecondCounter = 0L;
-    private static long previousTimestamp = 0L;
+    private long fakeMicrosecondCounter = 0L;
+    private long previousTimestamp = 0L;
+
+    // set when the orchestrator replays one segment of a parallel replay
+    private final boolean replayLane;
+
+    // schema change the replay segment starts with, null if it starts with another event
+    private final AugmentedSchemaChangeEvent replaySchemaChange;
 
     public void requestReplicatorShutdown() {
         replicatorShutdownRequested = true;
@@ -114,13 +156,21 @@ public class PipelineOrchestrator extends Thread {
         return replicatorShutdownRequested;
     }
 
-    public static void setFakeMicrosecondCounter(Long fakeMicrosecondCounter) {
+    public void setFakeMicrosecondCounter(Long fakeMicrosecondCounter) {
         LOGGER.info(String.format(
                 "Setting fake microsecond counter to: %s (was: %s)",
                 fakeMicrosecondCounter,
-                PipelineOrchestrator.fakeMicrosecondCounter)
+                this.fakeMicrosecondCounter)
         );
-        PipelineOrchestrator.fakeMicrosecondCounter = fakeMicrosecondCounter;
+        this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+    }
+
+    public long getFakeMicrosecondCounter() {
+        return fakeMicrosecondCounter;
+    }
+
+    public long getPreviousTimestamp() {
+        return previousTimestamp;
     }
 
     public PipelineOrchestrator(
@@ -136,11 +186,14 @@ public class PipelineOrchestrator extends Thread {
 
         this.replicantPool = replicantPool;
         this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+        this.replayLane = false;
+        this.replaySchemaChange = null;
 
         activeSchemaVersion =  new ActiveSchemaVersion(configuration);
         eventAugmenter = new EventAugmenter(activeSchemaVersion);
 
-        currentTransactionMetadata = new CurrentTransactionMetadata();
+        tableFilter = TableFilter.fromConfiguration(configuration);
+        currentTransactionMetadata = new CurrentTransactionMetadata(tableFilter);
 
         this.applier = applier;
 
@@ -163,6 +216,88 @@ public class PipelineOrchestrator extends Thread {
         this.pipelinePosition = pipelinePosition;
 
         this.queryInspector = new QueryInspector(configuration.getpGTIDPattern());
+
+        if (configuration.isPipelineStaged()) {
+            WaitStrategy waitStrategy = WaitStrategy.fromName(configuration.getRawQueueWaitStrategy());
+            int stageQueueSize = configuration.getPipelineStageQueueSize();
+
+            applyStage = new PipelineStage(
+                    "apply", stageQueueSize, waitStrategy, this::applyEvent, this::flushIfRequested, this);
+
+            if (configuration.getPipelineAugmenterThreads() > 1) {
+                parallelAugmenter = new ParallelAugmenter(
+                        configuration.getPipelineAugmenterThreads(), stageQueueSize, waitStrategy,
+                        this::augmentEvent, applyStage, this);
+                augmentStage = new PipelineStage(
+                        "augment", stageQueueSize, waitStrategy, parallelAugmenter::dispatch, null, this);
+            } else {
+                parallelAugmenter = null;
+                augmentStage = new PipelineStage(
+                        "augment", stageQueueSize, waitStrategy, this::augmentAndForward, null, this);
+            }
+
+            // the applier belongs to the apply stage thread, so that is the one to wake up for flushes
+            this.flushScheduler = new FlushScheduler(BUFFER_FLUSH_INTERVAL, applyStage::wakeUp);
+        } else {
+            applyStage = null;
+            augmentStage = null;
+            parallelAugmenter = null;
+            this.flushScheduler = new FlushScheduler(BUFFER_FLUSH_INTERVAL, queues.rawQueue::wakeUpConsumer);
+        }
+
+        Metrics.registry.register(name("pipeline", "classify", "queueDepth"),
+            new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return queues.rawQueue.size();
+                }
+            });
+    }
+
+    /**
+     * Orchestrator for one segment of a parallel replay. It runs no thread and no
+     * stages: the replay lane hands it the events of the segment one by one,
+     * through {@link #processEvent(BinlogEventV4)}.
+     *
+     * <p>The classification state is where the serial pipeline would be at the
+     * start of the segment. Schema changes are not applied to the active schema
+     * (that happened when the replay was planned), instead the augmenter holds
+     * the schema version of the segment. Checkpoints are left to the replay.</p>
+     *
+     * @param eventAugmenter            Augmenter on the schema version of the segment,
+     *                                  null when the orchestrator only classifies
+     * @param replaySchemaChange        Schema change of the DDL the segment starts with, or null
+     */
+    PipelineOrchestrator(
+            PipelinePosition pipelinePosition,
+            Configuration configuration,
+            Applier applier,
+            ReplicantPool replicantPool,
+            EventAugmenter eventAugmenter,
+            AugmentedSchemaChangeEvent replaySchemaChange,
+            long fakeMicrosecondCounter,
+            long previousTimestamp) {
+
+        this.queues = null;
+        this.configuration = configuration;
+        this.pipelinePosition = pipelinePosition;
+        this.applier = applier;
+        this.replicantPool = replicantPool;
+        this.eventAugmenter = eventAugmenter;
+        this.activeSchemaVersion = eventAugmenter == null ? null : eventAugmenter.getActiveSchemaVersion();
+        this.replaySchemaChange = replaySchemaChange;
+        this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+        this.previousTimestamp = previousTimestamp;
+        this.replayLane = true;
+
+        this.queryInspector = new QueryInspector(configuration.getpGTIDPattern());
+        this.tableFilter = TableFilter.fromConfiguration(configuration);
+        this.currentTransactionMetadata = new CurrentTransactionMetadata(tableFilter);
+
+        this.applyStage = null;
+        this.augmentStage = null;
+        this.parallelAugmenter = null;
+        this.flushScheduler = null;
     }
 
     public boolean isRunning() {
@@ -177,48 +312,47 @@ public class PipelineOrchestrator extends Thread {
     public void run() {
         setRunning(true);
 
-        long timeOfLastEvent = System.currentTimeMillis();
+        List<BinlogEventV4> batch = new ArrayList<>(EVENT_BATCH_SIZE);
+
+        flushScheduler.start();
+
+        if (augmentStage != null) {
+            applyStage.start();
+            if (parallelAugmenter != null) {
+                parallelAugmenter.start();
+            }
+            augmentStage.start();
+        }
 
         while (isRunning()) {
             try {
-                if (queues.rawQueue.size() > 0) {
-                    BinlogEventV4 event =
-                            queues.rawQueue.poll(100, TimeUnit.MILLISECONDS);
-
-                    if (event == null) {
-                        LOGGER.warn("Poll timeout. Will sleep for 1s and try again.");
-                        Thread.sleep(1000);
-                        continue;
-                    }
+                batch.clear();
 
-                    timeOfLastEvent = System.currentTimeMillis();
-                    eventsReceivedCounter.mark();
+                // Blocks until events arrive, the flush scheduler wakes us up or the
+                // timeout elapses (so that the running flag is re-checked).
+                if (queues.rawQueue.drainTo(batch, EVENT_BATCH_SIZE, POLL_TIMEOUT, TimeUnit.MILLISECONDS) > 0) {
 
-                    // Update pipeline position
-                    fakeMicrosecondCounter++;
-                    pipelinePosition.updatCurrentPipelinePosition(
-                        replicantPool.getReplicantDBActiveHost(),
-                        replicantPool.getReplicantDBActiveHostServerID(),
-                        event,
-                        fakeMicrosecondCounter
-                    );
+                    flushScheduler.eventsReceived();
 
-                    if (! skipEvent(event)) {
-                        calculateAndPropagateChanges(event);
-                        eventsProcessedCounter.mark();
-                    } else {
-                        eventsSkippedCounter.mark();
+                    // the events are out of the raw queue, give their memory back to the producer
+                    long batchSize = 0;
+                    for (BinlogEventV4 event : batch) {
+                        batchSize += MemoryBudget.estimateEventSize(event);
                     }
-                } else {
-                    LOGGER.debug("Pipeline report: no items in producer event rawQueue. Will sleep for 0.5s and check again.");
-                    Thread.sleep(500);
-                    long currentTime = System.currentTimeMillis();
-                    long timeDiff = currentTime - timeOfLastEvent;
-                    boolean forceFlush = (timeDiff > BUFFER_FLUSH_INTERVAL);
-                    if (forceFlush) {
-                        applier.forceFlush();
+                    queues.rawQueueMemory.release(batchSize);
+
+                    for (BinlogEventV4 event : batch) {
+                        processEvent(event);
                     }
                 }
+
+                if (augmentStage == null) {
+                    flushIfRequested();
+                } else if (!augmentStage.isRunning() || !applyStage.isRunning()
+                        || (parallelAugmenter != null && !parallelAugmenter.isRunning())) {
+                    LOGGER.error("Pipeline stage stopped, stopping pipeline orchestrator");
+                    setRunning(false);
+                }
             } catch (SchemaTransitionException e) {
                 LOGGER.error("SchemaTransitionException, requesting replicator shutdown...", e);
                 LOGGER.error("Original exception:", e.getOriginalException());
@@ -237,6 +371,88 @@ public class PipelineOrchestrator extends Thread {
                 requestReplicatorShutdown();
             }
         }
+
+        flushScheduler.stop();
+
+        if (augmentStage != null) {
+            stopStage(augmentStage);
+            if (parallelAugmenter != null) {
+                parallelAugmenter.stopAugmenter();
+                try {
+                    parallelAugmenter.join();
+                } catch (InterruptedException e) {
+                    LOGGER.error("Interrupted while stopping parallel augmenter", e);
+                }
+            }
+            stopStage(applyStage);
+        }
+
+        applier.close();
+    }
+
+    /**
+     * Process one event in binlog order: update the position, and propagate
+     * the event unless it is skipped.
+     */
+    void processEvent(BinlogEventV4 event) throws Exception, TableMapException {
+        eventsReceivedCounter.mark();
+
+        PipelineEvent pipelineEvent = classify(event);
+        if (pipelineEvent != null) {
+            propagate(pipelineEvent);
+            eventsProcessedCounter.mark();
+        } else {
+            eventsSkippedCounter.mark();
+        }
+        classifiedEventsCounter.mark();
+    }
+
+    /**
+     * Update the position and classify the event, without augmenting or
+     * applying it. Planning a parallel replay runs only this part of the
+     * pipeline, which keeps the same state as the whole pipeline would.
+     *
+     * @return  The classified event, null if it is skipped
+     */
+    PipelineEvent classify(BinlogEventV4 event) throws Exception {
+        // Update pipeline position
+        fakeMicrosecondCounter++;
+        pipelinePosition.updatCurrentPipelinePosition(
+            replicantPool.getReplicantDBActiveHost(),
+            replicantPool.getReplicantDBActiveHostServerID(),
+            event,
+            fakeMicrosecondCounter
+        );
+
+        if (skipEvent(event)) {
+            return null;
+        }
+        return classifyEvent(event);
+    }
+
+    private void stopStage(PipelineStage stage) {
+        stage.stopStage();
+        try {
+            stage.join();
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted while stopping pipeline stage " + stage.getName(), e);
+        }
+    }
+
+    /**
+     * Flush the applier if the flush scheduler asked for it. Runs on the thread
+     * that owns the applier.
+     */
+    private void flushIfRequested() {
+        if (flushScheduler.takeFlushRequest()) {
+            LOGGER.debug("Pipeline report: no events for " + BUFFER_FLUSH_INTERVAL + "ms, flushing applier buffers.");
+            try {
+                applier.forceFlush();
+            } catch (ApplierException | IOException e) {
+                LOGGER.error("Failed to flush applier buffers, requesting replicator shutdown...", e);
+                requestReplicatorShutdown();
+            }
+        }
     }
 
     private Long replDelay = 0L;
@@ -254,11 +470,38 @@ public class PipelineOrchestrator extends Thread {
      *  3. if DATA:
      *      a. match column names and types
      * </p>
+     *
+     *  <p>The event is classified on the calling thread. In serial mode it is then
+     *  augmented and applied right away, in staged mode it is handed to the
+     *  augmentation stage.</p>
      */
     public void calculateAndPropagateChanges(BinlogEventV4 event)
             throws Exception, TableMapException {
 
-        AugmentedRowsEvent augmentedRowsEvent;
+        PipelineEvent pipelineEvent = classifyEvent(event);
+
+        if (pipelineEvent != null) {
+            propagate(pipelineEvent);
+        }
+    }
+
+    private void propagate(PipelineEvent pipelineEvent) throws Exception, TableMapException {
+        if (augmentStage == null) {
+            augmentEvent(pipelineEvent);
+            applyEvent(pipelineEvent);
+        } else {
+            augmentStage.submit(pipelineEvent);
+        }
+    }
+
+    /**
+     * Classification stage: everything that depends on the order of events as
+     * they come out of the binlog (timestamps, transaction boundaries, table map
+     * cache, pseudo GTIDs), but not on the schema or the applier.
+     *
+     * @return  Event wrapped for the next stages, null if there is nothing to propagate
+     */
+    private PipelineEvent classifyEvent(BinlogEventV4 event) {
 
         if (fakeMicrosecondCounter > 999998L) {
             fakeMicrosecondCounter = 0L;
@@ -286,29 +529,6 @@ public class PipelineOrchestrator extends Thread {
             requestReplicatorShutdown();
         }
 
-        // check if the applier commit stream moved to a new check point. If so,
-        // store the the new safe check point; currently only supported for hbase applier
-        if (applier instanceof HBaseApplier) {
-            LastCommittedPositionCheckpoint lastCommittedPseudoGTIDReportedByApplier =
-                ((HBaseApplier) applier).getLastCommittedPseudGTIDCheckPoint();
-
-            if (lastVerifiedPseudoGTIDCheckPoint == null
-                    && lastCommittedPseudoGTIDReportedByApplier != null) {
-                lastVerifiedPseudoGTIDCheckPoint = lastCommittedPseudoGTIDReportedByApplier;
-                LOGGER.info("Save new marker: " + lastVerifiedPseudoGTIDCheckPoint.toJson());
-                Coordinator.saveCheckpointMarker(lastVerifiedPseudoGTIDCheckPoint);
-            } else if (lastVerifiedPseudoGTIDCheckPoint != null
-                    && lastCommittedPseudoGTIDReportedByApplier != null) {
-                if (!lastVerifiedPseudoGTIDCheckPoint.getPseudoGTID().equals(
-                        lastCommittedPseudoGTIDReportedByApplier.getPseudoGTID())) {
-                    LOGGER.info("Reached new safe checkpoint " + lastCommittedPseudoGTIDReportedByApplier.getPseudoGTID() );
-                    lastVerifiedPseudoGTIDCheckPoint = lastCommittedPseudoGTIDReportedByApplier;
-                    LOGGER.info("Save new marker: " + lastVerifiedPseudoGTIDCheckPoint.toJson());
-                    Coordinator.saveCheckpointMarker(lastVerifiedPseudoGTIDCheckPoint);
-                }
-            }
-        }
-
         long originalTimestamp = event.getHeader().getTimestamp();
         if (originalTimestamp > previousTimestamp) {
             fakeMicrosecondCounter = 0L;
@@ -317,7 +537,8 @@ public class PipelineOrchestrator extends Thread {
 
         doTimestampOverride(event);
 
-        // Process Event
+        PipelineEvent pipelineEvent;
+
         switch (event.getHeader().getEventType()) {
 
             // Check for DDL and pGTID:
@@ -331,85 +552,34 @@ public class PipelineOrchestrator extends Thread {
                         String pseudoGTID = queryInspector.extractPseudoGTID(querySQL);
                         pipelinePosition.setCurrentPseudoGTID(pseudoGTID);
                         pipelinePosition.setCurrentPseudoGTIDFullQuery(querySQL);
-                        if (applier instanceof  HBaseApplier) {
-                            try {
-                                ((HBaseApplier) applier).applyPseudoGTIDEvent(new LastCommittedPositionCheckpoint(
-                                    pipelinePosition.getCurrentPosition().getHost(),
-                                    pipelinePosition.getCurrentPosition().getServerID(),
-                                    pipelinePosition.getCurrentPosition().getBinlogFilename(),
-                                    pipelinePosition.getCurrentPosition().getBinlogPosition(),
-                                    pseudoGTID,
-                                    querySQL,
-                                    fakeMicrosecondCounter
-                                ));
-                            } catch (TaskBufferInconsistencyException e) {
-                                e.printStackTrace();
-                            }
-                        }
                     } catch (QueryInspectorException e) {
                         LOGGER.error("Failed to update pipelinePosition with new pGTID!", e);
                         setRunning(false);
                         requestReplicatorShutdown();
+                        return null;
                     }
                 }
 
                 boolean isDDLTable = queryInspector.isDDLTable(querySQL);
                 boolean isDDLView = queryInspector.isDDLView(querySQL);
 
+                PipelineEvent.QueryType queryType;
                 if (queryInspector.isCommit(querySQL, isDDLTable)) {
-                    commitQueryCounter.mark();
-                    applier.applyCommitQueryEvent((QueryEvent) event);
+                    queryType = PipelineEvent.QueryType.COMMIT;
                 } else if (queryInspector.isBegin(querySQL, isDDLTable)) {
-                    currentTransactionMetadata = new CurrentTransactionMetadata();
+                    queryType = PipelineEvent.QueryType.BEGIN;
+                    currentTransactionMetadata = new CurrentTransactionMetadata(tableFilter);
                 } else if (isDDLTable) {
-                    // Sync all the things here.
-                    applier.forceFlush();
-                    applier.waitUntilAllRowsAreCommitted(event);
-
-                    try {
-                        AugmentedSchemaChangeEvent augmentedSchemaChangeEvent = activeSchemaVersion.transitionSchemaToNextVersion(
-                                eventAugmenter.getSchemaTransitionSequence(event),
-                                event.getHeader().getTimestamp()
-                        );
-
-                        String currentBinlogFileName =
-                                pipelinePosition.getCurrentPosition().getBinlogFilename();
-
-                        long currentBinlogPosition = event.getHeader().getPosition();
-
-                        String pseudoGTID          = pipelinePosition.getCurrentPseudoGTID();
-                        String pseudoGTIDFullQuery = pipelinePosition.getCurrentPseudoGTIDFullQuery();
-                        int currentSlaveId         = pipelinePosition.getCurrentPosition().getServerID();
-
-                        LastCommittedPositionCheckpoint marker = new LastCommittedPositionCheckpoint(
-                                pipelinePosition.getCurrentPosition().getHost(),
-                                currentSlaveId,
-                                currentBinlogFileName,
-                                currentBinlogPosition,
-                                pseudoGTID,
-                                pseudoGTIDFullQuery,
-                                fakeMicrosecondCounter
-                        );
-
-                        LOGGER.info("Save new marker: " + marker.toJson());
-                        Coordinator.saveCheckpointMarker(marker);
-                        applier.applyAugmentedSchemaChangeEvent(augmentedSchemaChangeEvent, this);
-                    } catch (SchemaTransitionException e) {
-                        setRunning(false);
-                        requestReplicatorShutdown();
-                        throw e;
-                    } catch (Exception e) {
-                        LOGGER.error("Failed to save checkpoint marker!");
-                        e.printStackTrace();
-                        setRunning(false);
-                        requestReplicatorShutdown();
-                    }
+                    queryType = PipelineEvent.QueryType.DDL_TABLE;
                 } else if (isDDLView) {
-                    // TODO: add view schema changes to view schema history
+                    queryType = PipelineEvent.QueryType.DDL_VIEW;
                 } else {
-                    LOGGER.warn("Unexpected query event: " + querySQL);
+                    queryType = PipelineEvent.QueryType.OTHER;
                 }
-                break;
+
+                pipelineEvent = newPipelineEvent(event);
+                pipelineEvent.setQuery(querySQL, queryType, isPseudoGTID);
+                return pipelineEvent;
 
             // TableMap event:
             case MySQLConstants.TABLE_MAP_EVENT:
@@ -428,8 +598,6 @@ public class PipelineOrchestrator extends Thread {
                     LOGGER.debug("processing events for { db => " + dbName + " table => " + ((TableMapEvent) event).getTableName() + " } ");
                     LOGGER.debug("fakeMicrosecondCounter at tableMap event => " + fakeMicrosecondCounter);
 
-                    applier.applyTableMapEvent((TableMapEvent) event);
-
                     this.pipelinePosition.updatePipelineLastMapEventPosition(
                         replicantPool.getReplicantDBActiveHost(),
                         replicantPool.getReplicantDBActiveHostServerID(),
@@ -437,41 +605,171 @@ public class PipelineOrchestrator extends Thread {
                         fakeMicrosecondCounter
                     );
 
-                } catch (Exception e) {
+                } catch (Exception | TableMapException e) {
                     LOGGER.error("Could not execute mapEvent block. Requesting replicator shutdown...", e);
                     requestReplicatorShutdown();
+                    return null;
                 }
 
+                return newPipelineEvent(event);
+
+            case MySQLConstants.XID_EVENT:
+                // the XID still belongs to the transaction that it closes
+                pipelineEvent = newPipelineEvent(event);
+                currentTransactionMetadata = new CurrentTransactionMetadata(tableFilter);
+                return pipelineEvent;
+
+            default:
+                return newPipelineEvent(event);
+        }
+    }
+
+    private PipelineEvent newPipelineEvent(BinlogEventV4 event) {
+        return new PipelineEvent(event, currentTransactionMetadata, pipelinePosition, fakeMicrosecondCounter);
+    }
+
+    /**
+     * Augmentation stage: map row events to the active schema.
+     */
+    private void augmentEvent(PipelineEvent pipelineEvent) throws TableMapException {
+        if (pipelineEvent.isRowsEvent()) {
+            pipelineEvent.setAugmentedRowsEvent(eventAugmenter.mapDataEventToSchema(
+                    (AbstractRowEvent) pipelineEvent.getEvent(),
+                    pipelineEvent.getTransactionMetadata()
+            ));
+        }
+    }
+
+    /**
+     * Augmentation stage handler in staged mode.
+     *
+     * <p>Barrier events are handed over to the apply stage and this stage waits
+     * until they are completely applied: after a DDL the following rows must be
+     * augmented with the new schema.</p>
+     */
+    private void augmentAndForward(PipelineEvent pipelineEvent) throws Exception, TableMapException {
+        augmentEvent(pipelineEvent);
+        applyStage.submit(pipelineEvent);
+
+        if (pipelineEvent.isBarrier()) {
+            while (!pipelineEvent.awaitBarrier(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (!applyStage.isRunning()) {
+                    throw new InterruptedException("Apply stage stopped before barrier event was applied");
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply stage: hand the event to the applier and keep the checkpoints.
+     */
+    private void applyEvent(PipelineEvent pipelineEvent) throws Exception, TableMapException {
+        try {
+            applyEventToApplier(pipelineEvent);
+        } finally {
+            pipelineEvent.barrierPassed();
+        }
+    }
+
+    private void applyEventToApplier(PipelineEvent pipelineEvent) throws Exception, TableMapException {
+
+        BinlogEventV4 event = pipelineEvent.getEvent();
+
+        // check if the applier commit stream moved to a new check point. If so,
+        // store the the new safe check point; currently only supported for hbase applier
+        if (applier instanceof HBaseApplier && !replayLane) {
+            LastCommittedPositionCheckpoint lastCommittedPseudoGTIDReportedByApplier =
+                ((HBaseApplier) applier).getLastCommittedPseudGTIDCheckPoint();
+
+            if (lastVerifiedPseudoGTIDCheckPoint == null
+                    && lastCommittedPseudoGTIDReportedByApplier != null) {
+                lastVerifiedPseudoGTIDCheckPoint = lastCommittedPseudoGTIDReportedByApplier;
+                LOGGER.info("Save new marker: " + lastVerifiedPseudoGTIDCheckPoint.toJson());
+                Coordinator.saveCheckpointMarker(lastVerifiedPseudoGTIDCheckPoint);
+            } else if (lastVerifiedPseudoGTIDCheckPoint != null
+                    && lastCommittedPseudoGTIDReportedByApplier != null) {
+                if (!lastVerifiedPseudoGTIDCheckPoint.getPseudoGTID().equals(
+                        lastCommittedPseudoGTIDReportedByApplier.getPseudoGTID())) {
+                    LOGGER.info("Reached new safe checkpoint " + lastCommittedPseudoGTIDReportedByApplier.getPseudoGTID() );
+                    lastVerifiedPseudoGTIDCheckPoint = lastCommittedPseudoGTIDReportedByApplier;
+                    LOGGER.info("Save new marker: " + lastVerifiedPseudoGTIDCheckPoint.toJson());
+                    Coordinator.saveCheckpointMarker(lastVerifiedPseudoGTIDCheckPoint);
+                }
+            }
+        }
+
+        // Process Event
+        switch (event.getHeader().getEventType()) {
+
+            // Check for DDL and pGTID:
+            case MySQLConstants.QUERY_EVENT:
+                if (pipelineEvent.isPseudoGTIDEvent() && applier instanceof  HBaseApplier) {
+                    try {
+                        ((HBaseApplier) applier).applyPseudoGTIDEvent(new LastCommittedPositionCheckpoint(
+                            pipelineEvent.getHost(),
+                            pipelineEvent.getServerID(),
+                            pipelineEvent.getBinlogFilename(),
+                            pipelineEvent.getBinlogPosition(),
+                            pipelineEvent.getPseudoGTID(),
+                            pipelineEvent.getQuerySQL(),
+                            pipelineEvent.getFakeMicrosecondCounter()
+                        ));
+                    } catch (TaskBufferInconsistencyException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                switch (pipelineEvent.getQueryType()) {
+                    case COMMIT:
+                        commitQueryCounter.mark();
+                        applyTransaction(transactionAssembler.commit(event));
+                        break;
+                    case BEGIN:
+                        break;
+                    case DDL_TABLE:
+                        applyDDLEvent(pipelineEvent);
+                        break;
+                    case DDL_VIEW:
+                        // TODO: add view schema changes to view schema history
+                        break;
+                    default:
+                        LOGGER.warn("Unexpected query event: " + pipelineEvent.getQuerySQL());
+                        break;
+                }
+                break;
+
+            // TableMap event:
+            case MySQLConstants.TABLE_MAP_EVENT:
+                try {
+                    applier.applyTableMapEvent((TableMapEvent) event);
+                } catch (Exception e) {
+                    LOGGER.error("Could not execute mapEvent block. Requesting replicator shutdown...", e);
+                    requestReplicatorShutdown();
+                }
                 break;
 
             // Data event:
             case MySQLConstants.UPDATE_ROWS_EVENT:
             case MySQLConstants.UPDATE_ROWS_EVENT_V2:
-                augmentedRowsEvent = eventAugmenter.mapDataEventToSchema((AbstractRowEvent) event, this);
-                applier.applyAugmentedRowsEvent(augmentedRowsEvent,this);
+                applyRowsEvent(pipelineEvent.getAugmentedRowsEvent());
                 updateEventCounter.mark();
                 break;
 
             case MySQLConstants.WRITE_ROWS_EVENT:
             case MySQLConstants.WRITE_ROWS_EVENT_V2:
-                augmentedRowsEvent = eventAugmenter.mapDataEventToSchema((AbstractRowEvent) event, this);
-                applier.applyAugmentedRowsEvent(augmentedRowsEvent,this);
+                applyRowsEvent(pipelineEvent.getAugmentedRowsEvent());
                 insertEventCounter.mark();
                 break;
 
             case MySQLConstants.DELETE_ROWS_EVENT:
             case MySQLConstants.DELETE_ROWS_EVENT_V2:
-                augmentedRowsEvent = eventAugmenter.mapDataEventToSchema((AbstractRowEvent) event, this);
-                applier.applyAugmentedRowsEvent(augmentedRowsEvent,this);
+                applyRowsEvent(pipelineEvent.getAugmentedRowsEvent());
                 deleteEventCounter.mark();
                 break;
 
             case MySQLConstants.XID_EVENT:
-                // Later we may want to tag previous data events with xid_id
-                // (so we can know if events were in the same transaction).
-                applier.applyXidEvent((XidEvent) event);
+                applyTransaction(transactionAssembler.commit(event));
                 XIDCounter.mark();
-                currentTransactionMetadata = new CurrentTransactionMetadata();
                 break;
 
             case MySQLConstants.FORMAT_DESCRIPTION_EVENT:
@@ -480,48 +778,7 @@ public class PipelineOrchestrator extends Thread {
 
             // flush buffer at the end of binlog file
             case MySQLConstants.ROTATE_EVENT:
-                RotateEvent rotateEvent = (RotateEvent) event;
-                applier.applyRotateEvent(rotateEvent);
-                LOGGER.info("End of binlog file. Waiting for all tasks to finish before moving forward...");
-
-                //TODO: Investigate if this is the right thing to do.
-                applier.waitUntilAllRowsAreCommitted(rotateEvent);
-
-                String currentBinlogFileName =
-                        pipelinePosition.getCurrentPosition().getBinlogFilename();
-
-                String nextBinlogFileName = rotateEvent.getBinlogFileName().toString();
-                long currentBinlogPosition = rotateEvent.getBinlogPosition();
-
-                LOGGER.info("All rows committed for binlog file "
-                        + currentBinlogFileName + ", moving to next binlog " + nextBinlogFileName);
-
-                String pseudoGTID          = pipelinePosition.getCurrentPseudoGTID();
-                String pseudoGTIDFullQuery = pipelinePosition.getCurrentPseudoGTIDFullQuery();
-                int currentSlaveId         = pipelinePosition.getCurrentPosition().getServerID();
-
-                LastCommittedPositionCheckpoint marker = new LastCommittedPositionCheckpoint(
-                        pipelinePosition.getCurrentPosition().getHost(),
-                        currentSlaveId,
-                        nextBinlogFileName,
-                        currentBinlogPosition,
-                        pseudoGTID,
-                        pseudoGTIDFullQuery,
-                        fakeMicrosecondCounter
-                );
-
-                try {
-                    Coordinator.saveCheckpointMarker(marker);
-                } catch (Exception e) {
-                    LOGGER.error("Failed to save Checkpoint!");
-                    e.printStackTrace();
-                }
-
-                if (currentBinlogFileName.equals(configuration.getLastBinlogFileName())) {
-                    LOGGER.info("processed the last binlog file " + configuration.getLastBinlogFileName());
-                    setRunning(false);
-                    requestReplicatorShutdown();
-                }
+                applyRotateEvent(pipelineEvent);
                 break;
 
             // Events that we expect to appear in the binlog, but we don't do
@@ -537,6 +794,127 @@ public class PipelineOrchestrator extends Thread {
         }
     }
 
+    /**
+     * Add the rows to the open transaction, the applier gets them with the
+     * rest of the transaction.
+     */
+    private void applyRowsEvent(AugmentedRowsEvent augmentedRowsEvent) throws ApplierException, IOException {
+        AugmentedTransaction transactionPart = transactionAssembler.add(augmentedRowsEvent);
+        if (transactionPart != null) {
+            applyTransaction(transactionPart);
+        }
+    }
+
+    private void applyTransaction(AugmentedTransaction transaction) throws ApplierException, IOException {
+        transactionBatchRows.update(transaction.getRowCount());
+        applier.applyTransaction(transaction, this);
+    }
+
+    private void applyDDLEvent(PipelineEvent pipelineEvent) throws Exception {
+
+        BinlogEventV4 event = pipelineEvent.getEvent();
+
+        // Sync all the things here.
+        applier.forceFlush();
+        applier.waitUntilAllRowsAreCommitted(event);
+
+        if (replayLane) {
+            // the active schema moved past this DDL when the replay was planned
+            if (replaySchemaChange == null) {
+                throw new SchemaTransitionException("DDL in the middle of a replay segment: " + pipelineEvent.getQuerySQL());
+            }
+            applier.applyAugmentedSchemaChangeEvent(replaySchemaChange, this);
+            return;
+        }
+
+        try {
+            AugmentedSchemaChangeEvent augmentedSchemaChangeEvent = activeSchemaVersion.transitionSchemaToNextVersion(
+                    eventAugmenter.getSchemaTransitionSequence(event),
+                    event.getHeader().getTimestamp()
+            );
+
+            String currentBinlogFileName = pipelineEvent.getBinlogFilename();
+
+            long currentBinlogPosition = event.getHeader().getPosition();
+
+            String pseudoGTID          = pipelineEvent.getPseudoGTID();
+            String pseudoGTIDFullQuery = pipelineEvent.getPseudoGTIDFullQuery();
+            int currentSlaveId         = pipelineEvent.getServerID();
+
+            LastCommittedPositionCheckpoint marker = new LastCommittedPositionCheckpoint(
+                    pipelineEvent.getHost(),
+                    currentSlaveId,
+                    currentBinlogFileName,
+                    currentBinlogPosition,
+                    pseudoGTID,
+                    pseudoGTIDFullQuery,
+                    pipelineEvent.getFakeMicrosecondCounter()
+            );
+
+            LOGGER.info("Save new marker: " + marker.toJson());
+            Coordinator.saveCheckpointMarker(marker);
+            applier.applyAugmentedSchemaChangeEvent(augmentedSchemaChangeEvent, this);
+        } catch (SchemaTransitionException e) {
+            setRunning(false);
+            requestReplicatorShutdown();
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("Failed to save checkpoint marker!");
+            e.printStackTrace();
+            setRunning(false);
+            requestReplicatorShutdown();
+        }
+    }
+
+    private void applyRotateEvent(PipelineEvent pipelineEvent) throws Exception {
+
+        RotateEvent rotateEvent = (RotateEvent) pipelineEvent.getEvent();
+        applier.applyRotateEvent(rotateEvent);
+        LOGGER.info("End of binlog file. Waiting for all tasks to finish before moving forward...");
+
+        //TODO: Investigate if this is the right thing to do.
+        applier.waitUntilAllRowsAreCommitted(rotateEvent);
+
+        String currentBinlogFileName = pipelineEvent.getBinlogFilename();
+
+        String nextBinlogFileName = rotateEvent.getBinlogFileName().toString();
+        long currentBinlogPosition = rotateEvent.getBinlogPosition();
+
+        LOGGER.info("All rows committed for binlog file "
+                + currentBinlogFileName + ", moving to next binlog " + nextBinlogFileName);
+
+        if (replayLane) {
+            return;
+        }
+
+        String pseudoGTID          = pipelineEvent.getPseudoGTID();
+        String pseudoGTIDFullQuery = pipelineEvent.getPseudoGTIDFullQuery();
+        int currentSlaveId         = pipelineEvent.getServerID();
+
+        LastCommittedPositionCheckpoint marker = new LastCommittedPositionCheckpoint(
+                pipelineEvent.getHost(),
+                currentSlaveId,
+                nextBinlogFileName,
+                currentBinlogPosition,
+                pseudoGTID,
+                pseudoGTIDFullQuery,
+                pipelineEvent.getFakeMicrosecondCounter()
+        );
+
+        try {
+            Coordinator.saveCheckpointMarker(marker);
+        } catch (Exception e) {
+            LOGGER.error("Failed to save Checkpoint!");
+            e.printStackTrace();
+        }
+
+        if (currentBinlogFileName.equals(configuration.getLastBinlogFileName())) {
+            LOGGER.info("processed the last binlog file " + configuration.getLastBinlogFileName());
+            setRunning(false);
+            requestReplicatorShutdown();
+        }
+    }
+
     public boolean isReplicant(String schemaName) {
         return schemaName.equals(configuration.getReplicantSchemaName());
     }
@@ -645,6 +1023,12 @@ public class PipelineOrchestrator extends Thread {
             case MySQLConstants.DELETE_ROWS_EVENT:
             case MySQLConstants.DELETE_ROWS_EVENT_V2:
                 eventIsTracked = currentTransactionMetadata.getFirstMapEventInTransaction() != null;
+                // rows of filtered tables are dropped here, before they are augmented
+                long tableID = ((AbstractRowEvent) event).getTableId();
+                if (eventIsTracked && currentTransactionMetadata.isTableFiltered(tableID)) {
+                    currentTransactionMetadata.countSkippedRowsEvent(tableID);
+                    eventIsTracked = false;
+                }
                 break;
 
             case MySQLConstants.XID_EVENT:
@@ -0,0 +1,150 @@
+package com.booking.replication.pipeline;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+import com.booking.replication.queues.RingBuffer;
+import com.booking.replication.queues.WaitStrategy;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stage of the threaded pipeline.
+ *
+ * <p>A stage owns a bounded input ring buffer and a thread that drains it in
+ * batches and hands each event to the stage handler. The upstream stage is the
+ * only writer of the input buffer and blocks when it is full, so a slow stage
+ * pushes back all the way to the binlog producer.</p>
+ */
+public class PipelineStage extends Thread {
+
+    /**
+     * Stage logic.
+     */
+    public interface Handler {
+        void handle(PipelineEvent event) throws Exception, TableMapException;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineStage.class);
+
+    private static final int BATCH_SIZE   = 256;
+    private static final int POLL_TIMEOUT = 1000;
+
+    private final String                    stageName;
+    private final RingBuffer<PipelineEvent> input;
+    private final Handler                   handler;
+    private final Runnable                  afterBatch;
+    private final PipelineOrchestrator      orchestrator;
+    private final Meter                     eventsProcessed;
+
+    private volatile boolean running = false;
+
+    /**
+     * Pipeline stage.
+     *
+     * @param stageName     Name used for the thread and the metrics
+     * @param queueSize     Capacity of the input buffer
+     * @param waitStrategy  Wait strategy of the input buffer
+     * @param handler       Stage logic, called for each event in order
+     * @param afterBatch    Called after each batch and on idle wake ups
+     * @param orchestrator  Notified when the stage fails
+     */
+    public PipelineStage(
+            String stageName,
+            int queueSize,
+            WaitStrategy waitStrategy,
+            Handler handler,
+            Runnable afterBatch,
+            PipelineOrchestrator orchestrator) {
+        super("pipeline-" + stageName);
+        this.stageName       = stageName;
+        this.input           = new RingBuffer<>(queueSize, waitStrategy);
+        this.handler         = handler;
+        this.afterBatch      = afterBatch;
+        this.orchestrator    = orchestrator;
+        this.eventsProcessed = Metrics.registry.meter(name("pipeline", stageName, "eventsProcessed"));
+
+        Metrics.registry.register(name("pipeline", stageName, "queueDepth"),
+            new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return input.size();
+                }
+            });
+    }
+
+    /**
+     * Hand an event to this stage, blocking while the input buffer is full.
+     * Must only be called from the upstream stage thread.
+     */
+    public void submit(PipelineEvent event) throws InterruptedException {
+        while (!input.offer(event, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (!running) {
+                throw new InterruptedException("Stage " + stageName + " is not running");
+            }
+        }
+    }
+
+    /**
+     * Interrupt the blocking drain so afterBatch runs without waiting for events.
+     */
+    public void wakeUp() {
+        input.wakeUpConsumer();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        super.start();
+    }
+
+    public void stopStage() {
+        running = false;
+        input.wakeUpConsumer();
+    }
+
+    @Override
+    public void run() {
+        List<PipelineEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (running) {
+            try {
+                batch.clear();
+                int drained = input.drainTo(batch, BATCH_SIZE, POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                for (int i = 0; i < drained && running; i++) {
+                    handler.handle(batch.get(i));
+                    eventsProcessed.mark();
+                }
+                if (afterBatch != null) {
+                    afterBatch.run();
+                }
+            } catch (TableMapException e) {
+                LOGGER.error("TableMapException in pipeline stage " + stageName + ", requesting replicator shutdown...", e);
+                orchestrator.requestReplicatorShutdown();
+                running = false;
+            } catch (Exception e) {
+                LOGGER.error("Exception in pipeline stage " + stageName + ", requesting replicator shutdown...", e);
+                orchestrator.requestReplicatorShutdown();
+                running = false;
+            }
+        }
+
+        // release anybody waiting on a barrier we will never reach
+        input.drainTo(batch, Integer.MAX_VALUE);
+        for (PipelineEvent event : batch) {
+            event.barrierPassed();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+
+/**
+ * Checkpoints of a parallel replay. Segments finish in any order, but the
+ * checkpoint only moves past a segment once all segments before it finished
+ * too, so that a restart from the checkpoint misses nothing.
+ */
+class ReplayCheckpoints {
+
+    // checkpoint at the end of each finished segment that the checkpoint has not moved past yet
+    private final LastCommittedPositionCheckpoint[] finished;
+
+    // first segment that did not finish yet
+    private int next = 0;
+
+    ReplayCheckpoints(int segmentCount) {
+        finished = new LastCommittedPositionCheckpoint[segmentCount];
+    }
+
+    /**
+     * Record a finished segment.
+     *
+     * @param checkpoint    Checkpoint at the end of the segment
+     * @return              The checkpoint to move to, or null if an earlier segment is still running
+     */
+    synchronized LastCommittedPositionCheckpoint segmentFinished(int index, LastCommittedPositionCheckpoint checkpoint) {
+        finished[index] = checkpoint;
+
+        LastCommittedPositionCheckpoint last = null;
+        while (next < finished.length && finished[next] != null) {
+            last = finished[next];
+            finished[next] = null;
+            next++;
+        }
+        return last;
+    }
+
+    /**
+     * Number of segments the checkpoint moved past.
+     */
+    synchronized int getCommittedSegments() {
+        return next;
+    }
+}
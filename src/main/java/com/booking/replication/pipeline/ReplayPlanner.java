@@ -0,0 +1,144 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.Configuration;
+import com.booking.replication.replicant.ReplicantPool;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans a parallel replay: scans the binlog files for the schema changes and
+ * cuts them into segments at the schema changes and at the file boundaries.
+ *
+ * <p>The scan classifies every event like the serial pipeline does, without
+ * decoding the rows or augmenting and applying anything. That way each segment
+ * gets the exact state the serial pipeline has at its start.</p>
+ */
+class ReplayPlanner {
+
+    private final PipelinePosition     pipelinePosition;
+    private final PipelineOrchestrator classifier;
+
+    private final List<ReplaySegment> segments      = new ArrayList<>();
+    private final List<QueryEvent>    schemaChanges = new ArrayList<>();
+
+    // the segment that is being scanned
+    private File    segmentFile;
+    private long    segmentStart;
+    private boolean segmentStartsWithSchemaChange;
+    private long    segmentFakeMicrosecondCounter;
+    private long    segmentPreviousTimestamp;
+    private String  segmentPseudoGTID;
+    private String  segmentPseudoGTIDFullQuery;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayPlanner.class);
+
+    /**
+     * Planner starting from the position the serial pipeline would start from.
+     *
+     * @param pipelinePosition          Start position, the planner moves it along
+     * @param fakeMicrosecondCounter    Fake microsecond counter at the start position
+     */
+    ReplayPlanner(
+            Configuration configuration,
+            PipelinePosition pipelinePosition,
+            ReplicantPool replicantPool,
+            long fakeMicrosecondCounter) {
+        this.pipelinePosition = pipelinePosition;
+        this.classifier = new PipelineOrchestrator(
+                pipelinePosition, configuration, null, replicantPool, null, null, fakeMicrosecondCounter, 0L);
+    }
+
+    /**
+     * Scan the binlog files and cut them into segments.
+     *
+     * @param files             Binlog files in binlog order
+     * @param startPosition     Position in the first file to start from
+     * @return                  The segments in binlog order
+     */
+    List<ReplaySegment> plan(List<File> files, long startPosition) throws Exception {
+        for (File file : files) {
+            startSegment(file, file == files.get(0) ? startPosition : 4L);
+
+            MappedBinlogFileParser parser = new MappedBinlogFileParser(file, segmentStart);
+            TableIdRowsEventParser.register(parser);
+            parser.parseToEnd(event -> {
+                try {
+                    scan(event);
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to classify event " + event, e);
+                }
+            });
+            if (classifier.isReplicatorShutdownRequested()) {
+                throw new IllegalStateException("Failed to classify the events of " + file);
+            }
+
+            endSegment(file.length());
+        }
+        LOGGER.info("Planned " + segments.size() + " segments with " + schemaChanges.size()
+                + " schema changes in " + files.size() + " binlog files");
+        return segments;
+    }
+
+    /**
+     * The DDL events that change the schema, in binlog order. Schema version n is
+     * the version after the first n schema changes.
+     */
+    List<QueryEvent> getSchemaChanges() {
+        return schemaChanges;
+    }
+
+    private void scan(BinlogEventV4 event) throws Exception {
+        long fakeMicrosecondCounter = classifier.getFakeMicrosecondCounter();
+        long previousTimestamp      = classifier.getPreviousTimestamp();
+        String pseudoGTID           = pipelinePosition.getCurrentPseudoGTID();
+        String pseudoGTIDFullQuery  = pipelinePosition.getCurrentPseudoGTIDFullQuery();
+
+        PipelineEvent pipelineEvent = classifier.classify(event);
+
+        if (pipelineEvent != null && pipelineEvent.getQueryType() == PipelineEvent.QueryType.DDL_TABLE) {
+            // a segment runs under one schema version, so the DDL starts a new one
+            endSegment(event.getHeader().getPosition());
+            schemaChanges.add((QueryEvent) event);
+            segmentStart                  = event.getHeader().getPosition();
+            segmentStartsWithSchemaChange = true;
+            segmentFakeMicrosecondCounter = fakeMicrosecondCounter;
+            segmentPreviousTimestamp      = previousTimestamp;
+            segmentPseudoGTID             = pseudoGTID;
+            segmentPseudoGTIDFullQuery    = pseudoGTIDFullQuery;
+        }
+    }
+
+    private void startSegment(File file, long startPosition) {
+        segmentFile                   = file;
+        segmentStart                  = startPosition;
+        segmentStartsWithSchemaChange = false;
+        segmentFakeMicrosecondCounter = classifier.getFakeMicrosecondCounter();
+        segmentPreviousTimestamp      = classifier.getPreviousTimestamp();
+        segmentPseudoGTID             = pipelinePosition.getCurrentPseudoGTID();
+        segmentPseudoGTIDFullQuery    = pipelinePosition.getCurrentPseudoGTIDFullQuery();
+    }
+
+    private void endSegment(long endPosition) {
+        if (endPosition <= segmentStart) {
+            return;
+        }
+        segments.add(new ReplaySegment(
+                segments.size(),
+                segmentFile,
+                segmentStart,
+                endPosition,
+                schemaChanges.size(),
+                segmentStartsWithSchemaChange,
+                segmentFakeMicrosecondCounter,
+                segmentPreviousTimestamp,
+                segmentPseudoGTID,
+                segmentPseudoGTIDFullQuery));
+    }
+}
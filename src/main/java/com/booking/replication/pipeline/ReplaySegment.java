@@ -0,0 +1,99 @@
+package com.booking.replication.pipeline;
+
+import java.io.File;
+
+/**
+ * Part of a binlog file that a parallel replay lane processes on its own. All
+ * of its events belong to one schema version, and it starts with the state
+ * the serial pipeline has at its first event, so that it yields the same
+ * results as the serial pipeline.
+ */
+class ReplaySegment {
+
+    private final int     index;
+    private final File    file;
+    private final long    startPosition;
+    private final long    endPosition;
+    private final int     schemaVersion;
+    private final boolean startsWithSchemaChange;
+
+    private final long    fakeMicrosecondCounter;
+    private final long    previousTimestamp;
+    private final String  pseudoGTID;
+    private final String  pseudoGTIDFullQuery;
+
+    /**
+     * Segment of a binlog file.
+     *
+     * @param index                     Position of the segment in the replay
+     * @param schemaVersion             Number of schema changes in the replay before the segment
+     * @param startsWithSchemaChange    Whether the first event is the DDL of the schema version
+     */
+    ReplaySegment(
+            int index,
+            File file,
+            long startPosition,
+            long endPosition,
+            int schemaVersion,
+            boolean startsWithSchemaChange,
+            long fakeMicrosecondCounter,
+            long previousTimestamp,
+            String pseudoGTID,
+            String pseudoGTIDFullQuery) {
+        this.index                  = index;
+        this.file                   = file;
+        this.startPosition          = startPosition;
+        this.endPosition            = endPosition;
+        this.schemaVersion          = schemaVersion;
+        this.startsWithSchemaChange = startsWithSchemaChange;
+        this.fakeMicrosecondCounter = fakeMicrosecondCounter;
+        this.previousTimestamp      = previousTimestamp;
+        this.pseudoGTID             = pseudoGTID;
+        this.pseudoGTIDFullQuery    = pseudoGTIDFullQuery;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getStartPosition() {
+        return startPosition;
+    }
+
+    long getEndPosition() {
+        return endPosition;
+    }
+
+    int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    boolean startsWithSchemaChange() {
+        return startsWithSchemaChange;
+    }
+
+    long getFakeMicrosecondCounter() {
+        return fakeMicrosecondCounter;
+    }
+
+    long getPreviousTimestamp() {
+        return previousTimestamp;
+    }
+
+    String getPseudoGTID() {
+        return pseudoGTID;
+    }
+
+    String getPseudoGTIDFullQuery() {
+        return pseudoGTIDFullQuery;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " [" + startPosition + ", " + endPosition + "), schema version " + schemaVersion;
+    }
+}
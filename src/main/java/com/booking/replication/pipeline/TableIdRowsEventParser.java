@@ -0,0 +1,77 @@
+package com.booking.replication.pipeline;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.event.AbstractRowEvent;
+import com.google.code.or.binlog.impl.event.DeleteRowsEvent;
+import com.google.code.or.binlog.impl.event.DeleteRowsEventV2;
+import com.google.code.or.binlog.impl.event.UpdateRowsEvent;
+import com.google.code.or.binlog.impl.event.UpdateRowsEventV2;
+import com.google.code.or.binlog.impl.event.WriteRowsEvent;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.binlog.impl.parser.AbstractBinlogEventParser;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.XInputStream;
+
+import java.io.IOException;
+
+/**
+ * Rows event parser that reads only the table id and skips the rows. The
+ * events it yields are enough to classify them, but not to augment them.
+ */
+class TableIdRowsEventParser extends AbstractBinlogEventParser {
+
+    private static final int[] ROWS_EVENT_TYPES = {
+        MySQLConstants.WRITE_ROWS_EVENT,
+        MySQLConstants.UPDATE_ROWS_EVENT,
+        MySQLConstants.DELETE_ROWS_EVENT,
+        MySQLConstants.WRITE_ROWS_EVENT_V2,
+        MySQLConstants.UPDATE_ROWS_EVENT_V2,
+        MySQLConstants.DELETE_ROWS_EVENT_V2
+    };
+
+    TableIdRowsEventParser(int eventType) {
+        super(eventType);
+    }
+
+    /**
+     * Replace the rows event parsers of the parser.
+     */
+    static void register(AbstractBinlogParser parser) {
+        for (int eventType : ROWS_EVENT_TYPES) {
+            parser.registerEventParser(new TableIdRowsEventParser(eventType));
+        }
+    }
+
+    @Override
+    public void parse(XInputStream is, BinlogEventV4Header header, BinlogParserContext context) throws IOException {
+        AbstractRowEvent event;
+        switch (eventType) {
+            case MySQLConstants.WRITE_ROWS_EVENT:
+                event = new WriteRowsEvent(header);
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT:
+                event = new UpdateRowsEvent(header);
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT:
+                event = new DeleteRowsEvent(header);
+                break;
+            case MySQLConstants.WRITE_ROWS_EVENT_V2:
+                event = new WriteRowsEventV2(header);
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+                event = new UpdateRowsEventV2(header);
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT_V2:
+                event = new DeleteRowsEventV2(header);
+                break;
+            default:
+                throw new IOException("Not a rows event type: " + eventType);
+        }
+        event.setBinlogFilename(context.getBinlogFileName());
+        event.setTableId(is.readLong(6));
+        is.skip(is.available());
+        context.getEventListener().onEvents(event);
+    }
+}
@@ -0,0 +1,52 @@
+package com.booking.replication.queues;
+
+import com.google.code.or.binlog.BinlogEventV4;
+
+import java.io.IOException;
+
+/**
+ * FIFO of binlog events that had no room in the raw event queue.
+ *
+ * <p>Used by a single owner that serializes all calls, so implementations
+ * don't have to be thread safe.</p>
+ */
+public interface EventOverflow {
+
+    /**
+     * Whether the event fits, in the unit of {@link #getBytes()}. An empty
+     * overflow takes any event.
+     *
+     * @param event     Event to add next
+     * @param eventSize Estimated heap size of the event
+     */
+    boolean hasRoomFor(BinlogEventV4 event, long eventSize) throws IOException;
+
+    void add(BinlogEventV4 event, long eventSize) throws IOException;
+
+    /**
+     * Oldest event, without removing it.
+     *
+     * @return  The event, or null if the overflow is empty
+     */
+    BinlogEventV4 peek() throws IOException;
+
+    /**
+     * Remove the oldest event, the one {@link #peek()} returned.
+     */
+    void remove() throws IOException;
+
+    boolean isEmpty();
+
+    /**
+     * Whether the events held are charged to the memory budget. Moving one of
+     * them to the raw queue then moves its charge, it takes no new memory.
+     */
+    boolean isChargedToMemoryBudget();
+
+    /**
+     * Bytes held by the overflow, in memory or on disk.
+     */
+    long getBytes();
+
+    void close() throws IOException;
+}
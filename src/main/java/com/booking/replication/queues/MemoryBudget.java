@@ -0,0 +1,228 @@
+package com.booking.replication.queues;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+import com.google.code.or.binlog.BinlogEventV4;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Byte budget shared by all buffers that hold replicated data in memory.
+ *
+ * <p>Every buffer gets an {@link Account} and charges the estimated size of
+ * what it holds against the budget until it lets go of it. Only the binlog
+ * event producer waits for room: it is the one place where new data enters
+ * the replicator. Buffers further down the pipeline charge without waiting,
+ * since they are the ones that have to release memory, and use
+ * {@link #isExhausted()} to flush early instead.</p>
+ *
+ * <p>Sizes are estimates of the heap used, they are meant to keep a burst of
+ * wide rows from exhausting the heap, not to be exact. A budget of zero bytes
+ * only tracks usage and never blocks.</p>
+ */
+public class MemoryBudget {
+
+    private static final String METRICS_PREFIX = "memory";
+
+    // parsed events take roughly twice their binlog size on the heap
+    private static final long EVENT_SIZE_FACTOR = 2;
+    private static final long EVENT_OVERHEAD    = 128;
+
+    // waiting producers re-check at least this often, so a missed wake up costs little
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long       budgetBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final ReentrantLock lock     = new ReentrantLock();
+    private final Condition     released = lock.newCondition();
+    private volatile int        waiters  = 0;
+
+    private final Counter waitTimeCounter = Metrics.registry.counter(name(METRICS_PREFIX, "waitTimeMillis"));
+
+    /**
+     * Memory budget.
+     *
+     * @param budgetBytes   Bytes all accounts together may hold, 0 for no limit
+     */
+    public MemoryBudget(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Memory budget can't be negative, got " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+
+        register(name(METRICS_PREFIX, "usedBytes"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return usedBytes.get();
+                }
+            });
+
+        register(name(METRICS_PREFIX, "budgetBytes"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return MemoryBudget.this.budgetBytes;
+                }
+            });
+    }
+
+    // a new budget takes over the gauges of the previous one
+    private static void register(String metricName, Gauge<Long> gauge) {
+        Metrics.registry.remove(metricName);
+        Metrics.registry.register(metricName, gauge);
+    }
+
+    /**
+     * Estimated heap size of a parsed binlog event.
+     */
+    public static long estimateEventSize(BinlogEventV4 event) {
+        return EVENT_OVERHEAD + EVENT_SIZE_FACTOR * event.getHeader().getEventLength();
+    }
+
+    /**
+     * Account of a buffer, with its own usage gauge.
+     *
+     * @param accountName   Name of the buffer
+     */
+    public Account account(String accountName) {
+        return new Account(accountName);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Whether the accounts together hold the whole budget.
+     */
+    public boolean isExhausted() {
+        return budgetBytes > 0 && usedBytes.get() >= budgetBytes;
+    }
+
+    private boolean tryAcquire(long bytes) {
+        if (budgetBytes == 0) {
+            usedBytes.addAndGet(bytes);
+            return true;
+        }
+        while (true) {
+            long used = usedBytes.get();
+            // something bigger than the budget is let through when nothing else is held
+            if (used > 0 && used + bytes > budgetBytes) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryAcquire(bytes)) {
+            return true;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            waiters++;
+            try {
+                while (!tryAcquire(bytes)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    released.awaitNanos(Math.min(remaining, MAX_WAIT_NANOS));
+                }
+                return true;
+            } finally {
+                waiters--;
+                waitTimeCounter.inc(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+        if (waiters > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Bytes held by one buffer.
+     *
+     * <p>An account is used by the threads of its buffer, what it charges it
+     * has to release again.</p>
+     */
+    public class Account {
+
+        private final AtomicLong accountBytes = new AtomicLong();
+
+        private Account(String accountName) {
+            register(name(METRICS_PREFIX, accountName, "usedBytes"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return accountBytes.get();
+                    }
+                });
+        }
+
+        /**
+         * Charge bytes, waiting while the budget is exhausted.
+         *
+         * @return  True if charged, false if the timeout elapsed first
+         */
+        public boolean acquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+            if (!MemoryBudget.this.acquire(bytes, timeout, unit)) {
+                return false;
+            }
+            accountBytes.addAndGet(bytes);
+            return true;
+        }
+
+        /**
+         * Charge bytes without waiting, even if that goes over the budget.
+         */
+        public void charge(long bytes) {
+            usedBytes.addAndGet(bytes);
+            accountBytes.addAndGet(bytes);
+        }
+
+        /**
+         * Give back bytes charged earlier.
+         */
+        public void release(long bytes) {
+            accountBytes.addAndGet(-bytes);
+            MemoryBudget.this.release(bytes);
+        }
+
+        public long getUsedBytes() {
+            return accountBytes.get();
+        }
+
+        public MemoryBudget getBudget() {
+            return MemoryBudget.this;
+        }
+    }
+}
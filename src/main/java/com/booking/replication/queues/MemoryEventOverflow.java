@@ -0,0 +1,80 @@
+package com.booking.replication.queues;
+
+import com.google.code.or.binlog.BinlogEventV4;
+
+import java.util.ArrayDeque;
+
+/**
+ * Event overflow on the heap, bounded by the estimated size of the events.
+ *
+ * <p>The events are charged to a memory budget account while they are held,
+ * without waiting: the overflow takes the events the budget had no room for.</p>
+ */
+public class MemoryEventOverflow implements EventOverflow {
+
+    private final ArrayDeque<BinlogEventV4> events = new ArrayDeque<>();
+    private final long maxBytes;
+    private final MemoryBudget.Account memory;
+
+    private long bytes = 0;
+
+    /**
+     * Overflow on the heap.
+     *
+     * @param maxBytes  Estimated bytes the overflow may hold
+     * @param memory    Memory account the events held are charged to
+     */
+    public MemoryEventOverflow(long maxBytes, MemoryBudget.Account memory) {
+        this.maxBytes = maxBytes;
+        this.memory   = memory;
+    }
+
+    @Override
+    public boolean hasRoomFor(BinlogEventV4 event, long eventSize) {
+        return events.isEmpty() || bytes + eventSize <= maxBytes;
+    }
+
+    @Override
+    public void add(BinlogEventV4 event, long eventSize) {
+        events.addLast(event);
+        bytes += eventSize;
+        memory.charge(eventSize);
+    }
+
+    @Override
+    public BinlogEventV4 peek() {
+        return events.peekFirst();
+    }
+
+    @Override
+    public void remove() {
+        BinlogEventV4 event = events.pollFirst();
+        if (event != null) {
+            long eventSize = MemoryBudget.estimateEventSize(event);
+            bytes -= eventSize;
+            memory.release(eventSize);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    @Override
+    public boolean isChargedToMemoryBudget() {
+        return true;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        events.clear();
+        memory.release(bytes);
+        bytes = 0;
+    }
+}
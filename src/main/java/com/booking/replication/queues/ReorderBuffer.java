@@ -0,0 +1,134 @@
+package com.booking.replication.queues;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts elements that are completed out of order back into sequence order.
+ *
+ * <p>A single sequencer hands out consecutive sequence numbers (starting at 0)
+ * and calls {@link #awaitCapacity(long, long, TimeUnit)} before handing work out, so that no
+ * more than {@code capacity} sequences are ever outstanding. Any number of
+ * threads may then {@link #complete(long, Object)} their sequence, in any
+ * order. A single consumer takes the elements back in exact sequence order.</p>
+ */
+public class ReorderBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int                     mask;
+    private final int                     capacity;
+    private final WaitStrategy            waitStrategy;
+
+    private static final int PARK_AFTER_ATTEMPTS = 200;
+
+    // next sequence to be released, written by the consumer only
+    private volatile long nextToRelease = 0L;
+
+    private volatile Thread parkedConsumer;
+
+    /**
+     * Reorder buffer.
+     *
+     * @param capacity      Maximum number of outstanding sequences
+     * @param waitStrategy  Strategy used while waiting for capacity or for the next sequence
+     */
+    public ReorderBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Reorder buffer capacity must be positive, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots          = new AtomicReferenceArray<>(size);
+        this.mask           = size - 1;
+        this.capacity       = capacity;
+        this.waitStrategy   = waitStrategy;
+    }
+
+    /**
+     * Wait up to the given time until the sequence fits in the window. Sequencer thread only.
+     *
+     * @return  True if the sequence may be handed out, false if the timeout elapsed first
+     */
+    public boolean awaitCapacity(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        if (sequence - nextToRelease < capacity) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (sequence - nextToRelease >= capacity) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.idle(++attempt);
+        }
+        return true;
+    }
+
+    /**
+     * Hand in the element for a sequence. May be called from any thread.
+     */
+    public void complete(long sequence, E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        slots.set((int) sequence & mask, element);
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Take the element of the next sequence, waiting up to the given time for it
+     * to be completed. Consumer thread only.
+     *
+     * @return  The element, or null if the timeout elapsed first
+     */
+    public E take(long timeout, TimeUnit unit) throws InterruptedException {
+        int index = (int) nextToRelease & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int attempt = 0;
+            while ((element = slots.get(index)) == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                attempt++;
+                if (waitStrategy == WaitStrategy.PARK && attempt > PARK_AFTER_ATTEMPTS) {
+                    parkedConsumer = Thread.currentThread();
+                    if (slots.get(index) == null) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    parkedConsumer = null;
+                } else {
+                    waitStrategy.idle(attempt);
+                }
+            }
+        }
+        slots.lazySet(index, null);
+        nextToRelease = nextToRelease + 1;
+        return element;
+    }
+
+    /**
+     * Number of sequences released so far, which is also the next sequence to be released.
+     */
+    public long getReleasedCount() {
+        return nextToRelease;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -8,13 +8,34 @@ import com.google.code.or.binlog.BinlogEventV4;
 
 import com.codahale.metrics.Gauge;
 
-import java.util.concurrent.LinkedBlockingQueue;
-
 /**
  * This class is a repository for the queues used by the replicators Pipeline Orchestrator.
  */
 public class ReplicatorQueues {
     public ReplicatorQueues() {
+        this(WaitStrategy.PARK);
+    }
+
+    /**
+     * Queues whose blocking operations wait using the given strategy.
+     *
+     * @param waitStrategy  Wait strategy for the raw queue
+     */
+    public ReplicatorQueues(WaitStrategy waitStrategy) {
+        this(waitStrategy, 0);
+    }
+
+    /**
+     * Queues whose events are accounted against a memory budget.
+     *
+     * @param waitStrategy      Wait strategy for the raw queue
+     * @param memoryBudgetBytes Budget shared by the raw queue and the applier buffers, 0 for no limit
+     */
+    public ReplicatorQueues(WaitStrategy waitStrategy, long memoryBudgetBytes) {
+        rawQueue = new RingBuffer<>(MAX_RAW_QUEUE_SIZE, waitStrategy);
+        memoryBudget = new MemoryBudget(memoryBudgetBytes);
+        rawQueueMemory = memoryBudget.account("rawQueue");
+
         Metrics.registry.register(name("events", "rawEventsQueueLength"),
             new Gauge<Integer>() {
                 @Override
@@ -26,9 +47,14 @@ public class ReplicatorQueues {
 
     private static final int MAX_RAW_QUEUE_SIZE = Constants.MAX_RAW_QUEUE_SIZE;
 
-    // RawQueue: contains parsed events as extracted by OpenReplicator
-    public final LinkedBlockingQueue<BinlogEventV4> rawQueue =
-            new LinkedBlockingQueue<>(MAX_RAW_QUEUE_SIZE);
+    // RawQueue: contains parsed events as extracted by OpenReplicator. Single producer
+    // (the Open Replicator listener) and single consumer (the Pipeline Orchestrator).
+    public final RingBuffer<BinlogEventV4> rawQueue;
+
+    // Shared by everything that buffers replicated data. Events are charged to
+    // rawQueueMemory by the producer and released once the orchestrator took them.
+    public final MemoryBudget memoryBudget;
+    public final MemoryBudget.Account rawQueueMemory;
 
 
     // TODO: add RecentCommits Queue that will be used by committedMetrics and for validation
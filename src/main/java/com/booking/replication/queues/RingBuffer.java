@@ -0,0 +1,344 @@
+package com.booking.replication.queues;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock free, single producer / single consumer ring buffer.
+ *
+ * <p>Slots are preallocated once, so publishing an event does not allocate
+ * a queue node the way LinkedBlockingQueue does, and neither side ever takes
+ * a lock. The producer and consumer positions live on separate cache lines
+ * and each side keeps a private cached copy of the other side's position so
+ * the shared counters are only read when the cached view runs out.</p>
+ *
+ * <p>Exactly one thread may call the producer methods (offer/put) and exactly
+ * one thread may call the consumer methods (poll/drainTo) at any given time.</p>
+ *
+ * <p>With the PARK strategy a consumer blocked in a timed drain parks until the
+ * producer publishes, so an idle pipeline costs nothing and still picks up the
+ * next event as soon as it is published.</p>
+ */
+public class RingBuffer<E> {
+
+    private final Object[]     slots;
+    private final int          mask;
+    private final int          capacity;
+    private final WaitStrategy waitStrategy;
+
+    // spin and yield a little before parking, a burst is usually still in flight
+    private static final int PARK_AFTER_ATTEMPTS = 200;
+
+    // next position to be read, written by the consumer only
+    private final Sequence head = new Sequence();
+
+    // next position to be written, written by the producer only
+    private final Sequence tail = new Sequence();
+
+    // producer side view of head
+    private long cachedHead = 0L;
+
+    // consumer side view of tail
+    private long cachedTail = 0L;
+
+    // consumer thread currently parked in a blocking drain, if any
+    private volatile Thread parkedConsumer;
+
+    private volatile boolean wakeUpRequested = false;
+
+    /**
+     * Ring buffer with the given capacity.
+     *
+     * <p>The backing array is rounded up to the next power of two, but the
+     * buffer never holds more than {@code capacity} elements.</p>
+     *
+     * @param capacity      Maximum number of buffered elements
+     * @param waitStrategy  Strategy used by the blocking methods
+     */
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots          = new Object[size];
+        this.mask           = size - 1;
+        this.capacity       = capacity;
+        this.waitStrategy   = waitStrategy;
+    }
+
+    /**
+     * Publish an element if there is room for it.
+     *
+     * @param element   Element to publish
+     * @return          True if published, false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        if (position - cachedHead >= capacity) {
+            cachedHead = head.get();
+            if (position - cachedHead >= capacity) {
+                return false;
+            }
+        }
+        slots[(int) position & mask] = element;
+        // Volatile store: it must not be reordered with the read of parkedConsumer
+        // below, otherwise a consumer that is just about to park could miss it.
+        tail.set(position + 1);
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Publish an element, waiting up to the given time for a free slot.
+     *
+     * @return  True if published, false if the timeout elapsed first
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(element)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.idle(++attempt);
+        }
+        return true;
+    }
+
+    /**
+     * Publish an element, waiting as long as needed for a free slot.
+     */
+    public void put(E element) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(++attempt);
+        }
+    }
+
+    /**
+     * Take the next element.
+     *
+     * @return  The element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        if (position >= cachedTail) {
+            cachedTail = tail.get();
+            if (position >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) position & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.setOrdered(position + 1);
+        return element;
+    }
+
+    /**
+     * Take the next element, waiting up to the given time for one to arrive.
+     *
+     * @return  The element, or null if the timeout elapsed first
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element = poll();
+        if (element != null) {
+            return element;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while ((element = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            waitStrategy.idle(++attempt);
+        }
+        return element;
+    }
+
+    /**
+     * Move up to maxElements available elements into the target collection.
+     *
+     * <p>The consumer position is published once for the whole batch.</p>
+     *
+     * @return  Number of elements moved
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        long position = head.get();
+        long available = cachedTail - position;
+        if (available < maxElements) {
+            cachedTail = tail.get();
+            available = cachedTail - position;
+        }
+        int count = (int) Math.min(available, maxElements);
+        if (count <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int index = (int) (position + i) & mask;
+            target.add((E) slots[index]);
+            slots[index] = null;
+        }
+        head.setOrdered(position + count);
+        return count;
+    }
+
+    /**
+     * Move up to maxElements elements into the target collection, waiting up to
+     * the given time for at least one to become available.
+     *
+     * <p>Returns early, possibly with nothing drained, when
+     * {@link #wakeUpConsumer()} is called.</p>
+     *
+     * @return  Number of elements moved, zero on timeout or wake up
+     */
+    public int drainTo(Collection<? super E> target, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        int drained = drainTo(target, maxElements);
+        if (drained > 0) {
+            return drained;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while ((drained = drainTo(target, maxElements)) == 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (wakeUpRequested) {
+                wakeUpRequested = false;
+                return 0;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return 0;
+            }
+            attempt++;
+            if (waitStrategy == WaitStrategy.PARK && attempt > PARK_AFTER_ATTEMPTS) {
+                parkUntilPublished(remaining);
+            } else {
+                waitStrategy.idle(attempt);
+            }
+        }
+        return drained;
+    }
+
+    private void parkUntilPublished(long nanos) {
+        parkedConsumer = Thread.currentThread();
+        try {
+            // re-check after announcing ourselves, the producer may have published in between
+            if (head.get() == tail.get() && !wakeUpRequested) {
+                LockSupport.parkNanos(this, nanos);
+            }
+        } finally {
+            parkedConsumer = null;
+        }
+    }
+
+    /**
+     * Make a consumer blocked in {@link #drainTo(Collection, int, long, TimeUnit)}
+     * return immediately, so it can attend to work other than draining.
+     */
+    public void wakeUpConsumer() {
+        wakeUpRequested = true;
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Number of buffered elements. Exact when called from the producer or
+     * consumer thread, an estimate from anywhere else.
+     */
+    public int size() {
+        long headPosition;
+        long tailPosition;
+        do {
+            headPosition = head.get();
+            tailPosition = tail.get();
+        } while (headPosition != head.get());
+        return (int) (tailPosition - headPosition);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    // Padding keeps the hot counters on cache lines of their own so the producer
+    // and the consumer don't invalidate each other's lines on every update.
+    abstract static class LeftPadding {
+        long p01;
+        long p02;
+        long p03;
+        long p04;
+        long p05;
+        long p06;
+        long p07;
+    }
+
+    abstract static class Value extends LeftPadding {
+        volatile long value;
+    }
+
+    static final class Sequence extends Value {
+        long p11;
+        long p12;
+        long p13;
+        long p14;
+        long p15;
+        long p16;
+        long p17;
+
+        private static final AtomicLongFieldUpdater<Value> UPDATER =
+                AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+        long get() {
+            return value;
+        }
+
+        void set(long newValue) {
+            value = newValue;
+        }
+
+        void setOrdered(long newValue) {
+            UPDATER.lazySet(this, newValue);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.booking.replication.queues;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy used by {@link RingBuffer} while a producer waits for a free slot
+ * or a consumer waits for the next event.
+ *
+ * <p>The strategies trade CPU for latency: BUSY_SPIN burns a core but reacts
+ * within nanoseconds, YIELD gives the core back to the scheduler on every
+ * attempt, and PARK backs off progressively and is the right choice when the
+ * replicator shares the host with other processes.</p>
+ */
+public enum WaitStrategy {
+
+    BUSY_SPIN {
+        @Override
+        public void idle(int attempt) {
+            // spin
+        }
+    },
+
+    YIELD {
+        @Override
+        public void idle(int attempt) {
+            if (attempt > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    PARK {
+        @Override
+        public void idle(int attempt) {
+            if (attempt <= SPIN_TRIES) {
+                return;
+            }
+            if (attempt <= SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+                return;
+            }
+            int shift = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, MAX_PARK_SHIFT);
+            LockSupport.parkNanos(MIN_PARK_NANOS << shift);
+        }
+    };
+
+    private static final int  SPIN_TRIES     = 100;
+    private static final int  YIELD_TRIES    = 100;
+    private static final long MIN_PARK_NANOS = 1000L;
+    private static final int  MAX_PARK_SHIFT = 10;     // 1us * 2^10 ~= 1ms
+
+    /**
+     * Called repeatedly while the caller has nothing to do.
+     *
+     * @param attempt   Number of consecutive unsuccessful attempts, starting at 1
+     */
+    public abstract void idle(int attempt);
+
+    /**
+     * Resolve the strategy from its configuration name.
+     *
+     * @param name  busy_spin, yield or park (case insensitive)
+     * @return      The wait strategy
+     */
+    public static WaitStrategy fromName(String name) {
+        if (name == null) {
+            return PARK;
+        }
+        try {
+            return WaitStrategy.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Unknown wait strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,740 @@
+package com.booking.replication.queues.spill;
+
+import com.booking.replication.binlog.RawRowsEvent;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.StatusVariable;
+import com.google.code.or.binlog.impl.event.AbstractBinlogEventV4;
+import com.google.code.or.binlog.impl.event.AbstractRowEvent;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.DeleteRowsEvent;
+import com.google.code.or.binlog.impl.event.DeleteRowsEventV2;
+import com.google.code.or.binlog.impl.event.FormatDescriptionEvent;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.RotateEvent;
+import com.google.code.or.binlog.impl.event.StopEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.UpdateRowsEvent;
+import com.google.code.or.binlog.impl.event.UpdateRowsEventV2;
+import com.google.code.or.binlog.impl.event.WriteRowsEvent;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.variable.status.QTimeZoneCode;
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.glossary.Pair;
+import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.BitColumn;
+import com.google.code.or.common.glossary.column.BlobColumn;
+import com.google.code.or.common.glossary.column.DateColumn;
+import com.google.code.or.common.glossary.column.Datetime2Column;
+import com.google.code.or.common.glossary.column.DatetimeColumn;
+import com.google.code.or.common.glossary.column.DecimalColumn;
+import com.google.code.or.common.glossary.column.DoubleColumn;
+import com.google.code.or.common.glossary.column.EnumColumn;
+import com.google.code.or.common.glossary.column.FloatColumn;
+import com.google.code.or.common.glossary.column.Int24Column;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.LongLongColumn;
+import com.google.code.or.common.glossary.column.NullColumn;
+import com.google.code.or.common.glossary.column.SetColumn;
+import com.google.code.or.common.glossary.column.ShortColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.glossary.column.Time2Column;
+import com.google.code.or.common.glossary.column.TimeColumn;
+import com.google.code.or.common.glossary.column.Timestamp2Column;
+import com.google.code.or.common.glossary.column.TimestampColumn;
+import com.google.code.or.common.glossary.column.TinyColumn;
+import com.google.code.or.common.glossary.column.YearColumn;
+import com.google.code.or.common.util.MySQLConstants;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Binary form of the parsed binlog events, for spilling them to disk.
+ *
+ * <p>Open Replicator events are not serializable, so this writes the fields
+ * the replicator uses, in a fixed order per event type. Decoded events are of
+ * the same classes with the same values, including the runtime class of date
+ * values, which decides how they are rendered.</p>
+ *
+ * <p>Of the query status variables only the time zone is kept, it is the only
+ * one the replicator looks at. Event types the pipeline skips anyway only
+ * keep their header and decode to a {@link HeaderOnlyEvent}.</p>
+ *
+ * <p>{@link RawRowsEvent}s keep their rows in binlog format, along with the
+ * table map event they need to be decoded.</p>
+ */
+public final class BinlogEventCodec {
+
+    // column tags
+    private static final byte NULL_COLUMN       = 0;
+    private static final byte BIT_COLUMN        = 1;
+    private static final byte BLOB_COLUMN       = 2;
+    private static final byte DATE_COLUMN       = 3;
+    private static final byte DATETIME_COLUMN   = 4;
+    private static final byte DATETIME2_COLUMN  = 5;
+    private static final byte DECIMAL_COLUMN    = 6;
+    private static final byte DOUBLE_COLUMN     = 7;
+    private static final byte ENUM_COLUMN       = 8;
+    private static final byte FLOAT_COLUMN      = 9;
+    private static final byte INT24_COLUMN      = 10;
+    private static final byte LONG_COLUMN       = 11;
+    private static final byte LONGLONG_COLUMN   = 12;
+    private static final byte SET_COLUMN        = 13;
+    private static final byte SHORT_COLUMN      = 14;
+    private static final byte STRING_COLUMN     = 15;
+    private static final byte TIME2_COLUMN      = 16;
+    private static final byte TIME_COLUMN       = 17;
+    private static final byte TIMESTAMP2_COLUMN = 18;
+    private static final byte TIMESTAMP_COLUMN  = 19;
+    private static final byte TINY_COLUMN       = 20;
+    private static final byte YEAR_COLUMN       = 21;
+
+    // runtime classes of date values
+    private static final byte UTIL_DATE = 0;
+    private static final byte SQL_DATE  = 1;
+    private static final byte SQL_TIME  = 2;
+    private static final byte TIMESTAMP = 3;
+
+    private BinlogEventCodec() {
+    }
+
+    /**
+     * Write an event.
+     */
+    public static void encode(BinlogEventV4 event, DataOutput out) throws IOException {
+        BinlogEventV4Header header = event.getHeader();
+        out.writeInt(header.getEventType());
+        out.writeLong(header.getTimestamp());
+        out.writeLong(header.getServerId());
+        out.writeLong(header.getEventLength());
+        out.writeLong(header.getNextPosition());
+        out.writeInt(header.getFlags());
+        out.writeLong(header.getTimestampOfReceipt());
+        writeString(out, event instanceof AbstractBinlogEventV4 ? ((AbstractBinlogEventV4) event).getBinlogFilename() : null);
+
+        out.writeBoolean(event instanceof RawRowsEvent);
+        if (event instanceof RawRowsEvent) {
+            encodeRawRows((RawRowsEvent) event, out);
+            return;
+        }
+
+        switch (header.getEventType()) {
+            case MySQLConstants.QUERY_EVENT:
+                encodeQuery((QueryEvent) event, out);
+                break;
+            case MySQLConstants.TABLE_MAP_EVENT:
+                encodeTableMap((TableMapEvent) event, out);
+                break;
+            case MySQLConstants.WRITE_ROWS_EVENT:
+                WriteRowsEvent writeRowsEvent = (WriteRowsEvent) event;
+                encodeRowEvent(writeRowsEvent, out);
+                writeUnsignedLong(out, writeRowsEvent.getColumnCount());
+                writeBitColumn(out, writeRowsEvent.getUsedColumns());
+                writeRows(out, writeRowsEvent.getRows());
+                break;
+            case MySQLConstants.WRITE_ROWS_EVENT_V2:
+                WriteRowsEventV2 writeRowsEventV2 = (WriteRowsEventV2) event;
+                encodeRowEvent(writeRowsEventV2, out);
+                out.writeInt(writeRowsEventV2.getExtraInfoLength());
+                writeBytes(out, writeRowsEventV2.getExtraInfo());
+                writeUnsignedLong(out, writeRowsEventV2.getColumnCount());
+                writeBitColumn(out, writeRowsEventV2.getUsedColumns());
+                writeRows(out, writeRowsEventV2.getRows());
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT:
+                DeleteRowsEvent deleteRowsEvent = (DeleteRowsEvent) event;
+                encodeRowEvent(deleteRowsEvent, out);
+                writeUnsignedLong(out, deleteRowsEvent.getColumnCount());
+                writeBitColumn(out, deleteRowsEvent.getUsedColumns());
+                writeRows(out, deleteRowsEvent.getRows());
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT_V2:
+                DeleteRowsEventV2 deleteRowsEventV2 = (DeleteRowsEventV2) event;
+                encodeRowEvent(deleteRowsEventV2, out);
+                out.writeInt(deleteRowsEventV2.getExtraInfoLength());
+                writeBytes(out, deleteRowsEventV2.getExtraInfo());
+                writeUnsignedLong(out, deleteRowsEventV2.getColumnCount());
+                writeBitColumn(out, deleteRowsEventV2.getUsedColumns());
+                writeRows(out, deleteRowsEventV2.getRows());
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT:
+                UpdateRowsEvent updateRowsEvent = (UpdateRowsEvent) event;
+                encodeRowEvent(updateRowsEvent, out);
+                writeUnsignedLong(out, updateRowsEvent.getColumnCount());
+                writeBitColumn(out, updateRowsEvent.getUsedColumnsBefore());
+                writeBitColumn(out, updateRowsEvent.getUsedColumnsAfter());
+                writeRowPairs(out, updateRowsEvent.getRows());
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+                UpdateRowsEventV2 updateRowsEventV2 = (UpdateRowsEventV2) event;
+                encodeRowEvent(updateRowsEventV2, out);
+                out.writeInt(updateRowsEventV2.getExtraInfoLength());
+                writeBytes(out, updateRowsEventV2.getExtraInfo());
+                writeUnsignedLong(out, updateRowsEventV2.getColumnCount());
+                writeBitColumn(out, updateRowsEventV2.getUsedColumnsBefore());
+                writeBitColumn(out, updateRowsEventV2.getUsedColumnsAfter());
+                writeRowPairs(out, updateRowsEventV2.getRows());
+                break;
+            case MySQLConstants.XID_EVENT:
+                out.writeLong(((XidEvent) event).getXid());
+                break;
+            case MySQLConstants.ROTATE_EVENT:
+                RotateEvent rotateEvent = (RotateEvent) event;
+                out.writeLong(rotateEvent.getBinlogPosition());
+                writeStringColumn(out, rotateEvent.getBinlogFileName());
+                break;
+            case MySQLConstants.FORMAT_DESCRIPTION_EVENT:
+                FormatDescriptionEvent formatDescriptionEvent = (FormatDescriptionEvent) event;
+                out.writeInt(formatDescriptionEvent.getBinlogVersion());
+                writeStringColumn(out, formatDescriptionEvent.getServerVersion());
+                out.writeLong(formatDescriptionEvent.getCreateTimestamp());
+                out.writeInt(formatDescriptionEvent.getHeaderLength());
+                writeBytes(out, formatDescriptionEvent.getEventTypes());
+                break;
+            default:
+                // header only
+                break;
+        }
+    }
+
+    /**
+     * Read an event written by {@link #encode(BinlogEventV4, DataOutput)}.
+     */
+    public static BinlogEventV4 decode(DataInput in) throws IOException {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(in.readInt());
+        header.setTimestamp(in.readLong());
+        header.setServerId(in.readLong());
+        header.setEventLength(in.readLong());
+        header.setNextPosition(in.readLong());
+        header.setFlags(in.readInt());
+        header.setTimestampOfReceipt(in.readLong());
+        String binlogFilename = readString(in);
+
+        if (in.readBoolean()) {
+            RawRowsEvent event = decodeRawRows(header, in);
+            event.setBinlogFilename(binlogFilename);
+            return event;
+        }
+
+        AbstractBinlogEventV4 event;
+        switch (header.getEventType()) {
+            case MySQLConstants.QUERY_EVENT:
+                event = decodeQuery(header, in);
+                break;
+            case MySQLConstants.TABLE_MAP_EVENT:
+                event = decodeTableMap(header, in);
+                break;
+            case MySQLConstants.WRITE_ROWS_EVENT:
+                WriteRowsEvent writeRowsEvent = new WriteRowsEvent(header);
+                decodeRowEvent(writeRowsEvent, in);
+                writeRowsEvent.setColumnCount(readUnsignedLong(in));
+                writeRowsEvent.setUsedColumns(readBitColumn(in));
+                writeRowsEvent.setRows(readRows(in));
+                event = writeRowsEvent;
+                break;
+            case MySQLConstants.WRITE_ROWS_EVENT_V2:
+                WriteRowsEventV2 writeRowsEventV2 = new WriteRowsEventV2(header);
+                decodeRowEvent(writeRowsEventV2, in);
+                writeRowsEventV2.setExtraInfoLength(in.readInt());
+                writeRowsEventV2.setExtraInfo(readBytes(in));
+                writeRowsEventV2.setColumnCount(readUnsignedLong(in));
+                writeRowsEventV2.setUsedColumns(readBitColumn(in));
+                writeRowsEventV2.setRows(readRows(in));
+                event = writeRowsEventV2;
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT:
+                DeleteRowsEvent deleteRowsEvent = new DeleteRowsEvent(header);
+                decodeRowEvent(deleteRowsEvent, in);
+                deleteRowsEvent.setColumnCount(readUnsignedLong(in));
+                deleteRowsEvent.setUsedColumns(readBitColumn(in));
+                deleteRowsEvent.setRows(readRows(in));
+                event = deleteRowsEvent;
+                break;
+            case MySQLConstants.DELETE_ROWS_EVENT_V2:
+                DeleteRowsEventV2 deleteRowsEventV2 = new DeleteRowsEventV2(header);
+                decodeRowEvent(deleteRowsEventV2, in);
+                deleteRowsEventV2.setExtraInfoLength(in.readInt());
+                deleteRowsEventV2.setExtraInfo(readBytes(in));
+                deleteRowsEventV2.setColumnCount(readUnsignedLong(in));
+                deleteRowsEventV2.setUsedColumns(readBitColumn(in));
+                deleteRowsEventV2.setRows(readRows(in));
+                event = deleteRowsEventV2;
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT:
+                UpdateRowsEvent updateRowsEvent = new UpdateRowsEvent(header);
+                decodeRowEvent(updateRowsEvent, in);
+                updateRowsEvent.setColumnCount(readUnsignedLong(in));
+                updateRowsEvent.setUsedColumnsBefore(readBitColumn(in));
+                updateRowsEvent.setUsedColumnsAfter(readBitColumn(in));
+                updateRowsEvent.setRows(readRowPairs(in));
+                event = updateRowsEvent;
+                break;
+            case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+                UpdateRowsEventV2 updateRowsEventV2 = new UpdateRowsEventV2(header);
+                decodeRowEvent(updateRowsEventV2, in);
+                updateRowsEventV2.setExtraInfoLength(in.readInt());
+                updateRowsEventV2.setExtraInfo(readBytes(in));
+                updateRowsEventV2.setColumnCount(readUnsignedLong(in));
+                updateRowsEventV2.setUsedColumnsBefore(readBitColumn(in));
+                updateRowsEventV2.setUsedColumnsAfter(readBitColumn(in));
+                updateRowsEventV2.setRows(readRowPairs(in));
+                event = updateRowsEventV2;
+                break;
+            case MySQLConstants.XID_EVENT:
+                XidEvent xidEvent = new XidEvent(header);
+                xidEvent.setXid(in.readLong());
+                event = xidEvent;
+                break;
+            case MySQLConstants.ROTATE_EVENT:
+                RotateEvent rotateEvent = new RotateEvent(header);
+                rotateEvent.setBinlogPosition(in.readLong());
+                rotateEvent.setBinlogFileName(readStringColumn(in));
+                event = rotateEvent;
+                break;
+            case MySQLConstants.FORMAT_DESCRIPTION_EVENT:
+                FormatDescriptionEvent formatDescriptionEvent = new FormatDescriptionEvent(header);
+                formatDescriptionEvent.setBinlogVersion(in.readInt());
+                formatDescriptionEvent.setServerVersion(readStringColumn(in));
+                formatDescriptionEvent.setCreateTimestamp(in.readLong());
+                formatDescriptionEvent.setHeaderLength(in.readInt());
+                formatDescriptionEvent.setEventTypes(readBytes(in));
+                event = formatDescriptionEvent;
+                break;
+            case MySQLConstants.STOP_EVENT:
+                event = new StopEvent(header);
+                break;
+            default:
+                event = new HeaderOnlyEvent(header);
+                break;
+        }
+        event.setBinlogFilename(binlogFilename);
+        return event;
+    }
+
+    private static void encodeQuery(QueryEvent event, DataOutput out) throws IOException {
+        out.writeLong(event.getThreadId());
+        out.writeLong(event.getElapsedTime());
+        out.writeInt(event.getDatabaseNameLength());
+        out.writeInt(event.getErrorCode());
+        out.writeInt(event.getStatusVariablesLength());
+        writeStringColumn(out, event.getDatabaseName());
+        writeStringColumn(out, event.getSql());
+
+        StringColumn timeZone = null;
+        if (event.getStatusVariables() != null) {
+            for (StatusVariable statusVariable : event.getStatusVariables()) {
+                if (statusVariable instanceof QTimeZoneCode) {
+                    timeZone = ((QTimeZoneCode) statusVariable).getTimeZone();
+                }
+            }
+        }
+        writeStringColumn(out, timeZone);
+    }
+
+    private static QueryEvent decodeQuery(BinlogEventV4HeaderImpl header, DataInput in) throws IOException {
+        QueryEvent event = new QueryEvent(header);
+        event.setThreadId(in.readLong());
+        event.setElapsedTime(in.readLong());
+        event.setDatabaseNameLength(in.readInt());
+        event.setErrorCode(in.readInt());
+        event.setStatusVariablesLength(in.readInt());
+        event.setDatabaseName(readStringColumn(in));
+        event.setSql(readStringColumn(in));
+
+        StringColumn timeZone = readStringColumn(in);
+        List<StatusVariable> statusVariables = new ArrayList<>(1);
+        if (timeZone != null) {
+            statusVariables.add(new QTimeZoneCode(timeZone));
+        }
+        event.setStatusVariables(statusVariables);
+        return event;
+    }
+
+    private static void encodeTableMap(TableMapEvent event, DataOutput out) throws IOException {
+        out.writeLong(event.getTableId());
+        out.writeInt(event.getReserved());
+        out.writeInt(event.getDatabaseNameLength());
+        writeStringColumn(out, event.getDatabaseName());
+        out.writeInt(event.getTableNameLength());
+        writeStringColumn(out, event.getTableName());
+        writeUnsignedLong(out, event.getColumnCount());
+        writeBytes(out, event.getColumnTypes());
+        writeUnsignedLong(out, event.getColumnMetadataCount());
+
+        Metadata metadata = event.getColumnMetadata();
+        byte[] columnTypes = event.getColumnTypes();
+        if (metadata == null || columnTypes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(columnTypes.length);
+            for (int i = 0; i < columnTypes.length; i++) {
+                out.writeByte(metadata.getType(i));
+                out.writeInt(metadata.getMetadata(i));
+            }
+        }
+        writeBitColumn(out, event.getColumnNullabilities());
+    }
+
+    private static TableMapEvent decodeTableMap(BinlogEventV4HeaderImpl header, DataInput in) throws IOException {
+        TableMapEvent event = new TableMapEvent(header);
+        event.setTableId(in.readLong());
+        event.setReserved(in.readInt());
+        event.setDatabaseNameLength(in.readInt());
+        event.setDatabaseName(readStringColumn(in));
+        event.setTableNameLength(in.readInt());
+        event.setTableName(readStringColumn(in));
+        event.setColumnCount(readUnsignedLong(in));
+        event.setColumnTypes(readBytes(in));
+        event.setColumnMetadataCount(readUnsignedLong(in));
+
+        int metadataCount = in.readInt();
+        if (metadataCount >= 0) {
+            byte[] types = new byte[metadataCount];
+            int[] metadata = new int[metadataCount];
+            for (int i = 0; i < metadataCount; i++) {
+                types[i] = in.readByte();
+                metadata[i] = in.readInt();
+            }
+            event.setColumnMetadata(new Metadata(types, metadata));
+        }
+        event.setColumnNullabilities(readBitColumn(in));
+        return event;
+    }
+
+    private static void encodeRowEvent(AbstractRowEvent event, DataOutput out) throws IOException {
+        out.writeLong(event.getTableId());
+        out.writeInt(event.getReserved());
+    }
+
+    private static void decodeRowEvent(AbstractRowEvent event, DataInput in) throws IOException {
+        event.setTableId(in.readLong());
+        event.setReserved(in.readInt());
+    }
+
+    private static void encodeRawRows(RawRowsEvent event, DataOutput out) throws IOException {
+        encodeRowEvent(event, out);
+        out.writeInt(event.getColumnCount());
+        writeBytes(out, event.getUsedColumns());
+        writeBytes(out, event.getUsedColumnsAfter());
+        encode(event.getTableMapEvent(), out);
+        writeBytes(out, event.getRows());
+    }
+
+    private static RawRowsEvent decodeRawRows(BinlogEventV4HeaderImpl header, DataInput in) throws IOException {
+        RawRowsEvent event = new RawRowsEvent(header);
+        decodeRowEvent(event, in);
+        event.setColumnCount(in.readInt());
+        event.setUsedColumns(readBytes(in));
+        event.setUsedColumnsAfter(readBytes(in));
+        event.setTableMapEvent((TableMapEvent) decode(in));
+        event.setRows(readBytes(in));
+        return event;
+    }
+
+    private static void writeRows(DataOutput out, List<Row> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (Row row : rows) {
+            writeRow(out, row);
+        }
+    }
+
+    private static List<Row> readRows(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Row> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(readRow(in));
+        }
+        return rows;
+    }
+
+    private static void writeRowPairs(DataOutput out, List<Pair<Row>> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (Pair<Row> row : rows) {
+            writeRow(out, row.getBefore());
+            writeRow(out, row.getAfter());
+        }
+    }
+
+    private static List<Pair<Row>> readRowPairs(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Pair<Row>> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Row before = readRow(in);
+            Row after = readRow(in);
+            rows.add(new Pair<>(before, after));
+        }
+        return rows;
+    }
+
+    private static void writeRow(DataOutput out, Row row) throws IOException {
+        List<Column> columns = row.getColumns();
+        out.writeInt(columns.size());
+        for (Column column : columns) {
+            writeColumn(out, column);
+        }
+    }
+
+    private static Row readRow(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Column> columns = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            columns.add(readColumn(in));
+        }
+        return new Row(columns);
+    }
+
+    private static void writeColumn(DataOutput out, Column column) throws IOException {
+        if (column instanceof NullColumn) {
+            out.writeByte(NULL_COLUMN);
+            out.writeInt(((NullColumn) column).getType());
+        } else if (column instanceof BitColumn) {
+            out.writeByte(BIT_COLUMN);
+            writeBitColumnValue(out, (BitColumn) column);
+        } else if (column instanceof BlobColumn) {
+            out.writeByte(BLOB_COLUMN);
+            writeBytes(out, ((BlobColumn) column).getValue());
+        } else if (column instanceof DateColumn) {
+            out.writeByte(DATE_COLUMN);
+            writeDate(out, ((DateColumn) column).getValue());
+        } else if (column instanceof DatetimeColumn) {
+            // columns made from the packed long derive their date from it
+            DatetimeColumn datetimeColumn = (DatetimeColumn) column;
+            out.writeByte(DATETIME_COLUMN);
+            out.writeLong(datetimeColumn.getLongValue());
+            if (datetimeColumn.getLongValue() == 0) {
+                writeDate(out, datetimeColumn.getValue());
+            }
+        } else if (column instanceof Datetime2Column) {
+            out.writeByte(DATETIME2_COLUMN);
+            writeDate(out, ((Datetime2Column) column).getValue());
+        } else if (column instanceof DecimalColumn) {
+            DecimalColumn decimalColumn = (DecimalColumn) column;
+            out.writeByte(DECIMAL_COLUMN);
+            writeBytes(out, decimalColumn.getValue().unscaledValue().toByteArray());
+            out.writeInt(decimalColumn.getValue().scale());
+            out.writeInt(decimalColumn.getPrecision());
+            out.writeInt(decimalColumn.getScale());
+        } else if (column instanceof DoubleColumn) {
+            out.writeByte(DOUBLE_COLUMN);
+            out.writeDouble(((DoubleColumn) column).getValue());
+        } else if (column instanceof EnumColumn) {
+            out.writeByte(ENUM_COLUMN);
+            out.writeInt(((EnumColumn) column).getValue());
+        } else if (column instanceof FloatColumn) {
+            out.writeByte(FLOAT_COLUMN);
+            out.writeFloat(((FloatColumn) column).getValue());
+        } else if (column instanceof Int24Column) {
+            out.writeByte(INT24_COLUMN);
+            out.writeInt(((Int24Column) column).getValue());
+        } else if (column instanceof LongColumn) {
+            out.writeByte(LONG_COLUMN);
+            out.writeInt(((LongColumn) column).getValue());
+        } else if (column instanceof LongLongColumn) {
+            out.writeByte(LONGLONG_COLUMN);
+            out.writeLong(((LongLongColumn) column).getValue());
+        } else if (column instanceof SetColumn) {
+            out.writeByte(SET_COLUMN);
+            out.writeLong(((SetColumn) column).getValue());
+        } else if (column instanceof ShortColumn) {
+            out.writeByte(SHORT_COLUMN);
+            out.writeInt(((ShortColumn) column).getValue());
+        } else if (column instanceof StringColumn) {
+            out.writeByte(STRING_COLUMN);
+            writeBytes(out, ((StringColumn) column).getValue());
+        } else if (column instanceof Time2Column) {
+            out.writeByte(TIME2_COLUMN);
+            writeDate(out, ((Time2Column) column).getValue());
+        } else if (column instanceof TimeColumn) {
+            out.writeByte(TIME_COLUMN);
+            writeDate(out, ((TimeColumn) column).getValue());
+        } else if (column instanceof Timestamp2Column) {
+            out.writeByte(TIMESTAMP2_COLUMN);
+            writeDate(out, ((Timestamp2Column) column).getValue());
+        } else if (column instanceof TimestampColumn) {
+            out.writeByte(TIMESTAMP_COLUMN);
+            writeDate(out, ((TimestampColumn) column).getValue());
+        } else if (column instanceof TinyColumn) {
+            out.writeByte(TINY_COLUMN);
+            out.writeInt(((TinyColumn) column).getValue());
+        } else if (column instanceof YearColumn) {
+            out.writeByte(YEAR_COLUMN);
+            out.writeInt(((YearColumn) column).getValue());
+        } else {
+            throw new IOException("Can't encode column of type " + column.getClass());
+        }
+    }
+
+    private static Column readColumn(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL_COLUMN:
+                return NullColumn.valueOf(in.readInt());
+            case BIT_COLUMN:
+                return readBitColumnValue(in);
+            case BLOB_COLUMN:
+                return BlobColumn.valueOf(readBytes(in));
+            case DATE_COLUMN:
+                return DateColumn.valueOf((java.sql.Date) readDate(in));
+            case DATETIME_COLUMN:
+                long longValue = in.readLong();
+                return longValue != 0 ? DatetimeColumn.valueOf(longValue) : DatetimeColumn.valueOf(readDate(in));
+            case DATETIME2_COLUMN:
+                return Datetime2Column.valueOf(readDate(in));
+            case DECIMAL_COLUMN:
+                BigDecimal value = new BigDecimal(new BigInteger(readBytes(in)), in.readInt());
+                int precision = in.readInt();
+                return DecimalColumn.valueOf(value, precision, in.readInt());
+            case DOUBLE_COLUMN:
+                return DoubleColumn.valueOf(in.readDouble());
+            case ENUM_COLUMN:
+                return EnumColumn.valueOf(in.readInt());
+            case FLOAT_COLUMN:
+                return FloatColumn.valueOf(in.readFloat());
+            case INT24_COLUMN:
+                return Int24Column.valueOf(in.readInt());
+            case LONG_COLUMN:
+                return LongColumn.valueOf(in.readInt());
+            case LONGLONG_COLUMN:
+                return LongLongColumn.valueOf(in.readLong());
+            case SET_COLUMN:
+                return SetColumn.valueOf(in.readLong());
+            case SHORT_COLUMN:
+                return ShortColumn.valueOf(in.readInt());
+            case STRING_COLUMN:
+                return StringColumn.valueOf(readBytes(in));
+            case TIME2_COLUMN:
+                return Time2Column.valueOf((Time) readDate(in));
+            case TIME_COLUMN:
+                return TimeColumn.valueOf((Time) readDate(in));
+            case TIMESTAMP2_COLUMN:
+                return Timestamp2Column.valueOf((Timestamp) readDate(in));
+            case TIMESTAMP_COLUMN:
+                return TimestampColumn.valueOf((Timestamp) readDate(in));
+            case TINY_COLUMN:
+                return TinyColumn.valueOf(in.readInt());
+            case YEAR_COLUMN:
+                return YearColumn.valueOf(in.readInt());
+            default:
+                throw new IOException("Unknown column tag " + tag);
+        }
+    }
+
+    private static void writeDate(DataOutput out, Date date) throws IOException {
+        if (date instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(date.getTime());
+            out.writeInt(((Timestamp) date).getNanos());
+        } else if (date instanceof Time) {
+            out.writeByte(SQL_TIME);
+            out.writeLong(date.getTime());
+        } else if (date instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(date.getTime());
+        } else {
+            out.writeByte(UTIL_DATE);
+            out.writeLong(date.getTime());
+        }
+    }
+
+    private static Date readDate(DataInput in) throws IOException {
+        byte dateClass = in.readByte();
+        long time = in.readLong();
+        switch (dateClass) {
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(time);
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case SQL_TIME:
+                return new Time(time);
+            case SQL_DATE:
+                return new java.sql.Date(time);
+            default:
+                return new Date(time);
+        }
+    }
+
+    private static void writeBitColumn(DataOutput out, BitColumn column) throws IOException {
+        out.writeBoolean(column != null);
+        if (column != null) {
+            writeBitColumnValue(out, column);
+        }
+    }
+
+    private static BitColumn readBitColumn(DataInput in) throws IOException {
+        return in.readBoolean() ? readBitColumnValue(in) : null;
+    }
+
+    private static void writeBitColumnValue(DataOutput out, BitColumn column) throws IOException {
+        out.writeInt(column.getLength());
+        writeBytes(out, column.getValue());
+    }
+
+    private static BitColumn readBitColumnValue(DataInput in) throws IOException {
+        int length = in.readInt();
+        return BitColumn.valueOf(length, readBytes(in));
+    }
+
+    private static void writeUnsignedLong(DataOutput out, UnsignedLong value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.longValue());
+        }
+    }
+
+    private static UnsignedLong readUnsignedLong(DataInput in) throws IOException {
+        return in.readBoolean() ? UnsignedLong.valueOf(in.readLong()) : null;
+    }
+
+    private static void writeStringColumn(DataOutput out, StringColumn column) throws IOException {
+        writeBytes(out, column == null ? null : column.getValue());
+    }
+
+    private static StringColumn readStringColumn(DataInput in) throws IOException {
+        byte[] value = readBytes(in);
+        return value == null ? null : StringColumn.valueOf(value);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
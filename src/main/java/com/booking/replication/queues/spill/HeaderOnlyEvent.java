@@ -0,0 +1,15 @@
+package com.booking.replication.queues.spill;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.impl.event.AbstractBinlogEventV4;
+
+/**
+ * Spilled event of a type the pipeline doesn't look into. Only the header,
+ * with its type and position, survives the trip to disk.
+ */
+public class HeaderOnlyEvent extends AbstractBinlogEventV4 {
+
+    public HeaderOnlyEvent(BinlogEventV4Header header) {
+        this.header = header;
+    }
+}
@@ -0,0 +1,204 @@
+package com.booking.replication.queues.spill;
+
+import com.booking.replication.queues.EventOverflow;
+
+import com.google.code.or.binlog.BinlogEventV4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Event overflow in memory mapped segment files.
+ *
+ * <p>Events are serialized with {@link BinlogEventCodec} and appended to the
+ * newest segment. A new segment is started when the newest one is full, and
+ * segments are deleted as soon as they are read to the end, so the disk usage
+ * follows the backlog. Only the event at the head is kept decoded. The bytes
+ * held, and the room left, are counted in encoded bytes.</p>
+ *
+ * <p>The spill directory is owned by the queue: segments left behind by an
+ * earlier run are removed on start, they are replayed from the binlog
+ * anyway.</p>
+ */
+public class SpillQueue implements EventOverflow {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillQueue.class);
+
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    private final ArrayDeque<SpillSegment> segments = new ArrayDeque<>();
+    private final EncodeBuffer encoded = new EncodeBuffer();
+    private final DataOutputStream encoder = new DataOutputStream(encoded);
+
+    // the event last encoded, hasRoomFor encodes the event that is added next
+    private BinlogEventV4 encodedEvent = null;
+
+    private long segmentSequence = 0;
+    private long bytes = 0;
+    private long events = 0;
+
+    private BinlogEventV4 head = null;
+    private int headLength = 0;
+
+    /**
+     * Spill queue.
+     *
+     * @param directory     Directory for the segment files
+     * @param segmentBytes  Size of a segment file
+     * @param maxBytes      Bytes to hold at most on disk
+     */
+    public SpillQueue(File directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create spill directory " + directory);
+        }
+        removeSegmentFiles();
+    }
+
+    @Override
+    public boolean hasRoomFor(BinlogEventV4 event, long eventSize) throws IOException {
+        return isEmpty() || bytes + encode(event) <= maxBytes;
+    }
+
+    @Override
+    public void add(BinlogEventV4 event, long eventSize) throws IOException {
+        int length = encode(event);
+        encodedEvent = null;
+
+        SpillSegment tail = segments.peekLast();
+        if (tail == null || !tail.hasRoomFor(length)) {
+            tail = newSegment(Math.max(segmentBytes, SpillSegment.capacityFor(length)));
+        }
+        tail.append(encoded.getBuffer(), length);
+
+        bytes += length;
+        events++;
+    }
+
+    @Override
+    public BinlogEventV4 peek() throws IOException {
+        if (head != null) {
+            return head;
+        }
+        while (!segments.isEmpty()) {
+            SpillSegment segment = segments.peekFirst();
+            if (segment.hasNext()) {
+                byte[] record = segment.next();
+                head = BinlogEventCodec.decode(new DataInputStream(new ByteArrayInputStream(record)));
+                headLength = record.length;
+                return head;
+            }
+            if (segment == segments.peekLast()) {
+                // still written to
+                return null;
+            }
+            segments.pollFirst();
+            segment.delete();
+        }
+        return null;
+    }
+
+    @Override
+    public void remove() throws IOException {
+        if (peek() == null) {
+            return;
+        }
+        head = null;
+        bytes -= headLength;
+        events--;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return events == 0;
+    }
+
+    @Override
+    public boolean isChargedToMemoryBudget() {
+        return false;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        while (!segments.isEmpty()) {
+            segments.pollFirst().delete();
+        }
+        head = null;
+        encodedEvent = null;
+        bytes = 0;
+        events = 0;
+    }
+
+    /**
+     * Encode the event, unless it is the one last encoded.
+     *
+     * @return  Encoded length
+     */
+    private int encode(BinlogEventV4 event) throws IOException {
+        if (event != encodedEvent) {
+            encodedEvent = null;
+            encoded.reset();
+            BinlogEventCodec.encode(event, encoder);
+            encoder.flush();
+            encodedEvent = event;
+        }
+        return encoded.size();
+    }
+
+    private SpillSegment newSegment(int capacity) throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segmentSequence++, SEGMENT_SUFFIX));
+        SpillSegment segment = new SpillSegment(file, capacity);
+        segments.addLast(segment);
+        LOGGER.debug("Started spill segment " + file);
+        return segment;
+    }
+
+    private void removeSegmentFiles() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                LOGGER.info("Removing stale spill segment " + file);
+                if (!file.delete()) {
+                    throw new IOException("Failed to remove stale spill segment " + file);
+                }
+            }
+        }
+    }
+
+    // gives access to the encoded bytes without copying them
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+
+        EncodeBuffer() {
+            super(4096);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.booking.replication.queues.spill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append only file of length prefixed records, mapped into memory.
+ *
+ * <p>Records are written behind each other and followed by an end marker,
+ * so the file can be read back on its own. The segment is read in the order
+ * it was written, and deleted once it is done with.</p>
+ *
+ * <p>The mapping is released when the segment is deleted, where the JVM lets
+ * us. Left to the garbage collector, the mappings of deleted segments keep
+ * holding their disk space and address space until the buffers are
+ * collected.</p>
+ */
+class SpillSegment {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillSegment.class);
+
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+
+    private int writePosition = 0;
+    private int readPosition = 0;
+
+    SpillSegment(File file, int capacity) throws IOException {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException exception) {
+            randomAccessFile.close();
+            throw exception;
+        }
+        buffer.putInt(0, END_OF_SEGMENT);
+    }
+
+    /**
+     * Capacity needed for a segment holding a single record of the given length.
+     */
+    static int capacityFor(int recordLength) {
+        return 4 + recordLength + 4;
+    }
+
+    boolean hasRoomFor(int recordLength) {
+        return writePosition + capacityFor(recordLength) <= buffer.capacity();
+    }
+
+    void append(byte[] record, int length) {
+        int position = writePosition;
+        buffer.putInt(position + 4 + length, END_OF_SEGMENT);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.put(record, 0, length);
+        buffer.putInt(position, length);
+        writePosition = position + 4 + length;
+    }
+
+    boolean hasNext() {
+        return readPosition < writePosition;
+    }
+
+    /**
+     * Read the next record.
+     */
+    byte[] next() {
+        int length = buffer.getInt(readPosition);
+        byte[] record = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(readPosition + 4);
+        view.get(record);
+        readPosition += 4 + length;
+        return record;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Close and delete the segment file.
+     */
+    void delete() throws IOException {
+        if (randomAccessFile.getChannel().isOpen()) {
+            unmap(buffer);
+        }
+        randomAccessFile.close();
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Failed to delete spill segment " + file);
+        }
+    }
+
+    // Best effort, the garbage collector unmaps the buffer when this fails. The buffer
+    // must not be touched afterwards, it points to unmapped memory then.
+    private void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                // java 9 and later
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Failed to unmap spill segment " + file + ", leaving it to the garbage collector", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.booking.replication.relay;
+
+import com.google.code.or.common.util.MySQLConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the few fields the relay log needs straight from the bytes of a
+ * binlog event, without parsing it. Buffers are little endian, offsets are
+ * relative to the start of the event.
+ */
+final class BinlogEventBytes {
+
+    static final int HEADER_LENGTH = 19;
+
+    private static final int TYPE_OFFSET          = 4;
+    private static final int EVENT_LENGTH_OFFSET  = 9;
+    private static final int NEXT_POSITION_OFFSET = 13;
+
+    // format description: binlog version (2), server version (50), ...
+    private static final int SERVER_VERSION_OFFSET = HEADER_LENGTH + 2;
+    private static final int SERVER_VERSION_LENGTH = 50;
+    private static final int CHECKSUM_ALGORITHM_CRC32 = 1;
+
+    // query: thread id (4), exec time (4), database length (1), error code (2), status vars length (2)
+    private static final int QUERY_DATABASE_LENGTH_OFFSET = HEADER_LENGTH + 8;
+    private static final int QUERY_STATUS_LENGTH_OFFSET   = HEADER_LENGTH + 11;
+    private static final int QUERY_POST_HEADER_LENGTH     = 13;
+
+    // rotate: position (8), file name
+    private static final int ROTATE_FILE_NAME_OFFSET = HEADER_LENGTH + 8;
+
+    private static final byte[] BEGIN = "BEGIN".getBytes(StandardCharsets.US_ASCII);
+
+    private BinlogEventBytes() {
+    }
+
+    static int getEventType(ByteBuffer buffer, int at) {
+        return buffer.get(at + TYPE_OFFSET) & 0xff;
+    }
+
+    static long getEventLength(ByteBuffer buffer, int at) {
+        return buffer.getInt(at + EVENT_LENGTH_OFFSET) & 0xffffffffL;
+    }
+
+    static long getNextPosition(ByteBuffer buffer, int at) {
+        return buffer.getInt(at + NEXT_POSITION_OFFSET) & 0xffffffffL;
+    }
+
+    /**
+     * Whether the events following a format description event end with a
+     * CRC32 checksum. Servers from 5.6.1 on append the checksum algorithm
+     * to the format description event.
+     */
+    static boolean isChecksumEnabled(ByteBuffer buffer, int at, int length) {
+        byte[] serverVersion = new byte[SERVER_VERSION_LENGTH];
+        for (int i = 0; i < SERVER_VERSION_LENGTH; i++) {
+            serverVersion[i] = buffer.get(at + SERVER_VERSION_OFFSET + i);
+        }
+        int[] version = parseVersion(new String(serverVersion, StandardCharsets.US_ASCII));
+        boolean checksumAware = version[0] > 5
+                || (version[0] == 5 && (version[1] > 6 || (version[1] == 6 && version[2] >= 1)));
+        return checksumAware && buffer.get(at + length - 5) == CHECKSUM_ALGORITHM_CRC32;
+    }
+
+    static String getRotateFileName(ByteBuffer buffer, int at, int length, boolean checksumEnabled) {
+        int nameLength = length - ROTATE_FILE_NAME_OFFSET - (checksumEnabled ? 4 : 0);
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = buffer.get(at + ROTATE_FILE_NAME_OFFSET + i);
+        }
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Whether the binlog is at a transaction boundary right after this event,
+     * that is the event is a commit, a statement outside of a transaction or
+     * marks the end of the binlog file.
+     */
+    static boolean endsTransaction(ByteBuffer buffer, int at, int length) {
+        switch (getEventType(buffer, at)) {
+            case MySQLConstants.XID_EVENT:
+            case MySQLConstants.ROTATE_EVENT:
+            case MySQLConstants.STOP_EVENT:
+            case MySQLConstants.FORMAT_DESCRIPTION_EVENT:
+                return true;
+            case MySQLConstants.QUERY_EVENT:
+                return !isBegin(buffer, at, length);
+            default:
+                return false;
+        }
+    }
+
+    // the statement runs up to the end of the event, or to the checksum
+    private static boolean isBegin(ByteBuffer buffer, int at, int length) {
+        int databaseLength = buffer.get(at + QUERY_DATABASE_LENGTH_OFFSET) & 0xff;
+        int statusLength   = buffer.getShort(at + QUERY_STATUS_LENGTH_OFFSET) & 0xffff;
+        int sqlStart  = HEADER_LENGTH + QUERY_POST_HEADER_LENGTH + statusLength + databaseLength + 1;
+        int sqlLength = length - sqlStart;
+        if (sqlLength != BEGIN.length && sqlLength != BEGIN.length + 4) {
+            return false;
+        }
+        for (int i = 0; i < BEGIN.length; i++) {
+            if (buffer.get(at + sqlStart + i) != BEGIN[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // "5.6.30-log" => {5, 6, 30}
+    static int[] parseVersion(String serverVersion) {
+        int[] version = new int[3];
+        int part = 0;
+        for (int i = 0; i < serverVersion.length() && part < 3; i++) {
+            char character = serverVersion.charAt(i);
+            if (Character.isDigit(character)) {
+                version[part] = version[part] * 10 + (character - '0');
+            } else if (character == '.') {
+                part++;
+            } else {
+                break;
+            }
+        }
+        return version;
+    }
+}
@@ -0,0 +1,462 @@
+package com.booking.replication.relay;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Metrics;
+import com.google.code.or.common.util.MySQLConstants;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local copy of the binlog stream received from the replicant.
+ *
+ * <p>Every binlog file streamed from the replicant gets a relay file of the
+ * same name, and every event is written at its own binlog position, so the
+ * relay file offset of an event is its binlog position. The head of a relay
+ * file is the binlog magic and the format description event, which makes it
+ * a (sparse) binlog file that
+ * {@link com.booking.replication.pipeline.MappedBinlogFileParser} reads like
+ * the original.
+ * When streaming starts in the middle of a binlog file, the relay file has a
+ * hole up to the start position.</p>
+ *
+ * <p>The index lists the relay files in binlog order with the position each
+ * starts at, and the replicant they were streamed from. The end of a relay
+ * file is found by walking its event headers on start, and only events up to
+ * the last transaction boundary are replayed: a partly written transaction
+ * at the tail is streamed again from the replicant.</p>
+ *
+ * <p>The relay files are a cache. If streaming doesn't continue exactly where
+ * the relay log ends, the relay log is started over. When relaying fails,
+ * relaying stops and replication goes on from the replicant.</p>
+ */
+public class RelayLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelayLog.class);
+
+    public static final String INDEX_FILE_NAME = "relay-log.index";
+
+    private static final String HOST_PREFIX = "host ";
+
+    private static final long FIRST_EVENT_POSITION = MySQLConstants.BINLOG_MAGIC.length;
+
+    private final File directory;
+    private final int  retainedFiles;
+
+    private final List<RelayFile> files = new ArrayList<>();
+    private String host = null;
+
+    // live session, written from the binlog reader thread
+    private RelayFile current = null;
+    private String    nextBinlogFileName = null;
+    private long      sessionPosition = 0;
+    private boolean   relaying = false;
+
+    private static final Counter writtenBytesCounter =
+            Metrics.registry.counter(name("relayLog", "writtenBytes"));
+
+    /**
+     * Relay log in the given directory. Relay files listed in the index are
+     * checked and kept, if they are still there.
+     *
+     * @param directory         Directory of the relay files and the index
+     * @param retainedFiles     Relay files to keep, the oldest are deleted
+     */
+    public RelayLog(File directory, int retainedFiles) throws IOException {
+        this.directory     = directory;
+        this.retainedFiles = retainedFiles;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create relay log directory " + directory);
+        }
+        readIndex();
+
+        String metricName = name("relayLog", "files");
+        Metrics.registry.remove(metricName);
+        Metrics.registry.register(metricName, new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getFileCount();
+            }
+        });
+    }
+
+    /**
+     * Relay files to replay to get from the given position to the end of the
+     * relay log.
+     *
+     * @param host              Replicant the position is on
+     * @param binlogFileName    Binlog file of the position
+     * @param position          Position to replay from
+     * @return                  Segments to replay in order, empty if the relay log doesn't have the position
+     */
+    public synchronized List<Segment> getReplayWindow(String host, String binlogFileName, long position) {
+        if (!host.equals(this.host)) {
+            return Collections.emptyList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            RelayFile relayFile = files.get(i);
+            if (!relayFile.binlogFileName.equals(binlogFileName)) {
+                continue;
+            }
+            if (position < relayFile.firstPosition || position > relayFile.safeEndPosition) {
+                return Collections.emptyList();
+            }
+            List<Segment> segments = new ArrayList<>();
+            segments.add(new Segment(relayFile, position));
+            for (RelayFile next : files.subList(i + 1, files.size())) {
+                segments.add(new Segment(next, next.firstPosition));
+            }
+            // nothing left to replay
+            if (segments.size() == 1 && position == relayFile.safeEndPosition) {
+                return Collections.emptyList();
+            }
+            return segments;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Start relaying a binlog dump. Called right before the dump is requested.
+     *
+     * <p>Continues the last relay file if the dump starts at its end, and
+     * starts the relay log over otherwise.</p>
+     */
+    public synchronized void beginSession(String host, String binlogFileName, long position) {
+        try {
+            closeCurrent();
+            RelayFile last = files.isEmpty() ? null : files.get(files.size() - 1);
+            if (host.equals(this.host)
+                    && last != null
+                    && last.binlogFileName.equals(binlogFileName)
+                    && last.safeEndPosition == position) {
+                // drop the unfinished transaction at the tail, it is streamed again
+                last.openForWrite();
+                last.truncate(position);
+                current = last;
+                LOGGER.info("Continuing relay file " + last.file + " at position " + position);
+            } else {
+                clear(host);
+                LOGGER.info("Starting relay log at " + binlogFileName + ":" + position);
+            }
+            nextBinlogFileName = binlogFileName;
+            sessionPosition    = position;
+            relaying           = true;
+        } catch (IOException e) {
+            LOGGER.error("Failed to start relaying, continuing without relay log", e);
+            relaying = false;
+        }
+    }
+
+    /**
+     * Relay an event, as received from the replicant.
+     */
+    public synchronized void append(byte[] event, int offset, int length) {
+        if (!relaying) {
+            return;
+        }
+        try {
+            doAppend(ByteBuffer.wrap(event, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN), length);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to write relay log, relaying stops until the next restart", e);
+            relaying = false;
+            closeCurrent();
+        }
+    }
+
+    private void doAppend(ByteBuffer event, int length) throws IOException {
+        if (length < BinlogEventBytes.HEADER_LENGTH) {
+            return;
+        }
+        int  eventType    = BinlogEventBytes.getEventType(event, 0);
+        long nextPosition = BinlogEventBytes.getNextPosition(event, 0);
+
+        if (eventType == MySQLConstants.FORMAT_DESCRIPTION_EVENT) {
+            if (current == null || !current.binlogFileName.equals(nextBinlogFileName)) {
+                startRelayFile(event, length, nextPosition);
+            }
+            return;
+        }
+
+        // artificial events, like the rotate event at the start of a dump or heartbeats, aren't in the binlog
+        if (nextPosition == 0 || current == null || eventType == MySQLConstants.HEARTBEAT_LOG_EVENT) {
+            return;
+        }
+
+        long position = nextPosition - length;
+        if (position != current.endPosition) {
+            throw new IOException("Event at " + current.binlogFileName + ":" + position
+                    + " doesn't follow the relay file end " + current.endPosition);
+        }
+        current.write(event, position);
+        current.endPosition = nextPosition;
+        if (BinlogEventBytes.endsTransaction(event, 0, length)) {
+            current.safeEndPosition = nextPosition;
+        }
+        writtenBytesCounter.inc(length);
+
+        if (eventType == MySQLConstants.ROTATE_EVENT) {
+            nextBinlogFileName = BinlogEventBytes.getRotateFileName(event, 0, length, current.checksumEnabled);
+        }
+    }
+
+    private void startRelayFile(ByteBuffer formatDescription, int length, long nextPosition) throws IOException {
+        // the first file of a session starts where the dump does, the files it rotates to at their head
+        long firstPosition = current == null ? Math.max(sessionPosition, FIRST_EVENT_POSITION) : FIRST_EVENT_POSITION;
+        closeCurrent();
+
+        RelayFile relayFile = new RelayFile(nextBinlogFileName, new File(directory, nextBinlogFileName), firstPosition);
+        relayFile.checksumEnabled = BinlogEventBytes.isChecksumEnabled(formatDescription, 0, length);
+        relayFile.openForWrite();
+        relayFile.truncate(0);
+        relayFile.write(ByteBuffer.wrap(MySQLConstants.BINLOG_MAGIC), 0);
+        relayFile.write(formatDescription, FIRST_EVENT_POSITION);
+        if (firstPosition == FIRST_EVENT_POSITION && nextPosition == FIRST_EVENT_POSITION + length) {
+            relayFile.endPosition     = nextPosition;
+            relayFile.safeEndPosition = nextPosition;
+        }
+
+        files.add(relayFile);
+        current = relayFile;
+        while (files.size() > retainedFiles && files.size() > 1) {
+            RelayFile oldest = files.remove(0);
+            oldest.delete();
+            LOGGER.info("Removed relay file " + oldest.file);
+        }
+        writeIndex();
+        LOGGER.info("Started relay file " + relayFile.file + " at position " + firstPosition);
+    }
+
+    /**
+     * Remove all relay files.
+     */
+    public synchronized void clear() throws IOException {
+        clear(host);
+    }
+
+    private void clear(String host) throws IOException {
+        closeCurrent();
+        for (RelayFile relayFile : files) {
+            relayFile.delete();
+        }
+        files.clear();
+        this.host = host;
+        writeIndex();
+    }
+
+    /**
+     * Stop relaying and close the relay file being written.
+     */
+    public synchronized void close() {
+        relaying = false;
+        closeCurrent();
+    }
+
+    private void closeCurrent() {
+        if (current != null) {
+            current.closeQuietly();
+            current = null;
+        }
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    private void writeIndex() throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (host != null) {
+            lines.add(HOST_PREFIX + host);
+        }
+        for (RelayFile relayFile : files) {
+            lines.add(relayFile.binlogFileName + " " + relayFile.firstPosition);
+        }
+        File index = new File(directory, INDEX_FILE_NAME);
+        File temporary = new File(directory, INDEX_FILE_NAME + ".tmp");
+        Files.write(temporary.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temporary.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readIndex() throws IOException {
+        File index = new File(directory, INDEX_FILE_NAME);
+        if (!index.exists()) {
+            return;
+        }
+        for (String line : Files.readAllLines(index.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith(HOST_PREFIX)) {
+                host = line.substring(HOST_PREFIX.length());
+                continue;
+            }
+            String[] fields = line.trim().split(" ");
+            if (fields.length != 2) {
+                continue;
+            }
+            RelayFile relayFile = new RelayFile(fields[0], new File(directory, fields[0]), Long.parseLong(fields[1]));
+            // files only follow each other without a gap
+            if (!relayFile.file.exists() || !relayFile.scan()) {
+                LOGGER.warn("Relay file " + relayFile.file + " is missing or damaged, dropping it and the ones after it");
+                break;
+            }
+            files.add(relayFile);
+        }
+        if (!files.isEmpty()) {
+            RelayFile last = files.get(files.size() - 1);
+            LOGGER.info("Relay log holds " + files.get(0).binlogFileName + ":" + files.get(0).firstPosition
+                    + " to " + last.binlogFileName + ":" + last.safeEndPosition);
+        }
+    }
+
+    /**
+     * Part of a relay file to replay.
+     */
+    public static class Segment {
+
+        private final String binlogFileName;
+        private final File   file;
+        private final long   startPosition;
+        private final long   endPosition;
+
+        Segment(RelayFile relayFile, long startPosition) {
+            this.binlogFileName = relayFile.binlogFileName;
+            this.file           = relayFile.file;
+            this.startPosition  = startPosition;
+            this.endPosition    = relayFile.safeEndPosition;
+        }
+
+        public String getBinlogFileName() {
+            return binlogFileName;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getStartPosition() {
+            return startPosition;
+        }
+
+        /**
+         * Position of the last transaction boundary in the relay file.
+         */
+        public long getEndPosition() {
+            return endPosition;
+        }
+    }
+
+    static class RelayFile {
+
+        final String binlogFileName;
+        final File   file;
+        final long   firstPosition;
+
+        long    endPosition;
+        long    safeEndPosition;
+        boolean checksumEnabled;
+
+        private RandomAccessFile randomAccessFile;
+        private FileChannel      channel;
+
+        RelayFile(String binlogFileName, File file, long firstPosition) {
+            this.binlogFileName  = binlogFileName;
+            this.file            = file;
+            this.firstPosition   = firstPosition;
+            this.endPosition     = firstPosition;
+            this.safeEndPosition = firstPosition;
+        }
+
+        /**
+         * Find the end of the relay file by walking the event headers.
+         *
+         * @return  False if the relay file doesn't even have a valid head
+         */
+        boolean scan() throws IOException {
+            try (RandomAccessFile reader = new RandomAccessFile(file, "r")) {
+                long length = reader.length();
+                if (length < FIRST_EVENT_POSITION + BinlogEventBytes.HEADER_LENGTH || length > Integer.MAX_VALUE) {
+                    return false;
+                }
+                MappedByteBuffer buffer = reader.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                int formatDescriptionLength = (int) BinlogEventBytes.getEventLength(buffer, (int) FIRST_EVENT_POSITION);
+                if (BinlogEventBytes.getEventType(buffer, (int) FIRST_EVENT_POSITION) != MySQLConstants.FORMAT_DESCRIPTION_EVENT
+                        || FIRST_EVENT_POSITION + formatDescriptionLength > length) {
+                    return false;
+                }
+                checksumEnabled = BinlogEventBytes.isChecksumEnabled(buffer, (int) FIRST_EVENT_POSITION, formatDescriptionLength);
+
+                long position = firstPosition;
+                while (position + BinlogEventBytes.HEADER_LENGTH <= length) {
+                    long eventLength  = BinlogEventBytes.getEventLength(buffer, (int) position);
+                    long nextPosition = BinlogEventBytes.getNextPosition(buffer, (int) position);
+                    if (eventLength < BinlogEventBytes.HEADER_LENGTH
+                            || nextPosition != position + eventLength
+                            || nextPosition > length) {
+                        break;
+                    }
+                    if (BinlogEventBytes.endsTransaction(buffer, (int) position, (int) eventLength)) {
+                        safeEndPosition = nextPosition;
+                    }
+                    endPosition = nextPosition;
+                    position    = nextPosition;
+                }
+                return true;
+            }
+        }
+
+        void openForWrite() throws IOException {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+        }
+
+        void truncate(long position) throws IOException {
+            channel.truncate(position);
+            endPosition = Math.min(endPosition, Math.max(position, firstPosition));
+            safeEndPosition = Math.min(safeEndPosition, endPosition);
+        }
+
+        void write(ByteBuffer bytes, long position) throws IOException {
+            ByteBuffer source = bytes.duplicate();
+            source.position(0);
+            while (source.hasRemaining()) {
+                position += channel.write(source, position);
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                if (randomAccessFile != null) {
+                    randomAccessFile.close();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close relay file " + file, e);
+            }
+            randomAccessFile = null;
+            channel = null;
+        }
+
+        void delete() throws IOException {
+            closeQuietly();
+            if (!file.delete() && file.exists()) {
+                throw new IOException("Failed to delete relay file " + file);
+            }
+        }
+    }
+}
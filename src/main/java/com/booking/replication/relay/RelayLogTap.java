@@ -0,0 +1,102 @@
+package com.booking.replication.relay;
+
+/**
+ * Picks the binlog events out of the bytes read from the replication
+ * connection and hands them to the relay log.
+ *
+ * <p>Once the binlog dump is requested, everything the server sends is a
+ * MySQL packet: a 3 byte payload length, a sequence number and the payload.
+ * Payloads of 16MB and more are split over several packets. The payload of
+ * an event packet is a 0x00 marker followed by the event, end of stream and
+ * error packets are ignored.</p>
+ *
+ * <p>Called from the thread reading the socket only.</p>
+ */
+class RelayLogTap {
+
+    private static final int PACKET_HEADER_LENGTH = 4;
+    private static final int MAX_PACKET_LENGTH    = 0xffffff;
+    private static final byte EVENT_MARKER        = 0x00;
+
+    private final RelayLog relayLog;
+
+    private volatile boolean dumping = false;
+
+    private final byte[] packetHeader = new byte[PACKET_HEADER_LENGTH];
+    private int     packetHeaderLength = 0;
+    private int     packetRemaining    = 0;
+    private boolean lastPacket         = false;
+
+    private byte[] payload = new byte[64 * 1024];
+    private int    payloadLength = 0;
+
+    RelayLogTap(RelayLog relayLog) {
+        this.relayLog = relayLog;
+    }
+
+    /**
+     * Called right before the binlog dump is requested: from here on the
+     * connection only carries binlog events.
+     */
+    void startDump() {
+        packetHeaderLength = 0;
+        packetRemaining    = 0;
+        payloadLength      = 0;
+        dumping            = true;
+    }
+
+    void stopDump() {
+        dumping = false;
+    }
+
+    void onBytes(byte[] bytes, int offset, int length) {
+        if (!dumping) {
+            return;
+        }
+        while (length > 0) {
+            if (packetHeaderLength < PACKET_HEADER_LENGTH) {
+                packetHeader[packetHeaderLength++] = bytes[offset++];
+                length--;
+                if (packetHeaderLength == PACKET_HEADER_LENGTH) {
+                    packetRemaining = (packetHeader[0] & 0xff)
+                            | (packetHeader[1] & 0xff) << 8
+                            | (packetHeader[2] & 0xff) << 16;
+                    lastPacket = packetRemaining < MAX_PACKET_LENGTH;
+                    if (packetRemaining == 0) {
+                        finishPacket();
+                    }
+                }
+                continue;
+            }
+            int count = Math.min(length, packetRemaining);
+            ensurePayloadCapacity(payloadLength + count);
+            System.arraycopy(bytes, offset, payload, payloadLength, count);
+            payloadLength   += count;
+            packetRemaining -= count;
+            offset          += count;
+            length          -= count;
+            if (packetRemaining == 0) {
+                finishPacket();
+            }
+        }
+    }
+
+    private void finishPacket() {
+        packetHeaderLength = 0;
+        if (!lastPacket) {
+            return;
+        }
+        if (payloadLength > 1 && payload[0] == EVENT_MARKER) {
+            relayLog.append(payload, 1, payloadLength - 1);
+        }
+        payloadLength = 0;
+    }
+
+    private void ensurePayloadCapacity(int capacity) {
+        if (capacity > payload.length) {
+            byte[] grown = new byte[Math.max(capacity, payload.length * 2)];
+            System.arraycopy(payload, 0, grown, 0, payloadLength);
+            payload = grown;
+        }
+    }
+}
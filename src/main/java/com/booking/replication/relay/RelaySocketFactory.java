@@ -0,0 +1,55 @@
+package com.booking.replication.relay;
+
+import com.google.code.or.io.SocketFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Socket factory for the replication connection that passes everything read
+ * from the socket to a {@link RelayLogTap} as well. Sets the same socket
+ * options as the Open Replicator default.
+ */
+class RelaySocketFactory implements SocketFactory {
+
+    private final RelayLogTap tap;
+    private final int         receiveBufferSize;
+
+    RelaySocketFactory(RelayLogTap tap, int receiveBufferSize) {
+        this.tap               = tap;
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    @Override
+    public Socket create(String host, int port) throws Exception {
+        Socket socket = new TappedSocket(tap);
+        socket.setKeepAlive(true);
+        socket.setTcpNoDelay(true);
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        socket.connect(new InetSocketAddress(host, port));
+        return socket;
+    }
+
+    private static class TappedSocket extends Socket {
+
+        private final RelayLogTap tap;
+
+        private InputStream inputStream;
+
+        TappedSocket(RelayLogTap tap) {
+            this.tap = tap;
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new TapInputStream(super.getInputStream(), tap);
+            }
+            return inputStream;
+        }
+    }
+}
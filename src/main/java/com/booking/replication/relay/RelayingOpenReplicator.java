@@ -0,0 +1,55 @@
+package com.booking.replication.relay;
+
+import com.booking.replication.net.NioTransport;
+import com.booking.replication.pipeline.KeepAliveOpenReplicator;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.impl.TransportImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open Replicator that writes the binlog stream it receives to a relay log.
+ */
+public class RelayingOpenReplicator extends KeepAliveOpenReplicator {
+
+    private final RelayLog    relayLog;
+    private final RelayLogTap tap;
+
+    /**
+     * Open Replicator with a relay log.
+     *
+     * @param netWriteTimeout   Session net_write_timeout in seconds, 0 to keep the server default
+     * @param relayLog          Relay log to write to
+     */
+    public RelayingOpenReplicator(int netWriteTimeout, RelayLog relayLog) {
+        super(netWriteTimeout);
+        this.relayLog = relayLog;
+        this.tap      = new RelayLogTap(relayLog);
+    }
+
+    @Override
+    protected Transport getDefaultTransport() throws Exception {
+        Transport transport = super.getDefaultTransport();
+        if (transport instanceof NioTransport) {
+            // the tap reads the packets after decompression
+            ((NioTransport) transport).setInputFilter(in -> new TapInputStream(in, tap));
+        } else {
+            ((TransportImpl) transport).setSocketFactory(new RelaySocketFactory(tap, socketReceiveBufferSize));
+        }
+        return transport;
+    }
+
+    @Override
+    protected void dumpBinlog() throws Exception {
+        relayLog.beginSession(host, binlogFileName, binlogPosition);
+        tap.startDump();
+        super.dumpBinlog();
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit unit) throws Exception {
+        tap.stopDump();
+        super.stop(timeout, unit);
+        relayLog.close();
+    }
+}
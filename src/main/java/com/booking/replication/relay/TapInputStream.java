@@ -0,0 +1,46 @@
+package com.booking.replication.relay;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that passes everything read through it to a {@link RelayLogTap}.
+ */
+class TapInputStream extends FilterInputStream {
+
+    private final RelayLogTap tap;
+    private final byte[]      single = new byte[1];
+
+    TapInputStream(InputStream in, RelayLogTap tap) {
+        super(in);
+        this.tap = tap;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = in.read();
+        if (value >= 0) {
+            single[0] = (byte) value;
+            tap.onBytes(single, 0, 1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = in.read(bytes, offset, length);
+        if (count > 0) {
+            tap.onBytes(bytes, offset, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        // skipped bytes have to go through the tap as well
+        byte[] skipped = new byte[(int) Math.min(count, 8192)];
+        int read = read(skipped, 0, skipped.length);
+        return Math.max(read, 0);
+    }
+}
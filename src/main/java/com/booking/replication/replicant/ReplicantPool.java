@@ -41,6 +41,20 @@ public class ReplicantPool {
         this.activeHost    = getReplicantActiveHost();
     }
 
+    private ReplicantPool(List<String> replicantPool, Configuration configuration, ReplicantActiveHost activeHost) {
+        this.replicantPool = replicantPool;
+        this.configuration = configuration;
+        this.activeHost    = activeHost;
+    }
+
+    /**
+     * Pool for reading binlog files from disk. The first host of the pool is
+     * taken as the host the files come from, without connecting to it.
+     */
+    public static ReplicantPool offline(List<String> replicantPool, Configuration configuration) {
+        return new ReplicantPool(replicantPool, configuration, new ReplicantActiveHost(replicantPool.get(0), 0));
+    }
+
     public String getReplicantDBActiveHost() {
         return activeHost.getHost();
     }
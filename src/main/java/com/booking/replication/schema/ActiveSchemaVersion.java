@@ -73,6 +73,27 @@ public class ActiveSchemaVersion {
         LOGGER.info("Successfully loaded ActiveSchemaVersion");
     }
 
+    // frozen copy, see freeze()
+    private ActiveSchemaVersion(ActiveSchemaVersion source) {
+        activeSchemaCreateStatements.putAll(source.activeSchemaCreateStatements);
+        activeSchemaTables.putAll(source.activeSchemaTables);
+        lastReceivedDDL = source.lastReceivedDDL;
+        configuration = source.configuration;
+        activeSchemaDataSource = null;
+    }
+
+    /**
+     * Copy of the current schema version that does not change when this one
+     * transitions. Loading the schema replaces the table schemas instead of
+     * changing them, so the copy can share them.
+     *
+     * <p>The copy has no connection to the active schema database and can not
+     * transition itself.</p>
+     */
+    public ActiveSchemaVersion freeze() {
+        return new ActiveSchemaVersion(this);
+    }
+
     public void loadActiveSchema() throws SQLException {
         Connection con = null;
 
@@ -214,6 +235,10 @@ public class ActiveSchemaVersion {
     public AugmentedSchemaChangeEvent transitionSchemaToNextVersion(HashMap<String, String> schemaTransitionSequence, Long timestamp)
             throws SchemaTransitionException {
 
+        if (activeSchemaDataSource == null) {
+            throw new SchemaTransitionException("Frozen schema version can not transition");
+        }
+
         // 1. make snapshot of active schema before change
         final SchemaVersionSnapshot schemaVersionSnapshotBeforeTransition =
                 new SchemaVersionSnapshot(this);
@@ -0,0 +1,109 @@
+package com.booking.replication.schema;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.booking.replication.Configuration;
+import com.booking.replication.Metrics;
+
+import com.codahale.metrics.Counter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which tables of the replicated schema are replicated.
+ *
+ * <p>Tables are matched against case insensitive regular expressions. If there
+ * are exclude patterns, every table that matches none of them is replicated
+ * and the include patterns are ignored. Otherwise, if there are include
+ * patterns, only tables that match one of them are replicated. Without any
+ * patterns every table is replicated.</p>
+ *
+ * <p>The patterns are compiled once and the decision is cached per table, so
+ * checking a table is a single map lookup. Rows of filtered tables are dropped
+ * before they are augmented, the number of dropped row events is counted per
+ * table.</p>
+ */
+public class TableFilter {
+
+    private static final String METRICS_PREFIX = "mysql";
+
+    private final List<Pattern> includePatterns;
+    private final List<Pattern> excludePatterns;
+
+    private final ConcurrentHashMap<String, Boolean> wantedTables  = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> skipCounters  = new ConcurrentHashMap<>();
+
+    /**
+     * Table filter.
+     *
+     * @param includeTables Patterns of tables to replicate, or null
+     * @param excludeTables Patterns of tables not to replicate, or null
+     */
+    public TableFilter(List<String> includeTables, List<String> excludeTables) {
+        this.includePatterns = compile(includeTables);
+        this.excludePatterns = compile(excludeTables);
+    }
+
+    /**
+     * Table filter of the replication schema.
+     */
+    public static TableFilter fromConfiguration(Configuration configuration) {
+        return new TableFilter(configuration.getIncludeTables(), configuration.getExcludeTables());
+    }
+
+    private static List<Pattern> compile(List<String> tables) {
+        if (tables == null) {
+            return Collections.emptyList();
+        }
+        List<Pattern> patterns = new ArrayList<>(tables.size());
+        for (String table : tables) {
+            patterns.add(Pattern.compile(table, Pattern.CASE_INSENSITIVE));
+        }
+        return patterns;
+    }
+
+    /**
+     * Whether the rows of a table are replicated.
+     */
+    public boolean isTableWanted(String tableName) {
+        Boolean isWanted = wantedTables.get(tableName);
+        if (isWanted == null) {
+            isWanted = matches(tableName);
+            wantedTables.put(tableName, isWanted);
+        }
+        return isWanted;
+    }
+
+    private boolean matches(String tableName) {
+        if (!excludePatterns.isEmpty()) {
+            for (Pattern excludePattern : excludePatterns) {
+                if (excludePattern.matcher(tableName).find()) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (!includePatterns.isEmpty()) {
+            for (Pattern includePattern : includePatterns) {
+                if (includePattern.matcher(tableName).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count a row event of a filtered table that was dropped.
+     */
+    public void countSkippedRowsEvent(String tableName) {
+        skipCounters.computeIfAbsent(
+                tableName,
+                table -> Metrics.registry.counter(name(METRICS_PREFIX, table, "skippedRowEvents"))
+        ).inc();
+    }
+}
@@ -0,0 +1,68 @@
+package com.booking.replication.schema.column.types;
+
+import java.util.Base64;
+
+/**
+ * How binary column values are written to byte oriented sinks (HBase).
+ *
+ * <p>Binary values are BLOB, BINARY and VARBINARY columns, plus character
+ * columns in a charset the replicator can't decode. HEX is what the string
+ * form of the value has always been and doubles the size of the value. BASE64
+ * costs a third on top of the value, RAW writes the bytes from the binlog as
+ * they are.</p>
+ */
+public enum BlobEncoding {
+
+    HEX {
+        @Override
+        public byte[] encode(byte[] value) {
+            byte[] hex = new byte[2 * value.length];
+            for (int i = 0; i < value.length; i++) {
+                hex[2 * i]     = HEX_DIGITS[(value[i] >> 4) & 0x0f];
+                hex[2 * i + 1] = HEX_DIGITS[value[i] & 0x0f];
+            }
+            return hex;
+        }
+    },
+
+    BASE64 {
+        @Override
+        public byte[] encode(byte[] value) {
+            return Base64.getEncoder().encode(value);
+        }
+    },
+
+    RAW {
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+    };
+
+    // same digits as Converter.blobToHexString
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /**
+     * Encode a binary value. RAW returns the value itself, not a copy.
+     */
+    public abstract byte[] encode(byte[] value);
+
+    /**
+     * Resolve the encoding from its configuration name.
+     *
+     * @param name  hex, base64 or raw (case insensitive)
+     * @return      The blob encoding
+     */
+    public static BlobEncoding fromName(String name) {
+        if (name == null) {
+            return HEX;
+        }
+        try {
+            return BlobEncoding.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Unknown blob encoding: " + name);
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.booking.replication.schema.column.types;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.binlog.BinlogCell;
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.column.*;
+import com.google.code.or.common.util.MySQLConstants;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.regex.Pattern;
+
+/**
+ * Converts the values of one column of one table schema version.
+ *
+ * <p>{@link Converter#orTypeToString(Column, ColumnSchema)} works out what to do
+ * for every single value: it walks the column class chain, matches the column
+ * type against a regex to find out about signedness and looks up the charset.
+ * A ColumnConverter settles all of that once, when the schema version is
+ * loaded.</p>
+ *
+ * <p>Converting is split in two. {@link #extract(Column, RowImage, int)} stores
+ * the typed value in a row image, which is what the augmenter does for every
+ * cell. {@link #render(RowImage, int)} and {@link #toBytes(RowImage, int)} turn
+ * it into the same string orTypeToString would have produced, which is only
+ * done when a sink asks for it.</p>
+ *
+ * <p>Values that don't come in the column class the schema promises are
+ * rendered by orTypeToString right away and stored as strings, so it still has
+ * the last word on anything unexpected.</p>
+ *
+ * <p>Rows decoded by the replicator itself come as {@link BinlogCell}s instead
+ * of columns. Converters take the binlog types they expect straight from the
+ * cell; anything else goes through the column the cell stands for.</p>
+ */
+public abstract class ColumnConverter {
+
+    private static final Pattern isUnsignedPattern = Pattern.compile("unsigned", Pattern.CASE_INSENSITIVE);
+
+    protected final ColumnSchema columnSchema;
+    private final String         columnName;
+    private final String         columnType;
+
+    ColumnConverter(ColumnSchema columnSchema) {
+        this.columnSchema = columnSchema;
+        this.columnName   = columnSchema.getColumnName();
+        this.columnType   = columnSchema.getColumnType();
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public String getColumnType() {
+        return columnType;
+    }
+
+    public ColumnSchema getColumnSchema() {
+        return columnSchema;
+    }
+
+    /**
+     * Store the typed value of a column in a row image.
+     */
+    public void extract(Column column, RowImage image, int index) throws TableMapException {
+        if (column instanceof NullColumn) {
+            image.setNull(index);
+        } else if (!extractValue(column, image, index)) {
+            image.setObject(index, Converter.orTypeToString(column, columnSchema));
+        }
+    }
+
+    /**
+     * Store the typed value of a non NULL cell of a rows event in a row image,
+     * same as extracting it from the column Open Replicator would have made.
+     */
+    public void extract(BinlogCell cell, RowImage image, int index) throws TableMapException {
+        if (!extractCell(cell, image, index)) {
+            extract(cell.toColumn(), image, index);
+        }
+    }
+
+    /**
+     * String representation of a cell, same as orTypeToString of the column it
+     * was extracted from.
+     *
+     * @return  The string, or null if the cell is unset
+     */
+    public String render(RowImage image, int index) {
+        if (!image.isSet(index)) {
+            return null;
+        } else if (image.isNull(index)) {
+            return "NULL";
+        }
+        Object value = image.getObject(index);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return renderValue(image, index);
+    }
+
+    /**
+     * UTF-8 bytes of the string representation of a cell, null if the cell is unset.
+     */
+    public byte[] toBytes(RowImage image, int index) {
+        return toBytes(image, index, BlobEncoding.HEX);
+    }
+
+    /**
+     * Bytes of a cell for byte oriented sinks, null if the cell is unset.
+     *
+     * <p>Same as the UTF-8 bytes of the string representation, except that
+     * binary values are encoded with the given blob encoding instead of always
+     * being hex encoded.</p>
+     */
+    public byte[] toBytes(RowImage image, int index, BlobEncoding blobEncoding) {
+        String value = render(image, index);
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * String representation of a column value, same as orTypeToString.
+     */
+    public String toString(Column column) throws TableMapException {
+        RowImage image = new RowImage(1);
+        extract(column, image, 0);
+        return render(image, 0);
+    }
+
+    /**
+     * Store the value if the column is of the expected class.
+     *
+     * @return  False if the column is of some other class
+     */
+    abstract boolean extractValue(Column column, RowImage image, int index) throws TableMapException;
+
+    /**
+     * Store the value if the cell is of the expected binlog type.
+     *
+     * @return  False if the cell is of some other type
+     */
+    boolean extractCell(BinlogCell cell, RowImage image, int index) throws TableMapException {
+        return false;
+    }
+
+    /**
+     * Render a value stored by extractValue. Values stored as strings never get here.
+     */
+    abstract String renderValue(RowImage image, int index);
+
+    /**
+     * Build the converter for a column.
+     */
+    public static ColumnConverter forColumn(ColumnSchema columnSchema) {
+        String dataType = columnSchema.getDataType() == null ? "" : columnSchema.getDataType();
+        boolean isUnsigned = columnSchema.getColumnType() != null
+                && isUnsignedPattern.matcher(columnSchema.getColumnType()).find();
+
+        switch (dataType) {
+            case "tinyint":
+                return new IntegerConverter(columnSchema, TinyColumn.class, MySQLConstants.TYPE_TINY, isUnsigned ? 0xffL : 0L, false);
+            case "smallint":
+                return new IntegerConverter(columnSchema, ShortColumn.class, MySQLConstants.TYPE_SHORT, isUnsigned ? 0xffffL : 0L, false);
+            case "mediumint":
+                return new IntegerConverter(columnSchema, Int24Column.class, MySQLConstants.TYPE_INT24, isUnsigned ? 0xffffffL : 0L, false);
+            case "int":
+                return new IntegerConverter(columnSchema, LongColumn.class, MySQLConstants.TYPE_LONG, isUnsigned ? 0xffffffffL : 0L, false);
+            case "bigint":
+                return new IntegerConverter(columnSchema, LongLongColumn.class, MySQLConstants.TYPE_LONGLONG, 0L, isUnsigned);
+            case "year":
+                return new IntegerConverter(columnSchema, YearColumn.class, MySQLConstants.TYPE_YEAR, 0L, false);
+            case "bit":
+                return new BitConverter(columnSchema);
+            case "float":
+                return new FloatConverter(columnSchema);
+            case "double":
+                return new DoubleConverter(columnSchema);
+            case "decimal":
+                return new ObjectConverter(columnSchema, DecimalColumn.class, DecimalColumn.class);
+            case "datetime":
+                return new ObjectConverter(columnSchema, DatetimeColumn.class, Datetime2Column.class);
+            case "time":
+                return new ObjectConverter(columnSchema, TimeColumn.class, Time2Column.class);
+            case "date":
+                return new DateConverter(columnSchema);
+            case "timestamp":
+                return new TimestampConverter(columnSchema);
+            case "enum":
+                if (columnSchema instanceof EnumColumnSchema) {
+                    return new EnumConverter((EnumColumnSchema) columnSchema);
+                }
+                break;
+            case "set":
+                if (columnSchema instanceof SetColumnSchema) {
+                    return new SetConverter((SetColumnSchema) columnSchema);
+                }
+                break;
+            default:
+                Charset charset = textCharset(columnSchema.getCharacterSetName());
+                if (dataType.endsWith("char") || dataType.endsWith("binary")) {
+                    return new BytesConverter(columnSchema, StringColumn.class, charset);
+                } else if (dataType.endsWith("text") || dataType.endsWith("blob")) {
+                    // TEXT types are decoded, binary BLOBs hex encoded
+                    boolean isText = columnSchema.getColumnType() != null && columnSchema.getColumnType().contains("text");
+                    return new BytesConverter(columnSchema, BlobColumn.class, isText ? charset : null);
+                }
+                break;
+        }
+        return new GenericConverter(columnSchema);
+    }
+
+    /**
+     * Charset to decode character data with, null if it should be hex encoded.
+     */
+    private static Charset textCharset(String charSetName) {
+        if (charSetName == null) {
+            return null;
+        } else if (charSetName.contains("utf8")) {
+            return StandardCharsets.UTF_8;
+        } else if (charSetName.contains("latin1")) {
+            return StandardCharsets.ISO_8859_1;
+        } else {
+            return null;
+        }
+    }
+
+    // Anything without a specialised converter, rendered as soon as it is extracted.
+    private static final class GenericConverter extends ColumnConverter {
+        GenericConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            return false;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            throw new IllegalStateException("Column " + getColumnName() + " only has string values");
+        }
+    }
+
+    // Whole numbers, masked to their unsigned value where the column type says so.
+    private static final class IntegerConverter extends ColumnConverter {
+        private final Class<?> columnClass;
+        private final int      binlogType;
+        private final long     unsignedMask;
+        private final boolean  isUnsignedLong;
+
+        IntegerConverter(ColumnSchema columnSchema, Class<?> columnClass, int binlogType, long unsignedMask, boolean isUnsignedLong) {
+            super(columnSchema);
+            this.columnClass    = columnClass;
+            this.binlogType     = binlogType;
+            this.unsignedMask   = unsignedMask;
+            this.isUnsignedLong = isUnsignedLong;
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (column.getClass() != columnClass) {
+                return false;
+            }
+            setValue(((Number) column.getValue()).longValue(), image, index);
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) {
+            if (cell.getType() != binlogType) {
+                return false;
+            }
+            setValue(cell.getLong(), image, index);
+            return true;
+        }
+
+        private void setValue(long value, RowImage image, int index) {
+            image.setLong(index, unsignedMask == 0L ? value : value & unsignedMask);
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            long value = image.getLong(index);
+            return isUnsignedLong ? Long.toUnsignedString(value) : Long.toString(value);
+        }
+    }
+
+    // Kept as raw float bits.
+    private static final class FloatConverter extends ColumnConverter {
+        FloatConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (!(column instanceof FloatColumn)) {
+                return false;
+            }
+            image.setLong(index, Float.floatToRawIntBits(((FloatColumn) column).getValue()));
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) {
+            if (cell.getType() != MySQLConstants.TYPE_FLOAT) {
+                return false;
+            }
+            image.setLong(index, cell.getLong());
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return Float.toString(Float.intBitsToFloat((int) image.getLong(index)));
+        }
+    }
+
+    // Kept as raw double bits.
+    private static final class DoubleConverter extends ColumnConverter {
+        DoubleConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (!(column instanceof DoubleColumn)) {
+                return false;
+            }
+            image.setLong(index, Double.doubleToRawLongBits(((DoubleColumn) column).getValue()));
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) {
+            if (cell.getType() != MySQLConstants.TYPE_DOUBLE) {
+                return false;
+            }
+            image.setLong(index, cell.getLong());
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return String.valueOf(Double.longBitsToDouble(image.getLong(index)));
+        }
+    }
+
+    // Decimals, datetimes and times: the decoded value, rendered the way the column renders it.
+    private static final class ObjectConverter extends ColumnConverter {
+        private final Class<?> columnClass;
+        private final Class<?> otherColumnClass;
+
+        ObjectConverter(ColumnSchema columnSchema, Class<?> columnClass, Class<?> otherColumnClass) {
+            super(columnSchema);
+            this.columnClass      = columnClass;
+            this.otherColumnClass = otherColumnClass;
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (column.getClass() != columnClass && column.getClass() != otherColumnClass) {
+                return false;
+            }
+            image.setObject(index, column.getValue());
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return String.valueOf(image.getObject(index));
+        }
+    }
+
+    // A bit column renders itself from its bytes and its length, so the column is the value.
+    private static final class BitConverter extends ColumnConverter {
+        BitConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (!(column instanceof BitColumn)) {
+                return false;
+            }
+            image.setObject(index, column);
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return image.getObject(index).toString();
+        }
+    }
+
+    private static final class DateConverter extends ColumnConverter {
+        DateConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (!(column instanceof DateColumn)) {
+                return false;
+            }
+            java.sql.Date value = ((DateColumn) column).getValue();
+            // "0000-00-00" is an invalid date, orTypeToString turns it into NULL
+            if (value.equals(Converter.ZERO_DATE)) {
+                image.setNull(index);
+            } else {
+                image.setObject(index, value);
+            }
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return String.valueOf(image.getObject(index));
+        }
+    }
+
+    // Kept as epoch microseconds, rendered as epoch milliseconds.
+    private static final class TimestampConverter extends ColumnConverter {
+        TimestampConverter(ColumnSchema columnSchema) {
+            super(columnSchema);
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            Timestamp value;
+            if (column instanceof TimestampColumn) {
+                value = ((TimestampColumn) column).getValue();
+            } else if (column instanceof Timestamp2Column) {
+                value = ((Timestamp2Column) column).getValue();
+            } else {
+                return false;
+            }
+            image.setLong(index, toMicros(value.getTime(), value.getNanos()));
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) {
+            int nanos;
+            if (cell.getType() == MySQLConstants.TYPE_TIMESTAMP) {
+                nanos = 0;
+            } else if (cell.getType() == MySQLConstants.TYPE_TIMESTAMP2) {
+                // Open Replicator takes the stored fraction for the nanos of the timestamp
+                nanos = cell.getFraction();
+            } else {
+                return false;
+            }
+            image.setLong(index, toMicros(cell.getLong() * 1000L + nanos / 1000000, nanos));
+            return true;
+        }
+
+        private static long toMicros(long millis, int nanos) {
+            return millis * 1000L + (nanos / 1000) % 1000;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            return Long.toString(Math.floorDiv(image.getLong(index), 1000L));
+        }
+    }
+
+    // Character and binary types: the raw bytes, decoded or hex encoded when rendered.
+    // UTF-8 data goes to byte sinks as it is, binary data in the sink's blob encoding.
+    private static final class BytesConverter extends ColumnConverter {
+        private final Class<?> columnClass;
+        private final Charset  charset;
+
+        BytesConverter(ColumnSchema columnSchema, Class<?> columnClass, Charset charset) {
+            super(columnSchema);
+            this.columnClass = columnClass;
+            this.charset     = charset;
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) {
+            if (column.getClass() != columnClass) {
+                return false;
+            }
+            image.setObject(index, column.getValue());
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) {
+            boolean isBlob = cell.getType() == MySQLConstants.TYPE_BLOB;
+            boolean isString = cell.getType() == MySQLConstants.TYPE_STRING
+                    || cell.getType() == MySQLConstants.TYPE_VARCHAR
+                    || cell.getType() == MySQLConstants.TYPE_VAR_STRING;
+            if (columnClass == BlobColumn.class ? !isBlob : !isString) {
+                return false;
+            }
+            image.setObject(index, cell.copyBytes());
+            return true;
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            byte[] bytes = (byte[]) image.getObject(index);
+            return charset == null ? Converter.blobToHexString(bytes) : new String(bytes, charset);
+        }
+
+        @Override
+        public byte[] toBytes(RowImage image, int index, BlobEncoding blobEncoding) {
+            Object value = image.getObject(index);
+            if (!(value instanceof byte[])) {
+                return super.toBytes(image, index, blobEncoding);
+            } else if (charset == null) {
+                return blobEncoding.encode((byte[]) value);
+            } else if (charset == StandardCharsets.UTF_8) {
+                return (byte[]) value;
+            }
+            return new String((byte[]) value, charset).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // Enum values come from the schema, so the shared string is the typed value.
+    private static final class EnumConverter extends ColumnConverter {
+        private final EnumColumnSchema enumColumnSchema;
+
+        EnumConverter(EnumColumnSchema columnSchema) {
+            super(columnSchema);
+            this.enumColumnSchema = columnSchema;
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) throws TableMapException {
+            if (!(column instanceof EnumColumn)) {
+                return false;
+            }
+            setValue(((EnumColumn) column).getValue(), image, index);
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) throws TableMapException {
+            if (cell.getType() != MySQLConstants.TYPE_ENUM) {
+                return false;
+            }
+            setValue((int) cell.getLong(), image, index);
+            return true;
+        }
+
+        private void setValue(int enumIndex, RowImage image, int index) throws TableMapException {
+            try {
+                image.setObject(index, enumColumnSchema.getEnumValueFromIndex(enumIndex));
+            } catch (Exception e) {
+                throw new TableMapException("Probaly wrong mapping of indexes for enum array");
+            }
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            throw new IllegalStateException("Enum values are stored as strings");
+        }
+    }
+
+    // Set members are resolved on extraction, where a bad mapping can still be reported.
+    private static final class SetConverter extends ColumnConverter {
+        private final SetColumnSchema setColumnSchema;
+
+        SetConverter(SetColumnSchema columnSchema) {
+            super(columnSchema);
+            this.setColumnSchema = columnSchema;
+        }
+
+        @Override
+        boolean extractValue(Column column, RowImage image, int index) throws TableMapException {
+            if (!(column instanceof SetColumn)) {
+                return false;
+            }
+            setValue(((SetColumn) column).getValue(), image, index);
+            return true;
+        }
+
+        @Override
+        boolean extractCell(BinlogCell cell, RowImage image, int index) throws TableMapException {
+            if (cell.getType() != MySQLConstants.TYPE_SET) {
+                return false;
+            }
+            setValue(cell.getLong(), image, index);
+            return true;
+        }
+
+        private void setValue(long members, RowImage image, int index) throws TableMapException {
+            try {
+                image.setObject(index, setColumnSchema.getSetMembersFromNumericValue(members));
+            } catch (Exception e) {
+                throw new TableMapException("Wrong mapping of set csv");
+            }
+        }
+
+        @Override
+        String renderValue(RowImage image, int index) {
+            throw new IllegalStateException("Set values are stored as strings");
+        }
+    }
+}
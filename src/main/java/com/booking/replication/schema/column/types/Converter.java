@@ -28,7 +28,7 @@ public class Converter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Converter.class);
 
-    private static final Date ZERO_DATE = MySQLUtils.toDate(0);
+    static final Date ZERO_DATE = MySQLUtils.toDate(0);
 
     // --------------------------------------------------------------------
     // This function was taken from linked-in databus and adapted to output
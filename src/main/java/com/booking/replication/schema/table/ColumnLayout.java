@@ -0,0 +1,117 @@
+package com.booking.replication.schema.table;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.schema.column.types.BlobEncoding;
+import com.booking.replication.schema.column.types.ColumnConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column names, types and converters of a table, indexed by ordinal position - 1.
+ *
+ * <p>One layout is shared by all augmented rows of a table schema version, so
+ * a row only has to carry its values. Ordinal positions the schema doesn't know
+ * have a null name.</p>
+ *
+ * <p>The converters render the typed values of a row image. Layouts rebuilt
+ * from JSON have no converters, their row images only hold strings.</p>
+ */
+public class ColumnLayout {
+
+    private final String[]             columnNames;
+    private final String[]             columnTypes;
+    private final ColumnConverter[]    columnConverters;
+    private final Map<String, Integer> columnIndexes;
+    private final List<String>         primaryKeyColumns;
+
+    /**
+     * Column layout without converters.
+     *
+     * @param columnNames       Column names by index
+     * @param columnTypes       Column types by index
+     * @param primaryKeyColumns Primary key column names, in ordinal position order
+     */
+    public ColumnLayout(String[] columnNames, String[] columnTypes, List<String> primaryKeyColumns) {
+        this(columnNames, columnTypes, null, primaryKeyColumns);
+    }
+
+    /**
+     * Column layout.
+     *
+     * @param columnNames       Column names by index
+     * @param columnTypes       Column types by index
+     * @param columnConverters  Column converters by index, or null if values are strings
+     * @param primaryKeyColumns Primary key column names, in ordinal position order
+     */
+    public ColumnLayout(
+            String[]          columnNames,
+            String[]          columnTypes,
+            ColumnConverter[] columnConverters,
+            List<String>      primaryKeyColumns) {
+        this.columnNames       = columnNames;
+        this.columnTypes       = columnTypes;
+        this.columnConverters  = columnConverters;
+        this.primaryKeyColumns = Collections.unmodifiableList(primaryKeyColumns);
+        this.columnIndexes     = new HashMap<>();
+        for (int index = 0; index < columnNames.length; index++) {
+            if (columnNames[index] != null) {
+                columnIndexes.put(columnNames[index], index);
+            }
+        }
+    }
+
+    public int size() {
+        return columnNames.length;
+    }
+
+    public String getColumnName(int index) {
+        return columnNames[index];
+    }
+
+    public String getColumnType(int index) {
+        return columnTypes[index];
+    }
+
+    /**
+     * Index of a column.
+     *
+     * @return  The index, or -1 if there is no such column
+     */
+    public int indexOf(String columnName) {
+        Integer index = columnIndexes.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    public List<String> getPrimaryKeyColumns() {
+        return primaryKeyColumns;
+    }
+
+    /**
+     * String value of a cell of a row image, null if the cell is unset.
+     */
+    public String render(RowImage image, int index) {
+        ColumnConverter columnConverter = columnConverters == null ? null : columnConverters[index];
+        if (columnConverter != null) {
+            return columnConverter.render(image, index);
+        }
+        return (String) image.getObject(index);
+    }
+
+    /**
+     * Bytes of a cell for byte oriented sinks, null if the cell is unset.
+     *
+     * @see ColumnConverter#toBytes(RowImage, int, BlobEncoding)
+     */
+    public byte[] toBytes(RowImage image, int index, BlobEncoding blobEncoding) {
+        ColumnConverter columnConverter = columnConverters == null ? null : columnConverters[index];
+        if (columnConverter != null) {
+            return columnConverter.toBytes(image, index, blobEncoding);
+        }
+        String value = (String) image.getObject(index);
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
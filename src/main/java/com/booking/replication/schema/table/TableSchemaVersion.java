@@ -1,8 +1,13 @@
 package com.booking.replication.schema.table;
 
 import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.ColumnConverter;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 
@@ -14,6 +19,12 @@ public class TableSchemaVersion {
 
     private final String tableSchemaVersionUUID;
 
+    // conversion plan indexed by ordinal position - 1, compiled on first use
+    private volatile ColumnConverter[] columnConverters;
+
+    // column names, types and primary key shared by all rows of this version
+    private volatile ColumnLayout columnLayout;
+
     // TODO: load table CHARACTER_SET_NAME
     // private String CHARACTER_SET_NAME;
 
@@ -30,6 +41,62 @@ public class TableSchemaVersion {
         Integer index = columnSchema.getOrdinalPosition();
         String  name  = columnSchema.getColumnName();
         columnIndexToColumnNameMap.put(index,name);
+
+        columnConverters = null;
+        columnLayout = null;
+    }
+
+    /**
+     * Per-ordinal column converters: entry i converts the column at ordinal
+     * position i + 1. Entries for ordinal positions the schema doesn't know
+     * are null.
+     */
+    @JsonIgnore
+    public ColumnConverter[] getColumnConverters() {
+        ColumnConverter[] converters = columnConverters;
+        if (converters == null) {
+            int size = 0;
+            for (Integer index : columnIndexToColumnNameMap.keySet()) {
+                size = Math.max(size, index);
+            }
+            converters = new ColumnConverter[size];
+            for (ColumnSchema columnSchema : columns.values()) {
+                converters[columnSchema.getOrdinalPosition() - 1] = ColumnConverter.forColumn(columnSchema);
+            }
+            columnConverters = converters;
+        }
+        return converters;
+    }
+
+    /**
+     * Column layout shared by the augmented rows of this schema version.
+     */
+    @JsonIgnore
+    public ColumnLayout getColumnLayout() {
+        ColumnLayout layout = columnLayout;
+        if (layout == null) {
+            int size = 0;
+            for (Integer index : columnIndexToColumnNameMap.keySet()) {
+                size = Math.max(size, index);
+            }
+            String[] columnNames = new String[size];
+            String[] columnTypes = new String[size];
+            TreeMap<Integer, String> primaryKeyColumns = new TreeMap<>();
+
+            for (ColumnSchema columnSchema : columns.values()) {
+                int ordinalPosition = columnSchema.getOrdinalPosition();
+                columnNames[ordinalPosition - 1] = columnSchema.getColumnName();
+                columnTypes[ordinalPosition - 1] = columnSchema.getColumnType();
+                if ("PRI".equals(columnSchema.getColumnKey())) {
+                    primaryKeyColumns.put(ordinalPosition, columnSchema.getColumnName());
+                }
+            }
+
+            layout = new ColumnLayout(
+                    columnNames, columnTypes, getColumnConverters(), new ArrayList<>(primaryKeyColumns.values()));
+            columnLayout = layout;
+        }
+        return layout;
     }
 
     public ColumnSchema getColumnSchemaByColumnName(String columnName) {
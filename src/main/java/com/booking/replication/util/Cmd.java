@@ -21,6 +21,8 @@ public class Cmd {
         parser.accepts("binlog-position").withRequiredArg().ofType(Long.class).defaultsTo(4L);
 
         parser.accepts("last-binlog-filename").withRequiredArg().ofType(String.class);
+        parser.accepts("binlog-directory").withRequiredArg().ofType(String.class);
+        parser.accepts("parallel-replay").withRequiredArg().ofType(Integer.class);
         parser.accepts("config-path").withRequiredArg().ofType(String.class).defaultsTo("./config.yml");
         parser.accepts("delta");
         parser.accepts("dryrun");
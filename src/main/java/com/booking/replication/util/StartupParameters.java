@@ -15,6 +15,8 @@ public class StartupParameters {
     private String  binlogFileName;
     private Long    binlogPosition;
     private String  lastBinlogFileName;
+    private String  binlogDirectory;
+    private int     parallelReplayLanes;
     private boolean deltaTables;
     private boolean initialSnapshot;
     private String  hbaseNamespace;
@@ -58,6 +60,14 @@ public class StartupParameters {
         // Last binlog filename
         lastBinlogFileName = (String) optionSet.valueOf("last-binlog-filename");
 
+        // Directory to read binlog files from, instead of the replicant
+        binlogDirectory = (String) optionSet.valueOf("binlog-directory");
+
+        // Number of lanes to replay the binlog files with, 0 for the serial pipeline
+        if (optionSet.hasArgument("parallel-replay")) {
+            parallelReplayLanes = (Integer) optionSet.valueOf("parallel-replay");
+        }
+
         System.out.println("----------------------------------------------");
         System.out.println("Parsed params:           ");
         System.out.println("\tconfig-path:           " + configPath);
@@ -66,6 +76,8 @@ public class StartupParameters {
         System.out.println("\tbinlog-filename:       " + binlogFileName);
         System.out.println("\tposition:              " + binlogPosition);
         System.out.println("\tlast-binlog-filename:  " + lastBinlogFileName);
+        System.out.println("\tbinlog-directory:      " + binlogDirectory);
+        System.out.println("\tparallel-replay:       " + parallelReplayLanes);
         System.out.println("\tinitial-snapshot:      " + initialSnapshot);
         System.out.println("\thbase-namespace:       " + hbaseNamespace);
         System.out.println("\tdry-run:               " + dryrun);
@@ -93,6 +105,14 @@ public class StartupParameters {
         return lastBinlogFileName;
     }
 
+    public String getBinlogDirectory() {
+        return binlogDirectory;
+    }
+
+    public int getParallelReplayLanes() {
+        return parallelReplayLanes;
+    }
+
     public Long getBinlogPosition() {
         return binlogPosition;
     }
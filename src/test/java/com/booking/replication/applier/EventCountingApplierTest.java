@@ -0,0 +1,51 @@
+package com.booking.replication.applier;
+
+import com.booking.replication.augmenter.AugmentedRowsEvent;
+import com.booking.replication.augmenter.AugmentedTransaction;
+import com.booking.replication.augmenter.TransactionAssembler;
+import com.booking.replication.pipeline.PipelineOrchestrator;
+
+import com.codahale.metrics.Counter;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.common.util.MySQLConstants;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventCountingApplierTest {
+
+    private static AugmentedRowsEvent rowsEvent(String tableName) {
+        AugmentedRowsEvent rowsEvent = mock(AugmentedRowsEvent.class);
+        when(rowsEvent.getMysqlTableName()).thenReturn(tableName);
+        return rowsEvent;
+    }
+
+    @Test
+    public void makeSureTransactionsReachTheWrappedApplierWhole() throws ApplierException, IOException {
+        Applier wrapped = mock(Applier.class);
+        Counter counter = new Counter();
+        EventCountingApplier applier = new EventCountingApplier(wrapped, counter);
+
+        TransactionAssembler assembler = new TransactionAssembler();
+        assembler.add(rowsEvent("users"));
+        assembler.add(rowsEvent("orders"));
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(MySQLConstants.XID_EVENT);
+        AugmentedTransaction transaction = assembler.commit(new XidEvent(header));
+
+        applier.applyTransaction(transaction, null);
+
+        verify(wrapped).applyTransaction(transaction, null);
+        verify(wrapped, never()).applyAugmentedRowsEvent(any(AugmentedRowsEvent.class), any(PipelineOrchestrator.class));
+        verify(wrapped, never()).applyXidEvent(any(XidEvent.class));
+        assertEquals(3, counter.getCount());
+    }
+}
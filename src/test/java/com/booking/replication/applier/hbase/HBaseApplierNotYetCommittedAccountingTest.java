@@ -0,0 +1,90 @@
+package com.booking.replication.applier.hbase;
+
+import com.booking.replication.applier.TaskStatus;
+import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+import com.booking.replication.queues.MemoryBudget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HBaseApplierNotYetCommittedAccountingTest {
+
+    private static ApplierTask submittedTask(MemoryBudget.Account memory, long bytes) {
+        ApplierTask task = new ApplierTask(TaskStatus.TASK_SUBMITTED);
+        task.addBufferedBytes(bytes);
+        memory.charge(bytes);
+        return task;
+    }
+
+    @Test
+    public void makeSureOnlyTheCommittedHeadIsRemoved() throws TaskAccountingException {
+        MemoryBudget.Account memory = new MemoryBudget(1000).account("testApplier");
+        HBaseApplierNotYetCommittedAccounting accountant = new HBaseApplierNotYetCommittedAccounting(memory);
+        ApplierTaskRing tasks = new ApplierTaskRing(4);
+
+        LastCommittedPositionCheckpoint first = new LastCommittedPositionCheckpoint(1, "mysql-bin.000001", 100L);
+        LastCommittedPositionCheckpoint second = new LastCommittedPositionCheckpoint(1, "mysql-bin.000001", 200L);
+
+        long task0 = tasks.add(submittedTask(memory, 10));
+        long task1 = tasks.add(submittedTask(memory, 20));
+        tasks.get(task1).setPseudoGTIDCheckPoint(first);
+        long task2 = tasks.add(submittedTask(memory, 30));
+        tasks.get(task2).setPseudoGTIDCheckPoint(second);
+        long task3 = tasks.add(new ApplierTask(TaskStatus.READY_FOR_BUFFERING));
+
+        // later tasks wait for the ones before them
+        assertNull(accountant.doAccountingOnTaskSuccess(tasks, task2));
+        assertNull(accountant.doAccountingOnTaskSuccess(tasks, task1));
+        assertEquals(4, tasks.size());
+        assertEquals(TaskStatus.WRITE_SUCCEEDED, tasks.get(task2).getTaskStatus());
+
+        // the head commits and takes everything committed after it along
+        assertSame(second, accountant.doAccountingOnTaskSuccess(tasks, task0));
+        assertEquals(1, tasks.size());
+        assertEquals(task3, tasks.getHead());
+        assertNull(tasks.get(task2));
+        assertEquals(0, memory.getUsedBytes());
+    }
+
+    @Test(expected = TaskAccountingException.class)
+    public void makeSureRemovedTasksCantBeCommittedAgain() throws TaskAccountingException {
+        MemoryBudget.Account memory = new MemoryBudget(1000).account("testApplier");
+        HBaseApplierNotYetCommittedAccounting accountant = new HBaseApplierNotYetCommittedAccounting(memory);
+        ApplierTaskRing tasks = new ApplierTaskRing(2);
+
+        long task0 = tasks.add(submittedTask(memory, 10));
+        accountant.doAccountingOnTaskSuccess(tasks, task0);
+        accountant.doAccountingOnTaskSuccess(tasks, task0);
+    }
+
+    @Test
+    public void makeSureTheRingWrapsAround() {
+        ApplierTaskRing tasks = new ApplierTaskRing(3);
+
+        for (int i = 0; i < 10; i++) {
+            ApplierTask task = new ApplierTask(TaskStatus.READY_FOR_PICK_UP);
+            assertEquals(i, tasks.add(task));
+            assertSame(task, tasks.get(i));
+            if (tasks.size() == 3) {
+                assertSame(tasks.get(tasks.getHead()), tasks.removeHead());
+            }
+        }
+
+        assertEquals(2, tasks.size());
+        assertEquals(8, tasks.getHead());
+        assertEquals(10, tasks.getTail());
+        assertNull(tasks.get(7));
+        assertNull(tasks.get(10));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void makeSureAFullRingRejectsTasks() {
+        ApplierTaskRing tasks = new ApplierTaskRing(3);
+        for (int i = 0; i < 4; i++) {
+            tasks.add(new ApplierTask(TaskStatus.READY_FOR_PICK_UP));
+        }
+    }
+}
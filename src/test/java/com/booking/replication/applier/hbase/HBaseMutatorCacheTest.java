@@ -0,0 +1,91 @@
+package com.booking.replication.applier.hbase;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HBaseMutatorCacheTest {
+
+    private Connection connection;
+    private BufferedMutator users;
+    private BufferedMutator orders;
+    private HBaseMutatorCache mutatorCache;
+
+    @Before
+    public void setUp() throws IOException {
+        connection = mock(Connection.class);
+        users = mock(BufferedMutator.class);
+        orders = mock(BufferedMutator.class);
+        when(users.getName()).thenReturn(TableName.valueOf("ns:users"));
+        when(connection.getBufferedMutator(any(BufferedMutatorParams.class))).thenReturn(users, orders);
+        mutatorCache = new HBaseMutatorCache(connection, 4 * 1024 * 1024);
+    }
+
+    private static List<Put> puts(String rowKey) {
+        return Collections.singletonList(new Put(Bytes.toBytes(rowKey)));
+    }
+
+    @Test
+    public void makeSureEachTableKeepsItsMutator() throws IOException {
+        mutatorCache.mutate("ns:users", puts("1"));
+        mutatorCache.mutate("ns:orders", puts("2"));
+        mutatorCache.mutate("ns:users", puts("3"));
+
+        ArgumentCaptor<BufferedMutatorParams> params = ArgumentCaptor.forClass(BufferedMutatorParams.class);
+        verify(connection, times(2)).getBufferedMutator(params.capture());
+        assertEquals(TableName.valueOf("ns:users"), params.getAllValues().get(0).getTableName());
+        assertEquals(4 * 1024 * 1024, params.getAllValues().get(0).getWriteBufferSize());
+        verify(users, times(2)).mutate(anyListOf(Put.class));
+        verify(orders).mutate(anyListOf(Put.class));
+
+        mutatorCache.flush();
+
+        verify(users).flush();
+        verify(orders).flush();
+    }
+
+    @Test
+    public void makeSureFailedRowsFailTheNextFlush() throws IOException {
+        mutatorCache.mutate("ns:users", puts("1"));
+
+        ArgumentCaptor<BufferedMutatorParams> params = ArgumentCaptor.forClass(BufferedMutatorParams.class);
+        verify(connection).getBufferedMutator(params.capture());
+        params.getValue().getListener().onException(
+                new RetriesExhaustedWithDetailsException(
+                        Collections.<Throwable>singletonList(new IOException("region server gone")),
+                        Collections.<Row>singletonList(new Put(Bytes.toBytes("1"))),
+                        Collections.singletonList("rs1:16020")),
+                users);
+
+        try {
+            mutatorCache.flush();
+            fail("Flush should fail after a failed mutation");
+        } catch (IOException e) {
+            assertEquals("1 mutations failed since the last flush", e.getMessage());
+        }
+
+        // reported once
+        mutatorCache.flush();
+    }
+}
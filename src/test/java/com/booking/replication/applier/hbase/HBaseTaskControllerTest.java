@@ -0,0 +1,74 @@
+package com.booking.replication.applier.hbase;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HBaseTaskControllerTest {
+
+    private static void window(HBaseTaskController controller, long latencyMs, int failures) {
+        int tasks = controller.getTasksInFlight();
+        for (int i = 0; i < tasks; i++) {
+            controller.onTaskDone(latencyMs, i >= failures);
+        }
+    }
+
+    @Test
+    public void makeSureFastTasksGrowUpToTheLimits() {
+        HBaseTaskController controller = new HBaseTaskController(true, 10000, 1000, 4, 60000);
+
+        window(controller, 100, 0);
+
+        assertEquals(1100, controller.getTaskRows());
+        assertEquals(4, controller.getTasksInFlight());
+        assertEquals(9900, controller.getFlushAgeMs());
+
+        for (int i = 0; i < 100; i++) {
+            window(controller, 100, 0);
+        }
+        assertEquals(HBaseTaskController.MAX_TASK_ROWS, controller.getTaskRows());
+    }
+
+    @Test
+    public void makeSureFailuresHalveTheTasksInFlight() {
+        HBaseTaskController controller = new HBaseTaskController(true, 10000, 1000, 30, 60000);
+
+        window(controller, 100, 2);
+        assertEquals(15, controller.getTasksInFlight());
+        assertEquals(1000, controller.getTaskRows());
+
+        // a window is as many tasks as there are in flight
+        window(controller, 100, 1);
+        assertEquals(7, controller.getTasksInFlight());
+
+        window(controller, 100, 0);
+        assertEquals(8, controller.getTasksInFlight());
+    }
+
+    @Test
+    public void makeSureSlowTasksHalveTheTaskSizeAndTheFlushAge() {
+        HBaseTaskController controller = new HBaseTaskController(true, 10000, 1000, 2, 60000);
+
+        window(controller, 8000, 0);
+        assertEquals(500, controller.getTaskRows());
+        assertEquals(2000, controller.getFlushAgeMs());
+
+        for (int i = 0; i < 10; i++) {
+            window(controller, 20000, 0);
+        }
+        assertEquals(HBaseTaskController.MIN_TASK_ROWS, controller.getTaskRows());
+        assertEquals(HBaseTaskController.MIN_FLUSH_AGE, controller.getFlushAgeMs());
+    }
+
+    @Test
+    public void makeSureFixedLimitsStayPut() {
+        HBaseTaskController controller = new HBaseTaskController(false, 10000, 1000, 30, 60000);
+
+        window(controller, 100, 30);
+        window(controller, 20000, 0);
+
+        assertEquals(1000, controller.getTaskRows());
+        assertEquals(30, controller.getTasksInFlight());
+        assertEquals(60000, controller.getFlushAgeMs());
+    }
+}
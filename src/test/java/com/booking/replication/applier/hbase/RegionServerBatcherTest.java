@@ -0,0 +1,190 @@
+package com.booking.replication.applier.hbase;
+
+import com.booking.replication.Metrics;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RegionServerBatcherTest {
+
+    private static final TableName TABLE = TableName.valueOf("ns:users");
+
+    private Connection connection;
+    private Table table;
+
+    // row keys of each batch put to the table
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        // rows starting with a are on rs1, the others on rs2
+        RegionLocator regionLocator = mock(RegionLocator.class);
+        HRegionLocation rs1 = new HRegionLocation(new HRegionInfo(TABLE), ServerName.valueOf("rs1.example.com", 16020, 1L));
+        HRegionLocation rs2 = new HRegionLocation(new HRegionInfo(TABLE), ServerName.valueOf("rs2.example.com", 16020, 1L));
+        when(regionLocator.getRegionLocation(any(byte[].class))).thenAnswer(
+                (InvocationOnMock invocation) -> ((byte[]) invocation.getArguments()[0])[0] == 'a' ? rs1 : rs2);
+
+        table = mock(Table.class);
+        connection = mock(Connection.class);
+        when(connection.getRegionLocator(TABLE)).thenReturn(regionLocator);
+        when(connection.getTable(TABLE)).thenReturn(table);
+    }
+
+    private void recordBatches(CountDownLatch rs1Released) throws IOException {
+        doAnswer((InvocationOnMock invocation) -> {
+            List<String> rowKeys = new ArrayList<>();
+            for (Object put : (List<?>) invocation.getArguments()[0]) {
+                rowKeys.add(Bytes.toString(((Put) put).getRow()));
+            }
+            if (rowKeys.get(0).startsWith("a")) {
+                rs1Released.await();
+            } else if (rowKeys.get(0).startsWith("x")) {
+                throw new IOException("rs2 is gone");
+            }
+            batches.add(rowKeys);
+            return null;
+        }).when(table).put(anyListOf(Put.class));
+    }
+
+    private static List<Put> puts(String... rowKeys) {
+        List<Put> puts = new ArrayList<>();
+        for (String rowKey : rowKeys) {
+            puts.add(new Put(Bytes.toBytes(rowKey)));
+        }
+        return puts;
+    }
+
+    @Test
+    public void makeSurePutsAreSentInOneBatchPerServer() throws IOException {
+        recordBatches(new CountDownLatch(0));
+        RegionServerBatcher batcher = new RegionServerBatcher(connection, 2);
+        long rs1Batches = Metrics.registry.timer("HBase.regionServer.rs1_example_com_16020.putLatency").getCount();
+
+        batcher.put("ns:users", puts("a1", "b1", "a2", "b2", "b3"));
+
+        assertEquals(2, batches.size());
+        assertTrue(batches.contains(Arrays.asList("a1", "a2")));
+        assertTrue(batches.contains(Arrays.asList("b1", "b2", "b3")));
+        assertEquals(rs1Batches + 1, Metrics.registry.timer("HBase.regionServer.rs1_example_com_16020.putLatency").getCount());
+    }
+
+    @Test
+    public void makeSureAFailedBatchFailsThePutAfterTheOthersAreSent() throws IOException {
+        recordBatches(new CountDownLatch(0));
+        RegionServerBatcher batcher = new RegionServerBatcher(connection, 2);
+
+        try {
+            batcher.put("ns:users", puts("a1", "x1"));
+            fail("Put should fail when a batch fails");
+        } catch (IOException e) {
+            assertEquals("rs2 is gone", e.getMessage());
+        }
+        assertEquals(Collections.singletonList(Arrays.asList("a1")), batches);
+    }
+
+    @Test
+    public void makeSureASlowServerOnlyHoldsBackItsOwnBatches() throws Exception {
+        CountDownLatch rs1Released = new CountDownLatch(1);
+        recordBatches(rs1Released);
+        RegionServerBatcher batcher = new RegionServerBatcher(connection, 1);
+
+        ExecutorService tasks = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = tasks.submit(() -> {
+                batcher.put("ns:users", puts("a1"));
+                return null;
+            });
+            Future<?> second = tasks.submit(() -> {
+                batcher.put("ns:users", puts("a2"));
+                return null;
+            });
+
+            // rs1 is stuck with one batch in flight, rs2 still takes rows
+            batcher.put("ns:users", puts("b1"));
+            assertEquals(Collections.singletonList(Arrays.asList("b1")), batches);
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+
+            rs1Released.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(3, batches.size());
+        } finally {
+            tasks.shutdownNow();
+        }
+    }
+
+    @Test
+    public void makeSureAStalledServerDoesNotHoldBackTheOtherServersOfConcurrentPuts() throws Exception {
+        CountDownLatch rs1Released = new CountDownLatch(1);
+        recordBatches(rs1Released);
+        RegionServerBatcher batcher = new RegionServerBatcher(connection, 2);
+
+        // more tasks than rs1 takes batches in flight, each with rows on both servers
+        int taskCount = 10;
+        ExecutorService tasks = Executors.newFixedThreadPool(taskCount);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int i = 0; i < taskCount; i++) {
+                String task = String.valueOf(i);
+                puts.add(tasks.submit(() -> {
+                    batcher.put("ns:users", puts("a" + task, "b" + task));
+                    return null;
+                }));
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (batches.size() < taskCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // every rs2 batch is in, while rs1 still holds all the tasks
+            assertEquals(taskCount, batches.size());
+            for (List<String> batch : batches) {
+                assertTrue(batch.get(0).startsWith("b"));
+            }
+            for (Future<?> put : puts) {
+                assertFalse(put.isDone());
+            }
+
+            rs1Released.countDown();
+            for (Future<?> put : puts) {
+                put.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(2 * taskCount, batches.size());
+        } finally {
+            tasks.shutdownNow();
+            batcher.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.booking.replication.augmenter;
+
+import com.booking.replication.applier.kafka.RowListMessage;
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.ColumnConverter;
+import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.TableSchemaVersion;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AugmentedRowTest {
+
+    private static TableSchemaVersion tableSchemaVersion() {
+        TableSchemaVersion tableSchemaVersion = new TableSchemaVersion();
+        String[] columnNames = {"id", "name", "created"};
+        for (int i = 0; i < columnNames.length; i++) {
+            ColumnSchema columnSchema = new ColumnSchema();
+            columnSchema.setColumnName(columnNames[i]);
+            columnSchema.setOrdinalPosition(i + 1);
+            columnSchema.setDataType(i == 1 ? "varchar" : "int");
+            columnSchema.setColumnType(i == 1 ? "varchar(255)" : "int(11)");
+            columnSchema.setCharacterSetName(i == 1 ? "utf8" : null);
+            if (i == 0) {
+                columnSchema.setColumnKey("PRI");
+            }
+            tableSchemaVersion.addColumn(columnSchema);
+        }
+        return tableSchemaVersion;
+    }
+
+    private static AugmentedRow row(String eventType) throws TableMapException {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventLength(100);
+        header.setNextPosition(1100);
+        header.setTimestamp(1500000000000L);
+        return new AugmentedRow("mysql-bin.000001", 1, "users", tableSchemaVersion(), eventType, header);
+    }
+
+    @Test
+    public void makeSureEventColumnsKeepTheirShapeForInserts() throws TableMapException {
+        AugmentedRow row = row("INSERT");
+        row.setColumnValue(0, "42");
+        row.setColumnValue(1, "bob");
+        row.setColumnValue(2, "1500000000");
+
+        Map<String, Map<String, String>> eventColumns = row.getEventColumns();
+        assertEquals(3, eventColumns.size());
+        assertEquals("bob", eventColumns.get("name").get("value"));
+        assertEquals("varchar(255)", eventColumns.get("name").get("type"));
+        assertEquals(2, eventColumns.get("name").size());
+        assertEquals(Arrays.asList("id"), row.getPrimaryKeyColumns());
+    }
+
+    @Test
+    public void makeSureEventColumnsKeepTheirShapeForUpdates() throws TableMapException {
+        AugmentedRow row = row("UPDATE");
+        row.addColumnDataForUpdate("id", "42", "42", "int(11)");
+        row.addColumnDataForUpdate("name", "bob", "alice", "varchar(255)");
+
+        Map<String, String> name = row.getEventColumns().get("name");
+        assertEquals("bob", name.get("value_before"));
+        assertEquals("alice", name.get("value_after"));
+        assertEquals("varchar(255)", name.get("type"));
+        assertTrue(row.getEventColumns().get("created").isEmpty());
+
+        assertEquals("alice", row.getValue("name"));
+        assertEquals("bob", row.getValueBefore(1));
+        assertNull(row.getValue(2));
+    }
+
+    @Test
+    public void makeSureRowsSurviveJsonRoundTrip() throws TableMapException {
+        AugmentedRow row = row("UPDATE");
+        row.setColumnValues(0, "42", "42");
+        row.setColumnValues(1, "bob", "alice");
+        row.setColumnValues(2, "1", "2");
+
+        List<AugmentedRow> rows = new ArrayList<>();
+        rows.add(row);
+        RowListMessage message = RowListMessage.fromJSON(new RowListMessage(1, rows).toJSON());
+        AugmentedRow copy = message.getRows().get(0);
+
+        assertEquals(row.getEventColumns(), copy.getEventColumns());
+        assertEquals(row.getPrimaryKeyColumns(), copy.getPrimaryKeyColumns());
+        assertEquals("alice", copy.getValue("name"));
+        assertEquals(row.getRowBinlogPositionID(), copy.getRowBinlogPositionID());
+    }
+
+    private static void extract(AugmentedRow row, int columnIndex, Column before, Column after) throws TableMapException {
+        ColumnConverter columnConverter = row.getTableSchemaVersion().getColumnConverters()[columnIndex];
+        columnConverter.extract(before, row.getRowImageBefore(), columnIndex);
+        columnConverter.extract(after, row.getRowImage(), columnIndex);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void makeSureTypedValuesAreRenderedOnDemand() throws TableMapException {
+        AugmentedRow row = row("UPDATE");
+        extract(row, 0, LongColumn.valueOf(42), LongColumn.valueOf(42));
+        extract(row, 1, StringColumn.valueOf(bytes("bob")), StringColumn.valueOf(bytes("alice")));
+        extract(row, 2, LongColumn.valueOf(1), LongColumn.valueOf(2));
+
+        assertFalse(row.isColumnChanged(0));
+        assertTrue(row.isColumnChanged(1));
+        assertTrue(row.isColumnChanged(2));
+
+        assertEquals("alice", row.getValue("name"));
+        assertEquals("bob", row.getValueBefore(1));
+        assertArrayEquals(bytes("2"), row.getValueBytes(2));
+        assertEquals("42", row.getEventColumns().get("id").get("value_after"));
+    }
+
+    @Test
+    public void makeSureMinimalUpdateImagesOnlyHaveTheirColumns() throws TableMapException {
+        AugmentedRow row = row("UPDATE");
+        ColumnConverter[] columnConverters = row.getTableSchemaVersion().getColumnConverters();
+        // the primary key before, the column the update set after
+        columnConverters[0].extract(LongColumn.valueOf(42), row.getRowImageBefore(), 0);
+        columnConverters[1].extract(StringColumn.valueOf(bytes("alice")), row.getRowImage(), 1);
+
+        assertFalse(row.isColumnPresent(0));
+        assertTrue(row.isColumnPresent(1));
+        assertFalse(row.isColumnPresent(2));
+
+        assertFalse(row.isColumnChanged(0));
+        assertTrue(row.isColumnChanged(1));
+        assertFalse(row.isColumnChanged(2));
+
+        assertNull(row.getValue("id"));
+        assertEquals("42", row.getKeyValue("id"));
+        assertEquals("alice", row.getKeyValue("name"));
+        assertTrue(row.getEventColumns().get("created").isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+package com.booking.replication.augmenter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RowPositionTest {
+
+    @Test
+    public void makeSurePositionIdIsTheSameAsBefore() {
+        RowPosition rowPosition = new RowPosition("mysql-bin.000042", 1234L, 7L);
+
+        assertEquals(String.format("%s:%020d:%020d", "mysql-bin.000042", 1234L, 7L), rowPosition.toString());
+        assertEquals(42L, rowPosition.getBinlogFileIndex());
+        assertEquals(rowPosition, RowPosition.fromString(rowPosition.toString()));
+    }
+
+    @Test
+    public void makeSurePositionsCompareInBinlogOrder() {
+        RowPosition first = new RowPosition("mysql-bin.999999", 500L, 3L);
+        RowPosition second = new RowPosition("mysql-bin.1000000", 4L, 1L);
+
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(new RowPosition("mysql-bin.000001", 4L, 1L).compareTo(new RowPosition("mysql-bin.000001", 4L, 2L)) < 0);
+        assertTrue(new RowPosition("mysql-bin.000001", 120L, 1L).compareTo(new RowPosition("mysql-bin.000001", 4L, 9L)) > 0);
+        assertEquals(0, first.compareTo(RowPosition.fromString(first.toString())));
+    }
+
+    @Test
+    public void makeSureUuidIsDerivedFromCoordinates() {
+        RowPosition rowPosition = new RowPosition("mysql-bin.000042", 1234L, 7L);
+
+        assertEquals(rowPosition.toUUID(), new RowPosition("mysql-bin.000042", 1234L, 7L).toUUID());
+        assertFalse(rowPosition.toUUID().equals(new RowPosition("mysql-bin.000042", 1234L, 8L).toUUID()));
+        assertFalse(rowPosition.toUUID().equals(new RowPosition("mysql-bin.000043", 1234L, 7L).toUUID()));
+    }
+}
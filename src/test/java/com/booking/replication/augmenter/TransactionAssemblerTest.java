@@ -0,0 +1,123 @@
+package com.booking.replication.augmenter;
+
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.TableSchemaVersion;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.common.util.MySQLConstants;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionAssemblerTest {
+
+    private static BinlogEventV4HeaderImpl header(int eventType) {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(eventType);
+        header.setEventLength(100);
+        header.setNextPosition(1100);
+        header.setTimestamp(1500000000000L);
+        return header;
+    }
+
+    private static TableSchemaVersion tableSchemaVersion() {
+        TableSchemaVersion tableSchemaVersion = new TableSchemaVersion();
+        ColumnSchema columnSchema = new ColumnSchema();
+        columnSchema.setColumnName("id");
+        columnSchema.setOrdinalPosition(1);
+        columnSchema.setDataType("int");
+        columnSchema.setColumnType("int(11)");
+        columnSchema.setColumnKey("PRI");
+        tableSchemaVersion.addColumn(columnSchema);
+        return tableSchemaVersion;
+    }
+
+    private static AugmentedRowsEvent rowsEvent(String tableName, int rowCount) throws TableMapException {
+        WriteRowsEventV2 event = new WriteRowsEventV2(header(MySQLConstants.WRITE_ROWS_EVENT_V2));
+        event.setBinlogFilename("mysql-bin.000001");
+        AugmentedRowsEvent rowsEvent = new AugmentedRowsEvent(event);
+        rowsEvent.setMysqlTableName(tableName);
+        rowsEvent.setTransactionDatabaseName("replicated");
+        for (int i = 0; i < rowCount; i++) {
+            rowsEvent.addSingleRowEvent(new AugmentedRow(
+                    "mysql-bin.000001", i + 1, tableName, tableSchemaVersion(), "INSERT", event.getHeader()));
+        }
+        return rowsEvent;
+    }
+
+    private static List<AugmentedRow> rows(AugmentedRowsEvent... rowsEvents) {
+        List<AugmentedRow> rows = new ArrayList<>();
+        for (AugmentedRowsEvent rowsEvent : rowsEvents) {
+            rows.addAll(rowsEvent.getSingleRowEvents());
+        }
+        return rows;
+    }
+
+    @Test
+    public void makeSureRowsAreGroupedByTableInBinlogOrder() throws TableMapException {
+        TransactionAssembler assembler = new TransactionAssembler();
+        AugmentedRowsEvent users1 = rowsEvent("users", 2);
+        AugmentedRowsEvent orders = rowsEvent("orders", 1);
+        AugmentedRowsEvent users2 = rowsEvent("users", 3);
+
+        assertNull(assembler.add(users1));
+        assertNull(assembler.add(orders));
+        assertNull(assembler.add(users2));
+        assertEquals(6, assembler.getRowCount());
+
+        XidEvent xid = new XidEvent(header(MySQLConstants.XID_EVENT));
+        AugmentedTransaction transaction = assembler.commit(xid);
+
+        assertTrue(transaction.isCommitted());
+        assertSame(xid, transaction.getCommitEvent());
+        assertEquals(6, transaction.getRowCount());
+        assertEquals("replicated", transaction.getTransactionDatabaseName());
+        assertEquals(Arrays.asList(users1, orders, users2), transaction.getRowsEvents());
+        assertEquals(Arrays.asList("users", "orders"), new ArrayList<>(transaction.getRowsByTable().keySet()));
+        assertEquals(rows(users1, users2), transaction.getRowsByTable().get("users"));
+        assertEquals(rows(orders), transaction.getRowsByTable().get("orders"));
+        assertEquals(0, assembler.getRowCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void makeSureTransactionsCantBeChanged() throws TableMapException {
+        TransactionAssembler assembler = new TransactionAssembler();
+        assembler.add(rowsEvent("users", 1));
+        AugmentedTransaction transaction = assembler.commit(new XidEvent(header(MySQLConstants.XID_EVENT)));
+
+        transaction.getRowsByTable().get("users").clear();
+    }
+
+    @Test
+    public void makeSureBigTransactionsAreHandedOverInParts() throws TableMapException {
+        TransactionAssembler assembler = new TransactionAssembler(3);
+
+        assertNull(assembler.add(rowsEvent("users", 2)));
+        AugmentedTransaction part = assembler.add(rowsEvent("users", 2));
+        assertFalse(part.isCommitted());
+        assertEquals(4, part.getRowCount());
+
+        assertNull(assembler.add(rowsEvent("orders", 1)));
+        AugmentedTransaction rest = assembler.commit(new XidEvent(header(MySQLConstants.XID_EVENT)));
+        assertTrue(rest.isCommitted());
+        assertEquals(1, rest.getRowCount());
+        assertEquals(Arrays.asList("orders"), new ArrayList<>(rest.getRowsByTable().keySet()));
+
+        AugmentedTransaction empty = assembler.commit(new XidEvent(header(MySQLConstants.XID_EVENT)));
+        assertTrue(empty.isCommitted());
+        assertTrue(empty.isEmpty());
+        assertNull(empty.getTransactionDatabaseName());
+    }
+}
@@ -0,0 +1,363 @@
+package com.booking.replication.binlog;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.column.types.ColumnConverter;
+import com.booking.replication.schema.exception.TableMapException;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.UpdateRowsEventV2;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.binlog.impl.parser.AbstractBinlogEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.glossary.Pair;
+import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.impl.XInputStreamImpl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RowsEventReaderTest {
+
+    private static final long TABLE_ID = 77;
+
+    // binlog type, metadata, data type, column type, charset
+    private static final Object[][] COLUMNS = {
+        {MySQLConstants.TYPE_LONG,       0,              "int",       "int(11)",             null},
+        {MySQLConstants.TYPE_LONGLONG,   0,              "bigint",    "bigint(20) unsigned", null},
+        {MySQLConstants.TYPE_TINY,       0,              "tinyint",   "tinyint(3) unsigned", null},
+        {MySQLConstants.TYPE_SHORT,      0,              "smallint",  "smallint(6)",         null},
+        {MySQLConstants.TYPE_INT24,      0,              "mediumint", "mediumint(8) unsigned", null},
+        {MySQLConstants.TYPE_FLOAT,      4,              "float",     "float",               null},
+        {MySQLConstants.TYPE_DOUBLE,     8,              "double",    "double",              null},
+        {MySQLConstants.TYPE_NEWDECIMAL, 2 << 8 | 10,    "decimal",   "decimal(10,2)",       null},
+        {MySQLConstants.TYPE_VARCHAR,    1020,           "varchar",   "varchar(255)",        "utf8mb4"},
+        {MySQLConstants.TYPE_STRING,     254 << 8 | 30,  "char",      "char(10)",            "utf8"},
+        {MySQLConstants.TYPE_BLOB,       2,              "text",      "text",                "utf8"},
+        {MySQLConstants.TYPE_BLOB,       2,              "blob",      "blob",                null},
+        {MySQLConstants.TYPE_DATETIME2,  0,              "datetime",  "datetime",            null},
+        {MySQLConstants.TYPE_TIMESTAMP2, 3,              "timestamp", "timestamp(3)",        null},
+        {MySQLConstants.TYPE_TIMESTAMP,  0,              "timestamp", "timestamp",           null},
+        {MySQLConstants.TYPE_DATE,       0,              "date",      "date",                null},
+        {MySQLConstants.TYPE_YEAR,       0,              "year",      "year(4)",             null},
+        {MySQLConstants.TYPE_TIME2,      0,              "time",      "time",                null},
+        {MySQLConstants.TYPE_BIT,        5,              "bit",       "bit(5)",              null},
+    };
+
+    private static final int COLUMN_COUNT = COLUMNS.length;
+
+    private static class Payload {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Payload littleEndian(long value, int length) {
+            for (int i = 0; i < length; i++) {
+                bytes.write((int) (value >> (i << 3)));
+            }
+            return this;
+        }
+
+        Payload bigEndian(long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                bytes.write((int) (value >> (i << 3)));
+            }
+            return this;
+        }
+
+        Payload bytes(byte[] value) {
+            bytes.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static TableMapEvent tableMapEvent() {
+        byte[] columnTypes = new byte[COLUMN_COUNT];
+        int[] metadata = new int[COLUMN_COUNT];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columnTypes[column] = (byte) (int) COLUMNS[column][0];
+            metadata[column] = (int) COLUMNS[column][1];
+        }
+
+        TableMapEvent tableMapEvent = new TableMapEvent(new BinlogEventV4HeaderImpl());
+        tableMapEvent.setTableId(TABLE_ID);
+        tableMapEvent.setDatabaseName(StringColumn.valueOf("test".getBytes()));
+        tableMapEvent.setTableName(StringColumn.valueOf("t".getBytes()));
+        tableMapEvent.setColumnCount(UnsignedLong.valueOf(COLUMN_COUNT));
+        tableMapEvent.setColumnTypes(columnTypes);
+        tableMapEvent.setColumnMetadata(new Metadata(columnTypes, metadata));
+        return tableMapEvent;
+    }
+
+    private static ColumnConverter[] columnConverters() {
+        ColumnConverter[] columnConverters = new ColumnConverter[COLUMN_COUNT];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            ColumnSchema columnSchema = new ColumnSchema();
+            columnSchema.setColumnName("column_" + column);
+            columnSchema.setOrdinalPosition(column + 1);
+            columnSchema.setDataType((String) COLUMNS[column][2]);
+            columnSchema.setColumnType((String) COLUMNS[column][3]);
+            columnSchema.setCharacterSetName((String) COLUMNS[column][4]);
+            columnConverters[column] = ColumnConverter.forColumn(columnSchema);
+        }
+        return columnConverters;
+    }
+
+    private static byte[] lengthPrefixed(String value, int prefixLength) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return new Payload().littleEndian(bytes.length, prefixLength).bytes(bytes).toByteArray();
+    }
+
+    /**
+     * One row image with every column in it, offset varies the values.
+     */
+    private static void writeRow(Payload payload, int offset, int... nullColumns) {
+        byte[] nullBitmap = new byte[(COLUMN_COUNT + 7) >> 3];
+        for (int column : nullColumns) {
+            nullBitmap[column >> 3] |= 1 << (column & 7);
+        }
+        payload.bytes(nullBitmap);
+
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            if ((nullBitmap[column >> 3] & (1 << (column & 7))) != 0) {
+                continue;
+            }
+            switch (column) {
+                case 0:
+                    payload.littleEndian(-42 - offset, 4);
+                    break;
+                case 1:
+                    payload.littleEndian(-1L - offset, 8);
+                    break;
+                case 2:
+                    payload.littleEndian(200 + offset, 1);
+                    break;
+                case 3:
+                    payload.littleEndian(-300 - offset, 2);
+                    break;
+                case 4:
+                    payload.littleEndian(0xfffff0 + offset, 3);
+                    break;
+                case 5:
+                    payload.littleEndian(Float.floatToIntBits(1.5f + offset), 4);
+                    break;
+                case 6:
+                    payload.littleEndian(Double.doubleToLongBits(-2.25 - offset), 8);
+                    break;
+                case 7:
+                    // 12.50 + offset
+                    payload.bigEndian(0x80000000L | (12 + offset), 4).bigEndian(50, 1);
+                    break;
+                case 8:
+                    payload.bytes(lengthPrefixed("café " + offset, 2));
+                    break;
+                case 9:
+                    payload.bytes(lengthPrefixed("ab" + offset, 1));
+                    break;
+                case 10:
+                    payload.bytes(lengthPrefixed("héllo " + offset, 2));
+                    break;
+                case 11:
+                    payload.littleEndian(4, 2).bytes(new byte[] {0, 1, 2, (byte) (0xff - offset)});
+                    break;
+                case 12:
+                    long yearMonth = 2017 * 13 + 7;
+                    long dayTime = (long) (14 + offset) << 17 | 12 << 12 | 30 << 6 | 45;
+                    payload.bigEndian(0x8000000000L + (yearMonth << 22 | dayTime), 5);
+                    break;
+                case 13:
+                    payload.bigEndian(1500000000L + offset, 4).bigEndian(1230, 2);
+                    break;
+                case 14:
+                    payload.littleEndian(1500000000L + offset, 4);
+                    break;
+                case 15:
+                    payload.littleEndian(2017 << 9 | 7 << 5 | (14 + offset), 3);
+                    break;
+                case 16:
+                    payload.littleEndian(117 + offset, 1);
+                    break;
+                case 17:
+                    payload.bigEndian(0x800000L + (12 << 12 | 30 << 6 | (45 + offset)), 3);
+                    break;
+                default:
+                    payload.littleEndian(0x16 + offset, 1);
+                    break;
+            }
+        }
+    }
+
+    private static Payload eventPayload(boolean update) {
+        byte[] usedColumns = new byte[(COLUMN_COUNT + 7) >> 3];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            usedColumns[column >> 3] |= 1 << (column & 7);
+        }
+
+        Payload payload = new Payload()
+                .littleEndian(TABLE_ID, 6)
+                .littleEndian(1, 2)
+                .littleEndian(2, 2)
+                .littleEndian(COLUMN_COUNT, 1)
+                .bytes(usedColumns);
+        if (update) {
+            payload.bytes(usedColumns);
+        }
+        return payload;
+    }
+
+    private static BinlogEventV4 parse(AbstractBinlogEventParser parser, int eventType, byte[] payload) throws IOException {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(eventType);
+
+        final TableMapEvent tableMapEvent = tableMapEvent();
+        final List<BinlogEventV4> events = new ArrayList<>();
+        BinlogParserContext context = new BinlogParserContext() {
+            @Override
+            public boolean getChecksumEnabled() {
+                return false;
+            }
+
+            @Override
+            public void setChecksumEnabled(boolean checksumEnabled) {
+            }
+
+            @Override
+            public String getBinlogFileName() {
+                return "mysql-bin.000042";
+            }
+
+            @Override
+            public BinlogEventListener getEventListener() {
+                return events::add;
+            }
+
+            @Override
+            public TableMapEvent getTableMapEvent(long tableId) {
+                return tableId == TABLE_ID ? tableMapEvent : null;
+            }
+        };
+
+        XInputStreamImpl is = new XInputStreamImpl(new ByteArrayInputStream(payload));
+        is.setReadLimit(payload.length);
+        parser.parse(is, header, context);
+        return events.isEmpty() ? null : events.get(0);
+    }
+
+    private static RowImage openReplicatorImage(Row row, ColumnConverter[] columnConverters) throws TableMapException {
+        RowImage image = new RowImage(COLUMN_COUNT);
+        List<Column> columns = row.getColumns();
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columnConverters[column].extract(columns.get(column), image, column);
+        }
+        return image;
+    }
+
+    private static void assertSameImages(RowImage expected, RowImage actual, ColumnConverter[] columnConverters) {
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            String message = "column " + column + " (" + COLUMNS[column][3] + ")";
+            assertEquals(message, expected.isNull(column), actual.isNull(column));
+            assertEquals(message, columnConverters[column].render(expected, column), columnConverters[column].render(actual, column));
+            // BIT values are kept as Open Replicator columns, which only equal themselves
+            if (!(expected.getObject(column) instanceof Column)) {
+                assertTrue(message, RowImage.sameValue(expected, actual, column));
+            }
+        }
+    }
+
+    @Test
+    public void makeSureWriteRowsAreDecodedLikeOpenReplicator() throws IOException, TableMapException {
+        Payload payload = eventPayload(false);
+        writeRow(payload, 0);
+        writeRow(payload, 1, 1, 8, 11, 13, 18);
+        byte[] bytes = payload.toByteArray();
+
+        ColumnConverter[] columnConverters = columnConverters();
+        WriteRowsEventV2 expected = (WriteRowsEventV2) parse(
+                new WriteRowsEventV2Parser(), MySQLConstants.WRITE_ROWS_EVENT_V2, bytes);
+        RawRowsEvent actual = (RawRowsEvent) parse(
+                new RawRowsEventParser(MySQLConstants.WRITE_ROWS_EVENT_V2), MySQLConstants.WRITE_ROWS_EVENT_V2, bytes);
+
+        assertEquals(TABLE_ID, actual.getTableId());
+        assertEquals("mysql-bin.000042", actual.getBinlogFilename());
+        assertFalse(actual.isUpdate());
+
+        RowsEventReader reader = new RowsEventReader(actual);
+        for (Row row : expected.getRows()) {
+            assertTrue(reader.hasNext());
+            RowImage image = new RowImage(COLUMN_COUNT);
+            reader.readImage(actual.getUsedColumns(), columnConverters, image);
+            assertSameImages(openReplicatorImage(row, columnConverters), image, columnConverters);
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void makeSureUpdateRowsAreDecodedLikeOpenReplicator() throws IOException, TableMapException {
+        Payload payload = eventPayload(true);
+        writeRow(payload, 0, 10);
+        writeRow(payload, 2, 0);
+        byte[] bytes = payload.toByteArray();
+
+        ColumnConverter[] columnConverters = columnConverters();
+        UpdateRowsEventV2 expected = (UpdateRowsEventV2) parse(
+                new UpdateRowsEventV2Parser(), MySQLConstants.UPDATE_ROWS_EVENT_V2, bytes);
+        RawRowsEvent actual = (RawRowsEvent) parse(
+                new RawRowsEventParser(MySQLConstants.UPDATE_ROWS_EVENT_V2), MySQLConstants.UPDATE_ROWS_EVENT_V2, bytes);
+
+        assertTrue(actual.isUpdate());
+
+        RowsEventReader reader = new RowsEventReader(actual);
+        Pair<Row> row = expected.getRows().get(0);
+        RowImage before = new RowImage(COLUMN_COUNT);
+        RowImage after = new RowImage(COLUMN_COUNT);
+        reader.readImage(actual.getUsedColumns(), columnConverters, before);
+        reader.readImage(actual.getUsedColumnsAfter(), columnConverters, after);
+
+        assertSameImages(openReplicatorImage(row.getBefore(), columnConverters), before, columnConverters);
+        assertSameImages(openReplicatorImage(row.getAfter(), columnConverters), after, columnConverters);
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void makeSureTruncatedRowsAreRejected() throws IOException, TableMapException {
+        Payload payload = eventPayload(false);
+        writeRow(payload, 0);
+        byte[] bytes = payload.toByteArray();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        RawRowsEvent event = (RawRowsEvent) parse(
+                new RawRowsEventParser(MySQLConstants.WRITE_ROWS_EVENT_V2), MySQLConstants.WRITE_ROWS_EVENT_V2, truncated);
+
+        try {
+            new RowsEventReader(event).readImage(event.getUsedColumns(), columnConverters(), new RowImage(COLUMN_COUNT));
+            fail("Expected a TableMapException");
+        } catch (TableMapException e) {
+            assertTrue(e.getMessage().contains("middle of a row"));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.booking.replication.net;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * MySQL server that logs in any client, takes one command and answers it
+ * with a stream of binlog event packets followed by an EOF packet, the way a
+ * binlog dump is answered.
+ *
+ * <p>Speaks the compressed protocol when the client asks for it and
+ * compression is supported, and can limit the bandwidth of the stream to
+ * play a slow link.</p>
+ */
+class FakeReplicationServer implements Closeable {
+
+    private static final int CLIENT_LONG_FLAG         = 0x4;
+    private static final int CLIENT_PROTOCOL_41       = 0x200;
+    private static final int CLIENT_SECURE_CONNECTION = 0x8000;
+
+    // what the server collects before it writes, like net_buffer_length
+    private static final int NET_BUFFER_LENGTH = 16 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final boolean      compressionSupported;
+    private final long         bytesPerSecond;
+    private final List<byte[]> packets;
+
+    private volatile boolean compressed;
+    private volatile byte[]  command;
+
+    /**
+     * Server on a free local port.
+     *
+     * @param packets               Bodies of the packets to stream
+     * @param compressionSupported  Whether to offer the compressed protocol
+     * @param bytesPerSecond        Bandwidth of the stream, 0 for no limit
+     */
+    FakeReplicationServer(List<byte[]> packets, boolean compressionSupported, long bytesPerSecond) throws IOException {
+        this.packets              = packets;
+        this.compressionSupported = compressionSupported;
+        this.bytesPerSecond       = bytesPerSecond;
+        this.serverSocket         = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        Thread thread = new Thread(this::serve, "fake-replication-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Bodies of binlog event packets: a 0x00 marker and something like rows,
+     * about as compressible as real ones. Every hundredth packet is ~100KB.
+     */
+    static List<byte[]> eventPackets(int count) {
+        Random random = new Random(42);
+        List<byte[]> packets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            body.write(0);
+            int rows = i % 100 == 99 ? 1000 : 5;
+            for (int row = 0; row < rows; row++) {
+                byte[] text = ("user-" + random.nextInt(100000) + "@example.com\tactive\t" + (1500000000 + i))
+                        .getBytes(StandardCharsets.US_ASCII);
+                body.write(text, 0, text.length);
+                for (int column = 0; column < 8; column++) {
+                    body.write(random.nextInt(4));
+                }
+            }
+            packets.add(body.toByteArray());
+        }
+        return packets;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Whether the last connection was compressed.
+     */
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Body of the last command received.
+     */
+    byte[] getCommand() {
+        return command;
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setTcpNoDelay(true);
+                serve(new DataInputStream(socket.getInputStream()), new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            } catch (IOException e) {
+                // closed by the client or by close()
+            }
+        }
+    }
+
+    private void serve(DataInputStream in, OutputStream out) throws IOException {
+        compressed = false;
+
+        writePacket(out, 0, greeting());
+        out.flush();
+
+        byte[] login = readPacket(in);
+        int clientCapabilities = (login[0] & 0xff) | (login[1] & 0xff) << 8;
+        compressed = compressionSupported && (clientCapabilities & NioTransport.CLIENT_COMPRESS) != 0;
+
+        writePacket(out, 2, new byte[] {0, 0, 0, 2, 0, 0, 0});
+        out.flush();
+
+        command = compressed ? readCompressedPacket(in) : readPacket(in);
+
+        long start = System.nanoTime();
+        long sent  = 0;
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        int sequence = 1;
+        for (byte[] packet : packets) {
+            writePacket(chunk, sequence++, packet);
+            if (chunk.size() >= NET_BUFFER_LENGTH) {
+                sent += send(out, chunk);
+                throttle(start, sent);
+            }
+        }
+        writePacket(chunk, sequence, new byte[] {(byte) 0xfe, 0, 0, 2, 0});
+        send(out, chunk);
+        out.flush();
+
+        // until the client hangs up
+        while (in.read() >= 0) {
+            continue;
+        }
+    }
+
+    private byte[] greeting() {
+        ByteArrayOutputStream greeting = new ByteArrayOutputStream();
+        greeting.write(10);
+        writeNullTerminated(greeting, "5.7.18-log");
+        writeInt(greeting, 42, 4);
+        writeNullTerminated(greeting, "12345678");
+        int capabilities = CLIENT_LONG_FLAG | CLIENT_PROTOCOL_41 | CLIENT_SECURE_CONNECTION;
+        if (compressionSupported) {
+            capabilities |= NioTransport.CLIENT_COMPRESS;
+        }
+        writeInt(greeting, capabilities, 2);
+        greeting.write(33);
+        writeInt(greeting, 2, 2);
+        greeting.write(new byte[13], 0, 13);
+        writeNullTerminated(greeting, "123456789012");
+        return greeting.toByteArray();
+    }
+
+    /**
+     * Write the chunk, deflated in one compressed packet if compressed.
+     *
+     * @return  Bytes written
+     */
+    private int send(OutputStream out, ByteArrayOutputStream chunk) throws IOException {
+        byte[] bytes = chunk.toByteArray();
+        chunk.reset();
+        if (!compressed) {
+            out.write(bytes);
+            return bytes.length;
+        }
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] deflated = new byte[bytes.length + 64];
+        int length = deflater.deflate(deflated);
+        deflater.end();
+        writeInt(out, length, 3);
+        out.write(0);
+        writeInt(out, bytes.length, 3);
+        out.write(deflated, 0, length);
+        return CompressedPacketInputStream.HEADER_LENGTH + length;
+    }
+
+    private void throttle(long start, long sent) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long aheadNanos = sent * 1000000000L / bytesPerSecond - (System.nanoTime() - start);
+        if (aheadNanos > 0) {
+            try {
+                Thread.sleep(aheadNanos / 1000000, (int) (aheadNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void writeNullTerminated(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+        out.write(0);
+    }
+
+    private static void writeInt(OutputStream out, int value, int length) {
+        try {
+            for (int i = 0; i < length; i++) {
+                out.write(value >> (i << 3));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writePacket(OutputStream out, int sequence, byte[] body) throws IOException {
+        writeInt(out, body.length, 3);
+        out.write(sequence);
+        out.write(body);
+    }
+
+    private static byte[] readPacket(DataInputStream in) throws IOException {
+        byte[] header = new byte[4];
+        in.readFully(header);
+        byte[] body = new byte[CompressedPacketInputStream.readInt3(header, 0)];
+        in.readFully(body);
+        return body;
+    }
+
+    // commands are short enough to be sent as they are
+    private static byte[] readCompressedPacket(DataInputStream in) throws IOException {
+        byte[] header = new byte[CompressedPacketInputStream.HEADER_LENGTH];
+        in.readFully(header);
+        byte[] payload = new byte[CompressedPacketInputStream.readInt3(header, 0)];
+        in.readFully(payload);
+        return readPacket(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,198 @@
+package com.booking.replication.net;
+
+import com.google.code.or.net.Packet;
+import com.google.code.or.net.impl.AuthenticatorImpl;
+import com.google.code.or.net.impl.packet.RawPacket;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioTransportTest {
+
+    private static final List<byte[]> EVENTS = FakeReplicationServer.eventPackets(1000);
+
+    private static final byte[] COMMAND = {0x12, 4, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0};
+
+    private FakeReplicationServer server;
+
+    @After
+    public void stopServer() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    static NioTransport transport(boolean compression) {
+        NioTransport transport = new NioTransport();
+        transport.setAuthenticator(new AuthenticatorImpl());
+        ((AuthenticatorImpl) transport.getAuthenticator()).setUser("replicator");
+        ((AuthenticatorImpl) transport.getAuthenticator()).setPassword("secret");
+        ((AuthenticatorImpl) transport.getAuthenticator()).setEncoding("utf-8");
+        transport.setCompression(compression);
+        return transport;
+    }
+
+    /**
+     * Send the command and read the packets up to the EOF packet.
+     */
+    static List<byte[]> dump(NioTransport transport, int port) throws Exception {
+        transport.connect("127.0.0.1", port);
+        try {
+            RawPacket command = new RawPacket();
+            command.setPacketBody(COMMAND);
+            transport.getOutputStream().writePacket(command);
+            transport.getOutputStream().flush();
+
+            List<byte[]> packets = new ArrayList<>();
+            while (true) {
+                Packet packet = transport.getInputStream().readPacket();
+                byte[] body = packet.getPacketBody();
+                if (body[0] == (byte) 0xfe && body.length < 9) {
+                    return packets;
+                }
+                packets.add(body);
+            }
+        } finally {
+            transport.disconnect();
+        }
+    }
+
+    private static long length(List<byte[]> packets) {
+        return packets.stream().mapToLong(packet -> packet.length + 4).sum();
+    }
+
+    private static void assertSamePackets(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void makeSureUncompressedStreamIsReadAsSent() throws Exception {
+        server = new FakeReplicationServer(EVENTS, true, 0);
+        NioTransport transport = transport(false);
+
+        List<byte[]> packets = dump(transport, server.getPort());
+
+        assertSamePackets(EVENTS, packets);
+        assertFalse(transport.isCompressed());
+        assertFalse(server.isCompressed());
+        assertArrayEquals(COMMAND, server.getCommand());
+        assertTrue(transport.getBytesReceived() >= length(EVENTS));
+    }
+
+    @Test
+    public void makeSureCompressedStreamIsReadAsSent() throws Exception {
+        server = new FakeReplicationServer(EVENTS, true, 0);
+        NioTransport transport = transport(true);
+
+        List<byte[]> packets = dump(transport, server.getPort());
+
+        assertSamePackets(EVENTS, packets);
+        assertTrue(transport.isCompressed());
+        assertTrue(server.isCompressed());
+        assertArrayEquals(COMMAND, server.getCommand());
+        assertTrue(transport.getBytesReceived() < length(EVENTS) / 2);
+    }
+
+    @Test
+    public void makeSureServerWithoutCompressionIsReadUncompressed() throws Exception {
+        server = new FakeReplicationServer(EVENTS, false, 0);
+        NioTransport transport = transport(true);
+
+        List<byte[]> packets = dump(transport, server.getPort());
+
+        assertSamePackets(EVENTS, packets);
+        assertFalse(transport.isCompressed());
+        assertFalse(server.isCompressed());
+    }
+
+    @Test
+    public void makeSureTheInputFilterSeesUncompressedPackets() throws Exception {
+        server = new FakeReplicationServer(EVENTS, true, 0);
+        NioTransport transport = transport(true);
+        AtomicLong filtered = new AtomicLong();
+        transport.setInputFilter(in -> new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value >= 0) {
+                    filtered.incrementAndGet();
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+                if (count > 0) {
+                    filtered.addAndGet(count);
+                }
+                return count;
+            }
+        });
+
+        List<byte[]> packets = dump(transport, server.getPort());
+
+        assertSamePackets(EVENTS, packets);
+        assertTrue(transport.isCompressed());
+        assertTrue(filtered.get() >= length(EVENTS));
+        assertTrue(filtered.get() > transport.getBytesReceived());
+    }
+
+    @Test
+    public void makeSureLargePacketsSurviveSmallChannelBuffers() throws Exception {
+        List<byte[]> events = new ArrayList<>(EVENTS.subList(90, 110));
+        byte[] large = new byte[300 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        events.add(large);
+        server = new FakeReplicationServer(events, true, 0);
+        NioTransport transport = transport(true);
+        transport.setChannelBufferSize(1024);
+
+        assertSamePackets(events, dump(transport, server.getPort()));
+    }
+
+    @Test
+    public void makeSureASilentServerTimesOutTheRead() throws Exception {
+        server = new FakeReplicationServer(EVENTS.subList(0, 10), false, 0);
+        NioTransport transport = transport(false);
+        transport.setReadTimeout(200);
+        transport.connect("127.0.0.1", server.getPort());
+        try {
+            RawPacket command = new RawPacket();
+            command.setPacketBody(COMMAND);
+            transport.getOutputStream().writePacket(command);
+            transport.getOutputStream().flush();
+
+            // the server sends nothing after the end of the stream
+            for (int i = 0; i < 11; i++) {
+                transport.getInputStream().readPacket();
+            }
+            long start = System.currentTimeMillis();
+            try {
+                transport.getInputStream().readPacket();
+                fail("Read should time out when the server sends nothing");
+            } catch (SocketTimeoutException e) {
+                assertTrue(System.currentTimeMillis() - start >= 200);
+            }
+        } finally {
+            transport.disconnect();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.booking.replication.pipeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BinlogDirectoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> names(List<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void makeSureFilesAreListedInBinlogOrder() throws IOException {
+        File directory = folder.newFolder("binlogs");
+        for (String name : new String[] {
+                "mysql-bin.1000000", "mysql-bin.999998", "mysql-bin.999999", "mysql-bin.999997",
+                "mysql-bin.index", "other-bin.999999", "mysql-bin.999999.gz"}) {
+            new File(directory, name).createNewFile();
+        }
+        BinlogDirectory binlogDirectory = new BinlogDirectory(directory);
+
+        assertEquals(
+                Arrays.asList("mysql-bin.999998", "mysql-bin.999999", "mysql-bin.1000000"),
+                names(binlogDirectory.getFiles("mysql-bin.999998", null)));
+        assertEquals(
+                Arrays.asList("mysql-bin.999997", "mysql-bin.999998"),
+                names(binlogDirectory.getFiles("mysql-bin.999997", "mysql-bin.999998")));
+    }
+
+    @Test(expected = IOException.class)
+    public void makeSureMissingFirstFileIsReported() throws IOException {
+        File directory = folder.newFolder("binlogs");
+        new File(directory, "mysql-bin.000002").createNewFile();
+
+        new BinlogDirectory(directory).getFiles("mysql-bin.000001", null);
+    }
+}
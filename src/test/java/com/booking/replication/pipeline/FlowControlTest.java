@@ -0,0 +1,113 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.queues.MemoryBudget;
+import com.booking.replication.queues.RingBuffer;
+import com.booking.replication.queues.WaitStrategy;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.XidEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlowControlTest {
+
+    private static BinlogEventV4 event(long position) {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventLength(100);
+        XidEvent event = new XidEvent(header);
+        event.setXid(position);
+        return event;
+    }
+
+    @Test
+    public void makeSureEventsOverflowAndDrainInBinlogOrder() throws InterruptedException {
+        RingBuffer<BinlogEventV4> queue = new RingBuffer<>(4, WaitStrategy.PARK);
+        MemoryBudget memoryBudget = new MemoryBudget(0);
+        MemoryBudget.Account queueMemory = memoryBudget.account("testRawQueue");
+
+        FlowControl flowControl = new FlowControl(queue, queueMemory, 1024 * 1024);
+
+        // nothing drains yet: whatever the queue has no room for overflows without blocking
+        for (long position = 0; position < 20; position++) {
+            flowControl.publish(event(position));
+        }
+        assertEquals(4, queue.size());
+        assertEquals(16 * MemoryBudget.estimateEventSize(event(0)), flowControl.getOverflowBytes());
+        assertFalse(flowControl.isPaused());
+
+        flowControl.start();
+
+        List<BinlogEventV4> received = new ArrayList<>();
+        List<BinlogEventV4> batch = new ArrayList<>();
+        while (received.size() < 20) {
+            batch.clear();
+            queue.drainTo(batch, 3, 1, TimeUnit.SECONDS);
+            for (BinlogEventV4 event : batch) {
+                queueMemory.release(MemoryBudget.estimateEventSize(event));
+            }
+            received.addAll(batch);
+        }
+        flowControl.stop();
+
+        for (int position = 0; position < 20; position++) {
+            assertEquals(position, ((XidEvent) received.get(position)).getXid());
+        }
+        assertEquals(0, flowControl.getOverflowBytes());
+        assertEquals(0, queueMemory.getUsedBytes());
+    }
+
+    @Test
+    public void makeSureEventsOverflowWhenMemoryBudgetIsUsedUp() throws InterruptedException {
+        RingBuffer<BinlogEventV4> queue = new RingBuffer<>(100, WaitStrategy.PARK);
+        MemoryBudget memoryBudget = new MemoryBudget(1);
+        MemoryBudget.Account queueMemory = memoryBudget.account("testRawQueue");
+
+        FlowControl flowControl = new FlowControl(queue, queueMemory, 1024 * 1024);
+
+        flowControl.publish(event(1));
+        flowControl.publish(event(2));
+
+        assertEquals(1, queue.size());
+        assertTrue(flowControl.getOverflowBytes() > 0);
+    }
+
+    @Test
+    public void makeSureOverflowedEventsAreChargedToTheMemoryBudget() throws InterruptedException {
+        RingBuffer<BinlogEventV4> queue = new RingBuffer<>(100, WaitStrategy.PARK);
+        MemoryBudget memoryBudget = new MemoryBudget(1);
+        MemoryBudget.Account queueMemory = memoryBudget.account("testRawQueue");
+        long eventSize = MemoryBudget.estimateEventSize(event(0));
+
+        FlowControl flowControl = new FlowControl(queue, queueMemory, 1024 * 1024);
+
+        for (long position = 0; position < 5; position++) {
+            flowControl.publish(event(position));
+        }
+        assertEquals(1, queue.size());
+        assertEquals(5 * eventSize, memoryBudget.getUsedBytes());
+        assertTrue(memoryBudget.isExhausted());
+
+        // the budget stays used up by the overflow, the drainer moves the charge along with the events
+        flowControl.start();
+        List<BinlogEventV4> received = new ArrayList<>();
+        while (received.size() < 5) {
+            BinlogEventV4 event = queue.poll(1, TimeUnit.SECONDS);
+            if (event != null) {
+                queueMemory.release(eventSize);
+                received.add(event);
+            }
+        }
+        flowControl.stop();
+
+        assertEquals(0, memoryBudget.getUsedBytes());
+    }
+}
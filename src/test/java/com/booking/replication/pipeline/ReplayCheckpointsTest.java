@@ -0,0 +1,37 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.checkpoints.LastCommittedPositionCheckpoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ReplayCheckpointsTest {
+
+    private static LastCommittedPositionCheckpoint checkpoint(long position) {
+        return new LastCommittedPositionCheckpoint(1, "mysql-bin.000001", position, 0L);
+    }
+
+    @Test
+    public void makeSureCheckpointOnlyMovesPastSegmentsWithAllEarlierSegmentsFinished() {
+        ReplayCheckpoints checkpoints = new ReplayCheckpoints(4);
+
+        LastCommittedPositionCheckpoint second = checkpoint(200);
+        LastCommittedPositionCheckpoint third  = checkpoint(300);
+        LastCommittedPositionCheckpoint first  = checkpoint(100);
+        LastCommittedPositionCheckpoint fourth = checkpoint(400);
+
+        assertNull(checkpoints.segmentFinished(1, second));
+        assertNull(checkpoints.segmentFinished(2, third));
+        assertEquals(0, checkpoints.getCommittedSegments());
+
+        // the first segment finishing commits the ones after it that are finished as well
+        assertSame(third, checkpoints.segmentFinished(0, first));
+        assertEquals(3, checkpoints.getCommittedSegments());
+
+        assertSame(fourth, checkpoints.segmentFinished(3, fourth));
+        assertEquals(4, checkpoints.getCommittedSegments());
+    }
+}
@@ -0,0 +1,313 @@
+package com.booking.replication.pipeline;
+
+import com.booking.replication.Configuration;
+import com.booking.replication.augmenter.AugmentedSchemaChangeEvent;
+import com.booking.replication.replicant.ReplicantPool;
+import com.booking.replication.schema.ActiveSchemaVersion;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.WriteRowsEventV2;
+import com.google.code.or.common.util.MySQLConstants;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplayPlannerTest {
+
+    private static final String HOST = "replicant-1";
+
+    private static final String PSEUDO_GTID_PATTERN = "(?<=_pseudo_gtid_hint__asc\\:)(.{8}\\:.{16}\\:.{8})";
+
+    private static final long TIMESTAMP = 1500000000L;
+
+    private static final long TABLE_ID = 77;
+
+    private static final String DDL = "ALTER TABLE t ADD COLUMN c INT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration configuration;
+    private ReplicantPool replicantPool;
+
+    private File firstFile;
+    private File secondFile;
+    private long ddlPosition;
+
+    /**
+     * Binlog file under construction, events are appended at the end.
+     */
+    private static class Binlog {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Binlog() {
+            bytes.write(new byte[] {(byte) 0xfe, 'b', 'i', 'n'}, 0, 4);
+        }
+
+        // returns the position of the event
+        long add(int eventType, long timestamp, byte[] body) {
+            long position = bytes.size();
+            ByteBuffer event = ByteBuffer.allocate(19 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+            event.putInt((int) timestamp);
+            event.put((byte) eventType);
+            event.putInt(1);
+            event.putInt(19 + body.length);
+            event.putInt((int) position + 19 + body.length);
+            event.putShort((short) 0);
+            event.put(body);
+            bytes.write(event.array(), 0, event.capacity());
+            return position;
+        }
+
+        long formatDescription(long timestamp) {
+            ByteBuffer body = ByteBuffer.allocate(2 + 50 + 4 + 1 + 27).order(ByteOrder.LITTLE_ENDIAN);
+            body.putShort((short) 4);
+            byte[] serverVersion = new byte[50];
+            byte[] version = "5.6.30-log".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(version, 0, serverVersion, 0, version.length);
+            body.put(serverVersion);
+            body.putInt(0);
+            body.put((byte) 19);
+            return add(MySQLConstants.FORMAT_DESCRIPTION_EVENT, timestamp, body.array());
+        }
+
+        long query(long timestamp, String sql) {
+            byte[] statement = sql.getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer body = ByteBuffer.allocate(13 + 5 + statement.length).order(ByteOrder.LITTLE_ENDIAN);
+            body.putInt(7);
+            body.putInt(0);
+            body.put((byte) 4);
+            body.putShort((short) 0);
+            body.putShort((short) 0);
+            body.put("test".getBytes(StandardCharsets.US_ASCII));
+            body.put((byte) 0);
+            body.put(statement);
+            return add(MySQLConstants.QUERY_EVENT, timestamp, body.array());
+        }
+
+        long pseudoGTID(long timestamp, String pseudoGTID) {
+            return query(timestamp, pseudoGTIDQuery(pseudoGTID));
+        }
+
+        // a one row insert into test.t (id INT)
+        void transaction(long timestamp, long xid) {
+            query(timestamp, "BEGIN");
+
+            ByteBuffer tableMap = ByteBuffer.allocate(6 + 2 + 6 + 3 + 4).order(ByteOrder.LITTLE_ENDIAN);
+            putTableId(tableMap);
+            tableMap.putShort((short) 1);
+            tableMap.put((byte) 4).put("test".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+            tableMap.put((byte) 1).put((byte) 't').put((byte) 0);
+            tableMap.put((byte) 1);
+            tableMap.put((byte) MySQLConstants.TYPE_LONG);
+            tableMap.put((byte) 0);
+            tableMap.put((byte) 0);
+            add(MySQLConstants.TABLE_MAP_EVENT, timestamp, tableMap.array());
+
+            ByteBuffer rows = ByteBuffer.allocate(6 + 2 + 2 + 1 + 1 + 1 + 4).order(ByteOrder.LITTLE_ENDIAN);
+            putTableId(rows);
+            rows.putShort((short) 1);
+            rows.putShort((short) 2);
+            rows.put((byte) 1);
+            rows.put((byte) 1);
+            rows.put((byte) 0);
+            rows.putInt(42);
+            add(MySQLConstants.WRITE_ROWS_EVENT_V2, timestamp, rows.array());
+
+            ByteBuffer body = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            body.putLong(xid);
+            add(MySQLConstants.XID_EVENT, timestamp, body.array());
+        }
+
+        long rotate(long timestamp, String nextBinlogFileName) {
+            byte[] name = nextBinlogFileName.getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer body = ByteBuffer.allocate(8 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            body.putLong(4);
+            body.put(name);
+            return add(MySQLConstants.ROTATE_EVENT, timestamp, body.array());
+        }
+
+        File writeTo(File file) throws IOException {
+            try (OutputStream out = new FileOutputStream(file)) {
+                bytes.writeTo(out);
+            }
+            return file;
+        }
+
+        private static void putTableId(ByteBuffer buffer) {
+            buffer.putInt((int) TABLE_ID);
+            buffer.putShort((short) 0);
+        }
+    }
+
+    private static String pseudoGTIDQuery(String pseudoGTID) {
+        return "use `test`; drop view if exists `test`.`_pseudo_gtid_hint__asc:" + pseudoGTID + "`";
+    }
+
+    private static String pseudoGTID(int n) {
+        return String.format("%08X:%016X:%08X", n, n, n);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        configuration = mock(Configuration.class);
+        when(configuration.getpGTIDPattern()).thenReturn(PSEUDO_GTID_PATTERN);
+        when(configuration.getReplicantSchemaName()).thenReturn("test");
+
+        replicantPool = mock(ReplicantPool.class);
+        when(replicantPool.getReplicantDBActiveHost()).thenReturn(HOST);
+        when(replicantPool.getReplicantDBActiveHostServerID()).thenReturn(1);
+
+        File directory = folder.newFolder("binlog");
+
+        Binlog first = new Binlog();
+        first.formatDescription(TIMESTAMP);
+        first.pseudoGTID(TIMESTAMP, pseudoGTID(1));
+        first.transaction(TIMESTAMP + 1, 1);
+        ddlPosition = first.query(TIMESTAMP + 2, DDL);
+        first.pseudoGTID(TIMESTAMP + 2, pseudoGTID(2));
+        first.transaction(TIMESTAMP + 2, 2);
+        first.rotate(TIMESTAMP + 2, "mysql-bin.000002");
+        firstFile = first.writeTo(new File(directory, "mysql-bin.000001"));
+
+        Binlog second = new Binlog();
+        second.formatDescription(TIMESTAMP + 3);
+        second.transaction(TIMESTAMP + 3, 3);
+        secondFile = second.writeTo(new File(directory, "mysql-bin.000002"));
+    }
+
+    private ReplayPlanner planner(long startPosition) {
+        PipelinePosition pipelinePosition = new PipelinePosition(
+                pseudoGTID(0), pseudoGTIDQuery(pseudoGTID(0)), HOST, 1,
+                "mysql-bin.000001", startPosition, "mysql-bin.000001", 4L);
+        return new ReplayPlanner(configuration, pipelinePosition, replicantPool, 5L);
+    }
+
+    private static void assertSegment(
+            ReplaySegment segment,
+            int index,
+            File file,
+            long startPosition,
+            long endPosition,
+            int schemaVersion,
+            boolean startsWithSchemaChange) {
+        assertEquals(index, segment.getIndex());
+        assertEquals(file, segment.getFile());
+        assertEquals(startPosition, segment.getStartPosition());
+        assertEquals(endPosition, segment.getEndPosition());
+        assertEquals(schemaVersion, segment.getSchemaVersion());
+        assertEquals(startsWithSchemaChange, segment.startsWithSchemaChange());
+    }
+
+    @Test
+    public void makeSureSegmentsAreCutAtSchemaChangesAndFileBoundaries() throws Exception {
+        ReplayPlanner planner = planner(4);
+        List<ReplaySegment> segments = planner.plan(Arrays.asList(firstFile, secondFile), 4);
+
+        assertEquals(3, segments.size());
+        assertSegment(segments.get(0), 0, firstFile, 4, ddlPosition, 0, false);
+        assertSegment(segments.get(1), 1, firstFile, ddlPosition, firstFile.length(), 1, true);
+        assertSegment(segments.get(2), 2, secondFile, 4, secondFile.length(), 1, false);
+
+        assertEquals(1, planner.getSchemaChanges().size());
+        assertEquals(DDL, planner.getSchemaChanges().get(0).getSql().toString());
+        assertEquals(ddlPosition, planner.getSchemaChanges().get(0).getHeader().getPosition());
+    }
+
+    @Test
+    public void makeSureSegmentsStartWithTheStateOfTheSerialPipeline() throws Exception {
+        List<ReplaySegment> segments = planner(4).plan(Arrays.asList(firstFile, secondFile), 4);
+
+        // the start position: the state the replay was started with
+        assertEquals(5L, segments.get(0).getFakeMicrosecondCounter());
+        assertEquals(0L, segments.get(0).getPreviousTimestamp());
+        assertEquals(pseudoGTID(0), segments.get(0).getPseudoGTID());
+        assertEquals(pseudoGTIDQuery(pseudoGTID(0)), segments.get(0).getPseudoGTIDFullQuery());
+
+        // the DDL: the state right before it, after the three events of a transaction in the same second
+        assertEquals(3L, segments.get(1).getFakeMicrosecondCounter());
+        assertEquals((TIMESTAMP + 1) * 1000, segments.get(1).getPreviousTimestamp());
+        assertEquals(pseudoGTID(1), segments.get(1).getPseudoGTID());
+        assertEquals(pseudoGTIDQuery(pseudoGTID(1)), segments.get(1).getPseudoGTIDFullQuery());
+
+        // the rotation: the state at the end of the previous file, after the pseudo GTID, the transaction and the rotate
+        assertEquals(6L, segments.get(2).getFakeMicrosecondCounter());
+        assertEquals((TIMESTAMP + 2) * 1000, segments.get(2).getPreviousTimestamp());
+        assertEquals(pseudoGTID(2), segments.get(2).getPseudoGTID());
+        assertEquals(pseudoGTIDQuery(pseudoGTID(2)), segments.get(2).getPseudoGTIDFullQuery());
+    }
+
+    @Test
+    public void makeSureEmptySegmentsAreDropped() throws Exception {
+        // starting at the DDL leaves nothing in front of it, starting at the end of a file leaves nothing in it
+        List<ReplaySegment> fromSchemaChange = planner(ddlPosition).plan(Arrays.asList(firstFile, secondFile), ddlPosition);
+        assertEquals(2, fromSchemaChange.size());
+        assertSegment(fromSchemaChange.get(0), 0, firstFile, ddlPosition, firstFile.length(), 1, true);
+        assertSegment(fromSchemaChange.get(1), 1, secondFile, 4, secondFile.length(), 1, false);
+
+        List<ReplaySegment> fromEndOfFile =
+                planner(firstFile.length()).plan(Arrays.asList(firstFile, secondFile), firstFile.length());
+        assertEquals(1, fromEndOfFile.size());
+        assertSegment(fromEndOfFile.get(0), 0, secondFile, 4, secondFile.length(), 0, false);
+    }
+
+    @Test
+    public void makeSureLanesReplaySegmentsWithTheirSchemaVersionAndSchemaChange() throws Exception {
+        List<ReplaySegment> segments = planner(4).plan(Arrays.asList(firstFile, secondFile), 4);
+
+        List<ActiveSchemaVersion> schemaVersions = new ArrayList<>();
+        schemaVersions.add(mock(ActiveSchemaVersion.class));
+        schemaVersions.add(mock(ActiveSchemaVersion.class));
+        List<AugmentedSchemaChangeEvent> schemaChanges = new ArrayList<>();
+        schemaChanges.add(mock(AugmentedSchemaChangeEvent.class));
+
+        assertSame(schemaVersions.get(0), ParallelReplay.schemaVersionOf(segments.get(0), schemaVersions));
+        assertNull(ParallelReplay.schemaChangeOf(segments.get(0), schemaChanges));
+
+        // the segment of the DDL replays it on the version before, and goes on with the version after
+        assertSame(schemaVersions.get(1), ParallelReplay.schemaVersionOf(segments.get(1), schemaVersions));
+        assertSame(schemaChanges.get(0), ParallelReplay.schemaChangeOf(segments.get(1), schemaChanges));
+
+        assertSame(schemaVersions.get(1), ParallelReplay.schemaVersionOf(segments.get(2), schemaVersions));
+        assertNull(ParallelReplay.schemaChangeOf(segments.get(2), schemaChanges));
+    }
+
+    @Test
+    public void makeSureRowsEventsAreParsedUpToTheTableId() throws Exception {
+        List<BinlogEventV4> events = new ArrayList<>();
+        MappedBinlogFileParser parser = new MappedBinlogFileParser(secondFile, 4);
+        TableIdRowsEventParser.register(parser);
+        parser.parseToEnd(events::add);
+
+        assertEquals(5, events.size());
+        assertTrue(events.get(3) instanceof WriteRowsEventV2);
+        WriteRowsEventV2 rowsEvent = (WriteRowsEventV2) events.get(3);
+        assertEquals(TABLE_ID, rowsEvent.getTableId());
+        assertEquals("mysql-bin.000002", rowsEvent.getBinlogFilename());
+        assertNull(rowsEvent.getRows());
+        assertFalse(events.get(4) instanceof WriteRowsEventV2);
+    }
+}
@@ -0,0 +1,80 @@
+package com.booking.replication.queues;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void makeSureAccountsShareTheBudget() throws InterruptedException {
+        MemoryBudget memoryBudget = new MemoryBudget(1000);
+        MemoryBudget.Account queue = memoryBudget.account("testQueue");
+        MemoryBudget.Account applier = memoryBudget.account("testApplier");
+
+        assertTrue(queue.acquire(600, 0, TimeUnit.MILLISECONDS));
+        applier.charge(400);
+
+        assertTrue(memoryBudget.isExhausted());
+        assertEquals(1000, memoryBudget.getUsedBytes());
+        assertFalse(queue.acquire(1, 10, TimeUnit.MILLISECONDS));
+
+        applier.release(400);
+
+        assertFalse(memoryBudget.isExhausted());
+        assertEquals(600, queue.getUsedBytes());
+        assertEquals(0, applier.getUsedBytes());
+        assertTrue(queue.acquire(400, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void makeSureOversizedChargeGoesThroughWhenNothingIsHeld() throws InterruptedException {
+        MemoryBudget memoryBudget = new MemoryBudget(100);
+        MemoryBudget.Account queue = memoryBudget.account("testQueue");
+
+        assertTrue(queue.acquire(500, 0, TimeUnit.MILLISECONDS));
+        assertFalse(queue.acquire(1, 0, TimeUnit.MILLISECONDS));
+
+        queue.release(500);
+
+        assertEquals(0, memoryBudget.getUsedBytes());
+        assertTrue(new MemoryBudget(0).account("testUnlimited").acquire(Long.MAX_VALUE / 2, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void makeSureReleaseWakesUpWaitingProducer() throws InterruptedException {
+        MemoryBudget memoryBudget = new MemoryBudget(100);
+        final MemoryBudget.Account queue = memoryBudget.account("testQueue");
+        MemoryBudget.Account applier = memoryBudget.account("testApplier");
+
+        applier.charge(100);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean acquired = new AtomicBoolean(false);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    acquired.set(queue.acquire(50, 10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        started.await();
+
+        applier.release(100);
+        producer.join(10000);
+
+        assertTrue(acquired.get());
+        assertEquals(50, memoryBudget.getUsedBytes());
+    }
+}
@@ -0,0 +1,71 @@
+package com.booking.replication.queues;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReorderBufferTest {
+
+    @Test
+    public void makeSureElementsAreReleasedInSequenceOrder() throws InterruptedException {
+        ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(4, WaitStrategy.BUSY_SPIN);
+
+        reorderBuffer.complete(2, 2);
+        reorderBuffer.complete(1, 1);
+        assertNull(reorderBuffer.take(10, TimeUnit.MILLISECONDS));
+
+        reorderBuffer.complete(0, 0);
+        assertEquals(Integer.valueOf(0), reorderBuffer.take(10, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(1), reorderBuffer.take(10, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(2), reorderBuffer.take(10, TimeUnit.MILLISECONDS));
+        assertEquals(3, reorderBuffer.getReleasedCount());
+    }
+
+    @Test
+    public void makeSureWindowIsRespected() throws InterruptedException {
+        ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(3, WaitStrategy.BUSY_SPIN);
+
+        assertTrue(reorderBuffer.awaitCapacity(2, 10, TimeUnit.MILLISECONDS));
+        assertFalse(reorderBuffer.awaitCapacity(3, 10, TimeUnit.MILLISECONDS));
+
+        reorderBuffer.complete(0, 0);
+        reorderBuffer.take(10, TimeUnit.MILLISECONDS);
+        assertTrue(reorderBuffer.awaitCapacity(3, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void makeSureConcurrentCompletionsComeOutInOrder() throws InterruptedException {
+        final int count = 10000;
+        final ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(64, WaitStrategy.PARK);
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+
+        Thread sequencer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    final int sequence = i;
+                    while (!reorderBuffer.awaitCapacity(sequence, 1, TimeUnit.SECONDS)) {
+                        // keep waiting
+                    }
+                    workers.execute(() -> reorderBuffer.complete(sequence, sequence));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sequencer.start();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(Integer.valueOf(i), reorderBuffer.take(5, TimeUnit.SECONDS));
+        }
+
+        sequencer.join();
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,147 @@
+package com.booking.replication.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void makeSureCapacityIsRespectedEvenIfNotPowerOfTwo() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(3, WaitStrategy.BUSY_SPIN);
+
+        assertTrue(ringBuffer.offer(1));
+        assertTrue(ringBuffer.offer(2));
+        assertTrue(ringBuffer.offer(3));
+        assertFalse(ringBuffer.offer(4));
+        assertEquals(3, ringBuffer.size());
+        assertEquals(0, ringBuffer.remainingCapacity());
+    }
+
+    @Test
+    public void makeSureElementsComeOutInOrderAcrossWrapAround() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4, WaitStrategy.BUSY_SPIN);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ringBuffer.offer(i));
+            assertEquals(Integer.valueOf(i), ringBuffer.poll());
+        }
+        assertNull(ringBuffer.poll());
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void makeSureDrainToRespectsMaxElements() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(10, WaitStrategy.BUSY_SPIN);
+        for (int i = 0; i < 7; i++) {
+            ringBuffer.offer(i);
+        }
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(5, ringBuffer.drainTo(batch, 5));
+        assertEquals(2, ringBuffer.drainTo(batch, 5));
+        assertEquals(0, ringBuffer.drainTo(batch, 5));
+
+        for (int i = 0; i < 7; i++) {
+            assertEquals(Integer.valueOf(i), batch.get(i));
+        }
+    }
+
+    @Test
+    public void makeSureTimedOperationsTimeOut() throws InterruptedException {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(1, WaitStrategy.PARK);
+
+        assertNull(ringBuffer.poll(10, TimeUnit.MILLISECONDS));
+        assertTrue(ringBuffer.offer(1, 10, TimeUnit.MILLISECONDS));
+        assertFalse(ringBuffer.offer(2, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void makeSureNothingIsLostOrReorderedBetweenTwoThreads() throws InterruptedException {
+        final int events = 1000000;
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(1024, WaitStrategy.YIELD);
+
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < events; i++) {
+                    ringBuffer.put(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        List<Integer> batch = new ArrayList<>();
+        int expected = 0;
+        while (expected < events) {
+            batch.clear();
+            if (ringBuffer.drainTo(batch, 100) == 0) {
+                Integer element = ringBuffer.poll(1, TimeUnit.SECONDS);
+                assertTrue("producer stalled", element != null);
+                batch.add(element);
+            }
+            for (Integer element : batch) {
+                assertEquals(expected++, element.intValue());
+            }
+        }
+        producer.join();
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void makeSureBlockedDrainReturnsAsSoonAsSomethingIsPublished() throws InterruptedException {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(16, WaitStrategy.PARK);
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ringBuffer.offer(42);
+        });
+        producer.start();
+
+        long start = System.nanoTime();
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(1, ringBuffer.drainTo(batch, 10, 10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(Integer.valueOf(42), batch.get(0));
+        producer.join();
+    }
+
+    @Test
+    public void makeSureWakeUpInterruptsBlockedDrain() throws InterruptedException {
+        final RingBuffer<Integer> ringBuffer = new RingBuffer<>(16, WaitStrategy.PARK);
+
+        Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ringBuffer.wakeUpConsumer();
+        });
+        waker.start();
+
+        long start = System.nanoTime();
+        assertEquals(0, ringBuffer.drainTo(new ArrayList<>(), 10, 10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        waker.join();
+    }
+
+    @Test
+    public void makeSureWaitStrategyNamesAreResolved() {
+        assertEquals(WaitStrategy.BUSY_SPIN, WaitStrategy.fromName("busy_spin"));
+        assertEquals(WaitStrategy.YIELD, WaitStrategy.fromName("Yield"));
+        assertEquals(WaitStrategy.PARK, WaitStrategy.fromName(null));
+    }
+}
@@ -0,0 +1,188 @@
+package com.booking.replication.queues.spill;
+
+import com.booking.replication.binlog.RawRowsEvent;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.StatusVariable;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.UpdateRowsEventV2;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.variable.status.QTimeZoneCode;
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.glossary.Pair;
+import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.BitColumn;
+import com.google.code.or.common.glossary.column.BlobColumn;
+import com.google.code.or.common.glossary.column.DatetimeColumn;
+import com.google.code.or.common.glossary.column.DecimalColumn;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.NullColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.glossary.column.TimestampColumn;
+import com.google.code.or.common.util.MySQLConstants;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinlogEventCodecTest {
+
+    private static BinlogEventV4HeaderImpl header(int eventType) {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(eventType);
+        header.setTimestamp(1500000000000L);
+        header.setServerId(42);
+        header.setEventLength(321);
+        header.setNextPosition(4096);
+        return header;
+    }
+
+    private static BinlogEventV4 roundTrip(BinlogEventV4 event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinlogEventCodec.encode(event, new DataOutputStream(bytes));
+        return BinlogEventCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void makeSureQueryEventKeepsSqlAndTimeZone() throws IOException {
+        QueryEvent event = new QueryEvent(header(MySQLConstants.QUERY_EVENT));
+        event.setBinlogFilename("mysql-bin.000042");
+        event.setDatabaseName(StringColumn.valueOf("test".getBytes()));
+        event.setSql(StringColumn.valueOf("ALTER TABLE t ADD COLUMN c INT".getBytes()));
+        event.setStatusVariables(Collections.<StatusVariable>singletonList(
+                new QTimeZoneCode(StringColumn.valueOf("UTC".getBytes()))));
+
+        QueryEvent decoded = (QueryEvent) roundTrip(event);
+
+        assertEquals("mysql-bin.000042", decoded.getBinlogFilename());
+        assertEquals(4096, decoded.getHeader().getNextPosition());
+        assertEquals(1500000000000L, decoded.getHeader().getTimestamp());
+        assertEquals("test", decoded.getDatabaseName().toString());
+        assertEquals("ALTER TABLE t ADD COLUMN c INT", decoded.getSql().toString());
+        assertEquals("UTC", ((QTimeZoneCode) decoded.getStatusVariables().get(0)).getTimeZone().toString());
+    }
+
+    @Test
+    public void makeSureTableMapEventKeepsColumnMetadata() throws IOException {
+        TableMapEvent event = new TableMapEvent(header(MySQLConstants.TABLE_MAP_EVENT));
+        event.setTableId(77);
+        event.setDatabaseName(StringColumn.valueOf("test".getBytes()));
+        event.setTableName(StringColumn.valueOf("t".getBytes()));
+        event.setColumnCount(UnsignedLong.valueOf(2));
+        byte[] columnTypes = new byte[] {MySQLConstants.TYPE_LONG, (byte) MySQLConstants.TYPE_NEWDECIMAL};
+        event.setColumnTypes(columnTypes);
+        event.setColumnMetadata(new Metadata(columnTypes, new int[] {0, 10 << 8 | 2}));
+        event.setColumnNullabilities(BitColumn.valueOf(2, new byte[] {2}));
+
+        TableMapEvent decoded = (TableMapEvent) roundTrip(event);
+
+        assertEquals(77, decoded.getTableId());
+        assertEquals("t", decoded.getTableName().toString());
+        assertEquals(2, decoded.getColumnCount().intValue());
+        assertArrayEquals(columnTypes, decoded.getColumnTypes());
+        assertEquals(10 << 8 | 2, decoded.getColumnMetadata().getMetadata(1));
+        assertTrue(decoded.getColumnNullabilities().get(1));
+    }
+
+    @Test
+    public void makeSureRowEventKeepsColumnValues() throws IOException {
+        Timestamp timestamp = new Timestamp(1500000000000L);
+        timestamp.setNanos(123456000);
+
+        List<Column> before = Arrays.<Column>asList(
+                LongColumn.valueOf(1),
+                StringColumn.valueOf(new byte[] {(byte) 0xc3, (byte) 0xa9}),
+                NullColumn.valueOf(MySQLConstants.TYPE_BLOB),
+                DecimalColumn.valueOf(new BigDecimal("12.50"), 10, 2),
+                DatetimeColumn.valueOf(20170714120000L),
+                TimestampColumn.valueOf(timestamp));
+        List<Column> after = new ArrayList<>(before);
+        after.set(2, BlobColumn.valueOf(new byte[] {0, 1, 2}));
+
+        UpdateRowsEventV2 event = new UpdateRowsEventV2(header(MySQLConstants.UPDATE_ROWS_EVENT_V2));
+        event.setTableId(77);
+        event.setColumnCount(UnsignedLong.valueOf(before.size()));
+        event.setUsedColumnsBefore(BitColumn.valueOf(before.size(), new byte[] {0x3f}));
+        event.setUsedColumnsAfter(BitColumn.valueOf(before.size(), new byte[] {0x3f}));
+        event.setRows(Collections.singletonList(new Pair<>(new Row(before), new Row(after))));
+
+        UpdateRowsEventV2 decoded = (UpdateRowsEventV2) roundTrip(event);
+
+        assertEquals(77, decoded.getTableId());
+        List<Column> decodedBefore = decoded.getRows().get(0).getBefore().getColumns();
+        List<Column> decodedAfter = decoded.getRows().get(0).getAfter().getColumns();
+
+        assertEquals(1, decodedBefore.get(0).getValue());
+        assertArrayEquals(new byte[] {(byte) 0xc3, (byte) 0xa9}, ((StringColumn) decodedBefore.get(1)).getValue());
+        assertEquals(MySQLConstants.TYPE_BLOB, ((NullColumn) decodedBefore.get(2)).getType());
+        assertNull(decodedBefore.get(2).getValue());
+        assertEquals(new BigDecimal("12.50"), decodedBefore.get(3).getValue());
+        assertEquals(2, ((DecimalColumn) decodedBefore.get(3)).getScale());
+        assertEquals(20170714120000L, ((DatetimeColumn) decodedBefore.get(4)).getLongValue());
+        assertEquals(timestamp, decodedBefore.get(5).getValue());
+        assertArrayEquals(new byte[] {0, 1, 2}, ((BlobColumn) decodedAfter.get(2)).getValue());
+        assertEquals(decodedBefore.size(), decoded.getUsedColumnsAfter().getLength());
+    }
+
+    @Test
+    public void makeSureRawRowsEventKeepsRowsAndTableMap() throws IOException {
+        TableMapEvent tableMapEvent = new TableMapEvent(header(MySQLConstants.TABLE_MAP_EVENT));
+        tableMapEvent.setTableId(77);
+        tableMapEvent.setDatabaseName(StringColumn.valueOf("test".getBytes()));
+        tableMapEvent.setTableName(StringColumn.valueOf("t".getBytes()));
+        tableMapEvent.setColumnCount(UnsignedLong.valueOf(1));
+        byte[] columnTypes = new byte[] {MySQLConstants.TYPE_LONG};
+        tableMapEvent.setColumnTypes(columnTypes);
+        tableMapEvent.setColumnMetadata(new Metadata(columnTypes, new int[] {0}));
+
+        RawRowsEvent event = new RawRowsEvent(header(MySQLConstants.UPDATE_ROWS_EVENT_V2));
+        event.setBinlogFilename("mysql-bin.000042");
+        event.setTableId(77);
+        event.setColumnCount(1);
+        event.setUsedColumns(new byte[] {1});
+        event.setUsedColumnsAfter(new byte[] {1});
+        event.setTableMapEvent(tableMapEvent);
+        event.setRows(new byte[] {0, 1, 0, 0, 0, 0, 2, 0, 0, 0});
+
+        RawRowsEvent decoded = (RawRowsEvent) roundTrip(event);
+
+        assertEquals("mysql-bin.000042", decoded.getBinlogFilename());
+        assertEquals(MySQLConstants.UPDATE_ROWS_EVENT_V2, decoded.getHeader().getEventType());
+        assertEquals(77, decoded.getTableId());
+        assertEquals(1, decoded.getColumnCount());
+        assertArrayEquals(new byte[] {1}, decoded.getUsedColumnsAfter());
+        assertArrayEquals(event.getRows(), decoded.getRows());
+        assertEquals("t", decoded.getTableMapEvent().getTableName().toString());
+        assertArrayEquals(columnTypes, decoded.getTableMapEvent().getColumnTypes());
+    }
+
+    @Test
+    public void makeSureXidEventKeepsXid() throws IOException {
+        XidEvent event = new XidEvent(header(MySQLConstants.XID_EVENT));
+        event.setXid(123456789L);
+
+        XidEvent decoded = (XidEvent) roundTrip(event);
+
+        assertEquals(123456789L, decoded.getXid());
+        assertEquals(42, decoded.getHeader().getServerId());
+    }
+}
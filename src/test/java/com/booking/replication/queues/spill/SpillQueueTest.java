@@ -0,0 +1,119 @@
+package com.booking.replication.queues.spill;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.common.util.MySQLConstants;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BinlogEventV4 event(long xid) {
+        BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+        header.setEventType(MySQLConstants.XID_EVENT);
+        header.setEventLength(100);
+        XidEvent event = new XidEvent(header);
+        event.setXid(xid);
+        return event;
+    }
+
+    private static int segmentFiles(File directory) {
+        return directory.listFiles().length;
+    }
+
+    @Test
+    public void makeSureEventsComeBackInOrderAcrossSegments() throws IOException {
+        File directory = folder.newFolder("spill");
+        // room for a handful of events per segment
+        SpillQueue spillQueue = new SpillQueue(directory, 512, 1024 * 1024);
+
+        for (long xid = 0; xid < 100; xid++) {
+            spillQueue.add(event(xid), 100);
+        }
+        assertTrue(segmentFiles(directory) > 1);
+        assertTrue(spillQueue.getBytes() > 0);
+
+        for (long xid = 0; xid < 100; xid++) {
+            assertEquals(xid, ((XidEvent) spillQueue.peek()).getXid());
+            spillQueue.remove();
+            // interleave writes with reads on the last segment
+            if (xid == 50) {
+                spillQueue.add(event(100), 100);
+            }
+        }
+        assertEquals(100, ((XidEvent) spillQueue.peek()).getXid());
+        spillQueue.remove();
+
+        assertTrue(spillQueue.isEmpty());
+        assertNull(spillQueue.peek());
+        assertEquals(0, spillQueue.getBytes());
+        assertEquals(1, segmentFiles(directory));
+
+        spillQueue.close();
+        assertEquals(0, segmentFiles(directory));
+    }
+
+    @Test
+    public void makeSureStaleSegmentsAreRemovedAndRoomIsBounded() throws IOException {
+        File directory = folder.newFolder("spill");
+        assertTrue(new File(directory, "spill-00000000000000000007.seg").createNewFile());
+
+        SpillQueue spillQueue = new SpillQueue(directory, 4096, 200);
+        assertEquals(0, segmentFiles(directory));
+
+        // an empty queue takes any event
+        SpillQueue tinyQueue = new SpillQueue(folder.newFolder("tiny"), 4096, 1);
+        assertTrue(tinyQueue.hasRoomFor(event(1), 1000));
+        tinyQueue.close();
+
+        // room is counted in encoded bytes, whatever the heap estimate
+        spillQueue.add(event(1), 100);
+        long eventBytes = spillQueue.getBytes();
+        assertTrue(eventBytes < 100);
+        assertTrue(spillQueue.hasRoomFor(event(2), 1000));
+        for (long xid = 2; spillQueue.getBytes() + eventBytes <= 200; xid++) {
+            spillQueue.add(event(xid), 100);
+        }
+        assertFalse(spillQueue.hasRoomFor(event(100), 100));
+
+        spillQueue.close();
+    }
+
+    @Test
+    public void makeSureFinishedSegmentsAreDeletedAsTheyAreRead() throws IOException {
+        File directory = folder.newFolder("spill");
+        SpillQueue spillQueue = new SpillQueue(directory, 512, 1024 * 1024);
+
+        for (long xid = 0; xid < 100; xid++) {
+            spillQueue.add(event(xid), 100);
+        }
+        int segments = segmentFiles(directory);
+        assertTrue(segments > 2);
+
+        // reading past the first segment deletes it, whether or not the JVM lets us unmap it
+        long xid = 0;
+        while (segmentFiles(directory) == segments) {
+            assertEquals(xid++, ((XidEvent) spillQueue.peek()).getXid());
+            spillQueue.remove();
+        }
+        assertEquals(segments - 1, segmentFiles(directory));
+        assertEquals(xid, ((XidEvent) spillQueue.peek()).getXid());
+
+        spillQueue.close();
+        assertEquals(0, segmentFiles(directory));
+    }
+}
@@ -0,0 +1,210 @@
+package com.booking.replication.relay;
+
+import com.booking.replication.pipeline.MappedBinlogFileParser;
+
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.event.FormatDescriptionEvent;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.common.util.MySQLConstants;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RelayLogTest {
+
+    private static final String HOST = "replicant-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] event(int eventType, long nextPosition, byte[] body) {
+        ByteBuffer event = ByteBuffer.allocate(19 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        event.putInt(1500000000);
+        event.put((byte) eventType);
+        event.putInt(1);
+        event.putInt(19 + body.length);
+        event.putInt((int) nextPosition);
+        event.putShort((short) 0);
+        event.put(body);
+        return event.array();
+    }
+
+    private static byte[] formatDescription(long nextPosition) {
+        ByteBuffer body = ByteBuffer.allocate(2 + 50 + 4 + 1 + 27).order(ByteOrder.LITTLE_ENDIAN);
+        body.putShort((short) 4);
+        byte[] serverVersion = new byte[50];
+        byte[] version = "5.5.40-log".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(version, 0, serverVersion, 0, version.length);
+        body.put(serverVersion);
+        body.putInt(0);
+        body.put((byte) 19);
+        return event(MySQLConstants.FORMAT_DESCRIPTION_EVENT, nextPosition, body.array());
+    }
+
+    private static byte[] query(long position, String sql) {
+        byte[] statement = sql.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer body = ByteBuffer.allocate(13 + 5 + statement.length).order(ByteOrder.LITTLE_ENDIAN);
+        body.putInt(7);
+        body.putInt(0);
+        body.put((byte) 4);
+        body.putShort((short) 0);
+        body.putShort((short) 0);
+        body.put("test".getBytes(StandardCharsets.US_ASCII));
+        body.put((byte) 0);
+        body.put(statement);
+        return event(MySQLConstants.QUERY_EVENT, position + 19 + body.capacity(), body.array());
+    }
+
+    private static byte[] xid(long position, long xid) {
+        ByteBuffer body = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        body.putLong(xid);
+        return event(MySQLConstants.XID_EVENT, position + 19 + 8, body.array());
+    }
+
+    private static byte[] rotate(long position, String nextBinlogFileName) {
+        byte[] name = nextBinlogFileName.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer body = ByteBuffer.allocate(8 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        body.putLong(4);
+        body.put(name);
+        return event(MySQLConstants.ROTATE_EVENT, position == 0 ? 0 : position + 19 + body.capacity(), body.array());
+    }
+
+    private static long end(byte[] event) {
+        return ByteBuffer.wrap(event).order(ByteOrder.LITTLE_ENDIAN).getInt(13) & 0xffffffffL;
+    }
+
+    // frames the events as the server sends them, and feeds them to the tap in small reads
+    private static void stream(RelayLogTap tap, List<byte[]> events) {
+        ByteArrayOutputStream packets = new ByteArrayOutputStream();
+        int sequence = 1;
+        for (byte[] event : events) {
+            int length = event.length + 1;
+            packets.write(length & 0xff);
+            packets.write(length >>> 8 & 0xff);
+            packets.write(length >>> 16 & 0xff);
+            packets.write(sequence++);
+            packets.write(0);
+            packets.write(event, 0, event.length);
+        }
+        // end of stream packet
+        packets.write(new byte[] {5, 0, 0, (byte) sequence, (byte) 0xfe, 0, 0, 2, 0}, 0, 9);
+
+        byte[] bytes = packets.toByteArray();
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            tap.onBytes(bytes, offset, Math.min(7, bytes.length - offset));
+        }
+    }
+
+    private static List<BinlogEventV4> replay(RelayLog.Segment segment) throws Exception {
+        List<BinlogEventV4> events = Collections.synchronizedList(new ArrayList<BinlogEventV4>());
+        MappedBinlogFileParser parser = new MappedBinlogFileParser(
+                segment.getFile(), segment.getStartPosition(), segment.getEndPosition());
+        parser.setEventListener(events::add);
+        parser.start();
+        assertTrue(parser.awaitTermination(10, TimeUnit.SECONDS));
+        return events;
+    }
+
+    @Test
+    public void makeSureRelayedEventsReplayUpToTheLastTransactionBoundary() throws Exception {
+        File directory = folder.newFolder("relay");
+
+        byte[] formatDescription = formatDescription(0);
+        // the dump starts in the middle of the binlog file
+        long start = 1000;
+        byte[] begin = query(start, "BEGIN");
+        byte[] commit = xid(end(begin), 42);
+        byte[] unfinished = query(end(commit), "BEGIN");
+
+        RelayLog relayLog = new RelayLog(directory, 4);
+        RelayLogTap tap = new RelayLogTap(relayLog);
+        relayLog.beginSession(HOST, "mysql-bin.000001", start);
+        tap.startDump();
+        List<byte[]> events = new ArrayList<>();
+        events.add(rotate(0, "mysql-bin.000001"));
+        events.add(formatDescription);
+        events.add(begin);
+        events.add(commit);
+        // a quiet server sends heartbeats, at the position it is at
+        events.add(event(MySQLConstants.HEARTBEAT_LOG_EVENT, end(commit), "mysql-bin.000001".getBytes(StandardCharsets.US_ASCII)));
+        events.add(unfinished);
+        stream(tap, events);
+        relayLog.close();
+
+        // relay file offsets are binlog positions
+        assertEquals(end(unfinished), new File(directory, "mysql-bin.000001").length());
+
+        RelayLog reopened = new RelayLog(directory, 4);
+        assertTrue(reopened.getReplayWindow("replicant-2", "mysql-bin.000001", start).isEmpty());
+        assertTrue(reopened.getReplayWindow(HOST, "mysql-bin.000001", 4).isEmpty());
+
+        List<RelayLog.Segment> segments = reopened.getReplayWindow(HOST, "mysql-bin.000001", start);
+        assertEquals(1, segments.size());
+        assertEquals(end(commit), segments.get(0).getEndPosition());
+
+        List<BinlogEventV4> replayed = replay(segments.get(0));
+        assertEquals(2, replayed.size());
+        assertEquals("BEGIN", ((QueryEvent) replayed.get(0)).getSql().toString());
+        assertEquals(start, replayed.get(0).getHeader().getPosition());
+        assertEquals(42, ((XidEvent) replayed.get(1)).getXid());
+        assertEquals("mysql-bin.000001", ((XidEvent) replayed.get(1)).getBinlogFilename());
+
+        // streaming again from the end of the replay continues the relay file, minus the unfinished transaction
+        reopened.beginSession(HOST, "mysql-bin.000001", end(commit));
+        assertEquals(end(commit), new File(directory, "mysql-bin.000001").length());
+        reopened.close();
+    }
+
+    @Test
+    public void makeSureRelayFilesFollowRotationsAndAreRetained() throws Exception {
+        File directory = folder.newFolder("relay");
+
+        byte[] firstFormatDescription = formatDescription(4 + 103);
+        byte[] rotate = rotate(end(firstFormatDescription), "mysql-bin.000002");
+        byte[] secondFormatDescription = formatDescription(4 + 103);
+        byte[] ddl = query(end(secondFormatDescription), "CREATE TABLE t (id INT)");
+
+        RelayLog relayLog = new RelayLog(directory, 1);
+        RelayLogTap tap = new RelayLogTap(relayLog);
+        relayLog.beginSession(HOST, "mysql-bin.000001", 4);
+        tap.startDump();
+        List<byte[]> events = new ArrayList<>();
+        events.add(rotate(0, "mysql-bin.000001"));
+        events.add(firstFormatDescription);
+        events.add(rotate);
+        events.add(rotate(0, "mysql-bin.000002"));
+        events.add(secondFormatDescription);
+        events.add(ddl);
+        stream(tap, events);
+        relayLog.close();
+
+        assertEquals(1, relayLog.getFileCount());
+        assertFalse(new File(directory, "mysql-bin.000001").exists());
+
+        RelayLog reopened = new RelayLog(directory, 1);
+        List<RelayLog.Segment> segments = reopened.getReplayWindow(HOST, "mysql-bin.000002", 4);
+        assertEquals(1, segments.size());
+        assertEquals(end(ddl), segments.get(0).getEndPosition());
+
+        List<BinlogEventV4> replayed = replay(segments.get(0));
+        assertEquals(2, replayed.size());
+        assertTrue(replayed.get(0) instanceof FormatDescriptionEvent);
+        assertEquals("CREATE TABLE t (id INT)", ((QueryEvent) replayed.get(1)).getSql().toString());
+    }
+}
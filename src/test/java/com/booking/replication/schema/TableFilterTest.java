@@ -0,0 +1,57 @@
+package com.booking.replication.schema;
+
+import com.booking.replication.pipeline.CurrentTransactionMetadata;
+
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.glossary.column.StringColumn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TableFilterTest {
+
+    private static TableMapEvent tableMapEvent(long tableID, String tableName) {
+        TableMapEvent tableMapEvent = new TableMapEvent();
+        tableMapEvent.setTableId(tableID);
+        tableMapEvent.setDatabaseName(StringColumn.valueOf("test".getBytes(StandardCharsets.UTF_8)));
+        tableMapEvent.setTableName(StringColumn.valueOf(tableName.getBytes(StandardCharsets.UTF_8)));
+        return tableMapEvent;
+    }
+
+    @Test
+    public void makeSureExcludePatternsOverrideIncludePatterns() {
+        TableFilter tableFilter = new TableFilter(Arrays.asList("^users$"), Arrays.asList("_archive$"));
+
+        assertTrue(tableFilter.isTableWanted("users"));
+        assertTrue(tableFilter.isTableWanted("orders"));
+        assertFalse(tableFilter.isTableWanted("Users_Archive"));
+    }
+
+    @Test
+    public void makeSureOnlyIncludedTablesAreWanted() {
+        TableFilter tableFilter = new TableFilter(Arrays.asList("^users$", "^ORDERS"), null);
+
+        assertTrue(tableFilter.isTableWanted("users"));
+        assertTrue(tableFilter.isTableWanted("orders_2017"));
+        assertFalse(tableFilter.isTableWanted("users_archive"));
+        assertTrue(new TableFilter(null, null).isTableWanted("anything"));
+    }
+
+    @Test
+    public void makeSureTableMapEventsMarkFilteredTables() {
+        CurrentTransactionMetadata currentTransactionMetadata =
+                new CurrentTransactionMetadata(new TableFilter(Arrays.asList("^users$"), null));
+
+        currentTransactionMetadata.updateCache(tableMapEvent(1L, "users"));
+        currentTransactionMetadata.updateCache(tableMapEvent(2L, "sessions"));
+
+        assertFalse(currentTransactionMetadata.isTableFiltered(1L));
+        assertTrue(currentTransactionMetadata.isTableFiltered(2L));
+        assertFalse(new CurrentTransactionMetadata().isTableFiltered(2L));
+    }
+}
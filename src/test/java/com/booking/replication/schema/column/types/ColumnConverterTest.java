@@ -0,0 +1,164 @@
+package com.booking.replication.schema.column.types;
+
+import com.booking.replication.augmenter.RowImage;
+import com.booking.replication.schema.column.ColumnSchema;
+import com.booking.replication.schema.exception.TableMapException;
+import com.booking.replication.schema.table.TableSchemaVersion;
+
+import com.google.code.or.common.glossary.Column;
+import com.google.code.or.common.glossary.column.BlobColumn;
+import com.google.code.or.common.glossary.column.DateColumn;
+import com.google.code.or.common.glossary.column.DoubleColumn;
+import com.google.code.or.common.glossary.column.FloatColumn;
+import com.google.code.or.common.glossary.column.Int24Column;
+import com.google.code.or.common.glossary.column.LongColumn;
+import com.google.code.or.common.glossary.column.LongLongColumn;
+import com.google.code.or.common.glossary.column.NullColumn;
+import com.google.code.or.common.glossary.column.ShortColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.glossary.column.Timestamp2Column;
+import com.google.code.or.common.glossary.column.TimestampColumn;
+import com.google.code.or.common.glossary.column.TinyColumn;
+import com.google.code.or.common.glossary.column.YearColumn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnConverterTest {
+
+    private static ColumnSchema columnSchema(String dataType, String columnType, String charset) {
+        ColumnSchema columnSchema = new ColumnSchema();
+        columnSchema.setColumnName(dataType + "_column");
+        columnSchema.setDataType(dataType);
+        columnSchema.setColumnType(columnType);
+        columnSchema.setCharacterSetName(charset);
+        columnSchema.setOrdinalPosition(1);
+        return columnSchema;
+    }
+
+    private static void assertSameAsConverter(ColumnSchema columnSchema, Column... columns) throws TableMapException {
+        ColumnConverter columnConverter = ColumnConverter.forColumn(columnSchema);
+        for (Column column : columns) {
+            assertEquals(Converter.orTypeToString(column, columnSchema), columnConverter.toString(column));
+        }
+    }
+
+    @Test
+    public void makeSureIntegersAreConvertedLikeOrTypeToString() throws TableMapException {
+        assertSameAsConverter(columnSchema("tinyint", "tinyint(3) unsigned", null),
+                TinyColumn.valueOf(-1), TinyColumn.valueOf(127), NullColumn.valueOf(0));
+        assertSameAsConverter(columnSchema("tinyint", "tinyint(4)", null),
+                TinyColumn.valueOf(-1), TinyColumn.valueOf(127));
+        assertSameAsConverter(columnSchema("smallint", "smallint(5) UNSIGNED", null),
+                ShortColumn.valueOf(-1), ShortColumn.valueOf(42));
+        assertSameAsConverter(columnSchema("mediumint", "mediumint(8) unsigned", null),
+                Int24Column.valueOf(-1), Int24Column.valueOf(42));
+        assertSameAsConverter(columnSchema("int", "int(10) unsigned", null),
+                LongColumn.valueOf(-1), LongColumn.valueOf(Integer.MIN_VALUE), LongColumn.valueOf(42));
+        assertSameAsConverter(columnSchema("int", "int(11)", null),
+                LongColumn.valueOf(-1), LongColumn.valueOf(42));
+        assertSameAsConverter(columnSchema("bigint", "bigint(20) unsigned", null),
+                LongLongColumn.valueOf(-1L), LongLongColumn.valueOf(Long.MIN_VALUE), LongLongColumn.valueOf(42L));
+        assertSameAsConverter(columnSchema("bigint", "bigint(20)", null),
+                LongLongColumn.valueOf(-1L), LongLongColumn.valueOf(42L));
+    }
+
+    @Test
+    public void makeSureCharacterDataIsConvertedLikeOrTypeToString() throws TableMapException {
+        byte[] bytes = "café".getBytes(StandardCharsets.UTF_8);
+
+        assertSameAsConverter(columnSchema("varchar", "varchar(255)", "utf8mb4"), StringColumn.valueOf(bytes));
+        assertSameAsConverter(columnSchema("varchar", "varchar(255)", "latin1"), StringColumn.valueOf(bytes));
+        assertSameAsConverter(columnSchema("varbinary", "varbinary(255)", null), StringColumn.valueOf(bytes));
+        assertSameAsConverter(columnSchema("text", "text", "utf8"), BlobColumn.valueOf(bytes));
+        assertSameAsConverter(columnSchema("blob", "blob", null), BlobColumn.valueOf(bytes));
+        assertSameAsConverter(columnSchema("varchar", "varchar(255)", "cp1251"), StringColumn.valueOf(bytes));
+    }
+
+    @Test
+    public void makeSureOtherTypesAreConvertedLikeOrTypeToString() throws TableMapException {
+        assertSameAsConverter(columnSchema("double", "double", null), DoubleColumn.valueOf(0.25));
+        assertSameAsConverter(columnSchema("timestamp", "timestamp", null),
+                TimestampColumn.valueOf(new Timestamp(1500000000000L)));
+
+        Timestamp withMicros = new Timestamp(1500000000123L);
+        withMicros.setNanos(123456000);
+        assertSameAsConverter(columnSchema("timestamp", "timestamp(6)", null),
+                Timestamp2Column.valueOf(withMicros), Timestamp2Column.valueOf(new Timestamp(-1500L)));
+        assertSameAsConverter(columnSchema("float", "float", null), FloatColumn.valueOf(-1.5f));
+        assertSameAsConverter(columnSchema("year", "year(4)", null), YearColumn.valueOf(2017));
+        assertSameAsConverter(columnSchema("date", "date", null),
+                DateColumn.valueOf(java.sql.Date.valueOf("2017-07-14")), DateColumn.valueOf(Converter.ZERO_DATE));
+    }
+
+    @Test
+    public void makeSureTypedValuesAreKeptUntilRendered() throws TableMapException {
+        RowImage image = new RowImage(4);
+        byte[] bytes = "café".getBytes(StandardCharsets.UTF_8);
+
+        ColumnConverter unsignedInt = ColumnConverter.forColumn(columnSchema("int", "int(10) unsigned", null));
+        unsignedInt.extract(LongColumn.valueOf(-1), image, 0);
+        assertTrue(image.isLong(0));
+        assertEquals(0xffffffffL, image.getLong(0));
+
+        ColumnConverter varchar = ColumnConverter.forColumn(columnSchema("varchar", "varchar(255)", "utf8"));
+        varchar.extract(StringColumn.valueOf(bytes), image, 1);
+        assertArrayEquals(bytes, (byte[]) image.getObject(1));
+        assertArrayEquals(bytes, varchar.toBytes(image, 1));
+
+        ColumnConverter timestamp = ColumnConverter.forColumn(columnSchema("timestamp", "timestamp", null));
+        timestamp.extract(NullColumn.valueOf(0), image, 2);
+        assertTrue(image.isNull(2));
+        assertEquals("NULL", timestamp.render(image, 2));
+
+        assertNull(timestamp.render(image, 3));
+        assertNull(timestamp.toBytes(image, 3));
+    }
+
+    @Test
+    public void makeSureConvertersAreIndexedByOrdinalPosition() {
+        TableSchemaVersion tableSchemaVersion = new TableSchemaVersion();
+
+        ColumnSchema first = columnSchema("int", "int(11)", null);
+        first.setColumnName("first");
+        ColumnSchema third = columnSchema("int", "int(11)", null);
+        third.setColumnName("third");
+        third.setOrdinalPosition(3);
+
+        tableSchemaVersion.addColumn(third);
+        tableSchemaVersion.addColumn(first);
+
+        ColumnConverter[] columnConverters = tableSchemaVersion.getColumnConverters();
+        assertEquals(3, columnConverters.length);
+        assertEquals("first", columnConverters[0].getColumnName());
+        assertNull(columnConverters[1]);
+        assertEquals("third", columnConverters[2].getColumnName());
+    }
+
+    @Test
+    public void makeSureBytesArePassedThroughForByteSinks() throws TableMapException {
+        RowImage image = new RowImage(3);
+        byte[] utf8 = "café".getBytes(StandardCharsets.UTF_8);
+        byte[] binary = {0x00, 0x7f, (byte) 0xff};
+
+        ColumnConverter varchar = ColumnConverter.forColumn(columnSchema("varchar", "varchar(255)", "utf8mb4"));
+        varchar.extract(StringColumn.valueOf(utf8), image, 0);
+        assertTrue(utf8 == varchar.toBytes(image, 0, BlobEncoding.HEX));
+
+        ColumnConverter blob = ColumnConverter.forColumn(columnSchema("blob", "blob", null));
+        blob.extract(BlobColumn.valueOf(binary), image, 1);
+        assertArrayEquals("007FFF".getBytes(StandardCharsets.UTF_8), blob.toBytes(image, 1, BlobEncoding.HEX));
+        assertArrayEquals("AH//".getBytes(StandardCharsets.UTF_8), blob.toBytes(image, 1, BlobEncoding.BASE64));
+        assertArrayEquals(binary, blob.toBytes(image, 1, BlobEncoding.RAW));
+
+        blob.extract(NullColumn.valueOf(0), image, 2);
+        assertArrayEquals("NULL".getBytes(StandardCharsets.UTF_8), blob.toBytes(image, 2, BlobEncoding.RAW));
+    }
+}